@@ -6,6 +6,8 @@ import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 public abstract class VpvPreferencesInitializer extends AbstractPreferenceInitializer {
     public static final String REFRESH_ON_SAVE_PREFERENCES = "org.jboss.tools.vpe.enableRefreshOnSave"; //$NON-NLS-1$
     public static final String REFRESH_ON_CHANGE_PREFERENCES = "org.jboss.tools.vpe.enableRefreshOnChange"; //$NON-NLS-1$
+    /** MIME types of the served files by extension, like {@code "ts=text/javascript;svg=image/svg+xml"}. */
+    public static final String MIME_TYPE_OVERRIDES_PREFERENCES = "org.jboss.tools.vpe.mimeTypeOverrides"; //$NON-NLS-1$
     
     @Override
     public void initializeDefaultPreferences() {
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2013-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.core.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a response body of unknown length to a {@link VpvConnection}
+ * with {@code Transfer-Encoding: chunked}. The bytes are collected
+ * into chunks of a fixed size, {@link #close()} writes the last chunk
+ * and leaves the connection open.
+ */
+class ChunkedOutputStream extends OutputStream {
+	private static final int CHUNK_SIZE = 16 * 1024;
+	private static final byte[] CRLF = {'\r', '\n'};
+	private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+	/** Room for the size line before the data. */
+	private static final int DATA_OFFSET = 8;
+
+	private final VpvConnection connection;
+	private final byte[] chunk = new byte[DATA_OFFSET + CHUNK_SIZE + CRLF.length];
+	private int count = 0;
+	private boolean closed = false;
+
+	ChunkedOutputStream(VpvConnection connection) {
+		this.connection = connection;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (count == CHUNK_SIZE) {
+			flushChunk();
+		}
+		chunk[DATA_OFFSET + count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (count == CHUNK_SIZE) {
+				flushChunk();
+			}
+			int copied = Math.min(length, CHUNK_SIZE - count);
+			System.arraycopy(bytes, offset, chunk, DATA_OFFSET + count, copied);
+			count += copied;
+			offset += copied;
+			length -= copied;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushChunk();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			flushChunk();
+			connection.write(LAST_CHUNK);
+		}
+	}
+
+	/**
+	 * Writes the collected bytes as one chunk, the size line is put
+	 * right before the data so the chunk is written at once.
+	 */
+	private void flushChunk() throws IOException {
+		if (count == 0) {
+			return;
+		}
+		byte[] sizeLine = (Integer.toHexString(count) + "\r\n").getBytes(VpvSocketProcessor.UTF_8); //$NON-NLS-1$
+		int start = DATA_OFFSET - sizeLine.length;
+		System.arraycopy(sizeLine, 0, chunk, start, sizeLine.length);
+		System.arraycopy(CRLF, 0, chunk, DATA_OFFSET + count, CRLF.length);
+		connection.write(chunk, start, sizeLine.length + count + CRLF.length);
+		count = 0;
+	}
+}
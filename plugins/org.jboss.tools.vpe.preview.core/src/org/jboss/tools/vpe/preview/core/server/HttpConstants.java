@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013-2014 Red Hat, Inc.
+ * Copyright (c) 2013-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -24,5 +24,7 @@ public final class HttpConstants {
 	public static final String HTTP = "http://"; //$NON-NLS-1$
 	public static final String LOCALHOST = "localhost"; //$NON-NLS-1$
 	public static final String ABOUT_BLANK = "about:blank"; //$NON-NLS-1$
+	/** Path of the change notifications of the {@link VpvChangeNotifier}. */
+	public static final String EVENTS_PATH = "/vpv-events"; //$NON-NLS-1$
 
 }
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2013-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.core.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pushes the changes of the edited resources to the preview pages.
+ * <p>
+ * A page served for a view subscribes to {@link HttpConstants#EVENTS_PATH}
+ * by the script of {@link #getListenerScript(int)}, the connection is kept
+ * open as a {@code text/event-stream}. A changed style sheet is swapped in
+ * the page and a changed script is loaded again, the page is reloaded only
+ * if it does not refer to the resource.
+ * <p>
+ * Browsers without {@code EventSource} do not subscribe, the notify methods
+ * return {@code false} for their views and the preview reloads the page.
+ */
+public class VpvChangeNotifier {
+	static final String EVENT_STYLESHEET = "stylesheet"; //$NON-NLS-1$
+	static final String EVENT_SCRIPT = "script"; //$NON-NLS-1$
+
+	/** Event streams by the view id, guarded by this. */
+	private final Map<Integer, List<VpvConnection>> streams = new HashMap<Integer, List<VpvConnection>>();
+
+	/**
+	 * Answers the request of the connection by an event stream of the view.
+	 * The connection carries no more requests.
+	 * <p>
+	 * The header is written under the lock, so the stream is registered
+	 * before the page gets the header and the next notification is not missed.
+	 * It is written without waiting, like the events, so a slow page does not
+	 * hold the notifications of the other views.
+	 *
+	 * @throws IOException if the header cannot be written at once,
+	 * the connection is not used then
+	 */
+	void subscribe(int viewId, VpvConnection connection) throws IOException {
+		String responceHeader = "HTTP/1.1 200 OK\r\n" + //$NON-NLS-1$
+				"Server: VPV server\r\n" + //$NON-NLS-1$
+				"Content-Type: text/event-stream; charset=UTF-8\r\n" + //$NON-NLS-1$
+				"Cache-Control: no-cache\r\n" + //$NON-NLS-1$
+				// the stream has no length, it ends with the connection
+				VpvSocketProcessor.CONNECTION + ": " + VpvSocketProcessor.CLOSE + "\r\n\r\n"; //$NON-NLS-1$ //$NON-NLS-2$
+		byte[] header = responceHeader.getBytes(VpvSocketProcessor.UTF_8);
+		connection.setEventStream();
+		synchronized (this) {
+			if (!connection.writeNow(header)) {
+				throw new IOException("Client does not read the event stream"); //$NON-NLS-1$
+			}
+			List<VpvConnection> viewStreams = streams.get(viewId);
+			if (viewStreams == null) {
+				viewStreams = new ArrayList<VpvConnection>(1);
+				streams.put(viewId, viewStreams);
+			}
+			viewStreams.add(connection);
+		}
+	}
+
+	/**
+	 * Removes the event stream, called by the server when the page closes it.
+	 */
+	synchronized void unsubscribe(VpvConnection connection) {
+		for (Iterator<List<VpvConnection>> iterator = streams.values().iterator(); iterator.hasNext();) {
+			List<VpvConnection> viewStreams = iterator.next();
+			if (viewStreams.remove(connection) && viewStreams.isEmpty()) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * @param path full path of the style sheet in the workspace
+	 * @return {@code true} if a page of the view has got the notification
+	 */
+	public boolean notifyStyleSheetChanged(int viewId, String path) {
+		return send(viewId, EVENT_STYLESHEET, path);
+	}
+
+	/**
+	 * @param path full path of the script in the workspace
+	 * @return {@code true} if a page of the view has got the notification
+	 */
+	public boolean notifyScriptChanged(int viewId, String path) {
+		return send(viewId, EVENT_SCRIPT, path);
+	}
+
+	/**
+	 * Writes the event to the streams of the view, the closed streams are removed.
+	 * <p>
+	 * Called from the UI thread, so the event is written without waiting for
+	 * the pages. The stream of a page which does not read is closed, its
+	 * {@code EventSource} connects again and the page misses the event.
+	 */
+	private synchronized boolean send(int viewId, String event, String data) {
+		List<VpvConnection> viewStreams = streams.get(viewId);
+		if (viewStreams == null) {
+			return false;
+		}
+		byte[] message;
+		try {
+			message = ("event: " + event + "\ndata: " + data + "\n\n").getBytes(VpvSocketProcessor.UTF_8); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		boolean sent = false;
+		for (Iterator<VpvConnection> iterator = viewStreams.iterator(); iterator.hasNext();) {
+			VpvConnection connection = iterator.next();
+			if (!connection.isClosed()) {
+				try {
+					if (connection.writeNow(message)) {
+						sent = true;
+						continue;
+					}
+				} catch (IOException e) {
+					// the page is closed
+				}
+				connection.close();
+			}
+			iterator.remove();
+		}
+		if (viewStreams.isEmpty()) {
+			streams.remove(viewId);
+		}
+		return sent;
+	}
+
+	synchronized void closeAll() {
+		for (List<VpvConnection> viewStreams : streams.values()) {
+			for (VpvConnection connection : viewStreams) {
+				connection.close();
+			}
+		}
+		streams.clear();
+	}
+
+	/**
+	 * Returns the script which subscribes the page of the view to the notifications.
+	 * The resources of the page are matched by their paths in the workspace,
+	 * the same way the server resolves them.
+	 */
+	public static String getListenerScript(int viewId) {
+		return "(function() {" + //$NON-NLS-1$
+					"if (!window.EventSource) {" + //$NON-NLS-1$
+						"return;" + //$NON-NLS-1$
+					"}" + //$NON-NLS-1$
+					"var webroot = /[?&]" + HttpConstants.WEBROOT_PATH + "=([^&#]*)/.exec(location.search);" + //$NON-NLS-1$ //$NON-NLS-2$
+					"webroot = webroot ? decodeURIComponent(webroot[1].replace(/\\+/g, ' ')) : '';" + //$NON-NLS-1$
+					"var pathOf = function(url) {" + //$NON-NLS-1$
+						"var link = document.createElement('a');" + //$NON-NLS-1$
+						"link.href = url;" + //$NON-NLS-1$
+						"return link.host === location.host ? webroot + decodeURIComponent(link.pathname) : null;" + //$NON-NLS-1$
+					"};" + //$NON-NLS-1$
+					// the new URL makes the browser request the resource again
+					"var reloadUrl = function(url) {" + //$NON-NLS-1$
+						"url = url.replace(/[?&]vpvReload=\\d+$/, '');" + //$NON-NLS-1$
+						"return url + (url.indexOf('?') < 0 ? '?' : '&') + 'vpvReload=' + new Date().getTime();" + //$NON-NLS-1$
+					"};" + //$NON-NLS-1$
+					"var source = new EventSource('" + HttpConstants.EVENTS_PATH + "?" + HttpConstants.VIEW_ID + "=" + viewId + "');" + //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+					"source.addEventListener('" + EVENT_STYLESHEET + "', function(event) {" + //$NON-NLS-1$ //$NON-NLS-2$
+						"var links = document.getElementsByTagName('link');" + //$NON-NLS-1$
+						"var found = false;" + //$NON-NLS-1$
+						"for (var i = 0; i < links.length; i++) {" + //$NON-NLS-1$
+							"if (/stylesheet/i.test(links[i].rel) && pathOf(links[i].href) === event.data) {" + //$NON-NLS-1$
+								"links[i].href = reloadUrl(links[i].href);" + //$NON-NLS-1$
+								"found = true;" + //$NON-NLS-1$
+							"}" + //$NON-NLS-1$
+						"}" + //$NON-NLS-1$
+						// imported by another style sheet or not used by the page
+						"if (!found) {" + //$NON-NLS-1$
+							"location.reload();" + //$NON-NLS-1$
+						"}" + //$NON-NLS-1$
+					"}, false);" + //$NON-NLS-1$
+					"source.addEventListener('" + EVENT_SCRIPT + "', function(event) {" + //$NON-NLS-1$ //$NON-NLS-2$
+						"var scripts = document.getElementsByTagName('script');" + //$NON-NLS-1$
+						"var changed = [];" + //$NON-NLS-1$
+						"for (var i = 0; i < scripts.length; i++) {" + //$NON-NLS-1$
+							"if (scripts[i].src && pathOf(scripts[i].src) === event.data) {" + //$NON-NLS-1$
+								"changed.push(scripts[i]);" + //$NON-NLS-1$
+							"}" + //$NON-NLS-1$
+						"}" + //$NON-NLS-1$
+						"if (changed.length == 0) {" + //$NON-NLS-1$
+							"location.reload();" + //$NON-NLS-1$
+							"return;" + //$NON-NLS-1$
+						"}" + //$NON-NLS-1$
+						// an inserted script element is executed when it is loaded
+						"for (var i = 0; i < changed.length; i++) {" + //$NON-NLS-1$
+							"var script = document.createElement('script');" + //$NON-NLS-1$
+							"script.src = reloadUrl(changed[i].src);" + //$NON-NLS-1$
+							"changed[i].parentNode.replaceChild(script, changed[i]);" + //$NON-NLS-1$
+						"}" + //$NON-NLS-1$
+					"}, false);" + //$NON-NLS-1$
+					"window.addEventListener('beforeunload', function() {" + //$NON-NLS-1$
+						"source.close();" + //$NON-NLS-1$
+					"}, false);" + //$NON-NLS-1$
+				"})();"; //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2013-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.core.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.tools.vpe.preview.core.Activator;
+
+/**
+ * Persistent HTTP connection of the {@link VpvServer}.
+ * <p>
+ * The channel is non-blocking. The server reads the incoming bytes into the
+ * connection, when a complete request head is received the connection is
+ * handed to a worker which takes the requests one by one by
+ * {@link #nextRequest()}, so pipelined requests are answered in order.
+ * Only one thread uses the connection at a time.
+ */
+class VpvConnection {
+
+	/** Upper bound of a request head, longer requests are rejected. */
+	private static final int MAX_REQUEST_HEAD_SIZE = 64 * 1024;
+	private static final int BUFFER_SIZE = 8 * 1024;
+	/** Time to wait for the client to read the response, in milliseconds. */
+	private static final long WRITE_TIMEOUT = 30000;
+
+	private final SocketChannel channel;
+	private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+	private Selector writeSelector;
+	private long lastActivityTime = System.currentTimeMillis();
+	/** Set by the thread writing the events, read by the server thread. */
+	private volatile boolean eventStream = false;
+	private volatile boolean closed = false;
+
+	VpvConnection(SocketChannel channel) {
+		this.channel = channel;
+	}
+
+	SocketChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Reads available bytes from the channel.
+	 *
+	 * @return the number of bytes read, {@code -1} if the channel is closed
+	 * by the client or the request head is too long
+	 */
+	int read() throws IOException {
+		if (!input.hasRemaining()) {
+			if (input.capacity() >= MAX_REQUEST_HEAD_SIZE) {
+				return -1;
+			}
+			ByteBuffer larger = ByteBuffer.allocate(input.capacity() * 2);
+			input.flip();
+			larger.put(input);
+			input = larger;
+		}
+		int read = channel.read(input);
+		if (read > 0) {
+			lastActivityTime = System.currentTimeMillis();
+		}
+		return read;
+	}
+
+	/**
+	 * Checks if a complete request head has been received.
+	 */
+	boolean hasRequest() {
+		return findHeadEnd() >= 0;
+	}
+
+	/**
+	 * Removes the next complete request from the received bytes.
+	 *
+	 * @return the request or {@code null} if no complete request has been received
+	 */
+	Request nextRequest() {
+		int headEnd = findHeadEnd();
+		if (headEnd < 0) {
+			return null;
+		}
+		String head;
+		try {
+			head = new String(input.array(), 0, headEnd, VpvSocketProcessor.UTF_8);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		input.flip();
+		input.position(headEnd);
+		input.compact();
+		lastActivityTime = System.currentTimeMillis();
+		return new Request(head);
+	}
+
+	/**
+	 * Returns the index after the blank line ending the first request
+	 * in the buffer or {@code -1} if there is no blank line.
+	 */
+	private int findHeadEnd() {
+		byte[] bytes = input.array();
+		int end = input.position();
+		for (int i = 0; i < end; i++) {
+			if (bytes[i] == '\n') {
+				if (i + 1 < end && bytes[i + 1] == '\n') {
+					return i + 2;
+				}
+				if (i + 2 < end && bytes[i + 1] == '\r' && bytes[i + 2] == '\n') {
+					return i + 3;
+				}
+			}
+		}
+		return -1;
+	}
+
+	void write(byte[] bytes) throws IOException {
+		write(bytes, 0, bytes.length);
+	}
+
+	void write(byte[] bytes, int offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+		while (buffer.hasRemaining()) {
+			if (channel.write(buffer) == 0) {
+				awaitWritable();
+			}
+		}
+		lastActivityTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Writes the bytes without waiting for the client to read.
+	 *
+	 * @return {@code false} if the socket buffer is full, the bytes are
+	 * written partly then and the connection cannot be used any more
+	 */
+	boolean writeNow(byte[] bytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			if (channel.write(buffer) == 0) {
+				return false;
+			}
+		}
+		lastActivityTime = System.currentTimeMillis();
+		return true;
+	}
+
+	/**
+	 * Sends the first {@code length} bytes of the file, the bytes are copied
+	 * to the socket by the operating system where it is supported.
+	 *
+	 * @param length the length sent in the {@code Content-Length} header
+	 * @throws IOException if the file has become shorter, the response
+	 * cannot be completed then
+	 */
+	void write(File file, long length) throws IOException {
+		FileInputStream fileInputStream = new FileInputStream(file);
+		try {
+			FileChannel fileChannel = fileInputStream.getChannel();
+			if (fileChannel.size() < length) {
+				throw new IOException("File has been truncated: " + file); //$NON-NLS-1$
+			}
+			long position = 0;
+			while (position < length) {
+				long transferred = fileChannel.transferTo(position, length - position, channel);
+				if (transferred == 0) {
+					awaitWritable();
+				}
+				position += transferred;
+			}
+		} finally {
+			fileInputStream.close();
+		}
+		lastActivityTime = System.currentTimeMillis();
+	}
+
+	private void awaitWritable() throws IOException {
+		if (writeSelector == null) {
+			writeSelector = Selector.open();
+			channel.register(writeSelector, SelectionKey.OP_WRITE);
+		}
+		if (writeSelector.select(WRITE_TIMEOUT) == 0) {
+			throw new IOException("Client does not read the response"); //$NON-NLS-1$
+		}
+		writeSelector.selectedKeys().clear();
+	}
+
+	/**
+	 * Marks the connection as an event stream of the {@link VpvChangeNotifier},
+	 * it is not read for requests and is not closed when idle.
+	 */
+	void setEventStream() {
+		eventStream = true;
+	}
+
+	boolean isEventStream() {
+		return eventStream;
+	}
+
+	long getLastActivityTime() {
+		return lastActivityTime;
+	}
+
+	boolean isClosed() {
+		return closed;
+	}
+
+	void close() {
+		closed = true;
+		try {
+			if (writeSelector != null) {
+				writeSelector.close();
+			}
+			channel.close();
+		} catch (IOException e) {
+			Activator.logError(e);
+		}
+	}
+
+	/**
+	 * Request line and headers of a HTTP request.
+	 */
+	static class Request {
+		private final String initialRequestLine;
+		private final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+		Request(String head) {
+			String[] lines = head.split("\r?\n"); //$NON-NLS-1$
+			initialRequestLine = lines.length > 0 && !lines[0].isEmpty() ? lines[0] : null;
+			for (int i = 1; i < lines.length; i++) {
+				String line = lines[i];
+				int colonIndex = line.indexOf(':');
+				if (colonIndex >= 0) {
+					headers.put(line.substring(0, colonIndex).trim(),
+							line.substring(colonIndex + 1).trim());
+				}
+			}
+		}
+
+		/**
+		 * Returns the request line or {@code null} if it is empty.
+		 */
+		String getInitialRequestLine() {
+			return initialRequestLine;
+		}
+
+		Map<String, String> getHeaders() {
+			return headers;
+		}
+
+		/**
+		 * Checks if the response may be sent with {@code Transfer-Encoding: chunked},
+		 * HTTP/1.0 clients do not support it.
+		 */
+		boolean isChunkedEncodingSupported() {
+			return initialRequestLine != null && !initialRequestLine.endsWith("HTTP/1.0"); //$NON-NLS-1$
+		}
+
+		/**
+		 * Checks if the client wants to keep the connection open
+		 * after the response.
+		 */
+		boolean isKeepAlive() {
+			String connection = headers.get(VpvSocketProcessor.CONNECTION);
+			if (initialRequestLine == null || headers.containsKey(VpvSocketProcessor.CONTENT_LENGTH)) {
+				// the request bodies are not read
+				return false;
+			} else if (initialRequestLine.endsWith("HTTP/1.0")) { //$NON-NLS-1$
+				return VpvSocketProcessor.KEEP_ALIVE.equalsIgnoreCase(connection);
+			} else {
+				return !VpvSocketProcessor.CLOSE.equalsIgnoreCase(connection);
+			}
+		}
+	}
+}
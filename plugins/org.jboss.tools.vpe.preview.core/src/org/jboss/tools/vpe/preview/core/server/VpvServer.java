@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013-2014 Red Hat, Inc.
+ * Copyright (c) 2013-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -12,57 +12,229 @@ package org.jboss.tools.vpe.preview.core.server;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.tools.vpe.preview.core.Activator;
 import org.jboss.tools.vpe.preview.core.transform.VpvController;
 
 /**
+ * HTTP server of the visual preview.
+ * <p>
+ * One thread waits on a selector for new connections and for requests on
+ * the idle persistent connections. A connection with a complete request is
+ * processed by a bounded pool of workers, which answer all its pipelined
+ * requests and give the connection back to the selector.
+ * <p>
+ * The event streams of the {@link VpvChangeNotifier} stay registered with
+ * the selector, so the streams of the closed pages are closed at once.
+ *
  * @author Yahor Radtsevich (yradtsevich)
  * @author Ilya Buziuk (ibuziuk)
  */
 public class VpvServer implements Runnable {
 
-	private ServerSocket serverSocket;
+	private static final int WORKERS_COUNT = 8;
+	/** Time after which an idle worker thread is stopped, in seconds. */
+	private static final long WORKER_KEEP_ALIVE_TIME = 60;
+	/** Time after which an idle connection is closed, in milliseconds. */
+	private static final long CONNECTION_IDLE_TIMEOUT = 30000;
+	private static final long SELECT_TIMEOUT = 1000;
+
+	private ServerSocketChannel serverChannel;
+	private Selector selector;
 	private VpvController vpvController;
-	
-	boolean socketIsAboutToBeClosed = false;
-	
+	private final ExecutorService workers;
+	private final VpvChangeNotifier changeNotifier = new VpvChangeNotifier();
+	/** Connections whose requests are answered and which wait for next requests. */
+	private final Queue<VpvConnection> resumedConnections = new ConcurrentLinkedQueue<VpvConnection>();
+
+	volatile boolean socketIsAboutToBeClosed = false;
+
 	public VpvServer(VpvController vpvController) {
 		this.vpvController = vpvController;
-		new Thread(this).start();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(WORKERS_COUNT, WORKERS_COUNT,
+				WORKER_KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new WorkerThreadFactory());
+		executor.allowCoreThreadTimeOut(true);
+		this.workers = executor;
+		try {
+			selector = Selector.open();
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName(HttpConstants.LOCALHOST), 0));
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			Activator.logError(e);
+			return;
+		}
+		Thread thread = new Thread(this, "VPV Server"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
 	}
 
 	@Override
 	public void run() {
 		try {
-			serverSocket = new ServerSocket(0, 0, InetAddress.getByName(HttpConstants.LOCALHOST)); 
-			while (true) {
-				Socket clientSocket = serverSocket.accept();
-				VpvSocketProcessor serverProcessor = new VpvSocketProcessor(clientSocket, vpvController);
-				new Thread(serverProcessor).start();
+			while (!socketIsAboutToBeClosed) {
+				selector.select(SELECT_TIMEOUT);
+				registerResumedConnections();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+					} else if (key.isReadable()) {
+						read(key);
+					}
+				}
+				closeIdleConnections();
 			}
-		} catch (SocketException e) {
+		} catch (ClosedSelectorException e) {
+			// the server is stopped
+		} catch (IOException e) {
 			if (!socketIsAboutToBeClosed) {
 				Activator.logError(e);
 			}
+		} finally {
+			closeAll();
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			channel.register(selector, SelectionKey.OP_READ, new VpvConnection(channel));
+		}
+	}
+
+	private void read(SelectionKey key) {
+		VpvConnection connection = (VpvConnection) key.attachment();
+		try {
+			if (connection.read() < 0) {
+				// the page of an event stream is closed or reloaded
+				close(key, connection);
+			} else if (!connection.isEventStream() && connection.hasRequest()) {
+				// the selector does not touch the connection until it is resumed
+				key.interestOps(0);
+				workers.execute(new VpvSocketProcessor(connection, vpvController, this));
+			}
+		} catch (IOException e) {
+			close(key, connection);
+		} catch (RejectedExecutionException e) {
+			close(key, connection);
+		}
+	}
+
+	private void close(SelectionKey key, VpvConnection connection) {
+		key.cancel();
+		connection.close();
+		if (connection.isEventStream()) {
+			changeNotifier.unsubscribe(connection);
+		}
+	}
+
+	/**
+	 * Gives the connection back to the selector to wait for the next requests.
+	 * Called by the workers when all the received requests are answered.
+	 */
+	void resume(VpvConnection connection) {
+		resumedConnections.add(connection);
+		selector.wakeup();
+	}
+
+	private void registerResumedConnections() {
+		VpvConnection connection;
+		while ((connection = resumedConnections.poll()) != null) {
+			SelectionKey key = connection.getChannel().keyFor(selector);
+			if (key != null && key.isValid()) {
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+	}
+
+	private void closeIdleConnections() {
+		long now = System.currentTimeMillis();
+		for (SelectionKey key : selector.keys()) {
+			if (key.isValid() && key.attachment() instanceof VpvConnection
+					&& key.interestOps() == SelectionKey.OP_READ) {
+				VpvConnection connection = (VpvConnection) key.attachment();
+				if (!connection.isEventStream()
+						&& now - connection.getLastActivityTime() > CONNECTION_IDLE_TIMEOUT) {
+					key.cancel();
+					connection.close();
+				}
+			}
+		}
+	}
+
+	private void closeAll() {
+		changeNotifier.closeAll();
+		try {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof VpvConnection) {
+					((VpvConnection) key.attachment()).close();
+				}
+			}
+			selector.close();
+		} catch (ClosedSelectorException e) {
+			// already closed
 		} catch (IOException e) {
 			Activator.logError(e);
 		}
 	}
-	
+
 	public void stop() {
 		try {
 			socketIsAboutToBeClosed = true;
-			serverSocket.close();
+			workers.shutdownNow();
+			if (serverChannel != null) {
+				serverChannel.close();
+			}
+			if (selector != null) {
+				selector.wakeup();
+			}
 		} catch (IOException e) {
 			Activator.logError(e);
 		}
 	}
-	
+
 	public int getPort() {
-		return serverSocket.getLocalPort();
+		return serverChannel.socket().getLocalPort();
+	}
+
+	public VpvChangeNotifier getChangeNotifier() {
+		return changeNotifier;
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "VPV Server Worker " + count.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013-2014 Red Hat, Inc.
+ * Copyright (c) 2013-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -10,26 +10,51 @@
  ******************************************************************************/
 package org.jboss.tools.vpe.preview.core.server;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
-import java.net.Socket;
+import java.io.Writer;
 import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
 
 import org.jboss.tools.vpe.preview.core.Activator;
 import org.jboss.tools.vpe.preview.core.transform.ResourceAcceptor;
 import org.jboss.tools.vpe.preview.core.transform.VpvController;
+import org.jboss.tools.vpe.preview.core.transform.VpvHtmlSerializer;
+import org.w3c.dom.Document;
 
 /**
+ * Answers the requests received by a connection of the {@link VpvServer}.
+ * The connection is kept open and given back to the server unless
+ * the client asks to close it.
+ * <p>
+ * The responses carry strong entity tags, the MD5 digest of the texts
+ * and the size with the modification time of the files, files also
+ * carry {@code Last-Modified}. Conditional requests for unchanged
+ * resources are answered by {@code 304 Not Modified}.
+ * <p>
+ * The generated pages are sent as texts, with their tags, unless they
+ * are larger than {@link #MAX_BUFFERED_PAGE_SIZE}. A larger page is
+ * written to the connection while it is serialized, with
+ * {@code Transfer-Encoding: chunked}, so it carries no validators.
+ * HTTP/1.0 clients get all the pages as texts.
+ * <p>
+ * A request of {@link HttpConstants#EVENTS_PATH} turns the connection
+ * into an event stream of the {@link VpvChangeNotifier}.
+ * 
  * @author Yahor Radtsevich (yradtsevich)
  * @author Ilya Buziuk (ibuziuk)
  */
@@ -38,124 +63,233 @@ public class VpvSocketProcessor implements Runnable {
     public static final String INITIAL_REQUEST_LINE = "Initial request line"; //$NON-NLS-1$
     public static final String REFERER = "Referer"; //$NON-NLS-1$
     public static final String IF_NONE_MATCH = "If-None-Match"; //$NON-NLS-1$
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since"; //$NON-NLS-1$
     public static final String HOST = "Host"; //$NON-NLS-1$
+    public static final String CONNECTION = "Connection"; //$NON-NLS-1$
+    public static final String CONTENT_LENGTH = "Content-Length"; //$NON-NLS-1$
+    public static final String KEEP_ALIVE = "keep-alive"; //$NON-NLS-1$
+    public static final String CLOSE = "close"; //$NON-NLS-1$
     public static final String UTF_8 = "UTF-8";  //$NON-NLS-1$
+    /** Size of the generated pages collected to compute their tags, in bytes. */
+    static final int MAX_BUFFERED_PAGE_SIZE = 128 * 1024;
 
-	private Socket clientSocket;
+	private VpvConnection connection;
 	private VpvController vpvController;
+	private VpvServer server;
 
-
-	public VpvSocketProcessor(Socket clientSocket, VpvController vpvController) {
-		this.clientSocket = clientSocket;
+	VpvSocketProcessor(VpvConnection connection, VpvController vpvController, VpvServer server) {
+		this.connection = connection;
 		this.vpvController = vpvController;
+		this.server = server;
 	}
 
 	@Override
 	public void run() {
-		try {	
-			BufferedReader inputFromClient = new BufferedReader(new InputStreamReader(clientSocket.getInputStream(), UTF_8));
-			DataOutputStream outputToClient = new DataOutputStream(clientSocket.getOutputStream());
-			
-			String initialContextLine = getInitialRequestLine(inputFromClient);
-			if (initialContextLine != null) {
-				Map<String, String> requestHeader = getRequestHeader(inputFromClient);				
-			
-				if (requestHeader.isEmpty()) {
-				    processNotFound(outputToClient);	    
-				    return;
+		try {
+			VpvConnection.Request request;
+			while ((request = connection.nextRequest()) != null) {
+				boolean keepAlive = request.isKeepAlive();
+				boolean chunkedEncoding = request.isChunkedEncodingSupported();
+				String initialContextLine = request.getInitialRequestLine();
+				Map<String, String> requestHeader = request.getHeaders();
+				if (initialContextLine == null || requestHeader.isEmpty()) {
+					processNotFound(keepAlive);
+				} else if (processRequest(initialContextLine, requestHeader, keepAlive, chunkedEncoding)) {
+					// the selector watches the event stream for the page to be closed
+					server.resume(connection);
+					return;
+				}
+				if (!keepAlive) {
+					connection.close();
+					return;
 				}
-				
-				processRequest(initialContextLine, requestHeader, outputToClient, inputFromClient);
 			}
+			server.resume(connection);
 		} catch (IOException e) {
+			//Reporting errors disabled. See JBIDE-17705
+			connection.close();
+		} catch (RuntimeException e) {
 			Activator.logError(e);
+			connection.close();
 		}
 	}
 
-	private void processRequest(String initialRequestLine, final Map<String, String> requestHeaders, final DataOutputStream outputToClient, final BufferedReader inputFromClient) {
+	/**
+	 * @return {@code true} if the connection has become an event stream
+	 * of the {@link VpvChangeNotifier}
+	 */
+	private boolean processRequest(String initialRequestLine, final Map<String, String> requestHeaders,
+			final boolean keepAlive, final boolean chunkedEncoding) throws IOException {
 		String httpRequestString = getHttpRequestString(initialRequestLine);
 		Map<String, String> queryParametersMap = parseUrlParameters(httpRequestString);
 
 		String path = getPath(httpRequestString);
+		Integer viewId = getViewId(queryParametersMap);
+		if (HttpConstants.EVENTS_PATH.equals(path) && viewId != null) {
+			server.getChangeNotifier().subscribe(viewId, connection);
+			return true;
+		}
 		String webrootPath = getWebrootPath(queryParametersMap, requestHeaders);
 		String fullPath = webrootPath + path;
-		Integer viewId = getViewId(queryParametersMap);
-		vpvController.getResource(fullPath, viewId, new ResourceAcceptor() {
+		final IOException[] sendError = new IOException[1];
+		ResourceAcceptor acceptor = new ResourceAcceptor() {
+			/** Only the first answer is sent, the connection is reused. */
+			private boolean answered = false;
 
             @Override
             public void acceptText(String text, String mimeType) {
-            	String etag = formEtagForText();
-                String responceHeader = getOkResponceHeader(mimeType,  etag);
-                sendOkResponse(responceHeader, outputToClient, text);
+            	if (answered) {
+            		return;
+            	}
+            	answered = true;
+				try {
+					sendText(text.getBytes(UTF_8), mimeType);
+				} catch (IOException e) {
+					sendError[0] = e;
+				}
             }
 
 			@Override
-			public void acceptFile(File file, String mimeType) {
-				String okHeader = getOkResponceHeader(mimeType, null);
-				sendOkResponse(okHeader, outputToClient, file);
+			public void acceptDocument(Document document, String mimeType) {
+				if (answered) {
+					return;
+				}
+				answered = true;
+				try {
+					PageOutputStream content = new PageOutputStream(mimeType, keepAlive,
+							chunkedEncoding ? MAX_BUFFERED_PAGE_SIZE : Integer.MAX_VALUE);
+					Writer writer = new OutputStreamWriter(content, UTF_8);
+					VpvHtmlSerializer.writePage(document, writer);
+					// writes the last chunk of a streamed page, the connection stays open
+					writer.close();
+					if (!content.isStreamed()) {
+						sendText(content.toByteArray(), mimeType);
+					}
+				} catch (IOException e) {
+					sendError[0] = e;
+				}
 			}
 
-
-			@Override
-			public void acceptError() {
-				 processNotFound(outputToClient);	   
-			}
-			
-			
-			private String formEtagForText() {
-				return String.valueOf(new Date().getTime());
+			private void sendText(byte[] content, String mimeType) throws IOException {
+				String etag = formEtagForText(content);
+				if (isNotModified(requestHeaders, etag, 0)) {
+					connection.write(getNotModifiedResponse(etag, 0, keepAlive).getBytes(UTF_8));
+				} else {
+					String responceHeader = getOkResponceHeader(mimeType, etag, 0, content.length, keepAlive);
+					connection.write(responceHeader.getBytes(UTF_8));
+					connection.write(content);
+				}
 			}
-			
 
-			private void sendOkResponse(String header, DataOutputStream outputToclient, File file) {
+			@Override
+			public void acceptFile(File file, String mimeType) {
+				if (answered) {
+					return;
+				}
+				answered = true;
 				try {
-					outputToClient.write(header.getBytes(UTF_8));
-					sendFile(file, outputToClient);
-				} catch (IOException e) {
-					//Reporting errors disabled. See JBIDE-17705 
-				} finally {
-					try {
-						outputToClient.close();
-						inputFromClient.close();
-						clientSocket.close();
-					} catch (IOException e) {
-						Activator.logError(e);
+					long lastModified = file.lastModified();
+					long length = file.length();
+					String etag = formEtagForFile(length, lastModified);
+					if (isNotModified(requestHeaders, etag, lastModified)) {
+						connection.write(getNotModifiedResponse(etag, lastModified, keepAlive).getBytes(UTF_8));
+					} else {
+						String okHeader = getOkResponceHeader(mimeType, etag, lastModified, length, keepAlive);
+						connection.write(okHeader.getBytes(UTF_8));
+						connection.write(file, length);
 					}
+				} catch (IOException e) {
+					sendError[0] = e;
 				}
 			}
-			
-			private void sendOkResponse(String header, DataOutputStream outputToclient, String text) {
+
+			@Override
+			public void acceptError() {
+				if (answered) {
+					return;
+				}
+				answered = true;
 				try {
-					outputToClient.write(header.getBytes(UTF_8));
-					outputToClient.write(text.getBytes(UTF_8));
+					processNotFound(keepAlive);
 				} catch (IOException e) {
-					//Reporting errors disabled. See JBIDE-17705
-				} finally {
-					try {
-						outputToClient.close();
-						inputFromClient.close();
-						clientSocket.close();
-					} catch (IOException e) {
-						Activator.logError(e);
-					}
+					sendError[0] = e;
 				}
 			}
-        });
+		};
+		vpvController.getResource(fullPath, viewId, acceptor);
+		if (sendError[0] != null) {
+			throw sendError[0];
+		}
+		return false;
     }
 	
-	private void processNotFound(DataOutputStream outputToClient) {
-		String notFoundHeader = getNotFoundHeader();
+	private void processNotFound(boolean keepAlive) throws IOException {
+		connection.write(getNotFoundResponse(keepAlive).getBytes(UTF_8));
+	}
+
+	/**
+	 * The generated page depends not only on its source document but also
+	 * on the included files, the resource references, etc., so the tag
+	 * is computed from the content.
+	 */
+	private static String formEtagForText(byte[] content) {
 		try {
-			outputToClient.write(notFoundHeader.getBytes(UTF_8));
-		} catch (IOException e) {
-			//Reporting errors disabled. See JBIDE-17705
-		} finally {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(content); //$NON-NLS-1$
+			StringBuilder etag = new StringBuilder(digest.length * 2 + 2);
+			etag.append('"');
+			for (byte b : digest) {
+				etag.append(Character.forDigit((b >> 4) & 0xF, 16));
+				etag.append(Character.forDigit(b & 0xF, 16));
+			}
+			return etag.append('"').toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String formEtagForFile(long length, long lastModified) {
+		return '"' + Long.toHexString(length) + '-' + Long.toHexString(lastModified) + '"';
+	}
+
+	/**
+	 * Checks the conditional headers of the request. {@code If-Modified-Since}
+	 * is evaluated only if there is no {@code If-None-Match}.
+	 *
+	 * @param lastModified modification time of the resource or {@code 0} if unknown
+	 */
+	private static boolean isNotModified(Map<String, String> requestHeaders, String eTag, long lastModified) {
+		String ifNoneMatch = requestHeaders.get(IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			for (String tag : ifNoneMatch.split(",")) { //$NON-NLS-1$
+				tag = tag.trim();
+				if (tag.startsWith("W/")) { //$NON-NLS-1$
+					// the weak comparison is used for GET requests
+					tag = tag.substring(2);
+				}
+				if ("*".equals(tag) || tag.equals(eTag)) { //$NON-NLS-1$
+					return true;
+				}
+			}
+			return false;
+		}
+
+		String ifModifiedSince = requestHeaders.get(IF_MODIFIED_SINCE);
+		if (ifModifiedSince != null && lastModified > 0) {
 			try {
-				outputToClient.close();
-			} catch (IOException e) {
-				Activator.logError(e);
+				Date since = createHttpDateFormat().parse(ifModifiedSince);
+				// HTTP dates have a precision of one second
+				return lastModified / 1000 <= since.getTime() / 1000;
+			} catch (ParseException e) {
+				// an invalid date is ignored
 			}
 		}
+		return false;
+	}
+
+	private static DateFormat createHttpDateFormat() {
+		DateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US); //$NON-NLS-1$
+		format.setTimeZone(TimeZone.getTimeZone("GMT")); //$NON-NLS-1$
+		return format;
 	}
 
 	private Map<String, String> parseUrlParameters(String urlString) {
@@ -229,93 +363,124 @@ public class VpvSocketProcessor implements Runnable {
 		return null;
 	}
 
-	private String getInitialRequestLine(BufferedReader inputFromClient) {
-		String line = null;
-		try {
-			line = inputFromClient.readLine();
-		} catch (IOException e) {
-			Activator.logError(e);
-		}
-		
-		if (line == null || line.isEmpty()) {
-			return null;
-		} else {
-			return line;
+	private String getOkResponceHeader(String mimeType, String eTag, long lastModified, long contentLength,
+			boolean keepAlive) {
+		String responceHeader = "HTTP/1.1 200 OK\r\n" + //$NON-NLS-1$
+				"Server: VPV server" +"\r\n"+ //$NON-NLS-1$ //$NON-NLS-2$
+				"Content-Type: " + mimeType + "; charset=UTF-8\r\n" + //$NON-NLS-1$ //$NON-NLS-2$
+				"Content-Length: " + contentLength + "\r\n" + //$NON-NLS-1$ //$NON-NLS-2$
+				getValidatorHeaders(eTag, lastModified) +
+				getConnectionHeader(keepAlive) + "\r\n"; //$NON-NLS-1$
+		return responceHeader;
+	}
+
+	private String getChunkedResponceHeader(String mimeType, boolean keepAlive) {
+		String responceHeader = "HTTP/1.1 200 OK\r\n" + //$NON-NLS-1$
+				"Server: VPV server" +"\r\n"+ //$NON-NLS-1$ //$NON-NLS-2$
+				"Content-Type: " + mimeType + "; charset=UTF-8\r\n" + //$NON-NLS-1$ //$NON-NLS-2$
+				"Transfer-Encoding: chunked\r\n" + //$NON-NLS-1$
+				"Cache-Control: no-cache\r\n" + //$NON-NLS-1$
+				getConnectionHeader(keepAlive) + "\r\n"; //$NON-NLS-1$
+		return responceHeader;
+	}
+
+	private String getNotModifiedResponse(String eTag, long lastModified, boolean keepAlive) {
+		String responce = "HTTP/1.1 304 Not Modified\r\n" + //$NON-NLS-1$
+				"Server: VPV server" +"\r\n"+ //$NON-NLS-1$ //$NON-NLS-2$
+				getValidatorHeaders(eTag, lastModified) +
+				getConnectionHeader(keepAlive) + "\r\n"; //$NON-NLS-1$
+		return responce;
+	}
+
+	/**
+	 * The browser has to revalidate the resources on each refresh
+	 * of the preview, the unchanged ones are not sent again.
+	 */
+	private String getValidatorHeaders(String eTag, long lastModified) {
+		String headers = "Cache-Control: max-age=0\r\n" +  //$NON-NLS-1$
+				"ETag: " + eTag + "\r\n"; //$NON-NLS-1$//$NON-NLS-2$
+		if (lastModified > 0) {
+			headers += "Last-Modified: " + createHttpDateFormat().format(new Date(lastModified)) + "\r\n"; //$NON-NLS-1$ //$NON-NLS-2$
 		}
+		return headers;
 	}
 	
-	private Map<String, String> getRequestHeader(BufferedReader inputFromClient) {
-		Map<String, String> requestHeaders = new HashMap<String, String>();
-		try {
-			String line;
-			while ((line = inputFromClient.readLine()) != null && !line.isEmpty()) {
-				int colonIndex = line.indexOf(':');
-				if (colonIndex >= 0) {
-					String key = line.substring(0, colonIndex).trim();
-					String value = null;
-					if (colonIndex < line.length()) {
-						value = line.substring(colonIndex + 1).trim();
-					}
-					requestHeaders.put(key, value);
-				}
+	private String getNotFoundResponse(boolean keepAlive) {
+		String body = "<!DOCTYPE HTML>" + //$NON-NLS-1$
+				"<h1>404 Not Found</h1>"; //$NON-NLS-1$
+		String responce = "HTTP/1.1 404 Not Found\r\n" + //$NON-NLS-1$
+				"Content-Type: text/html; charset=UTF-8\r\n" + //$NON-NLS-1$
+				"Content-Length: " + body.length() + "\r\n" + //$NON-NLS-1$ //$NON-NLS-2$
+				getConnectionHeader(keepAlive) + "\r\n" + //$NON-NLS-1$
+				body;
+		return responce;
+	}
+
+	private String getConnectionHeader(boolean keepAlive) {
+		return CONNECTION + ": " + (keepAlive ? KEEP_ALIVE : CLOSE) + "\r\n"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Collects a generated page to be sent as a text. When the page grows
+	 * over the limit, the chunked response is started with the collected
+	 * bytes and the rest of the page is streamed.
+	 */
+	private class PageOutputStream extends OutputStream {
+		private final String mimeType;
+		private final boolean keepAlive;
+		private final int maxBufferedSize;
+		private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		/** {@code null} while the page is collected. */
+		private ChunkedOutputStream chunkedStream;
+
+		PageOutputStream(String mimeType, boolean keepAlive, int maxBufferedSize) {
+			this.mimeType = mimeType;
+			this.keepAlive = keepAlive;
+			this.maxBufferedSize = maxBufferedSize;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (chunkedStream != null) {
+				chunkedStream.write(b);
+			} else {
+				buffer.write(b);
+				streamIfLarge();
 			}
-		} catch (IOException e) {
-			Activator.logError(e);
 		}
 
-		return requestHeaders;
-	}
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			if (chunkedStream != null) {
+				chunkedStream.write(bytes, offset, length);
+			} else {
+				buffer.write(bytes, offset, length);
+				streamIfLarge();
+			}
+		}
 
-    private void sendFile(File file, DataOutputStream outputToClient) {
-        FileInputStream fileInputStream = null;
-        try {
-            fileInputStream = new FileInputStream(file);
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = fileInputStream.read(buffer)) >= 0) {
-                outputToClient.write(buffer, 0, bytesRead);
-            }
-        } catch (FileNotFoundException e) {
-            Activator.logError(e);
-        } catch (IOException e) {
-        	//Reporting errors disabled. See JBIDE-17705
-        } finally {
-            try {
-            	if (fileInputStream != null) {
-            		fileInputStream.close();
-            	}
-            } catch (IOException e) {
-                Activator.logError(e);
-            }
-        }
-    }
+		@Override
+		public void close() throws IOException {
+			if (chunkedStream != null) {
+				chunkedStream.close();
+			}
+		}
 
-    public Socket getClientSocket() {
-        return clientSocket;
-    }
+		boolean isStreamed() {
+			return chunkedStream != null;
+		}
 
-    public void setClientSocket(Socket clientSocket) {
-        this.clientSocket = clientSocket;
-    }
-    	
+		byte[] toByteArray() {
+			return buffer.toByteArray();
+		}
 
-	private String getOkResponceHeader(String mimeType, String eTag) {
-		String responceHeader = "HTTP/1.1 200 OK\r\n" + //$NON-NLS-1$
-				"Server: VPV server" +"\r\n"+ //$NON-NLS-1$ //$NON-NLS-2$
-				"Content-Type: " + mimeType + "; charset=UTF-8\r\n" + //$NON-NLS-1$ //$NON-NLS-2$
-				"Cache-Control: max-age=0\r\n" +  //$NON-NLS-1$
-				"Etag: " + eTag + "\r\n" +  //$NON-NLS-1$//$NON-NLS-2$
-				"Connection: close\r\n\r\n"; //$NON-NLS-1$
-		return responceHeader;
+		private void streamIfLarge() throws IOException {
+			if (buffer.size() > maxBufferedSize) {
+				connection.write(getChunkedResponceHeader(mimeType, keepAlive).getBytes(UTF_8));
+				chunkedStream = new ChunkedOutputStream(connection);
+				buffer.writeTo(chunkedStream);
+				buffer = null;
+			}
+		}
 	}
-	
-	private String getNotFoundHeader() {
-        String responceHeader = "HTTP/1.1 404 Not Found\r\n" + //$NON-NLS-1$
-                "Content-Type: text/html; charset=UTF-8\r\n" + //$NON-NLS-1$
-                "Connection: close\r\n\r\n" + //$NON-NLS-1$
-                "<!DOCTYPE HTML>" + //$NON-NLS-1$
-                "<h1>404 Not Found<//h1>"; //$NON-NLS-1$
-        return responceHeader;
-	} 
-	
 }
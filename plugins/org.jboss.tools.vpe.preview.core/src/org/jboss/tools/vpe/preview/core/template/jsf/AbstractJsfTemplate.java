@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2013-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.core.template.jsf;
+
+import org.jboss.tools.vpe.preview.core.template.VpeTemplate;
+import org.jboss.tools.vpe.preview.core.template.util.HTML;
+import org.jboss.tools.vpe.preview.core.template.util.VisualDomUtil;
+import org.w3c.dom.Element;
+
+/**
+ * Base of the preview templates of the JSF HTML tags. The templates
+ * are stateless, one instance is shared by all the pages.
+ */
+public abstract class AbstractJsfTemplate implements VpeTemplate {
+	protected static final String ATTR_STYLE_CLASS = "styleClass"; //$NON-NLS-1$
+
+	/**
+	 * Copies the attributes rendered by all the JSF HTML components.
+	 */
+	protected static void copyCommonAttributes(Element sourceElement, Element visualElement) {
+		VisualDomUtil.copyAttribute(sourceElement, HTML.ATTR_ID, visualElement, HTML.ATTR_ID);
+		VisualDomUtil.copyAttribute(sourceElement, ATTR_STYLE_CLASS, visualElement, HTML.ATTR_CLASS);
+		VisualDomUtil.copyAttribute(sourceElement, HTML.ATTR_STYLE, visualElement, HTML.ATTR_STYLE);
+		VisualDomUtil.copyAttribute(sourceElement, HTML.ATTR_TITLE, visualElement, HTML.ATTR_TITLE);
+	}
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2013-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.core.template.jsf;
+
+import org.jboss.tools.vpe.preview.core.template.VpeCreationData;
+import org.jboss.tools.vpe.preview.core.template.util.HTML;
+import org.jboss.tools.vpe.preview.core.template.util.VisualDomUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Template of {@code h:inputTextarea}, the value is shown as the text of the area.
+ */
+public class JsfInputTextAreaTemplate extends AbstractJsfTemplate {
+
+	@Override
+	public VpeCreationData create(Node sourceNode, Document visualDocument) {
+		Element sourceElement = (Element) sourceNode;
+		Element textArea = visualDocument.createElement(HTML.TAG_TEXTAREA);
+		copyCommonAttributes(sourceElement, textArea);
+		VisualDomUtil.copyAttribute(sourceElement, HTML.ATTR_ROWS, textArea, HTML.ATTR_ROWS);
+		VisualDomUtil.copyAttribute(sourceElement, HTML.ATTR_COLS, textArea, HTML.ATTR_COLS);
+		VisualDomUtil.copyAttribute(sourceElement, HTML.ATTR_DISABLED, textArea, HTML.ATTR_DISABLED);
+		VisualDomUtil.copyAttribute(sourceElement, HTML.ATTR_READONLY, textArea, HTML.ATTR_READONLY);
+		textArea.appendChild(visualDocument.createTextNode(sourceElement.getAttribute(HTML.ATTR_VALUE)));
+		return new VpeCreationData(textArea, true);
+	}
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2013-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.core.template.jsf;
+
+import org.jboss.tools.vpe.preview.core.template.VpeCreationData;
+import org.jboss.tools.vpe.preview.core.template.util.HTML;
+import org.jboss.tools.vpe.preview.core.template.util.VisualDomUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Template of {@code h:inputText}, the children like validators are not shown.
+ */
+public class JsfInputTextTemplate extends AbstractJsfTemplate {
+
+	@Override
+	public VpeCreationData create(Node sourceNode, Document visualDocument) {
+		Element sourceElement = (Element) sourceNode;
+		Element input = visualDocument.createElement(HTML.TAG_INPUT);
+		input.setAttribute(HTML.ATTR_TYPE, "text"); //$NON-NLS-1$
+		copyCommonAttributes(sourceElement, input);
+		VisualDomUtil.copyAttribute(sourceElement, HTML.ATTR_VALUE, input, HTML.ATTR_VALUE);
+		VisualDomUtil.copyAttribute(sourceElement, HTML.ATTR_SIZE, input, HTML.ATTR_SIZE);
+		VisualDomUtil.copyAttribute(sourceElement, HTML.ATTR_DISABLED, input, HTML.ATTR_DISABLED);
+		VisualDomUtil.copyAttribute(sourceElement, HTML.ATTR_READONLY, input, HTML.ATTR_READONLY);
+		return new VpeCreationData(input, true);
+	}
+}
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2013-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.core.template.jsf;
+
+import org.jboss.tools.vpe.preview.core.template.VpeCreationData;
+import org.jboss.tools.vpe.preview.core.template.util.HTML;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Template of {@code h:outputText}, the value is shown as text
+ * even if it is not escaped by the component.
+ */
+public class JsfOutputTextTemplate extends AbstractJsfTemplate {
+
+	@Override
+	public VpeCreationData create(Node sourceNode, Document visualDocument) {
+		Element sourceElement = (Element) sourceNode;
+		Element span = visualDocument.createElement(HTML.TAG_SPAN);
+		copyCommonAttributes(sourceElement, span);
+		span.appendChild(visualDocument.createTextNode(sourceElement.getAttribute(HTML.ATTR_VALUE)));
+		return new VpeCreationData(span, true);
+	}
+}
@@ -46,15 +46,18 @@ public class DomUtil {
 		return buffer.toString();
 	}
 
-	private static Transformer transformer;
+	/** Transformers are not thread-safe, the pages are serialized by several server threads. */
+	private static final ThreadLocal<Transformer> transformer = new ThreadLocal<Transformer>();
 
 	public static Transformer getTransformer() throws TransformerConfigurationException {
-		if (transformer == null) {
+		Transformer threadTransformer = transformer.get();
+		if (threadTransformer == null) {
 			TransformerFactory transFactory = TransformerFactory.newInstance();
-			transformer = transFactory.newTransformer();
+			threadTransformer = transFactory.newTransformer();
+			transformer.set(threadTransformer);
 		}
 
-		return transformer;
+		return threadTransformer;
 	}
 
 }
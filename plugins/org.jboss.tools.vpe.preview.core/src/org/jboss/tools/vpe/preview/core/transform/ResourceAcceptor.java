@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013-2014 Red Hat, Inc.
+ * Copyright (c) 2013-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -12,6 +12,8 @@ package org.jboss.tools.vpe.preview.core.transform;
 
 import java.io.File;
 
+import org.w3c.dom.Document;
+
 /**
  * @author Yahor Radtsevich (yradtsevich)
  * @author Ilya Buziuk (ibuziuk)
@@ -20,6 +22,12 @@ public interface ResourceAcceptor {
 
 	void acceptText(String text, String mimeType);
 
+	/**
+	 * Accepts a generated page, the document is written by
+	 * {@link VpvHtmlSerializer#writePage} before the method returns.
+	 */
+	void acceptDocument(Document document, String mimeType);
+
 	void acceptFile(File file, String mimeType);
 
 	void acceptError();
@@ -13,6 +13,11 @@ package org.jboss.tools.vpe.preview.core.transform;
 import org.w3c.dom.Node;
 
 /**
+ * Replacement of the visual element with the id {@link #getOldParentId()}
+ * in the page by {@link #getNewParentNode()}, or its removal if the new
+ * node is {@code null}.
+ *
+ * @see VpvDomBuilder#rebuildSubtree(VpvVisualModel, Node)
  * @author Yahor Radtsevich (yradtsevich)
  * @author Ilya Buziuk (ibuziuk)
  */
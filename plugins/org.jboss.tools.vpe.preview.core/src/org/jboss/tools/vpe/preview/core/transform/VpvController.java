@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013-2015 Red Hat, Inc.
+ * Copyright (c) 2013-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -11,15 +11,15 @@
 package org.jboss.tools.vpe.preview.core.transform;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import javax.activation.MimetypesFileTypeMap;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
 
 import org.eclipse.core.filebuffers.FileBuffers;
 import org.eclipse.core.filebuffers.ITextFileBuffer;
 import org.eclipse.core.filebuffers.ITextFileBufferManager;
+import org.eclipse.core.filebuffers.LocationKind;
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.resources.IFile;
@@ -35,9 +35,20 @@ import org.eclipse.wst.sse.core.internal.provisional.IStructuredModel;
 import org.eclipse.wst.sse.core.internal.provisional.text.IStructuredDocument;
 import org.eclipse.wst.xml.core.internal.provisional.document.IDOMModel;
 import org.jboss.tools.vpe.preview.core.Activator;
+import org.jboss.tools.vpe.preview.core.server.VpvChangeNotifier;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 /**
+ * Answers the requests of the {@link org.jboss.tools.vpe.preview.core.server.VpvServer}.
+ * <p>
+ * The methods are called from several server threads at once. Files are
+ * sent without any locking, a page is transformed and sent by one thread
+ * at a time, different pages are transformed in parallel.
+ * <p>
+ * The files changed in the editors are sent with the unsaved text, so the
+ * pages show the changes of their style sheets and scripts without saving.
+ *
  * @author Yahor Radtsevich (yradtsevich)
  * @author Ilya Buziuk (ibuziuk)
  */
@@ -45,52 +56,36 @@ import org.w3c.dom.Document;
 public class VpvController {
 	private VpvDomBuilder domBuilder;
 	private VpvVisualModelHolderRegistry visualModelHolderRegistry;
+	/** Locks of the transformed pages, by the full path of the file. */
+	private final ConcurrentMap<IPath, Object> pageLocks = new ConcurrentHashMap<IPath, Object>();
 
 	public VpvController(VpvDomBuilder domBuilder, VpvVisualModelHolderRegistry visualModelHolderRegistry) {
 		this.domBuilder = domBuilder;
 		this.visualModelHolderRegistry = visualModelHolderRegistry;
 	}
 
-	public synchronized void getResource(String path, Integer viewId, ResourceAcceptor resourceAcceptor) {
+	public void getResource(String path, Integer viewId, ResourceAcceptor resourceAcceptor) {
 		Path workspacePath = new Path(path);
 		IFile requestedFile = null;
-		VpvVisualModel visualModel = null;
-		IStructuredModel sourceModel = null;
 		try {
 			requestedFile = ResourcesPlugin.getWorkspace().getRoot().getFile(workspacePath);
-			sourceModel = getSourceModel(requestedFile);
-			visualModel = getVisualModel(sourceModel);
 		} catch (IllegalArgumentException e) {
 			// return 404 Not Found for files like /favicon.ico or for files which have one segment
 			resourceAcceptor.acceptError();
-		} catch (Exception e) {
-			Activator.logError(e);
-		} finally {
-			if (sourceModel != null) {
-				sourceModel.releaseFromRead();
-			}
-		}
-
-		VpvVisualModelHolder visualModelHolder = visualModelHolderRegistry.getHolderById(viewId);
-		if (visualModelHolder != null) {
-			visualModelHolder.setVisualModel(visualModel);
+			return;
 		}
 
-		String htmlText = null;
 		// if requested html file has no visual model holder it means that this file is not opened in editor(or external browser)
 		// it may be an included html file, so we should return it as a file, not as a html text
-		if (visualModel != null && visualModelHolder != null) {
-			try {
-				htmlText = DomUtil.nodeToString(visualModel.getVisualDocument());
-			} catch (TransformerException e) {
-				Activator.logError(e);
-			}
+		VpvVisualModelHolder visualModelHolder = visualModelHolderRegistry.getHolderById(viewId);
+		if (visualModelHolder != null && transformPage(requestedFile, viewId, visualModelHolder, resourceAcceptor)) {
+			return;
 		}
 
-		if (htmlText != null) {
-			resourceAcceptor.acceptText("<!DOCTYPE html>\n" + htmlText, "text/html"); // XXX: remove doctype when selection will work in old IE  //$NON-NLS-1$//$NON-NLS-2$
-		} else if (requestedFile != null && requestedFile.exists()) {
-			acceptFile(requestedFile, resourceAcceptor);
+		if (requestedFile != null && requestedFile.exists()) {
+			if (!acceptChangedDocument(requestedFile, resourceAcceptor)) {
+				acceptFile(requestedFile, resourceAcceptor);
+			}
 		} else if (workspacePath.isAbsolute() && workspacePath.toFile().exists()) {
 			acceptFile(workspacePath, resourceAcceptor);
 		} else {
@@ -98,6 +93,80 @@ public class VpvController {
 		}
 	}
 
+	/**
+	 * Builds the visual model of the page, sends it and passes it to the holder.
+	 * A page is transformed by one thread at a time, so the holder gets the
+	 * models in the order they are built. The model is passed to the holder
+	 * after it is sent, the holder may change it afterwards.
+	 *
+	 * @return {@code false} if the page cannot be transformed
+	 */
+	private boolean transformPage(IFile requestedFile, int viewId, VpvVisualModelHolder visualModelHolder,
+			ResourceAcceptor resourceAcceptor) {
+		synchronized (getPageLock(requestedFile.getFullPath())) {
+			VpvVisualModel visualModel = null;
+			IStructuredModel sourceModel = null;
+			try {
+				sourceModel = getSourceModel(requestedFile);
+				visualModel = getVisualModel(sourceModel);
+			} catch (Exception e) {
+				Activator.logError(e);
+			} finally {
+				if (sourceModel != null) {
+					sourceModel.releaseFromRead();
+				}
+			}
+			if (visualModel != null) {
+				addChangeListener(visualModel.getVisualDocument(), viewId);
+				resourceAcceptor.acceptDocument(visualModel.getVisualDocument(), "text/html"); //$NON-NLS-1$
+			}
+			visualModelHolder.setVisualModel(visualModel);
+			return visualModel != null;
+		}
+	}
+
+	private Object getPageLock(IPath path) {
+		Object lock = pageLocks.get(path);
+		if (lock == null) {
+			Object newLock = new Object();
+			lock = pageLocks.putIfAbsent(path, newLock);
+			if (lock == null) {
+				lock = newLock;
+			}
+		}
+		return lock;
+	}
+
+	/**
+	 * Subscribes the page to the changes of its style sheets and scripts.
+	 * The script is not a part of the mapping, so it is not touched by
+	 * the updates of the page.
+	 */
+	private static void addChangeListener(Document visualDocument, int viewId) {
+		Element root = visualDocument.getDocumentElement();
+		if (root != null) {
+			Element script = visualDocument.createElement("script"); //$NON-NLS-1$
+			script.appendChild(visualDocument.createTextNode(VpvChangeNotifier.getListenerScript(viewId)));
+			root.appendChild(script);
+		}
+	}
+
+	/**
+	 * Sends the text of a file changed in an editor.
+	 *
+	 * @return {@code false} if the file has no unsaved changes
+	 */
+	private boolean acceptChangedDocument(IFile requestedFile, ResourceAcceptor resourceAcceptor) {
+		ITextFileBuffer buffer = FileBuffers.getTextFileBufferManager().getTextFileBuffer(
+				requestedFile.getFullPath(), LocationKind.IFILE);
+		IPath location = requestedFile.getLocation();
+		if (buffer == null || !buffer.isDirty() || location == null) {
+			return false;
+		}
+		resourceAcceptor.acceptText(buffer.getDocument().get(), getMimeType(location.toFile()));
+		return true;
+	}
+
 	private void acceptFile(IFile requestedFile, ResourceAcceptor resourceAcceptor) {
 		IPath location = requestedFile.getLocation();
 		if (location != null) {
@@ -151,13 +220,6 @@ public class VpvController {
 	}
 
 	private static String getMimeType(File file) {
-		MimetypesFileTypeMap mimeTypes;
-		try {
-			mimeTypes = new MimetypesFileTypeMap(Activator.getFileUrl("lib/mime.types").openStream()); //$NON-NLS-1$
-			return mimeTypes.getContentType(file);
-		} catch (IOException e) {
-			Activator.logError(e);
-			return "application/octet-stream"; //$NON-NLS-1$
-		}
+		return VpvMimeTypeRegistry.getInstance().getMimeType(file);
 	}
 }
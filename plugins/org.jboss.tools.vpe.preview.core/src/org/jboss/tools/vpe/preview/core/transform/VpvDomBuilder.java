@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013-2014 Red Hat, Inc.
+ * Copyright (c) 2013-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -10,9 +10,20 @@
  ******************************************************************************/
 package org.jboss.tools.vpe.preview.core.transform;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -23,52 +34,130 @@ import org.jboss.tools.vpe.preview.core.mapping.VpeElementData;
 import org.jboss.tools.vpe.preview.core.template.VpeChildrenInfo;
 import org.jboss.tools.vpe.preview.core.template.VpeCreationData;
 import org.jboss.tools.vpe.preview.core.template.VpeTemplate;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 /**
+ * Builds the visual models of the source documents.
+ * <p>
+ * The builder keeps no state between the builds, all the state of a build
+ * is in its {@link VpvVisualModel}. A builder created with a parallelism
+ * greater than one converts the long sibling lists of a page by several
+ * threads. The source DOM is not thread safe, so the calling thread copies
+ * each part of the list into a document of its own, the threads of the
+ * builder convert only these copies, and the calling thread maps the
+ * converted nodes back to the source nodes. The ids are assigned afterwards
+ * by one thread, so they do not depend on the parallelism.
+ *
  * @author Yahor Radtsevich (yradtsevich)
  * @author Ilya Buziuk (ibuziuk)
  */
 public class VpvDomBuilder {
 	public static final String ATTR_VPV_ID = "data-vpvid"; //$NON-NLS-1$
-	private static long markerId = 0;
-	private VpvTemplateProvider templateProvider;
+	/** System property with the number of threads converting a page, one by default. */
+	public static final String PARALLELISM_PROPERTY = "org.jboss.tools.vpe.preview.builderThreads"; //$NON-NLS-1$
+	/** Least number of siblings converted in parallel. */
+	private static final int MIN_PARALLEL_SIBLINGS = 128;
+	/** Parts of a sibling list per thread, so the threads finish at about the same time. */
+	private static final int PARTS_PER_THREAD = 4;
+	/** Time after which an idle thread is stopped, in seconds. */
+	private static final long THREAD_KEEP_ALIVE_TIME = 60;
+
+	private final VpvTemplateProvider templateProvider;
+	private final int parallelism;
+	/** {@code null} if the nodes are converted by the calling thread only. */
+	private final ExecutorService executor;
 
 	public VpvDomBuilder(VpvTemplateProvider templateProvider) {
+		this(templateProvider, 1);
+	}
+
+	/**
+	 * @param parallelism number of threads converting a page, see {@link #PARALLELISM_PROPERTY}
+	 */
+	public VpvDomBuilder(VpvTemplateProvider templateProvider, int parallelism) {
 		this.templateProvider = templateProvider;
+		this.parallelism = parallelism;
+		if (parallelism > 1) {
+			ThreadPoolExecutor threadPool = new ThreadPoolExecutor(parallelism, parallelism,
+					THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new BuilderThreadFactory());
+			threadPool.allowCoreThreadTimeOut(true);
+			this.executor = threadPool;
+		} else {
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * Stops the threads of the builder, the next builds are done by the calling threads.
+	 */
+	public void dispose() {
+		if (executor != null) {
+			executor.shutdown();
+		}
 	}
 
 	public VpvVisualModel buildVisualModel(Document sourceDocument) throws ParserConfigurationException {
 		Document visualDocument = createDocument();
-		Map<Node, Node> sourceVisualMapping = new HashMap<Node, Node>();
+		VpvVisualModel visualModel = new VpvVisualModel(visualDocument);
 		Element documentElement = sourceDocument.getDocumentElement();
 		Node visualRoot = documentElement != null //fix for empty document. No document - no visual representation
-						  ? convertNode(sourceDocument, documentElement, visualDocument, sourceVisualMapping)
+						  ? convertNode(sourceDocument, documentElement, visualModel, executor != null)
 						  : null;
 
 		if (visualRoot != null) {
-			markSubtree(visualRoot);
+			markSubtree(visualRoot, visualModel);
 			visualDocument.appendChild(visualRoot);
 		}
 
-		VpvVisualModel visualModel = new VpvVisualModel(visualDocument, sourceVisualMapping);
 		return visualModel;
 	}
 	
-	private long markSubtree(Node visualParent) {
+	/**
+	 * Rebuilds the visual subtree of the source node in the visual model,
+	 * the new visual nodes get the ids of the old ones or new ids.
+	 *
+	 * @return the mutation to apply to the page or {@code null} if the source node
+	 * has no visual element to replace, the model is not changed then
+	 */
+	public VisualMutation rebuildSubtree(VpvVisualModel visualModel, Node sourceNode) {
+		Node oldVisualNode = visualModel.getSourceVisualMapping().get(sourceNode);
+		if (!(oldVisualNode instanceof Element) || oldVisualNode.getParentNode() == null) {
+			return null;
+		}
+		String oldId = ((Element) oldVisualNode).getAttribute(ATTR_VPV_ID);
+		if (oldId.isEmpty()) {
+			return null;
+		}
+
+		visualModel.unregisterVisualSubtree(oldVisualNode);
+		Node newVisualNode = convertNode(sourceNode.getOwnerDocument(), sourceNode, visualModel, false);
+		if (newVisualNode != null) {
+			markSubtree(newVisualNode, visualModel);
+			oldVisualNode.getParentNode().replaceChild(newVisualNode, oldVisualNode);
+		} else {
+			oldVisualNode.getParentNode().removeChild(oldVisualNode);
+		}
+		return new VisualMutation(Long.parseLong(oldId), newVisualNode);
+	}
+
+	private long markSubtree(Node visualParent, VpvVisualModel visualModel) {
 		if (visualParent.getNodeType() == Node.ELEMENT_NODE) {
 			Element visualParentElement = (Element) visualParent;
 			NodeList children = visualParentElement.getChildNodes();
 			for (int i = 0; i < children.getLength(); i++) {
-				markSubtree(children.item(i));
+				markSubtree(children.item(i), visualModel);
 			}
 			
-			// The outermost element will have the greatest id.
-			// Also this means if a subelement was modified, child element is will be greater.
-			long markerId = getNextMarkerId();
+			// The outermost element will have the greatest id of its subtree.
+			// A rebuilt subtree reuses the least free ids first, so its ids may be less than the ids of its parents.
+			long markerId = visualModel.registerVisualElement(visualParentElement);
 			visualParentElement.setAttribute(ATTR_VPV_ID, Long.toString( markerId ));
 			
 			return markerId;
@@ -79,15 +168,17 @@ public class VpvDomBuilder {
 
 	/**
 	 * Converts a sourceNote to its visual representation
+	 *
+	 * @param parallel {@code true} if the children may be converted by the threads of the builder
 	 */
-	private Node convertNode(Document sourceDocument, Node sourceNode, Document visualDocument,
-			Map<Node, Node> sourceVisualMapping) {
+	private Node convertNode(Document sourceDocument, Node sourceNode, VpvVisualModel visualModel,
+			boolean parallel) {
 		VpeTemplate vpeTemplate = templateProvider.getTemplate(sourceDocument, sourceNode);
-		VpeCreationData creationData = vpeTemplate.create(sourceNode, visualDocument);
+		VpeCreationData creationData = vpeTemplate.create(sourceNode, visualModel.getVisualDocument());
 
 		Node visualNode = creationData.getVisualNode();
 		if (visualNode != null) {
-			sourceVisualMapping.put(sourceNode, visualNode);
+			visualModel.addMapping(sourceNode, visualNode);
 		}
 		
 		VpeElementData elementData = creationData.getElementData();
@@ -96,7 +187,7 @@ public class VpvDomBuilder {
 			if (nodesData != null) {
 				for (NodeData nodeData : nodesData) {
 					if (nodeData.getSourceNode() != null && nodeData.getVisualNode() != null) {
-						sourceVisualMapping.put(nodeData.getSourceNode(), nodeData.getVisualNode());
+						visualModel.addMapping(nodeData.getSourceNode(), nodeData.getVisualNode());
 					}
 				}
 			}
@@ -109,18 +200,21 @@ public class VpvDomBuilder {
 				Element visualParent = childrenInfo.getVisualParent();
 				for (Node sourceChild : sourceChildren) {
 					Node visualChild 
-							= convertNode(sourceDocument, sourceChild, visualDocument, sourceVisualMapping);
+							= convertNode(sourceDocument, sourceChild, visualModel, parallel);
 					if (visualChild != null) {
 						visualParent.appendChild(visualChild);
 					}
 				}
 			}
+		} else if (parallel && visualNode != null && sourceNode.getNodeType() == Node.ELEMENT_NODE
+				&& sourceNode.getChildNodes().getLength() >= MIN_PARALLEL_SIBLINGS) {
+			convertChildrenInParallel(sourceNode, visualNode, visualModel);
 		} else {
 			NodeList sourceChildren = sourceNode.getChildNodes();
 			for (int i = 0; i < sourceChildren.getLength(); i++) {
 				Node sourceChild = sourceChildren.item(i);
 				Node visualChild 
-						= convertNode(sourceDocument, sourceChild, visualDocument, sourceVisualMapping);
+						= convertNode(sourceDocument, sourceChild, visualModel, parallel);
 				if (visualChild != null) {
 					visualNode.appendChild(visualChild);
 				}
@@ -132,14 +226,218 @@ public class VpvDomBuilder {
 		return visualNode;
 	}
 
+	/**
+	 * Splits the children into parts converted by the threads of the builder.
+	 * Each part is copied by the calling thread before it is submitted,
+	 * the threads never read the source document.
+	 */
+	private void convertChildrenInParallel(Node sourceNode, Node visualNode, VpvVisualModel visualModel) {
+		List<Node> sourceChildren = new ArrayList<Node>();
+		for (Node child = sourceNode.getFirstChild(); child != null; child = child.getNextSibling()) {
+			sourceChildren.add(child);
+		}
+		Document visualDocument = visualModel.getVisualDocument();
+		DOMImplementation implementation = visualDocument.getImplementation();
+		int partsCount = Math.min(parallelism * PARTS_PER_THREAD, sourceChildren.size());
+		List<List<Node>> parts = new ArrayList<List<Node>>(partsCount);
+		List<Future<ChildrenConversion>> futures = new ArrayList<Future<ChildrenConversion>>(partsCount);
+		for (int i = 0; i < partsCount; i++) {
+			List<Node> part = sourceChildren.subList(i * sourceChildren.size() / partsCount,
+					(i + 1) * sourceChildren.size() / partsCount);
+			parts.add(part);
+			futures.add(submit(new ChildrenConversion(new SourceSnapshot(implementation, sourceNode, part))));
+		}
+
+		for (int i = 0; i < partsCount; i++) {
+			ChildrenConversion conversion = getResult(futures.get(i), implementation, sourceNode, parts.get(i));
+			for (Node visualChild : conversion.visualChildren) {
+				// the adopted node stays the same object, so the mappings stay valid
+				visualNode.appendChild(visualDocument.adoptNode(visualChild));
+			}
+			for (Map.Entry<Node, Node> mapping : conversion.visualModel.getSourceVisualMapping().entrySet()) {
+				Node originalNode = conversion.snapshot.getOriginal(mapping.getKey());
+				if (originalNode != null) {
+					visualModel.addMapping(originalNode, mapping.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return {@code null} if the builder is disposed
+	 */
+	private Future<ChildrenConversion> submit(ChildrenConversion conversion) {
+		try {
+			return executor.submit(conversion);
+		} catch (RejectedExecutionException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Waits for the conversion of the part. The part is converted by the calling
+	 * thread if the conversion has not been submitted or the thread is interrupted,
+	 * a failure of the conversion is rethrown.
+	 */
+	private ChildrenConversion getResult(Future<ChildrenConversion> future, DOMImplementation implementation,
+			Node sourceParent, List<Node> sourceChildren) {
+		try {
+			if (future != null) {
+				return future.get();
+			}
+		} catch (InterruptedException e) {
+			future.cancel(false);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+		// a new copy, the cancelled conversion may still be reading its own one
+		return new ChildrenConversion(new SourceSnapshot(implementation, sourceParent, sourceChildren)).call();
+	}
+
 	private Document createDocument() throws ParserConfigurationException {
 		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
 		DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
 		Document document = documentBuilder.newDocument();
 		return document;
 	}
-	
-	private static long getNextMarkerId() {
-		return markerId++;
+
+	/**
+	 * Conversion of a copied part of a sibling list into a document of its own.
+	 */
+	private class ChildrenConversion implements Callable<ChildrenConversion> {
+		private final SourceSnapshot snapshot;
+		private VpvVisualModel visualModel;
+		private final List<Node> visualChildren = new ArrayList<Node>();
+
+		ChildrenConversion(SourceSnapshot snapshot) {
+			this.snapshot = snapshot;
+		}
+
+		@Override
+		public ChildrenConversion call() {
+			// documents of the same implementation may adopt the nodes of each other
+			visualModel = new VpvVisualModel(snapshot.document.getImplementation().createDocument(null, null, null));
+			for (Node sourceChild : snapshot.children) {
+				Node visualChild = convertNode(snapshot.document, sourceChild, visualModel, false);
+				if (visualChild != null) {
+					visualChildren.add(visualChild);
+				}
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * Copy of a part of a sibling list under a shallow copy of their parent,
+	 * made by the calling thread. The copies of the nodes and the attributes
+	 * are mapped to the source ones.
+	 */
+	private static class SourceSnapshot {
+		private final Document document;
+		private final List<Node> children = new ArrayList<Node>();
+		private final Map<Node, Node> originals = new IdentityHashMap<Node, Node>();
+
+		SourceSnapshot(DOMImplementation implementation, Node sourceParent, List<Node> sourceChildren) {
+			document = implementation.createDocument(null, null, null);
+			Node parent = copyNode(sourceParent, false);
+			document.appendChild(parent);
+			for (Node sourceChild : sourceChildren) {
+				Node child = copyNode(sourceChild, true);
+				if (child != null) {
+					parent.appendChild(child);
+					children.add(child);
+				}
+			}
+		}
+
+		/**
+		 * @return the source node of the copy or {@code null} if it is not a copy of a source node
+		 */
+		Node getOriginal(Node copy) {
+			return originals.get(copy);
+		}
+
+		/**
+		 * Copies the node by the DOM methods only, the source nodes may belong
+		 * to any implementation.
+		 *
+		 * @return {@code null} if the node is not copied
+		 */
+		private Node copyNode(Node sourceNode, boolean deep) {
+			Node copy;
+			switch (sourceNode.getNodeType()) {
+			case Node.ELEMENT_NODE:
+				copy = copyElement(sourceNode, deep);
+				break;
+			case Node.TEXT_NODE:
+				copy = document.createTextNode(sourceNode.getNodeValue());
+				break;
+			case Node.CDATA_SECTION_NODE:
+				copy = document.createCDATASection(sourceNode.getNodeValue());
+				break;
+			case Node.COMMENT_NODE:
+				copy = document.createComment(sourceNode.getNodeValue());
+				break;
+			case Node.PROCESSING_INSTRUCTION_NODE:
+				copy = document.createProcessingInstruction(sourceNode.getNodeName(), sourceNode.getNodeValue());
+				break;
+			default:
+				return null;
+			}
+			originals.put(copy, sourceNode);
+			return copy;
+		}
+
+		private Element copyElement(Node sourceElement, boolean deep) {
+			String namespaceURI = sourceElement.getNamespaceURI();
+			// the templates are looked up by the namespace URI and the local name
+			Element element = namespaceURI != null
+					? document.createElementNS(namespaceURI, sourceElement.getNodeName())
+					: document.createElement(sourceElement.getNodeName());
+			NamedNodeMap sourceAttributes = sourceElement.getAttributes();
+			for (int i = 0; i < sourceAttributes.getLength(); i++) {
+				Node sourceAttribute = sourceAttributes.item(i);
+				try {
+					if (sourceAttribute.getNamespaceURI() != null) {
+						element.setAttributeNS(sourceAttribute.getNamespaceURI(), sourceAttribute.getNodeName(),
+								sourceAttribute.getNodeValue());
+					} else {
+						element.setAttribute(sourceAttribute.getNodeName(), sourceAttribute.getNodeValue());
+					}
+				} catch (DOMException e) {
+					// not a valid name, the templates cannot copy such an attribute either
+					continue;
+				}
+				originals.put(element.getAttributeNode(sourceAttribute.getNodeName()), sourceAttribute);
+			}
+			if (deep) {
+				for (Node sourceChild = sourceElement.getFirstChild(); sourceChild != null;
+						sourceChild = sourceChild.getNextSibling()) {
+					Node child = copyNode(sourceChild, true);
+					if (child != null) {
+						element.appendChild(child);
+					}
+				}
+			}
+			return element;
+		}
+	}
+
+	private static class BuilderThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "VPV DOM Builder " + count.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
 	}
 }
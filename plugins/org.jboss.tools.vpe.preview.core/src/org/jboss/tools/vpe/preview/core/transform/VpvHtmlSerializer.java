@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2013-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.core.transform;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Writes the visual documents as HTML5 directly to a stream.
+ * <p>
+ * Void elements have no end tags, the text of the raw text elements
+ * ({@code script}, {@code style}) is not escaped. The serializer keeps
+ * no state, so it is used by several server threads at once.
+ */
+public final class VpvHtmlSerializer {
+	public static final String DOCTYPE = "<!DOCTYPE html>\n"; //$NON-NLS-1$
+
+	private static final Set<String> VOID_ELEMENTS = new HashSet<String>(Arrays.asList(
+			"area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$
+			"link", "meta", "param", "source", "track", "wbr")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+	private static final Set<String> RAW_TEXT_ELEMENTS = new HashSet<String>(Arrays.asList(
+			"script", "style")); //$NON-NLS-1$ //$NON-NLS-2$
+
+	private VpvHtmlSerializer() {
+	}
+
+	/**
+	 * Writes the document preceded by the HTML5 doctype.
+	 */
+	public static void writePage(Document document, Writer writer) throws IOException {
+		writer.write(DOCTYPE);
+		writeNode(document, writer, false);
+	}
+
+	public static void writeNode(Node node, Writer writer) throws IOException {
+		writeNode(node, writer, false);
+	}
+
+	public static String nodeToString(Node node) {
+		StringWriter writer = new StringWriter();
+		try {
+			writeNode(node, writer, false);
+		} catch (IOException e) {
+			// StringWriter does not throw it
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+
+	private static void writeNode(Node node, Writer writer, boolean rawText) throws IOException {
+		switch (node.getNodeType()) {
+		case Node.ELEMENT_NODE:
+			writeElement(node, writer);
+			break;
+		case Node.TEXT_NODE:
+		case Node.CDATA_SECTION_NODE:
+			if (rawText) {
+				writer.write(node.getNodeValue());
+			} else {
+				writeEscaped(node.getNodeValue(), false, writer);
+			}
+			break;
+		case Node.COMMENT_NODE:
+			writer.write("<!--"); //$NON-NLS-1$
+			writer.write(node.getNodeValue());
+			writer.write("-->"); //$NON-NLS-1$
+			break;
+		case Node.ENTITY_REFERENCE_NODE:
+			writer.write('&');
+			writer.write(node.getNodeName());
+			writer.write(';');
+			break;
+		case Node.DOCUMENT_NODE:
+		case Node.DOCUMENT_FRAGMENT_NODE:
+			writeChildren(node, writer, false);
+			break;
+		default:
+			// doctypes and processing instructions are not a part of the page
+		}
+	}
+
+	private static void writeElement(Node element, Writer writer) throws IOException {
+		String name = element.getNodeName();
+		writer.write('<');
+		writer.write(name);
+		NamedNodeMap attributes = element.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Attr attribute = (Attr) attributes.item(i);
+			writer.write(' ');
+			writer.write(attribute.getName());
+			writer.write("=\""); //$NON-NLS-1$
+			writeEscaped(attribute.getValue(), true, writer);
+			writer.write('"');
+		}
+		writer.write('>');
+
+		String lowerCaseName = name.toLowerCase(Locale.ENGLISH);
+		if (!VOID_ELEMENTS.contains(lowerCaseName)) {
+			writeChildren(element, writer, RAW_TEXT_ELEMENTS.contains(lowerCaseName));
+			writer.write("</"); //$NON-NLS-1$
+			writer.write(name);
+			writer.write('>');
+		}
+	}
+
+	private static void writeChildren(Node node, Writer writer, boolean rawText) throws IOException {
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			writeNode(child, writer, rawText);
+		}
+	}
+
+	/**
+	 * Escapes the text the way the HTML5 serialization algorithm does,
+	 * the runs of characters without escaping are written at once.
+	 */
+	private static void writeEscaped(String text, boolean attributeMode, Writer writer) throws IOException {
+		int start = 0;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			String replacement;
+			switch (text.charAt(i)) {
+			case '&':
+				replacement = "&amp;"; //$NON-NLS-1$
+				break;
+			case '\u00A0':
+				replacement = "&nbsp;"; //$NON-NLS-1$
+				break;
+			case '"':
+				replacement = attributeMode ? "&quot;" : null; //$NON-NLS-1$
+				break;
+			case '<':
+				replacement = attributeMode ? null : "&lt;"; //$NON-NLS-1$
+				break;
+			case '>':
+				replacement = attributeMode ? null : "&gt;"; //$NON-NLS-1$
+				break;
+			default:
+				replacement = null;
+			}
+			if (replacement != null) {
+				writer.write(text, start, i - start);
+				writer.write(replacement);
+				start = i + 1;
+			}
+		}
+		writer.write(text, start, length - start);
+	}
+}
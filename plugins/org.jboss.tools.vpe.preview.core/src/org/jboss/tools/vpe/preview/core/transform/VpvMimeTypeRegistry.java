@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2013-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.core.transform;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.jboss.tools.vpe.preview.core.Activator;
+import org.jboss.tools.vpe.preview.core.preferences.VpvPreferencesInitializer;
+
+/**
+ * MIME types of the files served by the visual preview, by file extension.
+ * <p>
+ * The table is read from {@code lib/mime.types} once and never modified,
+ * so the lookups are not synchronized. The preference
+ * {@link VpvPreferencesInitializer#MIME_TYPE_OVERRIDES_PREFERENCES} of this
+ * plug-in overrides the types of some extensions, its value is a list like
+ * {@code "ts=text/javascript;svg=image/svg+xml"}.
+ */
+public class VpvMimeTypeRegistry {
+	public static final String DEFAULT_MIME_TYPE = "application/octet-stream"; //$NON-NLS-1$
+	private static final String MIME_TYPES_PATH = "lib/mime.types"; //$NON-NLS-1$
+
+	private static VpvMimeTypeRegistry instance;
+
+	private final Map<String, String> mimeTypes;
+	private volatile Map<String, String> overrides;
+
+	VpvMimeTypeRegistry(Map<String, String> mimeTypes, String overrides) {
+		this.mimeTypes = mimeTypes;
+		this.overrides = parseOverrides(overrides);
+	}
+
+	public static synchronized VpvMimeTypeRegistry getInstance() {
+		if (instance == null) {
+			Map<String, String> mimeTypes;
+			try {
+				InputStream in = Activator.getFileUrl(MIME_TYPES_PATH).openStream();
+				try {
+					mimeTypes = parseMimeTypes(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				Activator.logError(e);
+				mimeTypes = Collections.emptyMap();
+			}
+			final IEclipsePreferences preferences = InstanceScope.INSTANCE.getNode(Activator.PLUGIN_ID);
+			final VpvMimeTypeRegistry registry = new VpvMimeTypeRegistry(mimeTypes,
+					preferences.get(VpvPreferencesInitializer.MIME_TYPE_OVERRIDES_PREFERENCES, null));
+			preferences.addPreferenceChangeListener(new IPreferenceChangeListener() {
+				@Override
+				public void preferenceChange(PreferenceChangeEvent event) {
+					if (VpvPreferencesInitializer.MIME_TYPE_OVERRIDES_PREFERENCES.equals(event.getKey())) {
+						registry.overrides = parseOverrides((String) event.getNewValue());
+					}
+				}
+			});
+			instance = registry;
+		}
+		return instance;
+	}
+
+	public String getMimeType(File file) {
+		String name = file.getName();
+		int dotIndex = name.lastIndexOf('.');
+		if (dotIndex < 0) {
+			return DEFAULT_MIME_TYPE;
+		}
+		String extension = name.substring(dotIndex + 1).toLowerCase(Locale.ENGLISH);
+		String mimeType = overrides.get(extension);
+		if (mimeType == null) {
+			mimeType = mimeTypes.get(extension);
+		}
+		return mimeType != null ? mimeType : DEFAULT_MIME_TYPE;
+	}
+
+	/**
+	 * Parses a table in the format of {@code mime.types} of Apache httpd:
+	 * a type followed by its extensions on each line, {@code #} starts a comment.
+	 */
+	static Map<String, String> parseMimeTypes(InputStream in) throws IOException {
+		Map<String, String> mimeTypes = new HashMap<String, String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "US-ASCII")); //$NON-NLS-1$
+		String line;
+		while ((line = reader.readLine()) != null) {
+			int commentIndex = line.indexOf('#');
+			if (commentIndex >= 0) {
+				line = line.substring(0, commentIndex);
+			}
+			String[] tokens = line.trim().split("\\s+"); //$NON-NLS-1$
+			for (int i = 1; i < tokens.length; i++) {
+				mimeTypes.put(tokens[i].toLowerCase(Locale.ENGLISH), tokens[0]);
+			}
+		}
+		return Collections.unmodifiableMap(mimeTypes);
+	}
+
+	static Map<String, String> parseOverrides(String overrides) {
+		if (overrides == null || overrides.trim().isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> mimeTypes = new HashMap<String, String>();
+		for (String override : overrides.split(";")) { //$NON-NLS-1$
+			int equalsIndex = override.indexOf('=');
+			if (equalsIndex > 0) {
+				String extension = override.substring(0, equalsIndex).trim();
+				if (extension.startsWith(".")) { //$NON-NLS-1$
+					extension = extension.substring(1);
+				}
+				String mimeType = override.substring(equalsIndex + 1).trim();
+				if (!extension.isEmpty() && !mimeType.isEmpty()) {
+					mimeTypes.put(extension.toLowerCase(Locale.ENGLISH), mimeType);
+				}
+			}
+		}
+		return Collections.unmodifiableMap(mimeTypes);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013-2014 Red Hat, Inc.
+ * Copyright (c) 2013-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -10,30 +10,113 @@
  ******************************************************************************/
 package org.jboss.tools.vpe.preview.core.transform;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IExtensionRegistry;
+import org.eclipse.core.runtime.Platform;
+import org.jboss.tools.vpe.preview.core.Activator;
 import org.jboss.tools.vpe.preview.core.template.VpeTemplate;
 import org.jboss.tools.vpe.preview.core.template.VpvDefaultTemplate;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 /**
+ * Resolves the templates of the source nodes by a table built once from the
+ * extensions of {@link #EXTENSION_POINT_TEMPLATES}.
+ * <p>
+ * The templates are stateless and shared by all the nodes and threads.
+ * A template is registered for a tag name and optionally for a namespace URI,
+ * the tags without a URI are matched ignoring the case like HTML tags.
+ * The elements without a template and the other nodes are copied by
+ * {@link VpvDefaultTemplate}.
+ *
  * @author Yahor Radtsevich (yradtsevich)
  */
 public class VpvTemplateProvider {
+	public static final String EXTENSION_POINT_TEMPLATES = Activator.PLUGIN_ID + ".templates"; //$NON-NLS-1$
+	private static final String ELEMENT_TEMPLATE = "template"; //$NON-NLS-1$
+	private static final String ATTR_NAME = "name"; //$NON-NLS-1$
+	private static final String ATTR_URI = "uri"; //$NON-NLS-1$
+	private static final String ATTR_CLASS = "class"; //$NON-NLS-1$
+
+	private static final VpeTemplate DEFAULT_TEMPLATE = new VpvDefaultTemplate();
+
+	/** Templates by {@link #getTemplateKey(String, String)}, never modified. */
+	private final Map<String, VpeTemplate> templates;
+
+	/**
+	 * Creates a provider of the templates contributed to the extension point.
+	 */
+	public VpvTemplateProvider() {
+		this(loadTemplates());
+	}
+
+	/**
+	 * @param templates templates by {@link #getTemplateKey(String, String)}
+	 */
+	public VpvTemplateProvider(Map<String, VpeTemplate> templates) {
+		this.templates = Collections.unmodifiableMap(new HashMap<String, VpeTemplate>(templates));
+	}
+
 	/**
 	 * Returns a template class for given sourceNode
 	 */
 	public VpeTemplate getTemplate(Document sourceDocument, Node sourceNode) {
-		// TODO: simple test implementation
-//		if (sourceNode.getNodeType() == Node.ELEMENT_NODE) {
-//			if ("h:inputText".equals(sourceNode.getNodeName())) { //XXX //$NON-NLS-1$
-//				return new JsfInputTextTemplate();
-//			} else if ("h:inputTextarea".equals(sourceNode.getNodeName())) { //$NON-NLS-1$
-//				return new JsfInputTextAreaTemplate();	
-//			} else if ("a4j:log".equals(sourceNode.getNodeName())) { //$NON-NLS-1$
-//				return new Ajax4JSFLogTemplate();
-//			}
-//		}
-		
-		return new VpvDefaultTemplate();
+		if (sourceNode.getNodeType() == Node.ELEMENT_NODE && !templates.isEmpty()) {
+			VpeTemplate template = null;
+			String uri = sourceNode.getNamespaceURI();
+			if (uri != null && sourceNode.getLocalName() != null) {
+				template = templates.get(getTemplateKey(uri, sourceNode.getLocalName()));
+			}
+			if (template == null) {
+				template = templates.get(getTemplateKey(null, sourceNode.getNodeName()));
+			}
+			if (template != null) {
+				return template;
+			}
+		}
+		return DEFAULT_TEMPLATE;
+	}
+
+	/**
+	 * Returns the key of the template table.
+	 *
+	 * @param uri namespace URI of the tag or {@code null} for the tags matched by name
+	 */
+	public static String getTemplateKey(String uri, String name) {
+		return uri != null ? uri + '#' + name : name.toLowerCase(Locale.ENGLISH);
+	}
+
+	private static Map<String, VpeTemplate> loadTemplates() {
+		Map<String, VpeTemplate> templates = new HashMap<String, VpeTemplate>();
+		IExtensionRegistry registry = Platform.getExtensionRegistry();
+		if (registry == null) {
+			return templates;
+		}
+		IConfigurationElement[] elements = registry.getConfigurationElementsFor(EXTENSION_POINT_TEMPLATES);
+		for (IConfigurationElement element : elements) {
+			if (!ELEMENT_TEMPLATE.equals(element.getName())) {
+				continue;
+			}
+			String name = element.getAttribute(ATTR_NAME);
+			String uri = element.getAttribute(ATTR_URI);
+			try {
+				Object template = element.createExecutableExtension(ATTR_CLASS);
+				if (name != null && template instanceof VpeTemplate) {
+					templates.put(getTemplateKey(uri, name), (VpeTemplate) template);
+				} else {
+					Activator.logInfo("Invalid preview template of '" + name + "' contributed by " //$NON-NLS-1$ //$NON-NLS-2$
+							+ element.getContributor().getName());
+				}
+			} catch (CoreException e) {
+				Activator.logError(e);
+			}
+		}
+		return templates;
 	}
 }
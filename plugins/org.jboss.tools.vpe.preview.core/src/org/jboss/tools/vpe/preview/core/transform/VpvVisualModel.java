@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013-2014 Red Hat, Inc.
+ * Copyright (c) 2013-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -10,31 +10,115 @@
  ******************************************************************************/
 package org.jboss.tools.vpe.preview.core.transform;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
 /**
+ * The visual document of a source document with the mappings between them.
+ * <p>
+ * The ids of the visual elements ({@link VpvDomBuilder#ATTR_VPV_ID}) are
+ * allocated by the model from zero, so the elements are indexed by an array,
+ * and the visual nodes are mapped back to the source nodes by identity.
+ * Both lookups take constant time whatever the size of the page is.
+ * The ids of the removed elements are given to the next registered elements,
+ * the least first, so the array does not grow while the page is edited
+ * and a subtree rebuilt with the same shape gets the same ids.
+ *
  * @author Yahor Radtsevich (yradtsevich)
  * @author Ilya Buziuk (ibuziuk)
  */
 public class VpvVisualModel {
-	private Map<Node, Node> sourceVisualMapping;
-	private Document visualDocument;
+	private final Map<Node, Node> sourceVisualMapping = new HashMap<Node, Node>();
+	private final Map<Node, Node> visualSourceMapping = new IdentityHashMap<Node, Node>();
+	/** Visual elements by their ids, {@code null} for the ids of the removed elements. */
+	private final List<Element> visualElementsById = new ArrayList<Element>();
+	/** Ids of the removed elements, reused before new ids are allocated. */
+	private final Queue<Integer> freeIds = new PriorityQueue<Integer>();
+	private final Document visualDocument;
 
-	public VpvVisualModel(Document visualDocument,
-			Map<Node, Node> sourceVisualMapping) {
-		super();
+	public VpvVisualModel(Document visualDocument) {
 		this.visualDocument = visualDocument;
-		this.sourceVisualMapping = sourceVisualMapping;
 	}
-	
+
 	public Document getVisualDocument() {
 		return visualDocument;
 	}
-	
+
+	/**
+	 * @return unmodifiable view of the mapping
+	 */
 	public Map<Node, Node> getSourceVisualMapping() {
-		return sourceVisualMapping;
+		return Collections.unmodifiableMap(sourceVisualMapping);
+	}
+
+	/**
+	 * @return the visual element with the id or {@code null} if there is no such element
+	 */
+	public Element getVisualElementById(long id) {
+		return id >= 0 && id < visualElementsById.size() ? visualElementsById.get((int) id) : null;
+	}
+
+	/**
+	 * @return the source node of the visual node or {@code null} if the visual node
+	 * is not mapped
+	 */
+	public Node getSourceNode(Node visualNode) {
+		return visualSourceMapping.get(visualNode);
+	}
+
+	void addMapping(Node sourceNode, Node visualNode) {
+		Node oldVisualNode = sourceVisualMapping.put(sourceNode, visualNode);
+		if (oldVisualNode != null && oldVisualNode != visualNode) {
+			visualSourceMapping.remove(oldVisualNode);
+		}
+		visualSourceMapping.put(visualNode, sourceNode);
+	}
+
+	/**
+	 * Allocates an id for the visual element, the least id of a removed element if there is one.
+	 */
+	long registerVisualElement(Element visualElement) {
+		Integer freeId = freeIds.poll();
+		if (freeId != null) {
+			visualElementsById.set(freeId, visualElement);
+			return freeId;
+		}
+		visualElementsById.add(visualElement);
+		return visualElementsById.size() - 1;
+	}
+
+	/**
+	 * Removes the visual node and its descendants from the mappings and the index.
+	 */
+	void unregisterVisualSubtree(Node visualNode) {
+		Node sourceNode = visualSourceMapping.remove(visualNode);
+		if (sourceNode != null && sourceVisualMapping.get(sourceNode) == visualNode) {
+			sourceVisualMapping.remove(sourceNode);
+		}
+		if (visualNode.getNodeType() == Node.ELEMENT_NODE) {
+			String id = ((Element) visualNode).getAttribute(VpvDomBuilder.ATTR_VPV_ID);
+			if (!id.isEmpty()) {
+				int index = Integer.parseInt(id);
+				if (index < visualElementsById.size() && visualElementsById.get(index) == visualNode) {
+					visualElementsById.set(index, null);
+					freeIds.add(index);
+				}
+			}
+		}
+		NodeList children = visualNode.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			unregisterVisualSubtree(children.item(i));
+		}
 	}
 }
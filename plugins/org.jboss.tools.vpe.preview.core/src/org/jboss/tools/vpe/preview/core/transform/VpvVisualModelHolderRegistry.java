@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013-2014 Red Hat, Inc.
+ * Copyright (c) 2013-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -10,38 +10,38 @@
  ******************************************************************************/
 package org.jboss.tools.vpe.preview.core.transform;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Holders of the visual models by their view ids. The holders are
+ * registered by the UI and looked up by the server threads.
+ *
  * @author Yahor Radtsevich (yradtsevich)
  * @author Ilya Buziuk (ibuziuk)
  */
 public class VpvVisualModelHolderRegistry {
-	private static int vpvViewCounter = 0;
-	private final Map<Integer, VpvVisualModelHolder> visualModelHolderRegistry;
+	private static final AtomicInteger vpvViewCounter = new AtomicInteger();
+	private final ConcurrentMap<Integer, VpvVisualModelHolder> visualModelHolderRegistry;
 	
 	public VpvVisualModelHolderRegistry() {
-		visualModelHolderRegistry = new HashMap<Integer, VpvVisualModelHolder>();
+		visualModelHolderRegistry = new ConcurrentHashMap<Integer, VpvVisualModelHolder>();
 	}
 
 	public int registerHolder(VpvVisualModelHolder visualModelHolder) {
-		visualModelHolderRegistry.put(vpvViewCounter, visualModelHolder);
-		return vpvViewCounter++;
+		int id = vpvViewCounter.getAndIncrement();
+		visualModelHolderRegistry.put(id, visualModelHolder);
+		return id;
 	}
 	
 	public void unregisterHolder(VpvVisualModelHolder visualModelHolder) {
-		Integer key = null;
 		for (Entry<Integer, VpvVisualModelHolder> entry : visualModelHolderRegistry.entrySet()) {
 			if (entry.getValue() == visualModelHolder) {
-				key = entry.getKey();
+				visualModelHolderRegistry.remove(entry.getKey(), visualModelHolder);
 			}
 		}
-		
-		if (key != null) {
-			visualModelHolderRegistry.remove(key);
-		}
 	}
 	
 	public VpvVisualModelHolder getHolderById(Integer id) {
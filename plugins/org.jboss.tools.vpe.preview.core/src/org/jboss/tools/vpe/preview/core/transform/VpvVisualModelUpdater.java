@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2013-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.core.transform;
+
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.wst.sse.core.StructuredModelManager;
+import org.eclipse.wst.sse.core.internal.provisional.IStructuredModel;
+import org.eclipse.wst.sse.core.internal.provisional.IndexedRegion;
+import org.eclipse.wst.xml.core.internal.provisional.document.IDOMNode;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Keeps the visual model of a holder in sync with the edited source document
+ * without rebuilding the whole page.
+ * <p>
+ * The changed region of the document is collected from the document events,
+ * then {@link #update(VpvVisualModel, IDocument)} rebuilds the visual subtree
+ * of the smallest source element covering the region. The returned mutation
+ * is applied to the page by
+ * {@link org.jboss.tools.vpe.preview.core.util.NavigationUtil#applyVisualMutation}.
+ * Changes of the whole page, of the {@code head} and of scripts require
+ * the page to be reloaded.
+ * <p>
+ * The methods are called from the UI thread.
+ */
+@SuppressWarnings("restriction")
+public class VpvVisualModelUpdater {
+	private final VpvDomBuilder domBuilder;
+	/** Changed region of the document in its current coordinates, {@code -1} if there are no changes. */
+	private int changedStart = -1;
+	private int changedEnd = -1;
+
+	public VpvVisualModelUpdater(VpvDomBuilder domBuilder) {
+		this.domBuilder = domBuilder;
+	}
+
+	/**
+	 * Adds the region changed by the event to the changed region.
+	 */
+	public void documentChanged(DocumentEvent event) {
+		int offset = event.getOffset();
+		int removedEnd = offset + event.getLength();
+		int insertedEnd = offset + (event.getText() != null ? event.getText().length() : 0);
+		if (changedStart < 0) {
+			changedStart = offset;
+			changedEnd = insertedEnd;
+		} else {
+			changedStart = Math.min(shift(changedStart, offset, removedEnd, insertedEnd), offset);
+			changedEnd = Math.max(shift(changedEnd, offset, removedEnd, insertedEnd), insertedEnd);
+		}
+	}
+
+	/**
+	 * Maps a position before the change to the position after it.
+	 */
+	private static int shift(int position, int offset, int removedEnd, int insertedEnd) {
+		if (position < offset) {
+			return position;
+		} else if (position >= removedEnd) {
+			return position + insertedEnd - removedEnd;
+		} else {
+			return insertedEnd;
+		}
+	}
+
+	public boolean hasChanges() {
+		return changedStart >= 0;
+	}
+
+	/**
+	 * Forgets the collected changes, should be called when the page is reloaded.
+	 */
+	public void reset() {
+		changedStart = -1;
+		changedEnd = -1;
+	}
+
+	/**
+	 * Rebuilds the part of the visual model changed since the last update
+	 * and forgets the changes.
+	 *
+	 * @return the mutation to apply to the page or {@code null} if the page
+	 * has to be reloaded
+	 */
+	public VisualMutation update(VpvVisualModel visualModel, IDocument document) {
+		if (!hasChanges()) {
+			return null;
+		}
+		int start = changedStart;
+		int end = changedEnd;
+		reset();
+
+		IStructuredModel sourceModel = StructuredModelManager.getModelManager().getExistingModelForRead(document);
+		if (sourceModel == null) {
+			return null;
+		}
+		try {
+			Node sourceNode = findChangedNode(visualModel, sourceModel, start, end);
+			if (sourceNode == null || containsScript(sourceNode)) {
+				return null;
+			}
+			return domBuilder.rebuildSubtree(visualModel, sourceNode);
+		} finally {
+			sourceModel.releaseFromRead();
+		}
+	}
+
+	/**
+	 * Returns the innermost source element which covers the region and has
+	 * a replaceable element in the page.
+	 */
+	private static Node findChangedNode(VpvVisualModel visualModel, IStructuredModel sourceModel,
+			int start, int end) {
+		IndexedRegion region = sourceModel.getIndexedRegion(start);
+		Node node = region instanceof Node ? (Node) region : null;
+		while (node != null) {
+			if (node instanceof IDOMNode && node.getNodeType() == Node.ELEMENT_NODE) {
+				IDOMNode domNode = (IDOMNode) node;
+				if (domNode.getStartOffset() <= start && end <= domNode.getEndOffset()) {
+					Node visualNode = visualModel.getSourceVisualMapping().get(node);
+					if (visualNode instanceof Element) {
+						return isReplaceable(visualNode) ? node : null;
+					}
+				}
+			}
+			node = node.getParentNode();
+		}
+		return null;
+	}
+
+	/**
+	 * Only the elements of the {@code body} are replaced in the page.
+	 */
+	private static boolean isReplaceable(Node visualNode) {
+		boolean inBody = false;
+		for (Node node = visualNode; node != null; node = node.getParentNode()) {
+			if ("head".equalsIgnoreCase(node.getNodeName())) { //$NON-NLS-1$
+				return false;
+			} else if ("body".equalsIgnoreCase(node.getNodeName())) { //$NON-NLS-1$
+				inBody = node != visualNode;
+			}
+		}
+		return inBody;
+	}
+
+	/**
+	 * Scripts inserted into the page are not executed.
+	 */
+	private static boolean containsScript(Node sourceNode) {
+		if ("script".equalsIgnoreCase(sourceNode.getNodeName())) { //$NON-NLS-1$
+			return true;
+		}
+		NodeList children = sourceNode.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			if (containsScript(children.item(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
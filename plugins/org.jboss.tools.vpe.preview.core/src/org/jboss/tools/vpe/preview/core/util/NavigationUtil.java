@@ -12,10 +12,9 @@ package org.jboss.tools.vpe.preview.core.util;
 
 import java.util.Map;
 
-import javax.xml.xpath.XPathExpressionException;
-
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.swt.SWTException;
 import org.eclipse.swt.browser.Browser;
 import org.eclipse.ui.IEditorPart;
 import org.eclipse.wst.sse.ui.StructuredTextEditor;
@@ -23,7 +22,9 @@ import org.eclipse.wst.xml.core.internal.provisional.document.IDOMNode;
 import org.jboss.tools.vpe.preview.core.Activator;
 import org.jboss.tools.vpe.preview.core.transform.DomUtil;
 import org.jboss.tools.vpe.preview.core.transform.TransformUtil;
+import org.jboss.tools.vpe.preview.core.transform.VisualMutation;
 import org.jboss.tools.vpe.preview.core.transform.VpvDomBuilder;
+import org.jboss.tools.vpe.preview.core.transform.VpvHtmlSerializer;
 import org.jboss.tools.vpe.preview.core.transform.VpvVisualModel;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -111,6 +112,63 @@ public final class NavigationUtil {
 		}
 	}
 
+	/**
+	 * Replaces the changed element in the page without reloading it,
+	 * the scroll position and the state of the page are kept.
+	 *
+	 * @return {@code false} if the element is not found in the page,
+	 * the page has to be reloaded then
+	 */
+	public static boolean applyVisualMutation(Browser browser, VisualMutation mutation) {
+		if (browser == null || browser.isDisposed()) {
+			return false;
+		}
+		String html = mutation.getNewParentNode() != null
+				? VpvHtmlSerializer.nodeToString(mutation.getNewParentNode())
+				: ""; //$NON-NLS-1$
+		// insertAdjacentHTML parses the markup in the context of the parent, so table rows are replaced too
+		String script = "var old = document.querySelector('[" + VpvDomBuilder.ATTR_VPV_ID + "=\"" + mutation.getOldParentId() + "\"]');" + //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+						"if (!old || !old.parentNode || !old.insertAdjacentHTML) {" + //$NON-NLS-1$
+							"return false;" + //$NON-NLS-1$
+						"}" + //$NON-NLS-1$
+						"old.insertAdjacentHTML('beforebegin', " + toJsString(html) + ");" + //$NON-NLS-1$ //$NON-NLS-2$
+						"old.parentNode.removeChild(old);" + //$NON-NLS-1$
+						"return true;"; //$NON-NLS-1$
+		try {
+			return Boolean.TRUE.equals(browser.evaluate(script));
+		} catch (SWTException e) {
+			// the script failed, the page is reloaded
+			return false;
+		}
+	}
+
+	private static String toJsString(String string) {
+		StringBuilder jsString = new StringBuilder(string.length() + 16);
+		jsString.append('\'');
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			switch (c) {
+			case '\'':
+			case '\\':
+				jsString.append('\\').append(c);
+				break;
+			case '\n':
+				jsString.append("\\n"); //$NON-NLS-1$
+				break;
+			case '\r':
+				jsString.append("\\r"); //$NON-NLS-1$
+				break;
+			case '\u2028':
+			case '\u2029':
+				jsString.append("\\u").append(Integer.toHexString(c)); //$NON-NLS-1$
+				break;
+			default:
+				jsString.append(c);
+			}
+		}
+		return jsString.append('\'').toString();
+	}
+
 	public static void disableJsPopUps(Browser browser) {
 		browser.execute ("window.alert = function() {};" + //$NON-NLS-1$
 				"window.confirm = function() {};" + //$NON-NLS-1$
@@ -145,47 +203,35 @@ public final class NavigationUtil {
 	}
 	
 	public static void navigateToVisual(IEditorPart currentEditor, Browser browser, VpvVisualModel visualModel, int x, int y) {
-		String stringToEvaluate = ""; //$NON-NLS-1$
-		if (PlatformUtil.isLinux()) {
-			/* outerHTML is not available with XulRunner we shipping, so <code>result</code> variable will be null
-			 * because we make it default browser on Linux this workaround is used
-			 * @see JBIDE-17454
-			 */
-			stringToEvaluate = "var selected = document.elementFromPoint(" + x + ", " + y + ");"+ //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-			"var temp = document.createElement('div');"+ //$NON-NLS-1$
-			"temp.appendChild(selected.cloneNode(true));"+ //$NON-NLS-1$
-			"return temp.innerHTML;"; //$NON-NLS-1$
-		} else {
-			stringToEvaluate = "return document.elementFromPoint(" + x + ", " + y + ").outerHTML;"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		// the id of the innermost marked element, there is no need to look it up in its markup
+		String stringToEvaluate = "var selected = document.elementFromPoint(" + x + ", " + y + ");" + //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+								  "while (selected && !(selected.getAttribute && selected.getAttribute('" + VpvDomBuilder.ATTR_VPV_ID + "'))) {" + //$NON-NLS-1$ //$NON-NLS-2$
+									"selected = selected.parentNode;" + //$NON-NLS-1$
+								  "}" + //$NON-NLS-1$
+								  "return selected ? selected.getAttribute('" + VpvDomBuilder.ATTR_VPV_ID + "') : null;"; //$NON-NLS-1$ //$NON-NLS-2$
+		String selectedElementId = (String) browser.evaluate(stringToEvaluate);
+		Long id = null;
+		if (selectedElementId != null) {
+			try {
+				id = Long.parseLong(selectedElementId);
+			} catch (NumberFormatException e) {
+				// not an id of the preview, nothing is selected
+			}
 		}
-		String result = (String) browser.evaluate(stringToEvaluate);
-		if (result != null) {
-			String selectedElementId = TransformUtil.getSelectedElementId(result, "(?<=data-vpvid=\").*?(?=\")"); //$NON-NLS-1$
-	
-			Long id = (selectedElementId != null && !selectedElementId.isEmpty()) //avoiding NumberFormatException
-					  ? Long.parseLong(selectedElementId)
-					  : null;
-			NavigationUtil.outlineSelectedElement(browser, id);
-	
-			String fileExtension = EditorUtil.getFileExtensionFromEditor(currentEditor);
-	
-			if (SuitableFileExtensions.isHTML(fileExtension)) {
-				try {
-					Node visualNode = TransformUtil.getVisualNodeByVpvId(visualModel, selectedElementId);
-					Node sourseNode = TransformUtil.getSourseNodeByVisualNode(visualModel, visualNode);
-	
-					if (sourseNode != null && sourseNode instanceof IDOMNode) {
-						int startOffset = ((IDOMNode) sourseNode).getStartOffset();
-						int endOffset = ((IDOMNode) sourseNode).getEndOffset();
-	
-						StructuredTextEditor editor = (StructuredTextEditor) currentEditor.getAdapter(StructuredTextEditor.class);
-						editor.selectAndReveal(startOffset, endOffset - startOffset);
-	
-					}
-	
-				} catch (XPathExpressionException e) {
-					Activator.logError(e);
-				}
+		NavigationUtil.outlineSelectedElement(browser, id);
+
+		String fileExtension = EditorUtil.getFileExtensionFromEditor(currentEditor);
+
+		if (visualModel != null && SuitableFileExtensions.isHTML(fileExtension)) {
+			Node visualNode = TransformUtil.getVisualNodeByVpvId(visualModel, id);
+			Node sourseNode = TransformUtil.getSourseNodeByVisualNode(visualModel, visualNode);
+
+			if (sourseNode != null && sourseNode instanceof IDOMNode) {
+				int startOffset = ((IDOMNode) sourseNode).getStartOffset();
+				int endOffset = ((IDOMNode) sourseNode).getEndOffset();
+
+				StructuredTextEditor editor = (StructuredTextEditor) currentEditor.getAdapter(StructuredTextEditor.class);
+				editor.selectAndReveal(startOffset, endOffset - startOffset);
 			}
 		}
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015 Red Hat, Inc.
+ * Copyright (c) 2015-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -26,6 +26,11 @@ import org.eclipse.ui.progress.UIJob;
  * @author Konstantin Marmalyukov (kmarmaliykov)
  */
 public abstract class DocumentListeningEditorPart extends EditorPart{
+	/**
+	 * Delay of the action after a change, in milliseconds. It only joins
+	 * the changes made at once, the page is patched in place.
+	 */
+	private static final int UPDATE_DELAY = 100;
 	private Job currentJob;
 	private IDocumentListener documentListener;
 	
@@ -38,6 +43,12 @@ public abstract class DocumentListeningEditorPart extends EditorPart{
 	 * @return <code>true</code> if action should happen after document change
 	 */
 	protected abstract boolean actionHappening();
+
+	/**
+	 * Called on each document change, before the action is scheduled.
+	 */
+	protected void documentChanged(DocumentEvent event) {
+	}
 	
 	private void updatePreview() {
 		if (currentJob == null || currentJob.getState() != Job.WAITING) {
@@ -47,7 +58,7 @@ public abstract class DocumentListeningEditorPart extends EditorPart{
 			currentJob = createPreviewUpdateJob();
 		}
 
-		currentJob.schedule(500);
+		currentJob.schedule(UPDATE_DELAY);
 	}
 	
 	private Job createPreviewUpdateJob() {
@@ -79,7 +90,7 @@ public abstract class DocumentListeningEditorPart extends EditorPart{
 		}
 	}
 	
-	private IDocument getDocument(IEditorPart sourceEditor) {
+	protected IDocument getDocument(IEditorPart sourceEditor) {
 		return (IDocument) sourceEditor.getAdapter(IDocument.class);
 	}
 	
@@ -93,6 +104,7 @@ public abstract class DocumentListeningEditorPart extends EditorPart{
 
 				@Override
 				public void documentChanged(DocumentEvent event) {
+					DocumentListeningEditorPart.this.documentChanged(event);
 					if (actionHappening()) {
 						updatePreview();
 					}
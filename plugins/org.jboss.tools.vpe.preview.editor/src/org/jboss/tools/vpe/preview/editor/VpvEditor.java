@@ -26,6 +26,8 @@ import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.action.ToolBarManager;
 import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
 import org.eclipse.jface.viewers.ISelection;
@@ -71,8 +73,10 @@ import org.jboss.tools.vpe.messages.VpeUIMessages;
 import org.jboss.tools.vpe.preview.core.exceptions.BrowserErrorWrapper;
 import org.jboss.tools.vpe.preview.core.exceptions.CannotOpenExternalFileException;
 import org.jboss.tools.vpe.preview.core.exceptions.Messages;
+import org.jboss.tools.vpe.preview.core.transform.VisualMutation;
 import org.jboss.tools.vpe.preview.core.transform.VpvVisualModel;
 import org.jboss.tools.vpe.preview.core.transform.VpvVisualModelHolder;
+import org.jboss.tools.vpe.preview.core.transform.VpvVisualModelUpdater;
 import org.jboss.tools.vpe.preview.core.util.ActionBar;
 import org.jboss.tools.vpe.preview.core.util.EditorUtil;
 import org.jboss.tools.vpe.preview.core.util.NavigationUtil;
@@ -147,7 +151,9 @@ public class VpvEditor extends DocumentListeningEditorPart implements VpvVisualM
 	private EditorLoadWindowListener editorLoadWindowListener;
 	
 	private Browser browser;
-	private VpvVisualModel visualModel;
+	/** Set by the server threads. */
+	private volatile VpvVisualModel visualModel;
+	private VpvVisualModelUpdater visualModelUpdater;
 	private int modelHolderId;
 	private SelectionListener selectionListener;
 	protected IEditorPart sourceEditor;
@@ -160,6 +166,7 @@ public class VpvEditor extends DocumentListeningEditorPart implements VpvVisualM
 	
 	public VpvEditor(IEditorPart sourceEditor) {
 		setModelHolderId(Activator.getDefault().getVisualModelHolderRegistry().registerHolder(this));
+		visualModelUpdater = new VpvVisualModelUpdater(Activator.getDefault().getDomBuilder());
 		setSourceEditor(sourceEditor);
 	}
 	
@@ -541,6 +548,9 @@ public class VpvEditor extends DocumentListeningEditorPart implements VpvVisualM
 	}
 
 	public void refresh() {
+		if (visualModelUpdater != null) {
+			visualModelUpdater.reset();
+		}
 		if (browser != null && !browser.isDisposed()) { 
 			if (isURLDefault(browser.getUrl())) {
 				formRequestToServer();
@@ -660,9 +670,38 @@ public class VpvEditor extends DocumentListeningEditorPart implements VpvVisualM
 		}
 	}
 
+	@Override
+	protected void documentChanged(DocumentEvent event) {
+		if (visualModelUpdater != null) {
+			visualModelUpdater.documentChanged(event);
+		}
+	}
+
 	@Override
 	protected void performAction() {
-		refresh();
+		if (!updatePage()) {
+			refresh();
+		}
+	}
+
+	/**
+	 * Applies the changes of the source document to the loaded page.
+	 *
+	 * @return {@code false} if the page has to be reloaded
+	 */
+	private boolean updatePage() {
+		VpvVisualModel currentVisualModel = visualModel;
+		IDocument document = getDocument(sourceEditor);
+		if (visualModelUpdater == null || currentVisualModel == null || document == null
+				|| browser == null || browser.isDisposed()) {
+			return false;
+		}
+		VisualMutation mutation = visualModelUpdater.update(currentVisualModel, document);
+		if (mutation != null && NavigationUtil.applyVisualMutation(browser, mutation)) {
+			NavigationUtil.outlineSelectedElement(browser, getCurrentSelectedElementId());
+			return true;
+		}
+		return false;
 	}
 
 	@Override
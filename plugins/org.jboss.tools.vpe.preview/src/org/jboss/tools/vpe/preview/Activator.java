@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013-2014 Red Hat, Inc.
+ * Copyright (c) 2013-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -63,7 +63,7 @@ public class Activator extends AbstractUIPlugin {
 		plugin = this;
 		
 		VpvTemplateProvider templateProvider = new VpvTemplateProvider();
-		domBuilder = new VpvDomBuilder(templateProvider);
+		domBuilder = new VpvDomBuilder(templateProvider, Integer.getInteger(VpvDomBuilder.PARALLELISM_PROPERTY, 1));
 		visualModelHolderRegistry = new VpvVisualModelHolderRegistry();
 		VpvController vpvController = new VpvController(domBuilder, visualModelHolderRegistry);
 		server = new VpvServer(vpvController);
@@ -83,6 +83,7 @@ public class Activator extends AbstractUIPlugin {
 		server.stop();
 		server = null;
 		visualModelHolderRegistry = null;
+		domBuilder.dispose();
 		domBuilder = null;
 		
 		plugin = null;
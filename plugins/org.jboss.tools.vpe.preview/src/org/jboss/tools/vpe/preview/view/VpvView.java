@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013-2014 Red Hat, Inc.
+ * Copyright (c) 2013-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -20,7 +20,6 @@ import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.text.DocumentEvent;
@@ -63,14 +62,18 @@ import org.jboss.tools.vpe.preview.core.exceptions.BrowserErrorWrapper;
 import org.jboss.tools.vpe.preview.core.exceptions.CannotOpenExternalFileException;
 import org.jboss.tools.vpe.preview.core.exceptions.DomModelNotSupportedException;
 import org.jboss.tools.vpe.preview.core.exceptions.Messages;
+import org.jboss.tools.vpe.preview.core.server.VpvChangeNotifier;
+import org.jboss.tools.vpe.preview.core.transform.VisualMutation;
 import org.jboss.tools.vpe.preview.core.transform.VpvVisualModel;
 import org.jboss.tools.vpe.preview.core.transform.VpvVisualModelHolder;
+import org.jboss.tools.vpe.preview.core.transform.VpvVisualModelUpdater;
 import org.jboss.tools.vpe.preview.core.util.ActionBar;
 import org.jboss.tools.vpe.preview.core.util.EditorUtil;
 import org.jboss.tools.vpe.preview.core.util.NavigationUtil;
 import org.jboss.tools.vpe.preview.core.util.PlatformUtil;
 import org.jboss.tools.vpe.preview.core.util.SuitableFileExtensions;
 import org.jboss.tools.vpe.preview.util.ViewActionBar;
+import org.w3c.dom.Node;
 
 /**
  * @author Yahor Radtsevich (yradtsevich)
@@ -78,12 +81,20 @@ import org.jboss.tools.vpe.preview.util.ViewActionBar;
  */
 public class VpvView extends ViewPart implements VpvVisualModelHolder {
 	public static final String ID = "org.jboss.tools.vpe.vpv.view.VpvView"; //$NON-NLS-1$
+	/**
+	 * Delay of the update after a change, in milliseconds. It only joins the
+	 * changes made at once, the page is patched or its style sheets and scripts
+	 * are swapped in place.
+	 */
+	private static final int UPDATE_DELAY = 100;
 
 	private Browser browser;
 	private ActionBar actionBar;
 	private Job currentJob;
-	private Job saveJob;
-	private VpvVisualModel visualModel;
+	private Job resourceJob;
+	/** Set by the server threads. */
+	private volatile VpvVisualModel visualModel;
+	private VpvVisualModelUpdater visualModelUpdater;
 	private int modelHolderId;
 	private EditorListener editorListener;
 	private SelectionListener selectionListener;
@@ -94,6 +105,7 @@ public class VpvView extends ViewPart implements VpvVisualModelHolder {
 
 	public VpvView() {
 		setModelHolderId(Activator.getDefault().getVisualModelHolderRegistry().registerHolder(this));
+		visualModelUpdater = new VpvVisualModelUpdater(Activator.getDefault().getDomBuilder());
 		UsageEventType eventType = Activator.getDefault().getPreviewEventType();
 		UsageReporter.getInstance().countEvent(eventType.event(UsageEventType.OPEN_ACTION));
 	}
@@ -219,6 +231,7 @@ public class VpvView extends ViewPart implements VpvVisualModelHolder {
 		}
 
 		this.currentEditor = currentEditor;
+		visualModelUpdater.reset();
 
 		if (this.currentEditor != null) {
 			IDocument document = (IDocument) this.currentEditor.getAdapter(IDocument.class);
@@ -248,8 +261,9 @@ public class VpvView extends ViewPart implements VpvVisualModelHolder {
 					if (actionBar.isAutomaticRefreshEnabled()) {
 						String fileExtension = EditorUtil.getFileExtensionFromEditor(currentEditor);
 						if (SuitableFileExtensions.isCssOrJs(fileExtension)) {
-							saveCurrentFile();
+							updateResource();
 						} else {
+							visualModelUpdater.documentChanged(event);
 							updatePreview();
 						}
 					}
@@ -264,7 +278,7 @@ public class VpvView extends ViewPart implements VpvVisualModelHolder {
 		Job job = new UIJob("Preview Update") { //$NON-NLS-1$
 			@Override
 			public IStatus runInUIThread(IProgressMonitor monitor) {
-				if (!browser.isDisposed()) {
+				if (!browser.isDisposed() && !updatePage()) {
 					refresh(browser);
 				}
 				return Status.OK_STATUS;
@@ -273,13 +287,34 @@ public class VpvView extends ViewPart implements VpvVisualModelHolder {
 		return job;
 	}
 
-	private Job createSaveJob() {
-		Job job = new UIJob("HTML Preview: Saving " + currentEditor.getTitle()) { //$NON-NLS-1$
+	/**
+	 * Applies the changes of the source document to the loaded page.
+	 *
+	 * @return {@code false} if the page has to be reloaded
+	 */
+	private boolean updatePage() {
+		VpvVisualModel currentVisualModel = visualModel;
+		IDocument document = currentEditor != null ? (IDocument) currentEditor.getAdapter(IDocument.class) : null;
+		if (currentVisualModel == null || document == null) {
+			return false;
+		}
+		VisualMutation mutation = visualModelUpdater.update(currentVisualModel, document);
+		if (mutation != null && NavigationUtil.applyVisualMutation(browser, mutation)) {
+			ISelection currentSelection = getCurrentSelection();
+			if (currentSelection instanceof IStructuredSelection) {
+				Node sourceNode = EditorUtil.getNodeFromSelection((IStructuredSelection) currentSelection);
+				NavigationUtil.outlineSelectedElement(browser, NavigationUtil.getIdForSelection(sourceNode, currentVisualModel));
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private Job createResourceUpdateJob() {
+		Job job = new UIJob("Preview Update") { //$NON-NLS-1$
 			@Override
 			public IStatus runInUIThread(IProgressMonitor monitor) {
-				currentEditor.doSave(new NullProgressMonitor()); // saving all js and css stuff
-				//saving file was delayed - no need to delay refresh
-				if (!browser.isDisposed()) {
+				if (!browser.isDisposed() && !notifyResourceChanged()) {
 					refresh(browser);
 				}
 				return Status.OK_STATUS;
@@ -287,6 +322,27 @@ public class VpvView extends ViewPart implements VpvVisualModelHolder {
 		};
 		return job;
 	}
+
+	/**
+	 * Lets the page swap the edited style sheet or script, the server sends
+	 * the unsaved text of the file.
+	 *
+	 * @return {@code false} if the page does not listen to the changes
+	 * and has to be reloaded
+	 */
+	private boolean notifyResourceChanged() {
+		IFile file = EditorUtil.getFileOpenedInEditor(currentEditor);
+		if (file == null) {
+			return false;
+		}
+		VpvChangeNotifier changeNotifier = Activator.getDefault().getServer().getChangeNotifier();
+		String path = file.getFullPath().toString();
+		if (SuitableFileExtensions.CSS.getValue().equals(file.getFileExtension())) {
+			return changeNotifier.notifyStyleSheetChanged(modelHolderId, path);
+		} else {
+			return changeNotifier.notifyScriptChanged(modelHolderId, path);
+		}
+	}
  
 	private void updatePreview() {
 		if (currentJob == null || currentJob.getState() != Job.WAITING) {
@@ -296,25 +352,26 @@ public class VpvView extends ViewPart implements VpvVisualModelHolder {
 			currentJob = createPreviewUpdateJob();
 		}
 
-		currentJob.schedule(500);
+		currentJob.schedule(UPDATE_DELAY);
 	}
 
-	private void saveCurrentFile() {
-		if (saveJob == null || saveJob.getState() != Job.WAITING) {
-			if (saveJob != null && saveJob.getState() == Job.SLEEPING) {
-				saveJob.cancel();
+	private void updateResource() {
+		if (resourceJob == null || resourceJob.getState() != Job.WAITING) {
+			if (resourceJob != null && resourceJob.getState() == Job.SLEEPING) {
+				resourceJob.cancel();
 			}
-			saveJob = createSaveJob();
+			resourceJob = createResourceUpdateJob();
 		}
-		saveJob.schedule(500);
+		resourceJob.schedule(UPDATE_DELAY);
 	}
 	
 	private void refresh(Browser browser) {
+		visualModelUpdater.reset();
 		String url = browser.getUrl();
 		if (PlatformUtil.isWindows()) {
 			String ext = EditorUtil.getFileExtensionFromEditor(currentEditor);
 			if (SuitableFileExtensions.isCssOrJs(ext)) {
-				browser.refresh(); // Files are saved - need to perform refresh
+				browser.refresh(); // the server sends the unsaved text of the files
 			} else {
 				browser.setUrl(NavigationUtil.fixUrl(browser)); // JBIDE-18043 Need to get changes via VPVSocketProcessor 
 			}	
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.xulrunner.editor;
+
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Coalesces the redraw requests of the selection outline into frames.
+ * <p>
+ * At most one redraw is pending at a time and it is run not earlier than
+ * {@link #FRAME_TIME} after the previous one, the requests made meanwhile
+ * are served by it. The requests may be made from any thread, the redraw
+ * is run in the UI thread.
+ */
+public class SelectionRedrawScheduler {
+	/** Minimal time between two redraws, in milliseconds */
+	public static final int FRAME_TIME = 16;
+
+	private final Display display;
+	private final Runnable redraw;
+
+	/* guarded by this */
+	private boolean pending;
+	private boolean disposed;
+	private long lastRedrawTime;
+	private long requestedCount;
+	private long performedCount;
+
+	private final Runnable frameTask = new Runnable() {
+		public void run() {
+			long wait;
+			synchronized (SelectionRedrawScheduler.this) {
+				if (disposed) {
+					pending = false;
+					return;
+				}
+				wait = lastRedrawTime + FRAME_TIME - System.currentTimeMillis();
+			}
+			if (wait > 0 && wait <= FRAME_TIME) {
+				display.timerExec((int) wait, redrawTask);
+			} else {
+				redrawTask.run();
+			}
+		}
+	};
+
+	private final Runnable redrawTask = new Runnable() {
+		public void run() {
+			synchronized (SelectionRedrawScheduler.this) {
+				pending = false;
+				if (disposed) {
+					return;
+				}
+				lastRedrawTime = System.currentTimeMillis();
+				performedCount++;
+			}
+			redraw.run();
+		}
+	};
+
+	/**
+	 * @param display display of the UI thread
+	 * @param redraw draws the selection outline, run in the UI thread
+	 */
+	public SelectionRedrawScheduler(Display display, Runnable redraw) {
+		this.display = display;
+		this.redraw = redraw;
+	}
+
+	/**
+	 * Schedules a redraw unless one is already pending.
+	 */
+	public void requestRedraw() {
+		synchronized (this) {
+			requestedCount++;
+			if (pending || disposed) {
+				return;
+			}
+			pending = true;
+		}
+		if (display.isDisposed()) {
+			return;
+		}
+		display.asyncExec(frameTask);
+	}
+
+	/**
+	 * @return {@code true} if a requested redraw has not been run yet
+	 */
+	public synchronized boolean isPending() {
+		return pending;
+	}
+
+	/**
+	 * @return the number of the redraws requested by {@link #requestRedraw()}
+	 */
+	public synchronized long getRequestedCount() {
+		return requestedCount;
+	}
+
+	/**
+	 * @return the number of the redraws run
+	 */
+	public synchronized long getPerformedCount() {
+		return performedCount;
+	}
+
+	/**
+	 * Cancels the pending redraw, the next requests are ignored.
+	 */
+	public synchronized void dispose() {
+		disposed = true;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007 Red Hat, Inc.
+ * Copyright (c) 2007-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -22,7 +22,6 @@ import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.events.PaintEvent;
 import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.widgets.Composite;
-import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
 import org.jboss.tools.vpe.xulrunner.BrowserPlugin;
@@ -99,24 +98,29 @@ public class XulRunnerEditor extends XulRunnerBrowser {
 	private List<nsIDOMNode> selectedNodes;
 	private int lastResizerConstrains;
 
+	/**
+	 * Outline of {@link #outlinedNodes} drawn last, it is reused while
+	 * the DOM and the scroll position are not changed.
+	 */
+	private List<FlasherData> outlineData;
+	private List<nsIDOMNode> outlinedNodes;
+	private int outlineScrollX;
+	private int outlineScrollY;
+
+	private SelectionRedrawScheduler redrawScheduler;
+	private volatile boolean resizerUpdateRequested;
+
 	private Listener eventListenet = new Listener() {
 
 		public void handleEvent(Event event) {
-			Display.getCurrent().asyncExec(new Thread() {
-				@Override
-				public void run() {
-					/*
-					 * https://jira.jboss.org/jira/browse/JBIDE-3917 Resizer
-					 * should be updated together with selection rectangle.
-					 * Otherwise after window maximizing/restoring resizer shows
-					 * old position.
-					 */
-					if (getBrowser() != null && !getBrowser().isDisposed()) {
-						showResizer();
-						redrawSelectionRectangle();
-					}
-				}
-			});
+			/*
+			 * https://jira.jboss.org/jira/browse/JBIDE-3917 Resizer
+			 * should be updated together with selection rectangle.
+			 * Otherwise after window maximizing/restoring resizer shows
+			 * old position.
+			 */
+			resizerUpdateRequested = true;
+			scheduleSelectionRectangleRedraw();
 		}
 	};
 
@@ -126,6 +130,17 @@ public class XulRunnerEditor extends XulRunnerBrowser {
 	 */
 	public XulRunnerEditor(Composite parent) throws XulRunnerException {
 		super(parent);
+		redrawScheduler = new SelectionRedrawScheduler(getBrowser().getDisplay(), new Runnable() {
+			public void run() {
+				if (getBrowser() != null && !getBrowser().isDisposed()) {
+					if (resizerUpdateRequested) {
+						resizerUpdateRequested = false;
+						showResizer();
+					}
+					redrawSelectionRectangle();
+				}
+			}
+		});
 		getBrowser().addDisposeListener(new DisposeListener() {
 
 			public void widgetDisposed(DisposeEvent e) {
@@ -260,6 +275,7 @@ public class XulRunnerEditor extends XulRunnerBrowser {
 	public void setSelectionRectangle(List<nsIDOMNode> nodes, int resizerConstrains) {
 		getFlasher();
 		this.selectedNodes = nodes;
+		invalidateSelectionRectangle();
 
 		nsIDOMElement element = getSelectedElement();
 		if (element != null) {
@@ -400,12 +416,64 @@ public class XulRunnerEditor extends XulRunnerBrowser {
 		}
 	}
 
+	/**
+	 * Draws the outline of the selected nodes at once.
+	 * 
+	 * The elements to outline are looked up again only if the selection,
+	 * the DOM or the scroll position have changed since the last redraw.
+	 * 
+	 * @see #scheduleSelectionRectangleRedraw()
+	 */
 	public void redrawSelectionRectangle() {
-		List<FlasherData> flasherDatas = new ArrayList<FlasherData>();
-		for (nsIDOMNode domNode : getSelectedNodes()) {
-			flasherDatas.add(prepareFlasherData(domNode));
+		List<nsIDOMNode> nodes = getSelectedNodes();
+		int scrollX = 0;
+		int scrollY = 0;
+		nsIDOMWindow domWindow = getWebBrowser() != null ? getWebBrowser().getContentDOMWindow() : null;
+		if (domWindow != null) {
+			scrollX = domWindow.getScrollX();
+			scrollY = domWindow.getScrollY();
 		}
-		drawElementOutline(flasherDatas);
+		if (outlineData == null || outlinedNodes != nodes
+				|| outlineScrollX != scrollX || outlineScrollY != scrollY) {
+			List<FlasherData> flasherDatas = new ArrayList<FlasherData>(nodes.size());
+			for (nsIDOMNode domNode : nodes) {
+				flasherDatas.add(prepareFlasherData(domNode));
+			}
+			outlineData = flasherDatas;
+			outlinedNodes = nodes;
+			outlineScrollX = scrollX;
+			outlineScrollY = scrollY;
+		}
+		drawElementOutline(outlineData);
+	}
+
+	/**
+	 * Requests a redraw of the selection outline in the next frame,
+	 * the requests made before it is drawn are coalesced.
+	 * 
+	 * @see SelectionRedrawScheduler
+	 */
+	public void scheduleSelectionRectangleRedraw() {
+		if (redrawScheduler != null) {
+			redrawScheduler.requestRedraw();
+		}
+	}
+
+	/**
+	 * Makes the next redraw look up the elements to outline,
+	 * should be called when the visual DOM is changed.
+	 */
+	public void invalidateSelectionRectangle() {
+		outlineData = null;
+		outlinedNodes = null;
+	}
+
+	/**
+	 * @return the scheduler of the selection outline redraws,
+	 * its counters show how many redraws were requested and performed
+	 */
+	public SelectionRedrawScheduler getSelectionRedrawScheduler() {
+		return redrawScheduler;
 	}
 	
 	private FlasherData prepareFlasherData(nsIDOMNode domNode){
@@ -475,6 +543,10 @@ public class XulRunnerEditor extends XulRunnerBrowser {
 	@Override
 	protected void onDispose() {
 		selectedNodes = new ArrayList<nsIDOMNode>();
+		invalidateSelectionRectangle();
+		if (redrawScheduler != null) {
+			redrawScheduler.dispose();
+		}
 		if (flasher != null) {
 			flasher.dispose();
 			flasher = null;
@@ -485,7 +557,7 @@ public class XulRunnerEditor extends XulRunnerBrowser {
 	private class VisualPaintListener implements PaintListener {
 
 		public void paintControl(PaintEvent e) {
-			redrawSelectionRectangle();
+			scheduleSelectionRectangleRedraw();
 		}
 
 	}
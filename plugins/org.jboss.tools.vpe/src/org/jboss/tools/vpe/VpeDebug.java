@@ -30,6 +30,7 @@ public class VpeDebug {
 	public static final boolean PRINT_VISUAL_INNER_DRAGDROP_EVENT;
 
 	public static final boolean VISUAL_ADD_PSEUDO_ELEMENT;
+	public static final boolean PRINT_EL_RESOLUTION_STATISTICS;
 
 	public static final boolean VISUAL_CONTEXTMENU_DUMP_SOURCE;
 	public static final boolean VISUAL_CONTEXTMENU_DUMP_SELECTED_ELEMENT;
@@ -59,6 +60,7 @@ public class VpeDebug {
 		PRINT_VISUAL_INNER_DRAGDROP_EVENT = "true".equals(Platform.getDebugOption(VpePlugin.PLUGIN_ID + "/debug/visual/inner_dragdrop_event")); //$NON-NLS-1$ //$NON-NLS-2$
 
 		VISUAL_ADD_PSEUDO_ELEMENT = "true".equals(Platform.getDebugOption(VpePlugin.PLUGIN_ID + "/debug/visual/add_pseudo_element")); //$NON-NLS-1$ //$NON-NLS-2$
+		PRINT_EL_RESOLUTION_STATISTICS = "true".equals(Platform.getDebugOption(VpePlugin.PLUGIN_ID + "/debug/visual/el_resolution_statistics")); //$NON-NLS-1$ //$NON-NLS-2$
 
 		VISUAL_CONTEXTMENU_DUMP_SOURCE = "true".equals(Platform.getDebugOption(VpePlugin.PLUGIN_ID + "/debug/visual/contextmenu/dump_source")); //$NON-NLS-1$ //$NON-NLS-2$
 		VISUAL_CONTEXTMENU_DUMP_SELECTED_ELEMENT = "true".equals(Platform.getDebugOption(VpePlugin.PLUGIN_ID + "/debug/visual/contextmenu/dump_selected_element")); //$NON-NLS-1$ //$NON-NLS-2$
@@ -19,6 +19,7 @@ import org.jboss.tools.common.log.BaseUIPlugin;
 import org.jboss.tools.common.log.IPluginLog;
 import org.jboss.tools.usage.event.UsageEventType;
 import org.jboss.tools.usage.event.UsageReporter;
+import org.jboss.tools.vpe.editor.util.VpeStyleSheetCache;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 
@@ -75,6 +76,7 @@ public class VpePlugin extends BaseUIPlugin {
 	 * This method is called when the plug-in is stopped
 	 */
 	public void stop(BundleContext context) throws Exception {
+		VpeStyleSheetCache.dispose();
 		super.stop(context);
 	}
 
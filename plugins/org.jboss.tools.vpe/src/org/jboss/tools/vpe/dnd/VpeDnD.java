@@ -182,7 +182,7 @@ public class VpeDnD implements MozillaDndListener, MozillaSelectionListener, IVp
 		}
 		disposeDropableArea();
 		disposeDropHint();
-		vpeController.onRefresh();
+		vpeController.onVisualContentChanged();
 	}
 
 	public void dragExit(nsIDOMEvent domEvent) {
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.wst.sse.core.internal.provisional.INodeNotifier;
+import org.jboss.tools.vpe.editor.mapping.VpeDomMapping;
+import org.w3c.dom.Node;
+
+/**
+ * Finds the queued source change events whose visual update
+ * is already done by another queued event.
+ * <p>
+ * All queued events are replayed after the source has been changed,
+ * so every visual update reflects the final state of the source.
+ * Thus an event is <i>covered</i> if:
+ * <ul>
+ * <li>its node is not in the document anymore;</li>
+ * <li>a later event updates the same node in the same way
+ * (repeated text changes, attribute values, structure changes);</li>
+ * <li>the structure of its node or of an ancestor is changed, i.e. the whole
+ * subtree is rebuilt by the topmost changed ancestor.</li>
+ * </ul>
+ * An {@code ADD} or {@code REMOVE} event only cleans up the mappings of its
+ * child. It is covered if the child stays in the document inside a rebuilt
+ * subtree, otherwise it would remove the mappings the rebuild has created.
+ * The events of the removed children are never covered.
+ * <p>
+ * The structure change events covering other events are reported by
+ * {@link #isCovering(VpeEventBean)}, their update must not be skipped.
+ */
+public class VpeChangeEventCoalescer {
+
+	private final VpeDomMapping domMapping;
+
+	private final Set<VpeEventBean> covered = newIdentitySet();
+	private final Set<VpeEventBean> covering = newIdentitySet();
+	private int updatesCount = 0;
+
+	/**
+	 * @param domMapping mapping of the visual DOM used to check that a changed
+	 * ancestor is really rebuilt, may be {@code null} if all nodes are mapped
+	 */
+	public VpeChangeEventCoalescer(VpeDomMapping domMapping) {
+		this.domMapping = domMapping;
+	}
+
+	/**
+	 * Coalesces the queued events. The events are not modified,
+	 * the result is available through {@link #isCovered(VpeEventBean)},
+	 * {@link #isCovering(VpeEventBean)} and {@link #getUpdatesCount()}
+	 * until the next call.
+	 */
+	public void coalesce(List<VpeEventBean> events) {
+		clear();
+		Map<Node, VpeEventBean> structureChanges = new IdentityHashMap<Node, VpeEventBean>();
+		for (VpeEventBean event : events) {
+			if (event.getEventType() == INodeNotifier.STRUCTURE_CHANGED) {
+				VpeEventBean previous = structureChanges.put(
+						(Node) event.getNotifier(), event);
+				if (previous != null) {
+					covered.add(previous);
+				}
+			}
+		}
+
+		Set<Node> rebuilt = newIdentitySet();
+		for (Map.Entry<Node, VpeEventBean> entry : structureChanges.entrySet()) {
+			if (isAttached(entry.getKey()) && isMapped(entry.getKey())) {
+				rebuilt.add(entry.getKey());
+			} else {
+				covered.add(entry.getValue());
+			}
+		}
+		for (Map.Entry<Node, VpeEventBean> entry : structureChanges.entrySet()) {
+			if (!covered.contains(entry.getValue())) {
+				Node ancestor = findTopmost(entry.getKey().getParentNode(), rebuilt);
+				if (ancestor != null) {
+					covered.add(entry.getValue());
+					covering.add(structureChanges.get(ancestor));
+				}
+			}
+		}
+
+		/*
+		 * Walk backwards, so the last of the repeated changes is kept.
+		 */
+		Map<Object, Object> laterChanges = new IdentityHashMap<Object, Object>();
+		for (ListIterator<VpeEventBean> i = events.listIterator(events.size()); i.hasPrevious();) {
+			VpeEventBean event = i.previous();
+			Node node = (Node) event.getNotifier();
+			switch (event.getEventType()) {
+			case INodeNotifier.CHANGE:
+				if (!isAttached(node)) {
+					covered.add(event);
+					break;
+				}
+				Node ancestor = findTopmost(node, rebuilt);
+				if (ancestor != null) {
+					covered.add(event);
+					covering.add(structureChanges.get(ancestor));
+					break;
+				}
+				boolean repeated;
+				if (isAttributeChange(event)) {
+					Object attr = event.getFeature();
+					if (event.getNewValue() == null) {
+						// a removed attribute may be renamed, keep the values around it
+						laterChanges.remove(attr);
+						repeated = false;
+					} else {
+						repeated = laterChanges.put(attr, event) != null;
+					}
+				} else {
+					repeated = laterChanges.put(node, event) != null;
+				}
+				if (repeated) {
+					covered.add(event);
+				} else {
+					updatesCount++;
+				}
+				break;
+			case INodeNotifier.CONTENT_CHANGED:
+				if (!isAttached(node) || findTopmost(node, rebuilt) != null) {
+					covered.add(event);
+				}
+				break;
+			case INodeNotifier.STRUCTURE_CHANGED:
+				if (!covered.contains(event)) {
+					updatesCount++;
+				}
+				break;
+			case INodeNotifier.ADD:
+			case INodeNotifier.REMOVE:
+				Node child = getChild(event);
+				if (child != null && isAttached(child)) {
+					Node rebuiltAncestor = findTopmost(child.getParentNode(), rebuilt);
+					if (rebuiltAncestor != null) {
+						covered.add(event);
+						covering.add(structureChanges.get(rebuiltAncestor));
+					}
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Checks if the visual update of the event is done by another event.
+	 */
+	public boolean isCovered(VpeEventBean event) {
+		return covered.contains(event);
+	}
+
+	/**
+	 * Checks if the event is a structure change which rebuilds
+	 * the nodes of covered events.
+	 */
+	public boolean isCovering(VpeEventBean event) {
+		return covering.contains(event);
+	}
+
+	/**
+	 * Returns the number of the node updates, i.e. the rebuilt subtrees,
+	 * the text changes and the attribute changes, done by the events
+	 * that are not covered.
+	 */
+	public int getUpdatesCount() {
+		return updatesCount;
+	}
+
+	public void clear() {
+		covered.clear();
+		covering.clear();
+		updatesCount = 0;
+	}
+
+	private boolean isAttributeChange(VpeEventBean event) {
+		return event.getFeature() instanceof Node
+				&& ((Node) event.getFeature()).getNodeType() == Node.ATTRIBUTE_NODE;
+	}
+
+	/**
+	 * Returns the added or removed child of the event.
+	 */
+	private static Node getChild(VpeEventBean event) {
+		Object child = event.getEventType() == INodeNotifier.ADD
+				? event.getNewValue() : event.getFeature();
+		return child instanceof Node ? (Node) child : null;
+	}
+
+	private boolean isMapped(Node node) {
+		return domMapping == null
+				|| node.getNodeType() == Node.DOCUMENT_NODE
+				|| domMapping.getNodeMapping(node) != null;
+	}
+
+	/**
+	 * Returns the topmost of the node and its ancestors contained in the set.
+	 */
+	private static Node findTopmost(Node node, Set<Node> nodes) {
+		if (nodes.isEmpty()) {
+			return null;
+		}
+		Node topmost = null;
+		while (node != null) {
+			if (nodes.contains(node)) {
+				topmost = node;
+			}
+			node = node.getParentNode();
+		}
+		return topmost;
+	}
+
+	private static boolean isAttached(Node node) {
+		while (node != null) {
+			if (node.getNodeType() == Node.DOCUMENT_NODE) {
+				return true;
+			}
+			node = node.getParentNode();
+		}
+		return false;
+	}
+
+	private static <T> Set<T> newIdentitySet() {
+		return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+	}
+}
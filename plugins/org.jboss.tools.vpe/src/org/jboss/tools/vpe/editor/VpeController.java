@@ -101,6 +101,7 @@ import org.jboss.tools.vpe.VpePlugin;
 import org.jboss.tools.vpe.dnd.VpeDnD;
 import org.jboss.tools.vpe.editor.context.VpePageContext;
 import org.jboss.tools.vpe.editor.mapping.VpeDomMapping;
+import org.jboss.tools.vpe.editor.mapping.VpeElementMapping;
 import org.jboss.tools.vpe.editor.mapping.VpeNodeMapping;
 import org.jboss.tools.vpe.editor.menu.VpeMenuCreator;
 import org.jboss.tools.vpe.editor.mozilla.MozillaEditor;
@@ -126,6 +127,7 @@ import org.jboss.tools.vpe.editor.template.VpeTemplateManager;
 import org.jboss.tools.vpe.editor.template.ZoomEventManager;
 import org.jboss.tools.vpe.editor.toolbar.format.FormatControllerManager;
 import org.jboss.tools.vpe.editor.util.DocTypeUtil;
+import org.jboss.tools.vpe.editor.util.NamespaceScopeIndex;
 import org.jboss.tools.vpe.editor.util.SelectionUtil;
 import org.jboss.tools.vpe.editor.util.VisualDomUtil;
 import org.jboss.tools.vpe.editor.util.VpeDebugUtil;
@@ -229,8 +231,20 @@ public class VpeController extends VisualController implements INodeAdapter,
 	 * events
 	 */
 	private LinkedList<VpeEventBean> changeEvents;
+	private VpeChangeEventCoalescer changeEventCoalescer;
+	private int receivedChangeEventsCount = 0;
+	private int coalescedChangeEventsCount = 0;
 
 	Shell tip;
+	/** Time the pointer rests on an element before its tooltip is shown, in milliseconds */
+	private static final int HOVER_TOOLTIP_DELAY = 500;
+	/** Source element under the mouse pointer */
+	private Element hoveredSourceElement;
+	private final Runnable hoverTooltipTask = new Runnable() {
+		public void run() {
+			showHoverTooltip();
+		}
+	};
 
 	/**
 	 * selectionManager is used for management of selection
@@ -265,6 +279,7 @@ public class VpeController extends VisualController implements INodeAdapter,
 		bundleMap.init(sourceEditor.getEditorInput());
 		pageContext = new VpePageContext(bundleMap, editPart);
 		domMapping = new VpeDomMapping(pageContext);
+		changeEventCoalescer = new VpeChangeEventCoalescer(domMapping);
 		sourceBuilder = new VpeSourceDomBuilder(domMapping, this,
 				VpeTemplateManager.getInstance(), sourceEditor, pageContext);
 		visualBuilder = new VpeVisualDomBuilder(domMapping, this, visualEditor,
@@ -459,6 +474,7 @@ public class VpeController extends VisualController implements INodeAdapter,
 	}
 
 	public void dispose() {
+		setHoveredSourceElement(null);
 		if (job != null) {
 			job.cancel();
 			job = null;
@@ -599,6 +615,7 @@ public class VpeController extends VisualController implements INodeAdapter,
 			getChangeEvents().addLast(
 					new VpeEventBean(notifier, eventType, feature, oldValue,
 							newValue, pos));
+			receivedChangeEventsCount++;
 			if (uiJob == null) {
 				uiJob = new VPEUpdateJob(VpeUIMessages.VPE_UPDATE_JOB_TITLE);
 			}
@@ -650,6 +667,7 @@ public class VpeController extends VisualController implements INodeAdapter,
 			switch (eventType) {
 			case INodeNotifier.CHANGE:
 				sourceChangeFlag = true;
+				pageContext.getResolvedValueCache().invalidate((Node) notifier);
 				int type = ((Node) notifier).getNodeType();
 				visualEditor.hideResizer();
 				visualBuilder.clearSelectionRectangle();
@@ -669,6 +687,9 @@ public class VpeController extends VisualController implements INodeAdapter,
 					}
 				} else if ((feature != null)
 						&& ((Node) feature).getNodeType() == Node.ATTRIBUTE_NODE) {
+					if (NamespaceScopeIndex.isNamespaceDeclaration(((Attr) feature).getName())) {
+						pageContext.getNamespaceScopeIndex().invalidate((Node) notifier);
+					}
 					if (newValue != null) {
 						String attrName = ((Attr) feature).getName();
 						if ((Attr) feature == lastRemovedAttr
@@ -716,6 +737,11 @@ public class VpeController extends VisualController implements INodeAdapter,
 					commentNodeChanged = true;
 				} else {
 					commentRemoveCount--;
+					/*
+					 * The node may be inserted somewhere else,
+					 * so its namespace scope has to be recomputed.
+					 */
+					pageContext.getNamespaceScopeIndex().invalidate((Node) feature);
 					visualBuilder.stopToggle((Node) feature);
 					visualBuilder.removeNode((Node) feature);
 				}
@@ -729,9 +755,10 @@ public class VpeController extends VisualController implements INodeAdapter,
 				 * https://jira.jboss.org/jira/browse/JBIDE-6067 
 				 * Update if action is connected with add or remove comment
 				 */
-				if (!commentNodeChanged ||(commentNodeChanged && (commentAddCount != 1 || commentRemoveCount != 1))) {
+				if (!isCommentOnlyChanged()) {
 					visualEditor.hideResizer();
 					visualBuilder.clearSelectionRectangle();
+					pageContext.getResolvedValueCache().invalidate((Node) notifier);
 					visualBuilder.updateNode((Node) notifier);
 				} else {
 					commentNodeChanged = false;
@@ -761,6 +788,61 @@ public class VpeController extends VisualController implements INodeAdapter,
 		}
 	}
 
+	private boolean isCommentOnlyChanged() {
+		return commentNodeChanged && commentAddCount == 1 && commentRemoveCount == 1;
+	}
+
+	/**
+	 * Does the bookkeeping of {@link #notifyChangedInUiThread} for the event
+	 * without updating the visual DOM, because the nodes of the event
+	 * are updated by another event.
+	 * 
+	 * @see VpeChangeEventCoalescer
+	 */
+	private void skipCoveredEvent(VpeEventBean event) {
+		switch (event.getEventType()) {
+		case INodeNotifier.CHANGE:
+			sourceChangeFlag = true;
+			pageContext.getResolvedValueCache().invalidate((Node) event.getNotifier());
+			Object feature = event.getFeature();
+			if (feature instanceof Attr
+					&& NamespaceScopeIndex.isNamespaceDeclaration(((Attr) feature).getName())) {
+				pageContext.getNamespaceScopeIndex().invalidate((Node) event.getNotifier());
+			}
+			break;
+		case INodeNotifier.STRUCTURE_CHANGED:
+			if (isCommentOnlyChanged()) {
+				commentNodeChanged = false;
+			}
+			commentAddCount = 0;
+			commentRemoveCount = 0;
+			break;
+		case INodeNotifier.CONTENT_CHANGED:
+			sourceChangeFlag = false;
+			break;
+		case INodeNotifier.ADD:
+			if (event.getNewValue() instanceof Node) {
+				if (Node.COMMENT_NODE == ((Node) event.getNewValue()).getNodeType()) {
+					commentAddCount++;
+				} else {
+					commentAddCount--;
+				}
+			}
+			break;
+		case INodeNotifier.REMOVE:
+			Node removedNode = (Node) event.getFeature();
+			if (Node.COMMENT_NODE == removedNode.getNodeType()) {
+				commentRemoveCount++;
+				commentNodeChanged = true;
+			} else {
+				commentRemoveCount--;
+				pageContext.getNamespaceScopeIndex().invalidate(removedNode);
+			}
+			break;
+		}
+		coalescedChangeEventsCount++;
+	}
+
 	// INodeSelectionListener implementation
 	public void nodeSelectionChanged(NodeSelectionChangedEvent event) {
 //		if (!switcher
@@ -960,6 +1042,7 @@ public class VpeController extends VisualController implements INodeAdapter,
 		if (VpeDebug.PRINT_VISUAL_MOUSE_EVENT) {
 			System.out.println("<<< mouseDown  targetNode:"); //$NON-NLS-1$
 		}
+		setHoveredSourceElement(null);
 		// selection will be set only if press left button
 		if (mouseEvent.getButton() == LEFT_BUTTON) {
 			// drag gesture isn't generated in XR 1.9 for Linux Platforms,
@@ -1021,6 +1104,52 @@ public class VpeController extends VisualController implements INodeAdapter,
 
 	public void mouseMove(nsIDOMMouseEvent mouseEvent) {
 		onRefresh();
+		nsIDOMNode visualNode = VisualDomUtil.getTargetNode(mouseEvent);
+		Element sourceElement = null;
+		if (visualNode != null && domMapping != null) {
+			VpeElementMapping elementMapping = domMapping.getNearElementMappingAtVisualNode(visualNode);
+			if (elementMapping != null && elementMapping.getSourceNode() instanceof Element) {
+				sourceElement = (Element) elementMapping.getSourceNode();
+			}
+		}
+		setHoveredSourceElement(sourceElement);
+	}
+
+	public void mouseOut(nsIDOMMouseEvent mouseEvent) {
+		// the pointer has left the page
+		if (mouseEvent.getRelatedTarget() == null) {
+			setHoveredSourceElement(null);
+		}
+	}
+
+	/**
+	 * Hides the tooltip of the previously hovered element and schedules
+	 * the tooltip of the new one, the tooltip is computed when it is shown.
+	 */
+	private void setHoveredSourceElement(Element sourceElement) {
+		if (sourceElement == hoveredSourceElement) {
+			return;
+		}
+		hoveredSourceElement = sourceElement;
+		onHideTooltip();
+		if (visualEditor != null && visualEditor.getControl() != null
+				&& !visualEditor.getControl().isDisposed()) {
+			// the task is rescheduled if the pointer moves before it is run
+			visualEditor.getControl().getDisplay().timerExec(
+					sourceElement != null ? HOVER_TOOLTIP_DELAY : -1, hoverTooltipTask);
+		}
+	}
+
+	private void showHoverTooltip() {
+		if (hoveredSourceElement == null || visualBuilder == null
+				|| visualEditor == null || visualEditor.getControl() == null
+				|| visualEditor.getControl().isDisposed()) {
+			return;
+		}
+		String tooltip = visualBuilder.getTooltip(hoveredSourceElement);
+		if (tooltip != null) {
+			onShowTooltip(0, 0, tooltip);
+		}
 	}
 
 	public void keyPress(nsIDOMKeyEvent keyEvent) {
@@ -1068,7 +1197,7 @@ public class VpeController extends VisualController implements INodeAdapter,
 				keyEvent.preventDefault();
 			}
 		}
-		onRefresh();
+		onVisualContentChanged();
 	}
 
 	public boolean isKeyBinding(Event keyboardEvent) {
@@ -1254,7 +1383,11 @@ public class VpeController extends VisualController implements INodeAdapter,
 	private class VPEUpdateJob extends UIJob {
 		private boolean cancelled = false;
 		
-		final static int MAX_EVENTS_TILL_REFRESH = 30;
+		/**
+		 * Maximum number of nodes to be updated after the events are coalesced,
+		 * the whole visual DOM is rebuilt if there are more.
+		 */
+		final static int MAX_UPDATES_TILL_REFRESH = 30;
 		
 		private VPEUpdateJob(String name) {
 			super(name);
@@ -1265,22 +1398,37 @@ public class VpeController extends VisualController implements INodeAdapter,
 			cancelled=false;
 			monitor.beginTask(VpeUIMessages.VPE_UPDATE_JOB_TITLE,
 					100);
+			/*
+			 * Events are collected while the source is being changed,
+			 * so the most of them are usually done by a few node updates.
+			 */
+			changeEventCoalescer.coalesce(getChangeEvents());
+			if (changeEventCoalescer.getUpdatesCount() > MAX_UPDATES_TILL_REFRESH) {
+				monitor.worked((int) (10000 / 2));
+				coalescedChangeEventsCount += changeEvents.size();
+				reinitImpl();
+				monitor.worked(10000);
+				changeEvents.clear();
+				changeEventCoalescer.clear();
+				return Status.OK_STATUS;
+			}
 			while (getChangeEvents().size() > 0) {
 				if (monitor.isCanceled() || cancelled) {
+					changeEventCoalescer.clear();
 					return Status.CANCEL_STATUS;
 				}
 				
-				if (changeEvents.size() > MAX_EVENTS_TILL_REFRESH) {
-					monitor.worked((int) (10000 / 2));
-					reinitImpl();
-					monitor.worked(10000);
-					changeEvents.clear();
-					return Status.OK_STATUS;
-				}
-				
 				monitor.worked((int) (100 / getChangeEvents().size()));
 				VpeEventBean eventBean = getChangeEvents().getFirst();
 				try {
+					if (changeEventCoalescer.isCovered(eventBean)) {
+						skipCoveredEvent(eventBean);
+						continue;
+					}
+					if (changeEventCoalescer.isCovering(eventBean)) {
+						// the covered nodes are updated only by this event
+						commentNodeChanged = false;
+					}
 					notifyChangedInUiThread(
 							eventBean.getNotifier(), eventBean
 									.getEventType(), eventBean
@@ -1299,6 +1447,15 @@ public class VpeController extends VisualController implements INodeAdapter,
 					getChangeEvents().remove(eventBean);
 				}
 			}
+			changeEventCoalescer.clear();
+			if (VpeDebug.PRINT_SOURCE_MUTATION_EVENT) {
+				System.out.println("VPE update: received events: " + receivedChangeEventsCount //$NON-NLS-1$
+						+ ", coalesced events: " + coalescedChangeEventsCount //$NON-NLS-1$
+						+ ", rebuilt nodes: " + getRebuiltNodesCount()); //$NON-NLS-1$
+			}
+			if (VpeDebug.PRINT_EL_RESOLUTION_STATISTICS && pageContext != null) {
+				System.out.println(pageContext.getResolvedValueCache().getStatistics());
+			}
 			// cause is to lock calls others events
 			if (editPart.getVisualMode() != VpeEditorPart.SOURCE_MODE) {
 				sourceSelectionChanged();
@@ -1703,20 +1860,26 @@ public class VpeController extends VisualController implements INodeAdapter,
 	 * Calls when editor content changed, and we should highlight selected element.
 	 */
 	public void onRefresh() {
-		// when we using separate thread to display selection rectangle
-		// it's working better than without
 		/*
 		 * HACK We need wait some time while standart event will be handled and
 		 * in process event handles some components are repainted(like buttons)
-		 * and flasher are not repainted, so we should paint flasher
+		 * and flasher are not repainted, so we should paint flasher.
+		 * The scheduler draws it once per frame however often it is requested.
 		 */
+		if (getXulRunnerEditor() != null) {
+			getXulRunnerEditor().scheduleSelectionRectangleRedraw();
+		}
+	}
 
-		Display.getDefault().asyncExec(new Thread() {
-			public void run() {
-				if (getXulRunnerEditor() != null)
-					getXulRunnerEditor().redrawSelectionRectangle();
-			}
-		});
+	/**
+	 * Calls when visual DOM has been changed by the editor, the selected
+	 * elements are looked up again when the selection is highlighted.
+	 */
+	public void onVisualContentChanged() {
+		if (getXulRunnerEditor() != null) {
+			getXulRunnerEditor().invalidateSelectionRectangle();
+		}
+		onRefresh();
 	}
 
 	/**
@@ -1762,6 +1925,28 @@ public class VpeController extends VisualController implements INodeAdapter,
 		return changeEvents;
 	}
 
+	/**
+	 * @return the number of source change events queued for the visual update
+	 */
+	public int getReceivedChangeEventsCount() {
+		return receivedChangeEventsCount;
+	}
+
+	/**
+	 * @return the number of queued source change events which
+	 * have not updated the visual DOM because other events have done it
+	 */
+	public int getCoalescedChangeEventsCount() {
+		return coalescedChangeEventsCount;
+	}
+
+	/**
+	 * @return the number of visual nodes rebuilt by the visual updates
+	 */
+	public int getRebuiltNodesCount() {
+		return visualBuilder == null ? 0 : visualBuilder.getRebuiltNodesCount();
+	}
+
 	public void reinit() {
 		if (reinitJob != null) {
 			reinitJob.cancel();
@@ -10,14 +10,13 @@
  ******************************************************************************/ 
 package org.jboss.tools.vpe.editor;
 
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
 
 import org.eclipse.wst.sse.core.internal.provisional.INodeAdapter;
 import org.eclipse.wst.sse.core.internal.provisional.INodeNotifier;
 import org.jboss.tools.vpe.editor.mapping.VpeDomMapping;
 import org.jboss.tools.vpe.editor.mapping.VpeNodeMapping;
+import org.jboss.tools.vpe.editor.mapping.VpeSourceNodeRegistry;
 import org.jboss.tools.vpe.editor.template.VpeTemplateManager;
 import org.w3c.dom.Node;
 
@@ -25,7 +24,7 @@ public class VpeDomBuilder {
 	protected VpeDomMapping domMapping;
 	
 	private INodeAdapter sorceAdapter;
-	private List<Node> sourceNodes = new ArrayList();
+	private VpeSourceNodeRegistry sourceNodes = new VpeSourceNodeRegistry();
 
 	public VpeDomBuilder(VpeDomMapping domMapping, INodeAdapter sorceAdapter) {
 		this.domMapping = domMapping;
@@ -51,9 +50,8 @@ public class VpeDomBuilder {
  		 * is not used because of JBIDE-8049 (JBIDE-8051)
  		 * (PDT implementation of getExistingAdapter(Object type) works
  		 * incorrectly with non Class parameters) */
-		if (!sourceNodes.contains(sourceNode)) {
+		if (sourceNodes.add(sourceNode)) {
 			((INodeNotifier) sourceNode).addAdapter(sorceAdapter);
-			sourceNodes.add(sourceNode);
 		}
 	}
 	public void dispose() {
@@ -70,7 +68,7 @@ public class VpeDomBuilder {
 		return sorceAdapter;
 	}
 
-	public List<Node> getSourceNodes() {
+	public VpeSourceNodeRegistry getSourceNodes() {
 		return sourceNodes;
 	}
 }
@@ -77,6 +77,7 @@ import org.jboss.tools.vpe.VpePlugin;
 import org.jboss.tools.vpe.editor.mozilla.MozillaEditor;
 import org.jboss.tools.vpe.editor.mozilla.MozillaPreview;
 import org.jboss.tools.vpe.editor.mozilla.listener.EditorLoadWindowListener;
+import org.jboss.tools.vpe.editor.preferences.VpePreferencesPage;
 import org.jboss.tools.vpe.editor.util.VpeStyleUtil;
 import org.jboss.tools.vpe.editor.xpl.CustomSashForm;
 import org.jboss.tools.vpe.editor.xpl.CustomSashForm.ICustomSashFormListener;
@@ -1158,6 +1159,17 @@ public class VpeEditorPart extends EditorPart implements
 				doVisualRefresh = true;
 			}
 			
+			/*
+			 * Take effect with the next build or update of the visual DOM,
+			 * no refresh is needed.
+			 */
+			getController().getVisualBuilder().setBuildInFragment(
+					WebUiPlugin.getDefault().getPreferenceStore().getBoolean(
+							VpePreferencesPage.BUILD_VISUAL_DOM_IN_FRAGMENT));
+			getController().getVisualBuilder().setReconcileUpdatedNodes(
+					WebUiPlugin.getDefault().getPreferenceStore().getBoolean(
+							VpePreferencesPage.RECONCILE_UPDATED_VISUAL_NODES));
+
 			boolean prefsShowVPEToolBar = WebUiPlugin.getDefault().getPreferenceStore()
 					.getBoolean(IVpePreferencesPage.SHOW_VISUAL_TOOLBAR);
 			setVerticalToolbarVisible(prefsShowVPEToolBar);
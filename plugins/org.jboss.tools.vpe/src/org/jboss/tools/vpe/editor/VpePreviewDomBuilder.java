@@ -91,7 +91,6 @@ public class VpePreviewDomBuilder extends VpeVisualDomBuilder {
 			nsIDOMNode visualNewNode;
 			visualNewNode = creationData.getNode();
 			if(sourceNode instanceof Element && visualNewNode != null) {		
-				setTooltip((Element)sourceNode, queryInterface(visualNewNode, nsIDOMElement.class));
 				correctVisualAttribute(queryInterface(visualNewNode, nsIDOMElement.class));
 			}
 			if (template.hasChildren()) {
@@ -12,11 +12,8 @@ package org.jboss.tools.vpe.editor;
 
 import static org.jboss.tools.vpe.xulrunner.util.XPCOM.queryInterface;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -28,7 +25,6 @@ import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IStorage;
-import org.eclipse.core.runtime.Path;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IFileEditorInput;
@@ -39,6 +35,7 @@ import org.eclipse.wst.xml.core.internal.provisional.document.IDOMElement;
 import org.jboss.tools.common.resref.core.ResourceReference;
 import org.jboss.tools.jst.web.ui.internal.editor.preferences.IVpePreferencesPage;
 import org.jboss.tools.jst.web.ui.WebUiPlugin;
+import org.jboss.tools.vpe.VpeDebug;
 import org.jboss.tools.vpe.VpePlugin;
 import org.jboss.tools.vpe.editor.context.VpePageContext;
 import org.jboss.tools.vpe.editor.mapping.VpeDomMapping;
@@ -46,6 +43,7 @@ import org.jboss.tools.vpe.editor.mapping.VpeElementData;
 import org.jboss.tools.vpe.editor.mapping.VpeElementMapping;
 import org.jboss.tools.vpe.editor.mapping.VpeNodeMapping;
 import org.jboss.tools.vpe.editor.mozilla.MozillaEditor;
+import org.jboss.tools.vpe.editor.preferences.VpePreferencesPage;
 import org.jboss.tools.vpe.editor.proxy.VpeProxyUtil;
 import org.jboss.tools.vpe.editor.template.VpeChildrenInfo;
 import org.jboss.tools.vpe.editor.template.VpeCreationData;
@@ -62,12 +60,15 @@ import org.jboss.tools.vpe.editor.util.Docbook;
 import org.jboss.tools.vpe.editor.util.FaceletUtil;
 import org.jboss.tools.vpe.editor.util.HTML;
 import org.jboss.tools.vpe.editor.util.TextUtil;
+import org.jboss.tools.vpe.editor.util.VpeStyleSheetCache;
+import org.jboss.tools.vpe.editor.util.VpeStyleSheetCache.StyleSheet;
 import org.jboss.tools.vpe.editor.util.VpeStyleUtil;
 import org.jboss.tools.vpe.editor.util.XmlUtil;
 import org.jboss.tools.vpe.resref.core.CSSReferenceList;
 import org.jboss.tools.vpe.xulrunner.editor.XulRunnerEditor;
 import org.mozilla.interfaces.nsIDOMAttr;
 import org.mozilla.interfaces.nsIDOMDocument;
+import org.mozilla.interfaces.nsIDOMDocumentFragment;
 import org.mozilla.interfaces.nsIDOMElement;
 import org.mozilla.interfaces.nsIDOMNamedNodeMap;
 import org.mozilla.interfaces.nsIDOMNode;
@@ -132,6 +133,10 @@ public class VpeVisualDomBuilder extends VpeDomBuilder {
 	private Map<IStorage, Document> includeDocuments = new HashMap<IStorage, Document>();
 	private boolean showInvisibleTags;
 	private boolean showBorderForUnknownTags;
+	private boolean buildInFragment;
+	private boolean reconcileUpdatedNodes;
+	/** Number of the visual nodes rebuilt by {@link #updateNode(Node)} */
+	private int rebuiltNodesCount = 0;
 	public static final List<nsIDOMNode> EMPTY_SELECTION = Collections.unmodifiableList(new ArrayList<nsIDOMNode>(0));
 
 	public VpeVisualDomBuilder(VpeDomMapping domMapping, INodeAdapter sorceAdapter,
@@ -145,6 +150,10 @@ public class VpeVisualDomBuilder extends VpeDomBuilder {
 				IVpePreferencesPage.SHOW_NON_VISUAL_TAGS);
 		this.showBorderForUnknownTags = WebUiPlugin.getDefault().getPreferenceStore().getBoolean(
 				IVpePreferencesPage.SHOW_BORDER_FOR_UNKNOWN_TAGS);
+		this.buildInFragment = WebUiPlugin.getDefault().getPreferenceStore().getBoolean(
+				VpePreferencesPage.BUILD_VISUAL_DOM_IN_FRAGMENT);
+		this.reconcileUpdatedNodes = WebUiPlugin.getDefault().getPreferenceStore().getBoolean(
+				VpePreferencesPage.RECONCILE_UPDATED_VISUAL_NODES);
 	}
 
 	public void buildDom(Document sourceDocument) {
@@ -183,13 +192,30 @@ public class VpeVisualDomBuilder extends VpeDomBuilder {
 		 * Additional check for facelet's taglibs should be added
 		 * to distinguish it from custom tags and pages without facelets support.
 		 */
+		/*
+		 * When the page is built in a document fragment, the visual document
+		 * is changed only once, when the fragment is inserted, instead of
+		 * each time a top level node is added to the content area.
+		 * This saves the layout work of the browser only: the nodes are still
+		 * created and appended one by one through XPCOM, so the number
+		 * of the calls to the browser stays the same.
+		 */
+		nsIDOMNode visualContainer = getContentArea();
+		nsIDOMDocumentFragment visualFragment = null;
+		if (buildInFragment) {
+			visualFragment = getVisualDocument().createDocumentFragment();
+			visualContainer = visualFragment;
+		}
 		Element root = FaceletUtil.findComponentElement(sourceDocument.getDocumentElement());
 		if ((root != null)
 				&& (FaceletUtil.isFacelet(root,
 						XmlUtil.getTaglibsForNode(root, pageContext)))) {
-				addNode(root, null, getContentArea());
+				addNode(root, null, visualContainer);
 		} else {
-			addNode(sourceDocument, null, getContentArea());
+			addNode(sourceDocument, null, visualContainer);
+		}
+		if (visualFragment != null) {
+			getContentArea().appendChild(visualFragment);
 		}
 		/*
 		 * Fixes http://jira.jboss.com/jira/browse/JBIDE-2126. To provide
@@ -197,9 +223,13 @@ public class VpeVisualDomBuilder extends VpeDomBuilder {
 		 * mapped in any case.
 		 */
 		registerNodes(new VpeNodeMapping(sourceDocument, getContentArea()));
+		if (VpeDebug.PRINT_EL_RESOLUTION_STATISTICS) {
+			System.out.println(pageContext.getResolvedValueCache().getStatistics());
+		}
 	}
 
 	public void rebuildDom(Document sourceDocument) {
+		rebuiltNodesCount++;
 		// clearIncludeDocuments();
 		cleanHead();
 		domMapping.clear(getContentArea());
@@ -265,34 +295,7 @@ public class VpeVisualDomBuilder extends VpeDomBuilder {
 //			// just ignore this exception
 //		}
 				if (visualNewNode != null) {
-					/*
-					 * https://jira.jboss.org/jira/browse/JBIDE-3373 
-					 * Do not add additional visual node for f:facet 
-					 * when it is inserted into existing one.
-					 */
-					nsIDOMElement element = null;
-					try {
-						element = queryInterface(visualNewNode, nsIDOMElement.class);
-					} catch (org.mozilla.xpcom.XPCOMException e) {
-						/*
-						 * Cannot parse node to element, do nothing
-						 */
-					}
-					if (!((null != element) && element.hasAttribute(VPE_FACET))) {
-						nsIDOMNode registeredVisualNewNode = null;
-						if (visualNextNode == null) {
-							registeredVisualNewNode = visualContainer.appendChild(visualNewNode);
-						} else {
-							registeredVisualNewNode = visualContainer.insertBefore(visualNewNode, visualNextNode);
-						}
-						/*
-						 * https://issues.jboss.org/browse/JBIDE-9932
-						 * Update visual node in vpe mapping.
-						 */
-						if (onlyOneIncludeStack) {
-							domMapping.remapVisualNode(visualNewNode, registeredVisualNewNode);
-						}
-					}
+					insertNode(visualNewNode, visualNextNode, visualContainer, onlyOneIncludeStack);
 					return true;
 				}
 		} catch (XPCOMException xpcomException) {
@@ -300,6 +303,84 @@ public class VpeVisualDomBuilder extends VpeDomBuilder {
 		}
 		return false;
 	}
+
+	/**
+	 * Creates visual representation of the updated {@code sourceNode}
+	 * and puts it in place of {@code visualOldNode}.
+	 * <p>
+	 * If the updated nodes are reconciled and the old visual node can be
+	 * reused, only the differences are applied to it, so the unchanged
+	 * visual nodes stay in the visual DOM.
+	 * 
+	 * @param sourceNode updated source node, cannot be {@code null}
+	 * @param visualOldNode old visual representation of the node, must have a parent 
+	 * @param oldSourceNodes source nodes of the old visual nodes,
+	 * {@code null} if the updated nodes are not reconciled
+	 * @see VpeVisualDomReconciler
+	 */
+	private void replaceNode(Node sourceNode, nsIDOMNode visualOldNode,
+			Map<nsIDOMNode, Node> oldSourceNodes) {
+		nsIDOMNode visualContainer = visualOldNode.getParentNode();
+		nsIDOMNode visualNextNode = visualOldNode.getNextSibling();
+		boolean onlyOneIncludeStack = isCurrentMainDocument();
+		try {
+			nsIDOMNode visualNewNode = createNode(sourceNode, visualContainer, onlyOneIncludeStack);
+			if (visualNewNode != null) {
+				/*
+				 * Mappings of included documents are not registered,
+				 * so their nodes cannot be paired.
+				 */
+				if (oldSourceNodes != null && onlyOneIncludeStack && !isFacet(visualNewNode)
+						&& new VpeVisualDomReconciler(domMapping, oldSourceNodes)
+								.reconcile(visualOldNode, visualNewNode)) {
+					return;
+				}
+				insertNode(visualNewNode, visualNextNode, visualContainer, onlyOneIncludeStack);
+			}
+		} catch (XPCOMException xpcomException) {
+			VpePlugin.reportProblem(xpcomException);
+		}
+		// If add the new node after deleting the old, in some cases
+		// XULRunner will work in unexpected way (see JBIDE-3473)
+		// so it is necessary to remove the old child AFTER adding the new 
+		visualContainer.removeChild(visualOldNode);
+	}
+
+	private void insertNode(nsIDOMNode visualNewNode, nsIDOMNode visualNextNode,
+			nsIDOMNode visualContainer, boolean onlyOneIncludeStack) {
+		/*
+		 * https://jira.jboss.org/jira/browse/JBIDE-3373 
+		 * Do not add additional visual node for f:facet 
+		 * when it is inserted into existing one.
+		 */
+		if (!isFacet(visualNewNode)) {
+			nsIDOMNode registeredVisualNewNode = null;
+			if (visualNextNode == null) {
+				registeredVisualNewNode = visualContainer.appendChild(visualNewNode);
+			} else {
+				registeredVisualNewNode = visualContainer.insertBefore(visualNewNode, visualNextNode);
+			}
+			/*
+			 * https://issues.jboss.org/browse/JBIDE-9932
+			 * Update visual node in vpe mapping.
+			 */
+			if (onlyOneIncludeStack) {
+				domMapping.remapVisualNode(visualNewNode, registeredVisualNewNode);
+			}
+		}
+	}
+
+	private boolean isFacet(nsIDOMNode visualNode) {
+		nsIDOMElement element = null;
+		try {
+			element = queryInterface(visualNode, nsIDOMElement.class);
+		} catch (org.mozilla.xpcom.XPCOMException e) {
+			/*
+			 * Cannot parse node to element, do nothing
+			 */
+		}
+		return (null != element) && element.hasAttribute(VPE_FACET);
+	}
 	
 	/**
 	 * Creates new visual node representing {@code sourceNode} and its descendants.
@@ -429,10 +510,6 @@ public class VpeVisualDomBuilder extends VpeDomBuilder {
 			}
 		}
 
-		if (sourceNode instanceof Element && visualNewNode != null
-				&& visualNewNode.getNodeType() == nsIDOMNode.ELEMENT_NODE) {
-			setTooltip((Element) sourceNode, queryInterface(visualNewNode, nsIDOMElement.class));
-		}
 		VpeElementMapping elementMapping = null;
 		/*
 		 * Even when 'visualNewNode=null' VpeElementMapping
@@ -766,6 +843,14 @@ public class VpeVisualDomBuilder extends VpeDomBuilder {
 		}
 	}
 
+	/**
+	 * @return the number of the nodes rebuilt by {@link #updateNode(Node)},
+	 * the whole document counts as one
+	 */
+	public int getRebuiltNodesCount() {
+		return rebuiltNodesCount;
+	}
+
 	private void updateElement(Node sourceNode) {
 		VpeElementMapping elementMapping = null;
 		VpeNodeMapping nodeMapping = domMapping.getNodeMapping(sourceNode);
@@ -793,7 +878,12 @@ public class VpeVisualDomBuilder extends VpeDomBuilder {
 		}
 		/*
 		 * 1) Remove source node from mappings and lists.
+		 * The old visual nodes are kept to be reconciled with the new ones.
 		 */
+		Map<nsIDOMNode, Node> oldSourceNodes = null;
+		if (reconcileUpdatedNodes) {
+			oldSourceNodes = VpeVisualDomReconciler.getVisualNodes(domMapping, sourceNode);
+		}
 		nsIDOMNode visualOldNode = domMapping.remove(sourceNode);
 		getSourceNodes().remove(sourceNode);
 		if (sourceNode instanceof INodeNotifier) {
@@ -803,14 +893,9 @@ public class VpeVisualDomBuilder extends VpeDomBuilder {
 		 * 2) Add new visual node for this source node.
 		 */
 		if (visualOldNode != null) {
-			nsIDOMNode visualContainer = visualOldNode.getParentNode();
-			nsIDOMNode visualNextNode = visualOldNode.getNextSibling();
-			if (visualContainer != null) {
-				addNode(sourceNode, visualNextNode, visualContainer);
-				// If add the new node after deleting the old, in some cases
-				// XULRunner will work in unexpected way (see JBIDE-3473)
-				// so it is necessary to remove the old child AFTER adding the new 
-				visualContainer.removeChild(visualOldNode);
+			if (visualOldNode.getParentNode() != null) {
+				rebuiltNodesCount++;
+				replaceNode(sourceNode, visualOldNode, oldSourceNodes);
 			}
 		} else {
 			// Max Areshkau Why we need update parent node when we update text
@@ -1113,52 +1198,25 @@ public class VpeVisualDomBuilder extends VpeDomBuilder {
 			/* Copy links attributes into our <style> */
 			inlineStyle.setAttribute(VpeTemplateManager.ATTR_LINK_HREF, href_val);
 			inlineStyle.setAttribute(VpeTemplateManager.ATTR_LINK_EXT, ext_val);
-			BufferedReader in = null;
 			try {
-				StringBuilder styleText = new StringBuilder(EMPTY_STRING);
-				URL url = new URL((new Path(href_val)).toOSString());
-				String fileName = url.getFile();
-				in = new BufferedReader(new FileReader((fileName)));
-				String str = EMPTY_STRING;
-				while ((str = in.readLine()) != null) {
-					styleText.append(str);
-				}
-				in.close();
-
-				String styleForParse = styleText.toString();
 				/*
-				 * https://issues.jboss.org/browse/JBIDE-5861
-				 * Remove CSS comments first:
+				 * The style sheet is read and processed once
+				 * for all the pages linking it.
 				 */
-				styleForParse = VpeStyleUtil.removeAllCssComments(styleForParse);
-				List<String> imports = VpeStyleUtil.findCssImportConstruction(styleForParse, pageContext);
-				if (imports.size() > 0) {
-					for (String key : imports) {
-						/*
-						 * Add nested @import constructions
-						 */
-						addLinkNodeToHead(key, "css_nested_import_construction", false); //$NON-NLS-1$
-					}
+				StyleSheet styleSheet = VpeStyleSheetCache.getInstance().get(href_val);
+				List<String> imports = VpeStyleUtil.resolveCssImports(styleSheet.getImports(), pageContext);
+				for (String key : imports) {
 					/*
-					 * Replace @import constructions
+					 * Add nested @import constructions
 					 */
-					styleForParse = VpeStyleUtil.removeAllCssImportConstructions(styleForParse);
+					addLinkNodeToHead(key, "css_nested_import_construction", false); //$NON-NLS-1$
 				}
-				styleForParse = VpeStyleUtil.addFullPathIntoURLValue(styleForParse, href_val);
-				inlineStyle.appendChild(getVisualDocument().createTextNode(styleForParse));
+				inlineStyle.appendChild(getVisualDocument().createTextNode(styleSheet.getText()));
 				return inlineStyle;
 			} catch (FileNotFoundException fnfe) {
 				/* File which was pointed by user is not exists. Do nothing. */
 			} catch (IOException ioe) {
 				VpePlugin.getPluginLog().logError(ioe.getMessage(), ioe);
-			} finally {
-				if (in != null) {
-					try {
-						in.close();
-					} catch (IOException e) {
-						VpePlugin.getPluginLog().logError(e);
-					}
-				}
 			}
 		}
 
@@ -1347,41 +1405,19 @@ public class VpeVisualDomBuilder extends VpeDomBuilder {
 		return true;
 	}
 
-	protected void setTooltip(Element sourceElement, nsIDOMElement visualElement) {
-		if (visualElement != null && sourceElement != null
-				&& !((IDOMElement) sourceElement).isJSPTag()) {
-			if (HTML.TAG_HTML.equalsIgnoreCase(sourceElement.getNodeName())) {
-				return;
-			}
-			String titleValue = getTooltip(sourceElement);
-
-			if (titleValue != null) {
-				titleValue = titleValue.replaceAll("&", "&amp;"); //$NON-NLS-1$ //$NON-NLS-2$
-				titleValue = titleValue.replaceAll("<", "&lt;"); //$NON-NLS-1$ //$NON-NLS-2$
-				titleValue = titleValue.replaceAll(">", "&gt;"); //$NON-NLS-1$ //$NON-NLS-2$
-			}
-
-			if (titleValue != null) {
-				// visualElement.setAttribute("title", titleValue);
-				setTooltip(visualElement, titleValue);
-			}
-		}
-	}
-
-	protected void setTooltip(nsIDOMElement visualElement, String titleValue) {
-		visualElement.setAttribute(HTML.ATTR_TITLE, titleValue);
-		nsIDOMNodeList children = visualElement.getChildNodes();
-		long len = children.getLength();
-		for (long i = 0; i < len; i++) {
-			nsIDOMNode child = children.item(i);
-			if (child.getNodeType() == nsIDOMNode.ELEMENT_NODE) {
-				setTooltip((queryInterface(child, nsIDOMElement.class)),
-						titleValue);
-			}
+	/**
+	 * Returns the tooltip shown when the mouse pointer hovers the visual
+	 * nodes of the source element. It is computed on demand, no title
+	 * attributes are set to the visual nodes.
+	 * 
+	 * @return the tooltip or {@code null} if the element has no tooltip
+	 */
+	public String getTooltip(Element sourceElement) {
+		if (sourceElement == null
+				|| (sourceElement instanceof IDOMElement && ((IDOMElement) sourceElement).isJSPTag())
+				|| HTML.TAG_HTML.equalsIgnoreCase(sourceElement.getNodeName())) {
+			return null;
 		}
-	}
-	
-	private String getTooltip(Element sourceElement) {
 		StringBuilder buffer = new StringBuilder();
 		buffer.append(sourceElement.getNodeName());
 		NamedNodeMap attrs = sourceElement.getAttributes();
@@ -1551,6 +1587,32 @@ public class VpeVisualDomBuilder extends VpeDomBuilder {
 		return showBorderForUnknownTags;
 	}
 
+	public boolean isBuildInFragment() {
+		return buildInFragment;
+	}
+
+	/**
+	 * @param buildInFragment {@code true} to build the visual DOM of the page
+	 * in a document fragment and insert it into the visual document at once,
+	 * it does not reduce the number of the calls to the browser
+	 */
+	public void setBuildInFragment(boolean buildInFragment) {
+		this.buildInFragment = buildInFragment;
+	}
+
+	public boolean isReconcileUpdatedNodes() {
+		return reconcileUpdatedNodes;
+	}
+
+	/**
+	 * @param reconcileUpdatedNodes {@code true} to apply the differences of
+	 * an updated visual subtree to the old one instead of replacing it
+	 * @see VpeVisualDomReconciler
+	 */
+	public void setReconcileUpdatedNodes(boolean reconcileUpdatedNodes) {
+		this.reconcileUpdatedNodes = reconcileUpdatedNodes;
+	}
+
 	public void setShowBorderForUnknownTags(boolean showBorderForUnknownTags) {
 		this.showBorderForUnknownTags = showBorderForUnknownTags;
 	}
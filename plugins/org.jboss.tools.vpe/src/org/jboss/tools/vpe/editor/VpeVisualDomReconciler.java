@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor;
+
+import static org.jboss.tools.vpe.xulrunner.util.XPCOM.queryInterface;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.tools.vpe.editor.mapping.NodeData;
+import org.jboss.tools.vpe.editor.mapping.VpeDomMapping;
+import org.jboss.tools.vpe.editor.mapping.VpeElementMapping;
+import org.jboss.tools.vpe.editor.mapping.VpeNodeMapping;
+import org.mozilla.interfaces.nsIDOMElement;
+import org.mozilla.interfaces.nsIDOMNamedNodeMap;
+import org.mozilla.interfaces.nsIDOMNode;
+import org.mozilla.interfaces.nsIDOMNodeList;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Applies a freshly created visual subtree to the visual subtree
+ * it replaces, so that only the differences are written to the visual DOM.
+ * <p>
+ * Old and new visual nodes are paired by the source nodes they are mapped to,
+ * nodes created by templates without own mapping are paired by position.
+ * A pair of nodes with the same type and name is reused: the attributes and
+ * the text of the old node are updated and the mapping of the new node is
+ * moved to the old one. Otherwise the new node takes the place of the old one.
+ * <p>
+ * Nodes whose mapping keeps template specific data are never reused,
+ * because the data may refer to the new visual nodes. Only the visual nodes
+ * of {@link org.jboss.tools.vpe.editor.mapping.VpeElementData} are remapped.
+ * <p>
+ * The reconciliation reads the attributes and the children of both subtrees
+ * through XPCOM, so it makes more XPCOM calls than the replacement while
+ * it writes less to the visual document. It is used only if
+ * {@link org.jboss.tools.vpe.editor.preferences.VpePreferencesPage#RECONCILE_UPDATED_VISUAL_NODES}
+ * is set.
+ *
+ * @see VpeVisualDomBuilder#updateNode(Node)
+ */
+public class VpeVisualDomReconciler {
+
+	private final VpeDomMapping domMapping;
+	/** Source nodes the old visual nodes were mapped to. */
+	private final Map<nsIDOMNode, Node> oldSourceNodes;
+	/** Reused old visual nodes by the new ones. */
+	private final Map<nsIDOMNode, nsIDOMNode> reusedNodes = new HashMap<nsIDOMNode, nsIDOMNode>();
+
+	/**
+	 * @param domMapping the mapping with the new visual nodes registered
+	 * @param oldSourceNodes source nodes of the old visual nodes,
+	 * see {@link #getVisualNodes(VpeDomMapping, Node)}
+	 */
+	public VpeVisualDomReconciler(VpeDomMapping domMapping, Map<nsIDOMNode, Node> oldSourceNodes) {
+		this.domMapping = domMapping;
+		this.oldSourceNodes = oldSourceNodes;
+	}
+
+	/**
+	 * Collects the visual nodes currently mapped to the source node and its
+	 * descendants. It has to be called before the mappings are removed.
+	 *
+	 * @return source nodes by their visual nodes
+	 */
+	public static Map<nsIDOMNode, Node> getVisualNodes(VpeDomMapping domMapping, Node sourceNode) {
+		Map<nsIDOMNode, Node> visualNodes = new HashMap<nsIDOMNode, Node>();
+		collectVisualNodes(domMapping, sourceNode, visualNodes);
+		return visualNodes;
+	}
+
+	private static void collectVisualNodes(VpeDomMapping domMapping, Node sourceNode,
+			Map<nsIDOMNode, Node> visualNodes) {
+		nsIDOMNode visualNode = domMapping.getVisualNode(sourceNode);
+		if (visualNode != null) {
+			visualNodes.put(visualNode, sourceNode);
+		}
+		NodeList children = sourceNode.getChildNodes();
+		if (children != null) {
+			for (int i = 0; i < children.getLength(); i++) {
+				collectVisualNodes(domMapping, children.item(i), visualNodes);
+			}
+		}
+	}
+
+	/**
+	 * Updates the old visual node to look like the new one.
+	 *
+	 * @return {@code true} if the old node is reused and the new one is
+	 * not needed anymore, {@code false} if the old node cannot be reused,
+	 * nothing is changed in this case
+	 */
+	public boolean reconcile(nsIDOMNode visualOldNode, nsIDOMNode visualNewNode) {
+		if (!canReuse(visualOldNode, visualNewNode)) {
+			return false;
+		}
+		reusedNodes.clear();
+		reconcileNode(visualOldNode, visualNewNode);
+		remapReusedNodes();
+		return true;
+	}
+
+	private boolean canReuse(nsIDOMNode visualOldNode, nsIDOMNode visualNewNode) {
+		if (visualOldNode.getNodeType() != visualNewNode.getNodeType()
+				|| !visualOldNode.getNodeName().equalsIgnoreCase(visualNewNode.getNodeName())) {
+			return false;
+		}
+		VpeNodeMapping mapping = domMapping.getNodeMapping(visualNewNode);
+		if (mapping instanceof VpeElementMapping) {
+			Object data = ((VpeElementMapping) mapping).getData();
+			return data == null || (data instanceof Map<?, ?> && ((Map<?, ?>) data).isEmpty());
+		}
+		return true;
+	}
+
+	private void reconcileNode(nsIDOMNode visualOldNode, nsIDOMNode visualNewNode) {
+		reusedNodes.put(visualNewNode, visualOldNode);
+		switch (visualOldNode.getNodeType()) {
+		case nsIDOMNode.ELEMENT_NODE:
+			reconcileAttributes(queryInterface(visualOldNode, nsIDOMElement.class),
+					queryInterface(visualNewNode, nsIDOMElement.class));
+			reconcileChildren(visualOldNode, visualNewNode);
+			break;
+		case nsIDOMNode.TEXT_NODE:
+		case nsIDOMNode.CDATA_SECTION_NODE:
+		case nsIDOMNode.COMMENT_NODE:
+			String value = visualNewNode.getNodeValue();
+			if (value == null ? visualOldNode.getNodeValue() != null
+					: !value.equals(visualOldNode.getNodeValue())) {
+				visualOldNode.setNodeValue(value);
+			}
+			break;
+		default:
+			reconcileChildren(visualOldNode, visualNewNode);
+		}
+	}
+
+	private void reconcileAttributes(nsIDOMElement visualOldElement, nsIDOMElement visualNewElement) {
+		nsIDOMNamedNodeMap newAttributes = visualNewElement.getAttributes();
+		Set<String> names = new HashSet<String>();
+		for (long i = 0; i < newAttributes.getLength(); i++) {
+			nsIDOMNode attr = newAttributes.item(i);
+			String name = attr.getNodeName();
+			String value = attr.getNodeValue();
+			names.add(name);
+			if (!visualOldElement.hasAttribute(name)
+					|| !value.equals(visualOldElement.getAttribute(name))) {
+				visualOldElement.setAttribute(name, value);
+			}
+		}
+		nsIDOMNamedNodeMap oldAttributes = visualOldElement.getAttributes();
+		List<String> removed = null;
+		for (long i = 0; i < oldAttributes.getLength(); i++) {
+			String name = oldAttributes.item(i).getNodeName();
+			if (!names.contains(name)) {
+				if (removed == null) {
+					removed = new ArrayList<String>();
+				}
+				removed.add(name);
+			}
+		}
+		if (removed != null) {
+			for (String name : removed) {
+				visualOldElement.removeAttribute(name);
+			}
+		}
+	}
+
+	private void reconcileChildren(nsIDOMNode visualOldParent, nsIDOMNode visualNewParent) {
+		nsIDOMNode[] oldChildren = toArray(visualOldParent.getChildNodes());
+		nsIDOMNode[] newChildren = toArray(visualNewParent.getChildNodes());
+		if (oldChildren.length == 0 && newChildren.length == 0) {
+			return;
+		}
+		Map<Node, nsIDOMNode> keyedOldChildren = new HashMap<Node, nsIDOMNode>();
+		for (nsIDOMNode oldChild : oldChildren) {
+			Node key = oldSourceNodes.get(oldChild);
+			if (key != null) {
+				keyedOldChildren.put(key, oldChild);
+			}
+		}
+		/*
+		 * Choose the node for each position of the new child list.
+		 */
+		nsIDOMNode[] children = new nsIDOMNode[newChildren.length];
+		Set<nsIDOMNode> used = new HashSet<nsIDOMNode>();
+		for (int i = 0; i < newChildren.length; i++) {
+			nsIDOMNode newChild = newChildren[i];
+			nsIDOMNode oldChild = null;
+			VpeNodeMapping mapping = domMapping.getNodeMapping(newChild);
+			if (mapping != null && mapping.getSourceNode() != null) {
+				oldChild = keyedOldChildren.get(mapping.getSourceNode());
+			} else if (i < oldChildren.length && !oldSourceNodes.containsKey(oldChildren[i])) {
+				oldChild = oldChildren[i];
+			}
+			if (oldChild != null && !used.contains(oldChild)
+					&& canReuse(oldChild, newChild)) {
+				used.add(oldChild);
+				reconcileNode(oldChild, newChild);
+				children[i] = oldChild;
+			} else {
+				children[i] = newChild;
+			}
+		}
+		/*
+		 * Put the chosen nodes in order, the new ones are moved
+		 * from the new subtree, the old ones not chosen are removed.
+		 */
+		Set<nsIDOMNode> placed = new HashSet<nsIDOMNode>();
+		int position = 0;
+		for (nsIDOMNode child : children) {
+			while (position < oldChildren.length
+					&& (!used.contains(oldChildren[position])
+							|| placed.contains(oldChildren[position]))) {
+				position++;
+			}
+			if (position < oldChildren.length && oldChildren[position].equals(child)) {
+				position++;
+			} else if (position < oldChildren.length) {
+				visualOldParent.insertBefore(child, oldChildren[position]);
+			} else {
+				visualOldParent.appendChild(child);
+			}
+			placed.add(child);
+		}
+		for (nsIDOMNode oldChild : oldChildren) {
+			if (!used.contains(oldChild)) {
+				visualOldParent.removeChild(oldChild);
+			}
+		}
+	}
+
+	/**
+	 * Moves the mappings of the new visual nodes to the reused old ones.
+	 */
+	private void remapReusedNodes() {
+		List<VpeElementMapping> elementMappings = new ArrayList<VpeElementMapping>();
+		for (Map.Entry<nsIDOMNode, nsIDOMNode> entry : reusedNodes.entrySet()) {
+			VpeNodeMapping mapping = domMapping.getNodeMapping(entry.getKey());
+			if (mapping != null) {
+				domMapping.remapVisualNode(entry.getKey(), entry.getValue());
+				if (mapping instanceof VpeElementMapping) {
+					elementMappings.add((VpeElementMapping) mapping);
+				}
+			}
+		}
+		for (VpeElementMapping mapping : elementMappings) {
+			if (mapping.getElementData() != null
+					&& mapping.getElementData().getNodesData() != null) {
+				for (NodeData nodeData : mapping.getElementData().getNodesData()) {
+					if (nodeData.getVisualNode() != null) {
+						nsIDOMNode reused = reusedNodes.get(
+								queryInterface(nodeData.getVisualNode(), nsIDOMNode.class));
+						if (reused != null) {
+							nodeData.setVisualNode(reused);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static nsIDOMNode[] toArray(nsIDOMNodeList nodeList) {
+		int length = nodeList == null ? 0 : (int) nodeList.getLength();
+		nsIDOMNode[] nodes = new nsIDOMNode[length];
+		for (int i = 0; i < length; i++) {
+			nodes[i] = nodeList.item(i);
+		}
+		return nodes;
+	}
+}
@@ -16,6 +16,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.swt.widgets.Display;
@@ -32,8 +34,14 @@ import org.jboss.tools.vpe.editor.VpeIncludeInfo;
 import org.jboss.tools.vpe.editor.VpeSourceDomBuilder;
 import org.jboss.tools.vpe.editor.VpeVisualDomBuilder;
 import org.jboss.tools.vpe.editor.mapping.VpeDomMapping;
+import org.jboss.tools.vpe.editor.mapping.VpeSourceNodeRegistry;
+import org.jboss.tools.vpe.editor.proxy.VpeResolvedValueCache;
+import org.jboss.tools.vpe.editor.util.ElExpressionMatcher;
 import org.jboss.tools.vpe.editor.util.ElService;
 import org.jboss.tools.vpe.editor.util.ElServiceUtil;
+import org.jboss.tools.vpe.editor.util.JstlCoreUrlUtil;
+import org.jboss.tools.vpe.editor.util.NamespaceScopeIndex;
+import org.jboss.tools.vpe.editor.util.TextOffsetTranslator;
 import org.jboss.tools.vpe.editor.util.XmlUtil;
 import org.jboss.tools.vpe.resref.core.AbsoluteFolderReferenceList;
 import org.jboss.tools.vpe.resref.core.RelativeFolderReferenceList;
@@ -51,6 +59,14 @@ public class VpePageContext extends AbstractPageContext implements IVisualContex
 	private VpeSourceDomBuilder sourceBuilder;
 	private VpeVisualDomBuilder visualBuilder;
 	protected Map<String, Object> values = new HashMap<String, Object>();
+	private final NamespaceScopeIndex namespaceScopeIndex = new NamespaceScopeIndex();
+	private final VpeResolvedValueCache resolvedValueCache = new VpeResolvedValueCache(this);
+	private ElExpressionMatcher resourceReferencesMatcher;
+	private ElExpressionMatcher customElementsAttributesMatcher;
+	/** JSTL core url patterns by the taglib prefix, {@code null} for invalid prefixes */
+	private final Map<String, Pattern> jstlCoreUrlPatterns = new HashMap<String, Pattern>();
+	/** offset translators of the source text nodes, valid while the node value is the same */
+	private final Map<Node, TextOffsetTranslator> textOffsetTranslators = new WeakHashMap<Node, TextOffsetTranslator>();
 
 	public VpePageContext(BundleMap bundle, VpeEditorPart editPart) {
 		this.bundle = bundle;
@@ -61,6 +77,7 @@ public class VpePageContext extends AbstractPageContext implements IVisualContex
 	public void resetElService() {
 		// set default el expression service
 		setElService(new ElService(this));
+		resolvedValueCache.clearValues();
 	}
 
 	public VpeSourceDomBuilder getSourceBuilder() {
@@ -82,10 +99,13 @@ public class VpePageContext extends AbstractPageContext implements IVisualContex
 	 */
 	public void addAttributeInCustomElementsMap(String key, String value) {
 		getCustomElementsAttributes().put(key, value);
+		customElementsAttributesChanged();
 	}
 
 	public void removeAttributeFromCustomElementsMap(String key) {
-		getCustomElementsAttributes().remove(key);
+		if (getCustomElementsAttributes().remove(key) != null) {
+			customElementsAttributesChanged();
+		}
 	}
 
 	public boolean containsAttributeInCustomElementsMap(String key) {
@@ -107,6 +127,23 @@ public class VpePageContext extends AbstractPageContext implements IVisualContex
 	 */
 	public void clearCustomElementAttributesMap() {
 		getCustomElementsAttributes().clear();
+		customElementsAttributesChanged();
+	}
+
+	private void customElementsAttributesChanged() {
+		customElementsAttributesMatcher = null;
+		resolvedValueCache.clearValues();
+	}
+
+	/**
+	 * Returns matcher of the custom element attributes,
+	 * it is compiled once until the attributes change.
+	 */
+	public ElExpressionMatcher getCustomElementsAttributesMatcher() {
+		if (customElementsAttributesMatcher == null) {
+			customElementsAttributesMatcher = new ElExpressionMatcher(getCustomElementsAttributes());
+		}
+		return customElementsAttributesMatcher;
 	}
 
 	public void setSourceDomBuilder(VpeSourceDomBuilder sourceBuilder) {
@@ -134,10 +171,29 @@ public class VpePageContext extends AbstractPageContext implements IVisualContex
 				ResourceReference[] rr = ElServiceUtil.getAllResources(file);
 				rr = ElServiceUtil.sortReferencesByScope2(rr);
 				putValue(RES_REFERENCES, rr);
+				resourceReferencesMatcher = new ElExpressionMatcher(rr);
+				resolvedValueCache.clearValues();
 			}
 		}
 	}
 
+	/**
+	 * Returns matcher of the resource references of the page or {@code null}
+	 * if there are no references. The matcher is compiled once
+	 * by {@link #refreshResReferences()}.
+	 */
+	public ElExpressionMatcher getResourceReferencesMatcher() {
+		ResourceReference[] references = (ResourceReference[]) getValue(RES_REFERENCES);
+		if (references == null || references.length == 0) {
+			return null;
+		}
+		if (resourceReferencesMatcher == null
+				|| resourceReferencesMatcher.getReferences() != references) {
+			resourceReferencesMatcher = new ElExpressionMatcher(references);
+		}
+		return resourceReferencesMatcher;
+	}
+
 	public VpeDomMapping getDomMapping() {
 		return visualBuilder.getDomMapping();
 	}
@@ -145,6 +201,55 @@ public class VpePageContext extends AbstractPageContext implements IVisualContex
 	public void clearAll() {
 		bundle.clearAll();
 		clearValues();
+		namespaceScopeIndex.clear();
+		resolvedValueCache.clear();
+		jstlCoreUrlPatterns.clear();
+		textOffsetTranslators.clear();
+	}
+
+	/**
+	 * Returns namespace declarations cache of the source document.
+	 */
+	public NamespaceScopeIndex getNamespaceScopeIndex() {
+		return namespaceScopeIndex;
+	}
+
+	/**
+	 * Returns the pattern of the JSTL core url tags with the prefix,
+	 * it is compiled once for the document.
+	 * 
+	 * @see JstlCoreUrlUtil#createJstlCoreUrlPattern(String)
+	 */
+	public Pattern getJstlCoreUrlPattern(String prefix) {
+		Pattern pattern = jstlCoreUrlPatterns.get(prefix);
+		if (pattern == null && !jstlCoreUrlPatterns.containsKey(prefix)) {
+			pattern = JstlCoreUrlUtil.createJstlCoreUrlPattern(prefix);
+			jstlCoreUrlPatterns.put(prefix, pattern);
+		}
+		return pattern;
+	}
+
+	/**
+	 * Returns the offset translator of the source text node, it is created
+	 * again when the source text of the node is changed.
+	 * 
+	 * @param sourceNode the source text node
+	 * @param sourceText the current source text of the node
+	 */
+	public TextOffsetTranslator getTextOffsetTranslator(Node sourceNode, String sourceText) {
+		TextOffsetTranslator translator = textOffsetTranslators.get(sourceNode);
+		if (translator == null || !translator.getSourceText().equals(sourceText)) {
+			translator = new TextOffsetTranslator(sourceText);
+			textOffsetTranslators.put(sourceNode, translator);
+		}
+		return translator;
+	}
+
+	/**
+	 * Returns cache of the source node values with EL expressions substituted.
+	 */
+	public VpeResolvedValueCache getResolvedValueCache() {
+		return resolvedValueCache;
 	}
 
 	public void dispose() {
@@ -163,7 +268,8 @@ public class VpePageContext extends AbstractPageContext implements IVisualContex
 		if (getVisualBuilder() == null) {
 			return;
 		}
-		List<Node> nodes = getVisualBuilder().getSourceNodes();
+		resolvedValueCache.clearValues();
+		VpeSourceNodeRegistry nodes = getVisualBuilder().getSourceNodes();
 		// Iterator iterator = bundleDependencySet.iterator();
 		for (Node node : nodes) {
 			if (node instanceof Element) {
@@ -184,8 +290,7 @@ public class VpePageContext extends AbstractPageContext implements IVisualContex
 		if (sourcePrefix == null || ((ElementImpl) sourceNode).isJSPTag()) {
 			return true;
 		}
-		List<TaglibData> taglibs = XmlUtil.getTaglibsForNode(sourceNode, this);
-		TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(sourcePrefix, taglibs);
+		TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(sourceNode, this, sourcePrefix);
 		if (sourceNodeTaglib != null) {
 			return true;
 		}
@@ -203,8 +308,7 @@ public class VpePageContext extends AbstractPageContext implements IVisualContex
 		if (sourcePrefix == null || ((ElementImpl) sourceNode).isJSPTag()) {
 			return null;
 		}
-		List<TaglibData> taglibs = XmlUtil.getTaglibsForNode(sourceNode, this);
-		TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(sourcePrefix, taglibs);
+		TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(sourceNode, this, sourcePrefix);
 		if (sourceNodeTaglib == null) {
 			return null;
 		}
@@ -338,6 +442,8 @@ public class VpePageContext extends AbstractPageContext implements IVisualContex
 
 	public void clearValues() {
 		values.clear();
+		resourceReferencesMatcher = null;
+		customElementsAttributesMatcher = null;
 	}
 
 	public String[] getValueNames() {
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.mapping;
+
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.w3c.dom.Node;
+
+/**
+ * Set of source nodes the visual builder has attached its adapter to.
+ * <p>
+ * Nodes are compared by identity, so registration, lookup and removal
+ * are O(1) regardless of page size. Iteration follows the registration
+ * order, which is the document order of the initial build.
+ *
+ * @see org.jboss.tools.vpe.editor.VpeDomBuilder#registerNodes(VpeNodeMapping)
+ */
+public class VpeSourceNodeRegistry extends AbstractSet<Node> {
+
+	private final Map<Node, Entry> entries = new IdentityHashMap<Node, Entry>();
+	/** Sentinel of the circular doubly-linked list keeping insertion order. */
+	private final Entry header = new Entry(null);
+	private int modCount = 0;
+
+	public VpeSourceNodeRegistry() {
+		header.previous = header;
+		header.next = header;
+	}
+
+	/**
+	 * Registers the node.
+	 *
+	 * @return {@code true} if the node was not registered before
+	 */
+	@Override
+	public boolean add(Node node) {
+		if (entries.containsKey(node)) {
+			return false;
+		}
+		Entry entry = new Entry(node);
+		entry.previous = header.previous;
+		entry.next = header;
+		header.previous.next = entry;
+		header.previous = entry;
+		entries.put(node, entry);
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object node) {
+		return entries.containsKey(node);
+	}
+
+	@Override
+	public boolean remove(Object node) {
+		Entry entry = entries.remove(node);
+		if (entry == null) {
+			return false;
+		}
+		unlink(entry);
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		entries.clear();
+		header.previous = header;
+		header.next = header;
+		modCount++;
+	}
+
+	@Override
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public Iterator<Node> iterator() {
+		return new Iterator<Node>() {
+			private Entry next = header.next;
+			private Entry lastReturned = null;
+			private int expectedModCount = modCount;
+
+			public boolean hasNext() {
+				return next != header;
+			}
+
+			public Node next() {
+				checkForComodification();
+				if (next == header) {
+					throw new NoSuchElementException();
+				}
+				lastReturned = next;
+				next = next.next;
+				return lastReturned.node;
+			}
+
+			public void remove() {
+				if (lastReturned == null) {
+					throw new IllegalStateException();
+				}
+				checkForComodification();
+				entries.remove(lastReturned.node);
+				unlink(lastReturned);
+				lastReturned = null;
+				expectedModCount = modCount;
+			}
+
+			private void checkForComodification() {
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+			}
+		};
+	}
+
+	private void unlink(Entry entry) {
+		entry.previous.next = entry.next;
+		entry.next.previous = entry.previous;
+		entry.previous = null;
+		entry.next = null;
+		modCount++;
+	}
+
+	private static class Entry {
+		private final Node node;
+		private Entry previous;
+		private Entry next;
+
+		Entry(Node node) {
+			this.node = node;
+		}
+	}
+}
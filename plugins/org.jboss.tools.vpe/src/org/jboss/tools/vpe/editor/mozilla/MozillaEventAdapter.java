@@ -49,6 +49,7 @@ public class MozillaEventAdapter implements nsIDOMEventListener, nsISelectionLis
 	private static final String MOZAFTERPAINT = "MozAfterPaint"; //$NON-NLS-1$
 	private static final String SCROLL = "scroll"; //$NON-NLS-1$
 	private static final String MOUSEMOVEEVENTTYPE="mousemove"; //$NON-NLS-1$
+	private static final String MOUSEOUTEVENTTYPE="mouseout"; //$NON-NLS-1$
 	private static final String MOUSEDOWNEVENTTYPE="mousedown"; //$NON-NLS-1$
 	private static final String MOUSEUPEVENTTYPE="mouseup"; //$NON-NLS-1$
 	private static final String CLICKEVENTTYPE="click"; //$NON-NLS-1$
@@ -94,6 +95,7 @@ public class MozillaEventAdapter implements nsIDOMEventListener, nsISelectionLis
 			contentArea.addEventListener(MozillaEventAdapter.MOUSEDOWNEVENTTYPE, this, false); 
 			contentArea.addEventListener(MozillaEventAdapter.MOUSEUPEVENTTYPE, this, false); 
 			contentArea.addEventListener(MozillaEventAdapter.MOUSEMOVEEVENTTYPE, this, false); 
+			contentArea.addEventListener(MozillaEventAdapter.MOUSEOUTEVENTTYPE, this, false);
 			contentArea.addEventListener(MozillaEventAdapter.CONTEXTMENUEVENTTYPE, this, false);
 			contentArea.addEventListener(MozillaEventAdapter.DBLCLICK, this, false);
 			
@@ -134,6 +136,7 @@ public class MozillaEventAdapter implements nsIDOMEventListener, nsISelectionLis
 			contentArea.removeEventListener(MozillaEventAdapter.MOUSEDOWNEVENTTYPE, this, false); 
 			contentArea.removeEventListener(MozillaEventAdapter.MOUSEUPEVENTTYPE, this, false); 
 			contentArea.removeEventListener(MozillaEventAdapter.MOUSEMOVEEVENTTYPE, this, false); 
+			contentArea.removeEventListener(MozillaEventAdapter.MOUSEOUTEVENTTYPE, this, false);
 			contentArea.removeEventListener(MozillaEventAdapter.CONTEXTMENUEVENTTYPE, this, false);
 			contentArea.removeEventListener(MozillaEventAdapter.DBLCLICK, this, false);
 			
@@ -250,6 +253,12 @@ public class MozillaEventAdapter implements nsIDOMEventListener, nsISelectionLis
 					MozillaMouseListener.class)) {
 				listener.mouseMove(mouseEvent);
 			}
+		} else if(MOUSEOUTEVENTTYPE.equals(eventType)) {
+			nsIDOMMouseEvent mouseEvent = XPCOM.queryInterface(domEvent, nsIDOMMouseEvent.class);
+			for (MozillaMouseListener listener : listeners.getListeners(
+					MozillaMouseListener.class)) {
+				listener.mouseOut(mouseEvent);
+			}
 		} else if(MOUSEDOWNEVENTTYPE.equals(eventType)) {
 			nsIDOMMouseEvent mouseEvent = XPCOM.queryInterface(domEvent, nsIDOMMouseEvent.class);
 			for (MozillaMouseListener listener : listeners.getListeners(
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007-2009 Red Hat, Inc.
+ * Copyright (c) 2007-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -31,4 +31,6 @@ public interface MozillaMouseListener extends EventListener {
 
 	void mouseMove(nsIDOMMouseEvent mouseEvent);
 
+	void mouseOut(nsIDOMMouseEvent mouseEvent);
+
 }
@@ -48,6 +48,19 @@ import org.jboss.tools.vpe.preview.core.util.PlatformUtil;
 public class VpePreferencesPage extends FieldEditorPreferencePage implements
 		IWorkbenchPreferencePage, IVpePreferencesPage {
 
+	/**
+	 * Build the visual DOM of the opened page in a document fragment
+	 * and insert it into the visual document at once, so the visual document
+	 * is laid out once. The nodes are still created one by one.
+	 */
+	public static final String BUILD_VISUAL_DOM_IN_FRAGMENT = "buildVisualDomInFragment"; //$NON-NLS-1$
+
+	/**
+	 * Apply the differences of an updated visual subtree to the old one
+	 * instead of replacing it.
+	 */
+	public static final String RECONCILE_UPDATED_VISUAL_NODES = "reconcileUpdatedVisualNodes"; //$NON-NLS-1$
+
 	private static final String[][] DEFAULT_VPE_TAB_COMBO_BOX_VALUES = {
 			{ VpeUIMessages.DEFAULT_VPE_TAB_VISUAL_SOURCE,
 					DEFAULT_VPE_TAB_VISUAL_SOURCE_VALUE },
@@ -69,6 +82,7 @@ public class VpePreferencesPage extends FieldEditorPreferencePage implements
 	private Group visualAppearanceGroup;
 	private Group confirmationGroup;
 	private Group tabsGroup;
+	private Group buildingGroup;
 	//JBIDE-18275 Visual Editor: remove option of showing VPE toolbar in Eclipse toolbar
 //	private Group visualEditorToolbarGroup;
 	private Group visualEditorEngineGroup;
@@ -125,6 +139,10 @@ public class VpePreferencesPage extends FieldEditorPreferencePage implements
 				SWT.SHADOW_ETCHED_IN, 
 				VpeUIMessages.TABS_GROUP_TITLE);
 
+		buildingGroup = createLayoutGroup(pageContainer, 
+				SWT.SHADOW_ETCHED_IN, 
+				VpeUIMessages.BUILDING_GROUP_TITLE);
+
 		createFieldEditors();
 		initialize();
 		checkState();
@@ -196,6 +214,10 @@ public class VpePreferencesPage extends FieldEditorPreferencePage implements
 				SPLITTING_COMBO_BOX_VALUES, tabsGroup));
 		addField(new SliderFieldEditor(VISUAL_SOURCE_EDITORS_WEIGHTS,
 				VpeUIMessages.VISUAL_SOURCE_EDITORS_WEIGHTS, tabsGroup));
+		addField(new VpeBooleanFieldEditor(BUILD_VISUAL_DOM_IN_FRAGMENT,
+				VpeUIMessages.BUILD_VISUAL_DOM_IN_FRAGMENT, buildingGroup));
+		addField(new VpeBooleanFieldEditor(RECONCILE_UPDATED_VISUAL_NODES,
+				VpeUIMessages.RECONCILE_UPDATED_VISUAL_NODES, buildingGroup));
 	}
 
 	@Override
@@ -37,6 +37,7 @@ public class VpeNamedNodeMapInvocationHandler implements InvocationHandler {
 	public Object invoke(Object proxy, Method method, Object[] args)
 			throws Throwable {
 		Object result = method.invoke(namedNodeMap, args);
+		pageContext.getResolvedValueCache().countInvocation();
 		if(result instanceof Node) {
 			return VpeProxyUtil.createProxyForELExpressionNode(pageContext, (Node)result);
 		}
@@ -40,6 +40,7 @@ public class VpeNodeInvocationHandler implements InvocationHandler {
 
 	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
 		Object result = method.invoke(node, args);
+		pageContext.getResolvedValueCache().countInvocation();
 		if (result instanceof String) {
 			String processedStr = (String) result;
 			result = replaceEL(processedStr);
@@ -58,7 +59,7 @@ public class VpeNodeInvocationHandler implements InvocationHandler {
 	 * @return
 	 */
 	private String replaceEL(String toReplace) {
-		return pageContext.getElService().replaceElAndResources(toReplace, node);
+		return pageContext.getResolvedValueCache().resolve(node, toReplace);
 	}
 
 }
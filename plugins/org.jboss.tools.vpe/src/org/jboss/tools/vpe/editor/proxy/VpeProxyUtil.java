@@ -32,13 +32,25 @@ public class VpeProxyUtil {
 
 	/**
 	 * Create proxy for source nodes. This function should be called for nodes,
-	 * in which used el expressions which should be replaced
+	 * in which used el expressions which should be replaced.
+	 * The proxies and the values they return are cached by
+	 * {@link VpeResolvedValueCache}.
 	 * 
 	 * @param sourceNode
 	 * @return proxy for node
 	 */
 	public static Node createProxyForELExpressionNode(
 			VpePageContext pageContext, Node sourceNode) {
+		return pageContext.getResolvedValueCache().getProxy(sourceNode);
+	}
+
+	public static NamedNodeMap createProxyForNamedNodeMap(
+			VpePageContext pageContext, NamedNodeMap namedNodeMap) {
+		return pageContext.getResolvedValueCache().getProxy(namedNodeMap);
+	}
+
+	static Node newProxyForELExpressionNode(
+			VpePageContext pageContext, Node sourceNode) {
 
 		Node proxy = null;
 		List<Class<?>> interfaceses = new ArrayList<Class<?>>();
@@ -68,7 +80,7 @@ public class VpeProxyUtil {
 		return proxy;
 	}
 
-	public static NamedNodeMap createProxyForNamedNodeMap(
+	static NamedNodeMap newProxyForNamedNodeMap(
 			VpePageContext pageContext, NamedNodeMap namedNodeMap) {
 		NamedNodeMap proxy = (NamedNodeMap) Proxy
 				.newProxyInstance(NamedNodeMap.class.getClassLoader(),
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.proxy;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jboss.tools.vpe.editor.context.VpePageContext;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Caches the values of source nodes with EL expressions and resource bundle
+ * references substituted, and the proxies serving them to the templates.
+ * <p>
+ * The values are resolved by
+ * {@link org.jboss.tools.vpe.editor.util.ElService#replaceElAndResources(String, Node)}
+ * once per build pass and memorized per node and raw value, so the repeated
+ * getter calls of the templates and the proxies of attributes and attribute
+ * maps are answered by hash map lookups.
+ * <p>
+ * The result of the substitution depends on the state of the page context,
+ * so the cache is cleared when the visual DOM is rebuilt, when the resource
+ * references or the custom element attributes change and when the bundles
+ * are refreshed. The entries of a subtree are dropped by {@link #invalidate(Node)}
+ * when its source nodes change.
+ *
+ * @see VpeProxyUtil#createProxyForELExpressionNode(VpePageContext, Node)
+ */
+public class VpeResolvedValueCache {
+
+	/** Upper bound of cached nodes, the cache is cleared when it is reached. */
+	private static final int MAX_CACHED_NODES = 10000;
+
+	private final VpePageContext pageContext;
+	private final Map<Node, Map<String, String>> values = new IdentityHashMap<Node, Map<String, String>>();
+	private final Map<Node, Node> nodeProxies = new IdentityHashMap<Node, Node>();
+	private final Map<NamedNodeMap, NamedNodeMap> namedNodeMapProxies = new IdentityHashMap<NamedNodeMap, NamedNodeMap>();
+
+	private long invocationsCount = 0;
+	private long lookupsCount = 0;
+	private long hitsCount = 0;
+
+	public VpeResolvedValueCache(VpePageContext pageContext) {
+		this.pageContext = pageContext;
+	}
+
+	/**
+	 * Returns the value with EL expressions and resources substituted.
+	 *
+	 * @param node the node the value is taken from
+	 * @param value the raw value
+	 */
+	public String resolve(Node node, String value) {
+		lookupsCount++;
+		Map<String, String> nodeValues = values.get(node);
+		if (nodeValues == null) {
+			if (values.size() >= MAX_CACHED_NODES) {
+				values.clear();
+			}
+			nodeValues = new HashMap<String, String>(4);
+			values.put(node, nodeValues);
+		}
+		String resolved = nodeValues.get(value);
+		if (resolved == null) {
+			resolved = pageContext.getElService().replaceElAndResources(value, node);
+			nodeValues.put(value, resolved);
+		} else {
+			hitsCount++;
+		}
+		return resolved;
+	}
+
+	/**
+	 * Returns the proxy substituting EL expressions in the values of the node.
+	 */
+	public Node getProxy(Node node) {
+		Node proxy = nodeProxies.get(node);
+		if (proxy == null) {
+			if (nodeProxies.size() >= MAX_CACHED_NODES) {
+				nodeProxies.clear();
+			}
+			proxy = VpeProxyUtil.newProxyForELExpressionNode(pageContext, node);
+			nodeProxies.put(node, proxy);
+		}
+		return proxy;
+	}
+
+	/**
+	 * Returns the proxy substituting EL expressions in the attributes of the map.
+	 */
+	public NamedNodeMap getProxy(NamedNodeMap namedNodeMap) {
+		NamedNodeMap proxy = namedNodeMapProxies.get(namedNodeMap);
+		if (proxy == null) {
+			if (namedNodeMapProxies.size() >= MAX_CACHED_NODES) {
+				namedNodeMapProxies.clear();
+			}
+			proxy = VpeProxyUtil.newProxyForNamedNodeMap(pageContext, namedNodeMap);
+			namedNodeMapProxies.put(namedNodeMap, proxy);
+		}
+		return proxy;
+	}
+
+	/**
+	 * Counts a call of a proxy method.
+	 */
+	void countInvocation() {
+		invocationsCount++;
+	}
+
+	/**
+	 * Forgets the values of the node, its attributes and all its descendants.
+	 */
+	public void invalidate(Node node) {
+		if (node == null || values.isEmpty()) {
+			return;
+		}
+		values.remove(node);
+		NamedNodeMap attributes = node.getAttributes();
+		if (attributes != null) {
+			for (int i = 0; i < attributes.getLength(); i++) {
+				values.remove(attributes.item(i));
+			}
+		}
+		NodeList children = node.getChildNodes();
+		if (children != null) {
+			for (int i = 0; i < children.getLength(); i++) {
+				invalidate(children.item(i));
+			}
+		}
+	}
+
+	/**
+	 * Forgets all values. The proxies are kept, they do not depend
+	 * on the state of the page context.
+	 */
+	public void clearValues() {
+		values.clear();
+	}
+
+	/**
+	 * Forgets all values and proxies.
+	 */
+	public void clear() {
+		values.clear();
+		nodeProxies.clear();
+		namedNodeMapProxies.clear();
+	}
+
+	public long getInvocationsCount() {
+		return invocationsCount;
+	}
+
+	public long getLookupsCount() {
+		return lookupsCount;
+	}
+
+	public long getHitsCount() {
+		return hitsCount;
+	}
+
+	/**
+	 * Returns the counters in a form suitable for the debug output.
+	 */
+	public String getStatistics() {
+		long hitRate = lookupsCount == 0 ? 0 : hitsCount * 100 / lookupsCount;
+		return "EL resolution: proxy invocations: " + invocationsCount //$NON-NLS-1$
+				+ ", lookups: " + lookupsCount //$NON-NLS-1$
+				+ ", hits: " + hitsCount + " (" + hitRate + "%)"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
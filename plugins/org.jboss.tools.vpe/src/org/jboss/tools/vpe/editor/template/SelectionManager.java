@@ -1,5 +1,5 @@
 /******************************************************************************* 
- * Copyright (c) 2007 Red Hat, Inc.
+ * Copyright (c) 2007-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -30,7 +30,7 @@ import org.jboss.tools.vpe.editor.mapping.VpeElementMapping;
 import org.jboss.tools.vpe.editor.mapping.VpeNodeMapping;
 import org.jboss.tools.vpe.editor.selection.VpeSelectionController;
 import org.jboss.tools.vpe.editor.util.SelectionUtil;
-import org.jboss.tools.vpe.editor.util.TextUtil;
+import org.jboss.tools.vpe.editor.util.TextOffsetTranslator;
 import org.jboss.tools.vpe.editor.util.VpeNodesManagingUtil;
 import org.mozilla.interfaces.nsIDOMNode;
 import org.mozilla.interfaces.nsISelection;
@@ -278,11 +278,10 @@ public class SelectionManager implements ISelectionManager {
 				int anchorOffcetReferenceToSourceNode = selectionRange.x + selectionRange.y
 						- NodesManagingUtil.getStartOffsetNode(sourceNode);
 				NodeImpl sourceTextImpl = (NodeImpl) sourceNode;
-				int visualNodeFocusOffcet = TextUtil.visualPosition(
-						sourceTextImpl.getValueSource(),
+				TextOffsetTranslator offsetTranslator = getTextOffsetTranslator(sourceTextImpl);
+				int visualNodeFocusOffcet = offsetTranslator.visualPosition(
 						focusOffcetReferenceToSourceNode);
-				int visualNodeAnchorOffcet = TextUtil.visualPosition(
-						sourceTextImpl.getValueSource(),
+				int visualNodeAnchorOffcet = offsetTranslator.visualPosition(
 						anchorOffcetReferenceToSourceNode);
 				int length = visualNode.getNodeValue().length();
 				
@@ -397,8 +396,9 @@ public class SelectionManager implements ISelectionManager {
 							Point newSrcRange = new Point(newX, newY);
 							int srcStartOffset = newSrcRange.x - NodesManagingUtil.getStartOffsetNode(sourceNode);
 							int srcEndOffset = srcStartOffset + newSrcRange.y;
-							int visualStartOffset = TextUtil.visualPosition(sourceTextImpl.getValueSource(), srcStartOffset);
-							int visualEndOffset = TextUtil.visualPosition(sourceTextImpl.getValueSource(), srcEndOffset);
+							TextOffsetTranslator offsetTranslator = getTextOffsetTranslator(sourceTextImpl);
+							int visualStartOffset = offsetTranslator.visualPosition(srcStartOffset);
+							int visualEndOffset = offsetTranslator.visualPosition(srcEndOffset);
 							if (visualStartOffset > length || visualEndOffset > length) {
 								return;
 							}
@@ -424,6 +424,11 @@ public class SelectionManager implements ISelectionManager {
 	}
 
 
+	private TextOffsetTranslator getTextOffsetTranslator(NodeImpl sourceTextImpl) {
+		return pageContext.getTextOffsetTranslator(sourceTextImpl,
+				sourceTextImpl.getValueSource());
+	}
+
 	protected VpePageContext getPageContext() {
 		return pageContext;
 	}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.template;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable snapshot of the loaded templates used to find
+ * the {@link VpeTemplateSet} for a template name.
+ * <p>
+ * The lookup order is the same as it always was in
+ * {@link VpeTemplateManager}: docbook tags (for the DocBook editor only),
+ * case sensitive tags, case insensitive tags and then tags defined with
+ * regular expressions. The regular expressions are compiled once and
+ * every resolved name, including names without a template, is memorized,
+ * so the lookup for a name already seen is a single hash map access.
+ * <p>
+ * A new dispatcher is created each time the templates are (re)loaded, so
+ * readers never see a half-loaded state.
+ */
+final class VpeTemplateDispatcher {
+
+	/** Upper bound of memorized names, the caches are reset when it is reached. */
+	private static final int MAX_CACHED_NAMES = 10000;
+	/** Marks a memorized name or URI without a match. */
+	private static final Object NO_MATCH = new Object();
+
+	private final Map<String, VpeTemplateSet> caseSensitiveTags;
+	private final Map<String, VpeTemplateSet> ignoreSensitiveTags;
+	private final Map<String, VpeTemplateSet> docbookTags;
+	private final Pattern[] matchingPatterns;
+	private final VpeTemplateSet[] matchingSets;
+
+	private final Map<String, String> templateTaglibs;
+	private final Pattern[] matchingTaglibPatterns;
+	private final String[] matchingTaglibPrefixes;
+
+	private final Map<String, Object> resolvedTags = new ConcurrentHashMap<String, Object>();
+	private final Map<String, Object> resolvedDocbookTags = new ConcurrentHashMap<String, Object>();
+	private final Map<String, Object> resolvedTaglibPrefixes = new ConcurrentHashMap<String, Object>();
+
+	VpeTemplateDispatcher(Map<String, VpeTemplateSet> caseSensitiveTags,
+			Map<String, VpeTemplateSet> ignoreSensitiveTags,
+			Map<String, VpeTemplateSet> docbookTags,
+			Map<String, VpeTemplateSet> matchingTags,
+			Map<String, String> templateTaglibs,
+			Map<String, String> matchingTemplateTaglibs) {
+		this.caseSensitiveTags = new HashMap<String, VpeTemplateSet>(caseSensitiveTags);
+		this.ignoreSensitiveTags = new HashMap<String, VpeTemplateSet>(ignoreSensitiveTags);
+		this.docbookTags = new HashMap<String, VpeTemplateSet>(docbookTags);
+		this.templateTaglibs = new HashMap<String, String>(templateTaglibs);
+
+		List<Pattern> patterns = new ArrayList<Pattern>(matchingTags.size());
+		List<VpeTemplateSet> sets = new ArrayList<VpeTemplateSet>(matchingTags.size());
+		for (Map.Entry<String, VpeTemplateSet> entry : matchingTags.entrySet()) {
+			if (entry.getValue() != null) {
+				patterns.add(Pattern.compile(entry.getKey()));
+				sets.add(entry.getValue());
+			}
+		}
+		this.matchingPatterns = patterns.toArray(new Pattern[patterns.size()]);
+		this.matchingSets = sets.toArray(new VpeTemplateSet[sets.size()]);
+
+		patterns.clear();
+		List<String> prefixes = new ArrayList<String>(matchingTemplateTaglibs.size());
+		for (Map.Entry<String, String> entry : matchingTemplateTaglibs.entrySet()) {
+			patterns.add(Pattern.compile(entry.getKey()));
+			prefixes.add(entry.getValue());
+		}
+		this.matchingTaglibPatterns = patterns.toArray(new Pattern[patterns.size()]);
+		this.matchingTaglibPrefixes = prefixes.toArray(new String[prefixes.size()]);
+	}
+
+	/**
+	 * Returns template set for the template name or {@code null}
+	 * if there is no template for it.
+	 *
+	 * @param name template name
+	 * @param docbook {@code true} if the page is opened in the DocBook editor
+	 */
+	VpeTemplateSet getTemplateSet(String name, boolean docbook) {
+		Map<String, Object> resolved = docbook ? resolvedDocbookTags : resolvedTags;
+		Object set = resolved.get(name);
+		if (set == null) {
+			set = resolveTemplateSet(name, docbook);
+			cache(resolved, name, set == null ? NO_MATCH : set);
+		}
+		return set == NO_MATCH ? null : (VpeTemplateSet) set;
+	}
+
+	/**
+	 * Returns the prefix under which templates for the taglib URI
+	 * are registered or {@code null} if there is no such.
+	 */
+	String getTemplateTaglibPrefix(String sourceUri) {
+		if (sourceUri == null) {
+			return null;
+		}
+		Object prefix = resolvedTaglibPrefixes.get(sourceUri);
+		if (prefix == null) {
+			prefix = resolveTemplateTaglibPrefix(sourceUri);
+			cache(resolvedTaglibPrefixes, sourceUri, prefix == null ? NO_MATCH : prefix);
+		}
+		return prefix == NO_MATCH ? null : (String) prefix;
+	}
+
+	private VpeTemplateSet resolveTemplateSet(String name, boolean docbook) {
+		VpeTemplateSet set;
+		if (docbook) {
+			set = docbookTags.get(name);
+			if (set != null) {
+				return set;
+			}
+		}
+		set = caseSensitiveTags.get(name);
+		if (set != null) {
+			return set;
+		}
+		set = ignoreSensitiveTags.get(name.toLowerCase());
+		if (set != null) {
+			return set;
+		}
+		for (int i = 0; i < matchingPatterns.length; i++) {
+			if (matchingPatterns[i].matcher(name).matches()) {
+				return matchingSets[i];
+			}
+		}
+		return null;
+	}
+
+	private String resolveTemplateTaglibPrefix(String sourceUri) {
+		String prefix = templateTaglibs.get(sourceUri);
+		if (prefix == null) {
+			for (int i = 0; i < matchingTaglibPatterns.length; i++) {
+				if (matchingTaglibPatterns[i].matcher(sourceUri).matches()) {
+					return matchingTaglibPrefixes[i];
+				}
+			}
+		}
+		return prefix;
+	}
+
+	private static void cache(Map<String, Object> cache, String key, Object value) {
+		if (cache.size() >= MAX_CACHED_NAMES) {
+			cache.clear();
+		}
+		cache.put(key, value);
+	}
+}
@@ -268,6 +268,8 @@ public class VpeTemplateManager {
 	private Map<String,VpeTemplateSet> docbookTags = new HashMap<String,VpeTemplateSet>();
 	//added by Denis Vinnichek, for tags which are defined with regexp
 	private Map<String,VpeTemplateSet> matchingTags = new HashMap<String,VpeTemplateSet>();
+	/** Compiled lookup structure over the maps above, recreated on each load */
+	private volatile VpeTemplateDispatcher dispatcher;
 	
 	private static final String ATTR_DOCBOOK_NAME = "docbook"; //$NON-NLS-1$
 	
@@ -358,34 +360,11 @@ public class VpeTemplateManager {
 		}
 		//added by Maksim Areshkau, as fix for docbook templates
 		//see JBIDE-6600
-		VpeTemplateSet set=null;
-		if(DOCBOOKEDITORID.equals(pageContext.getEditPart().getSite().getId())){
-			set = docbookTags.get(name);
-			if (set != null) {
-				return set.getTemplate(pageContext, sourceNode, dependencySet);
-			}
-		}
-		
-		set = caseSensitiveTags.get(name);
+		boolean docbook = DOCBOOKEDITORID.equals(pageContext.getEditPart().getSite().getId());
+		VpeTemplateSet set = dispatcher.getTemplateSet(name, docbook);
 		if (set != null) {
 			return set.getTemplate(pageContext, sourceNode, dependencySet);
 		}
-		set = ignoreSensitiveTags.get(name.toLowerCase());
-		if (set != null) {
-			return set.getTemplate(pageContext, sourceNode, dependencySet);
-		}
-		//added by Denis Vinnichek, for tags which are defined with regexp
-		if (matchingTags.entrySet() != null) {
-			for (Map.Entry<String,VpeTemplateSet> entry : matchingTags.entrySet()) {
-				if (name.matches(entry.getKey())) {
-					set = entry.getValue();
-					if (set != null) {
-						return set.getTemplate(pageContext, sourceNode, dependencySet);
-					}
-				}
-			}
-		}
-		
 		return null;
 	}
 
@@ -425,9 +404,7 @@ public class VpeTemplateManager {
 				return sourceNode.getNodeName();
 			}
 			
-			List<TaglibData> taglibs = XmlUtil.getTaglibsForNode(sourceNode,pageContext);
-			
-			TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(sourcePrefix, taglibs);		
+			TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(sourceNode, pageContext, sourcePrefix);
 
 			if(sourceNodeTaglib == null) {
 				return sourceNode.getLocalName();
@@ -457,16 +434,7 @@ public class VpeTemplateManager {
 	}
 	
 	public String getTemplateTaglibPrefix(String sourceUri) {
-		String result = templateTaglibs.get(sourceUri);
-		if(result == null){
-			for ( Map.Entry<String, String> entry: matchingTemplateTaglibs.entrySet()) {
-				if(sourceUri.matches( entry.getKey() )){
-					result = entry.getValue();
-					break;
-				}
-			}
-		}
-		return result;
+		return dispatcher.getTemplateTaglibPrefix(sourceUri);
 	}
 
 	private void load() {
@@ -496,6 +464,9 @@ public class VpeTemplateManager {
 		if (defTemplate == null) {
 			defTemplate = createDefTemplate();
 		}
+		dispatcher = new VpeTemplateDispatcher(caseSensitiveTags,
+				ignoreSensitiveTags, docbookTags, matchingTags,
+				templateTaglibs, matchingTemplateTaglibs);
 	}
 
 	private void loadTemplates(IPath vpeFilePath, IConfigurationElement confElement) {
@@ -930,10 +901,14 @@ public class VpeTemplateManager {
 		synchronized (monitor) {
 			templateFileList.load();
 			if (templateFileList.isChanged()) {
-				caseSensitiveTags.clear();
-				ignoreSensitiveTags.clear();
-				matchingTags.clear();
-				docbookTags.clear();
+				/*
+				 * The current dispatcher keeps serving lookups
+				 * until the new one is created by loadImpl()
+				 */
+				caseSensitiveTags = new HashMap<String,VpeTemplateSet>();
+				ignoreSensitiveTags = new HashMap<String,VpeTemplateSet>();
+				matchingTags = new HashMap<String,VpeTemplateSet>();
+				docbookTags = new HashMap<String,VpeTemplateSet>();
 				defTemplate = null;
 				loadImpl();
 				fireTemplateReloaded();
@@ -15,7 +15,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.List;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IStorage;
@@ -57,10 +56,8 @@ public class CustomTLDReference {
 	 */
 	public static IStorage getCustomElementStorage(Node sourceNode,
 			VpePageContext pageContext) {
-		List<TaglibData> taglibs = XmlUtil.getTaglibsForNode(sourceNode,
-				pageContext);
-		TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(sourceNode
-				.getPrefix(), taglibs);
+		TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(sourceNode,
+				pageContext, sourceNode.getPrefix());
 		String uri = sourceNodeTaglib.getUri();
 		XModelObject xmodel = getCustomTaglibObject(pageContext, uri);
 
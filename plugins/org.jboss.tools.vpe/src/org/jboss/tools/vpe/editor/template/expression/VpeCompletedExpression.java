@@ -21,6 +21,10 @@ public class VpeCompletedExpression implements VpeExpression {
 		this.expressions = expressions;
 	}
 
+	VpeExpression[] getExpressions() {
+		return expressions;
+	}
+
 	public VpeValue exec(VpePageContext pageContext, Node sourceNode) throws VpeExpressionException {
 		if (expressions == null) {
 			return new VpeValue(""); //$NON-NLS-1$
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.template.expression;
+
+import org.jboss.tools.vpe.editor.context.VpePageContext;
+import org.w3c.dom.Node;
+
+/**
+ * Operand with a value known at compile time.
+ * It returns the same {@link VpeValue} instance on each call.
+ *
+ * @see VpeExpressionCompiler
+ */
+public class VpeConstantOperand extends VpeOperand {
+	private final VpeValue value;
+
+	VpeConstantOperand(VpeValue value) {
+		this.value = value;
+	}
+
+	@Override
+	int getPriority() {
+		return PRIORITY_OPERAND;
+	}
+
+	public VpeValue exec(VpePageContext pageContext, Node sourceNode) {
+		return value;
+	}
+}
@@ -45,7 +45,20 @@ public class VpeExpressionBuilder {
 	private String text;
 	private boolean caseSensitive;
 	private Set<String> dependencySet;
-	
+	private boolean compile = true;
+
+	public VpeExpressionBuilder() {
+	}
+
+	/**
+	 * @param compile if {@code false} built expressions are not optimized by
+	 * {@link VpeExpressionCompiler}; useful to check the optimized expressions
+	 * give the same results
+	 */
+	public VpeExpressionBuilder(boolean compile) {
+		this.compile = compile;
+	}
+
 	public VpeExpressionInfo buildPlainExpression(String text, boolean caseSensitive) throws VpeExpressionBuilderException {
 		if (text == null) {
 			return new VpeExpressionInfo();
@@ -57,14 +70,21 @@ public class VpeExpressionBuilder {
 		}
 		this.caseSensitive = caseSensitive;
 		dependencySet = new HashSet<String>();
-		return new VpeExpressionInfo(build(), dependencySet.size() > 0 ? dependencySet : null); 
+		VpeExpression expression = build();
+		if (compile) {
+			expression = VpeExpressionCompiler.compile(expression);
+		}
+		return new VpeExpressionInfo(expression, dependencySet.size() > 0 ? dependencySet : null); 
 	}
 	
 	public static VpeExpressionInfo buildCompletedExpression(String text, boolean caseSensitive) throws VpeExpressionBuilderException {
+		return new VpeExpressionBuilder().buildCompleted(text, caseSensitive);
+	}
+
+	public VpeExpressionInfo buildCompleted(String text, boolean caseSensitive) throws VpeExpressionBuilderException {
 		if (text == null) {
 			return new VpeExpressionInfo();
 		}
-		VpeExpressionBuilder builder = new VpeExpressionBuilder();
 		Set<String> dependencySet = new HashSet<String>();
 		List<VpeExpression> expressions = new ArrayList<VpeExpression>();
 		int len = text.length();
@@ -87,7 +107,7 @@ public class VpeExpressionBuilder {
 				subText = text.substring(startIndex, endIndex);
 				startIndex = endIndex + 1;
 				
-				VpeExpressionInfo info = builder.buildPlainExpression(subText, caseSensitive);
+				VpeExpressionInfo info = buildPlainExpression(subText, caseSensitive);
 				if (info.getExpression() != null) {
 					if (info.getDependencySet() != null) {
 						dependencySet.addAll(info.getDependencySet());
@@ -108,6 +128,9 @@ public class VpeExpressionBuilder {
 		} else {
 			expression = new VpeCompletedExpression(expressions.toArray(new VpeExpression[expressions.size()]));
 		}
+		if (compile) {
+			expression = VpeExpressionCompiler.compile(expression);
+		}
 		return new VpeExpressionInfo(expression, dependencySet);
 	}
 
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.template.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Optimizes expressions built by {@link VpeExpressionBuilder}.
+ * <p>
+ * Template expressions are evaluated for every matching source node, so
+ * everything that does not depend on the node is computed once here:
+ * string literals and text parts become {@link VpeConstantOperand}s,
+ * operations and {@code not()} over constants are folded, {@code iif()}
+ * with a constant condition is replaced by the chosen branch and adjacent
+ * constant parts of completed expressions are concatenated.
+ * <p>
+ * A subexpression which fails on evaluation is left as is,
+ * so the error is still reported at the same moment as before.
+ * The results of compiled expressions are the same as of the source ones.
+ */
+class VpeExpressionCompiler {
+
+	private VpeExpressionCompiler() {
+	}
+
+	static VpeExpression compile(VpeExpression expression) {
+		if (expression instanceof VpeOperand) {
+			return compileOperand((VpeOperand) expression);
+		} else if (expression instanceof VpeTextExpression) {
+			String text = ((VpeTextExpression) expression).getText();
+			return new VpeConstantOperand(new VpeValue(text == null ? "" : text)); //$NON-NLS-1$
+		} else if (expression instanceof VpeCompletedExpression) {
+			return compileCompleted((VpeCompletedExpression) expression);
+		}
+		return expression;
+	}
+
+	private static VpeExpression compileCompleted(VpeCompletedExpression completed) {
+		VpeExpression[] expressions = completed.getExpressions();
+		if (expressions == null) {
+			return new VpeConstantOperand(new VpeValue("")); //$NON-NLS-1$
+		}
+		List<VpeExpression> parts = new ArrayList<VpeExpression>(expressions.length);
+		StringBuilder constantPart = null;
+		for (VpeExpression expression : expressions) {
+			VpeExpression part = compile(expression);
+			if (part instanceof VpeConstantOperand) {
+				if (constantPart == null) {
+					constantPart = new StringBuilder();
+				}
+				constantPart.append(constantValue(part).stringValue());
+			} else {
+				if (constantPart != null) {
+					parts.add(new VpeConstantOperand(new VpeValue(constantPart.toString())));
+					constantPart = null;
+				}
+				parts.add(part);
+			}
+		}
+		if (parts.isEmpty()) {
+			// a completed expression always gives a string
+			return new VpeConstantOperand(new VpeValue(
+					constantPart == null ? "" : constantPart.toString())); //$NON-NLS-1$
+		}
+		if (constantPart != null) {
+			parts.add(new VpeConstantOperand(new VpeValue(constantPart.toString())));
+		}
+		return new VpeCompletedExpression(parts.toArray(new VpeExpression[parts.size()]));
+	}
+
+	private static VpeOperand compileOperand(VpeOperand operand) {
+		if (operand instanceof VpeStringOperand) {
+			return new VpeConstantOperand(new VpeValue(((VpeStringOperand) operand).string));
+		} else if (operand instanceof VpeOperation) {
+			VpeOperation operation = (VpeOperation) operand;
+			VpeOperand left = compileOperand(operation.getLeftOperand());
+			VpeOperand right = compileOperand(operation.getRightOperand());
+			operation.setLeftOperand(left);
+			operation.setRightOperand(right);
+			if (left instanceof VpeConstantOperand && right instanceof VpeConstantOperand) {
+				return fold(operation);
+			}
+		} else if (operand instanceof VpeFunction) {
+			return compileFunction((VpeFunction) operand);
+		}
+		return operand;
+	}
+
+	private static VpeOperand compileFunction(VpeFunction function) {
+		VpeOperand[] parameters = function.getParameters();
+		if (parameters == null) {
+			return function;
+		}
+		for (int i = 0; i < parameters.length; i++) {
+			if (parameters[i] != null) {
+				parameters[i] = compileOperand(parameters[i]);
+			}
+		}
+		if (function instanceof VpeFunctionNot) {
+			if (parameters[0] instanceof VpeConstantOperand) {
+				return fold(function);
+			}
+		} else if (function instanceof VpeFunctionIif) {
+			if (parameters.length == 3 && parameters[0] instanceof VpeConstantOperand) {
+				try {
+					VpeOperand branch = constantValue(parameters[0]).booleanValue()
+							? parameters[1] : parameters[2];
+					if (branch != null) {
+						return branch;
+					}
+				} catch (VpeExpressionException e) {
+					// the condition is not boolean, let it fail at runtime
+				}
+			}
+		}
+		return function;
+	}
+
+	/**
+	 * Evaluates the operand which does not depend on the context.
+	 */
+	private static VpeOperand fold(VpeOperand operand) {
+		try {
+			return new VpeConstantOperand(operand.exec(null, null));
+		} catch (VpeExpressionException e) {
+			return operand;
+		}
+	}
+
+	private static VpeValue constantValue(VpeExpression constant) {
+		return ((VpeConstantOperand) constant).exec(null, null);
+	}
+}
@@ -32,6 +32,10 @@ public abstract class VpeFunction extends VpeOperand {
 		return PRIORITY_OPERAND;
 	}
 
+	VpeOperand[] getParameters() {
+		return paramertes;
+	}
+
 	VpeOperand getParameter(int index) throws VpeExpressionException {
 		if (paramertes == null || paramertes.length < index) {
 			throw new VpeExpressionException(VpeUIMessages.INCORRECT_PARAMETER_ERROR);
@@ -27,7 +27,7 @@ public class VpeFunctionAttrPresent extends VpeFunction {
 				if (present) break;
 			}
 		}
-		return new VpeValue(present);
+		return VpeValue.valueOf(present);
 	}
 	
 	public static final String[] SIGNATURE_ANY_ATTR_ARAY = new String[] {VpeExpressionBuilder.SIGNATURE_ANY_ATTR};
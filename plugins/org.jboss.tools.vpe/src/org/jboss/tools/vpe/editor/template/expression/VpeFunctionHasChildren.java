@@ -32,6 +32,6 @@ public class VpeFunctionHasChildren extends VpeFunction {
 					status = true;
 			}
 		}
-		return new VpeValue(status);
+		return VpeValue.valueOf(status);
 	}
 }
@@ -31,6 +31,6 @@ public class VpeFunctionHasContent extends VpeFunction {
 				}
 			}
 		}
-		return new VpeValue(value);
+		return VpeValue.valueOf(value);
 	}
 }
@@ -10,7 +10,6 @@
  ******************************************************************************/
 package org.jboss.tools.vpe.editor.template.expression;
 
-import java.util.List;
 
 import org.jboss.tools.jst.web.tld.TaglibData;
 import org.jboss.tools.vpe.editor.context.VpePageContext;
@@ -32,10 +31,8 @@ public class VpeFunctionHasInParents extends VpeFunction {
 			if(parentSourcePrefix==null) {
 				parentSourcePrefix=""; //$NON-NLS-1$
 			}
-			List<TaglibData> taglibs = XmlUtil.getTaglibsForNode(parentNode,
-					pageContext);
 			TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(
-					parentSourcePrefix, taglibs);
+					parentNode, pageContext, parentSourcePrefix);
 
 			String parentNodeName = parentNode.getNodeName();
 			if (sourceNodeTaglib != null) {
@@ -49,10 +46,10 @@ public class VpeFunctionHasInParents extends VpeFunction {
 				}
 			}
 			if (parentNodeName.equals(prm)) {
-				return new VpeValue(true);
+				return VpeValue.TRUE;
 			}
 			parentNode = parentNode.getParentNode();
 		}
-		return new VpeValue(false);
+		return VpeValue.FALSE;
 	}
 }
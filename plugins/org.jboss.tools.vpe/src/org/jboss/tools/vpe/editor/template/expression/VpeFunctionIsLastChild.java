@@ -17,7 +17,7 @@ import org.w3c.dom.Node;
 public class VpeFunctionIsLastChild extends VpeFunction {
 
 	public VpeValue exec(VpePageContext pageContext, Node sourceNode) {
-		return new VpeValue(!hasNextElementNode(sourceNode));
+		return VpeValue.valueOf(!hasNextElementNode(sourceNode));
 	}
 
 	private boolean hasNextElementNode(Node sourceNode) {
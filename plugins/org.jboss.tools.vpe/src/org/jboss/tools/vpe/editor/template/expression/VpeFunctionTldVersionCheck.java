@@ -10,7 +10,6 @@
 ******************************************************************************/
 package org.jboss.tools.vpe.editor.template.expression;
 
-import java.util.List;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.ui.IEditorInput;
@@ -83,9 +82,7 @@ public class VpeFunctionTldVersionCheck extends VpeFunction{
 				return new VpeValue(false);
 			}
 			
-			List<TaglibData> taglibs = XmlUtil.getTaglibsForNode(sourceNode,pageContext);
-			
-			TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(sourceNode.getPrefix(), taglibs);
+			TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(sourceNode, pageContext, sourceNode.getPrefix());
 			//this function works only for jsp files
 			String  tldVersion = TLDVersionHelper.getTldVersion(sourceNodeTaglib.getUri(), sourceNodeTaglib.getPrefix(), 
 								pageContext.getSourceBuilder().getStructuredTextViewer().getDocument());
@@ -40,6 +40,10 @@ public abstract class VpeOperation extends VpeOperand {
 		}
 	}
 	
+	void setLeftOperand(VpeOperand leftOperand) {
+		this.leftOperand = leftOperand;
+	}
+
 	void setRightOperand(VpeOperand rightOperand) {
 		this.rightOperand = rightOperand;
 	}
@@ -21,6 +21,10 @@ public class VpeTextExpression implements VpeExpression {
 		this.text = text;
 	}
 
+	String getText() {
+		return text;
+	}
+
 	public VpeValue exec(VpePageContext pageContext, Node sourceNode) {
 		if (text == null) {
 			return new VpeValue(""); //$NON-NLS-1$
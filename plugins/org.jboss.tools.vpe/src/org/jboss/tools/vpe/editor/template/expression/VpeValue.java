@@ -18,6 +18,10 @@ public class VpeValue {
 	public static final int STRING_VALUE = 2;
 
 	private static final String ERROR_TYPE_CONVERSION = VpeUIMessages.ERROR_OF_TYPE_CONVERSION;
+
+	/** Shared boolean values, instances of {@code VpeValue} are immutable */
+	static final VpeValue TRUE = new VpeValue(true);
+	static final VpeValue FALSE = new VpeValue(false);
 	
 	private int type = NONE_VALUE;
 	private boolean booleanValue;
@@ -33,6 +37,10 @@ public class VpeValue {
 		type = STRING_VALUE;
 	}
 	
+	static VpeValue valueOf(boolean value) {
+		return value ? TRUE : FALSE;
+	}
+
 	public int type() {
 		return type;
 	}
@@ -72,28 +80,28 @@ public class VpeValue {
 			value = false;
 		break;
 		}
-		return new VpeValue(value); 
+		return valueOf(value); 
 	}
 	
 	VpeValue not() throws VpeExpressionException{
 		if (type != BOOLEAN_VALUE) {
 			throw new VpeExpressionException(ERROR_TYPE_CONVERSION+" for["+stringValue+"]");  //$NON-NLS-1$//$NON-NLS-2$
 		}
-		return new VpeValue(!booleanValue);
+		return valueOf(!booleanValue);
 	}
 	
 	VpeValue and(VpeValue other) throws VpeExpressionException {
 		if (type != BOOLEAN_VALUE || other.type() != BOOLEAN_VALUE) {
 			throw new VpeExpressionException(ERROR_TYPE_CONVERSION+" for["+stringValue+"]"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		return new VpeValue(booleanValue && other.booleanValue());
+		return valueOf(booleanValue && other.booleanValue());
 	}
 	
 	VpeValue or(VpeValue other) throws VpeExpressionException{
 		if (type != BOOLEAN_VALUE || other.type() != BOOLEAN_VALUE) {
 			throw new VpeExpressionException(ERROR_TYPE_CONVERSION+" for["+stringValue+"]"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		return new VpeValue(booleanValue || other.booleanValue());
+		return valueOf(booleanValue || other.booleanValue());
 	}
 	
 	
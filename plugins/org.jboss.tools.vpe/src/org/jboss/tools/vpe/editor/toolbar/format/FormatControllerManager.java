@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007 Exadel, Inc. and Red Hat, Inc.
+ * Copyright (c) 2007-2016 Exadel, Inc. and Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -13,8 +13,11 @@ package org.jboss.tools.vpe.editor.toolbar.format;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
 import org.eclipse.wst.sse.ui.internal.StructuredTextViewer;
 import org.eclipse.wst.xml.core.internal.document.ElementImpl;
 import org.eclipse.wst.xml.core.internal.document.TextImpl;
@@ -46,9 +49,18 @@ public class FormatControllerManager {
 	private Node currentSelectedElement; // Parent node If currentSelectedNode is Text.
 	private SelectedNodeInfo currentSelectedNodeInfo;
 	private boolean controllerNotifedSelectionChange = false;
-	private String currentSelectedTagValue;
 	private boolean ignoreSelectionChanges = false;
 
+	/* the format state the toolbar items are set for */
+	private Node appliedNode;
+	private Node appliedElement;
+	private String appliedTagValue;
+	private TextFormatingData appliedFormatingData;
+	private boolean allFormatControllersDisabled = false;
+
+	/** decisions of the format controllers by the template format data */
+	private Map<TextFormatingData, FormatDecision[]> formatDecisions = new WeakHashMap<TextFormatingData, FormatDecision[]>();
+
 	/**
 	 * Constructor
 	 */
@@ -72,88 +84,134 @@ public class FormatControllerManager {
 		if(cleanNodesList.size()==1) {
 			SelectedNodeInfo newNodeInfo = (SelectedNodeInfo)cleanNodesList.get(0);
 			if(newNodeInfo!=null) {
-				 Node newNode = newNodeInfo.getNode();
-				 if(currentSelectedNode == newNode && newNode.getNodeType() == Node.ELEMENT_NODE) {
-					 ElementImpl elementImpl = (ElementImpl)newNode;
-					 int startOffset = elementImpl.getStartOffset();
-					 int startEndOffset = elementImpl.getStartEndOffset();
-					 StructuredTextViewer viewer = getVpeController().getSourceEditor().getTextViewer();//getPageContext().getSourceBuilder().getStructuredTextViewer();
-					 try {
-						String newSelectedTagValue = viewer.getDocument().get(startOffset, startEndOffset-startOffset);
-						if(currentSelectedTagValue!=null && currentSelectedTagValue.equals(newSelectedTagValue)) {
-							return;
-						}
-						currentSelectedTagValue = newSelectedTagValue;
-					 } catch (BadLocationException e) {
-						 VpePlugin.getPluginLog().logError(e);
-					 }
-				 } else {
-					 currentSelectedTagValue = null;
-				 }
-			this.currentSelectedNode = newNodeInfo.getNode();
+				this.currentSelectedNode = newNodeInfo.getNode();
 			}
 			currentSelectedNodeInfo = newNodeInfo;
 
 			currentSelectedElement = currentSelectedNode;
 			TextFormatingData textFormatingData = getFormatTemplateForSelectedNode();
 			if(textFormatingData!=null) {
-				selectionChanged(textFormatingData);
+				// Nothing to update if the caret is moved within the same node or a text is typed.
+				if(appliedFormatingData == textFormatingData && appliedNode == currentSelectedNode
+						&& appliedElement == currentSelectedElement && isAppliedStartTag(currentSelectedElement)) {
+					return;
+				}
+				if(selectionChanged(textFormatingData)) {
+					appliedFormatingData = textFormatingData;
+					appliedNode = currentSelectedNode;
+					appliedElement = currentSelectedElement;
+					appliedTagValue = getStartTagValue(currentSelectedElement);
+				}
 			} else {
 				disableAllFormatControllers();
 			}
 		} else {
 			disableAllFormatControllers();
-			currentSelectedTagValue = null;
 			currentSelectedNodeInfo = null;
 			currentSelectedNode = null;
 			currentSelectedElement = currentSelectedNode; 
 		}
 	}
 
-	private void selectionChanged(TextFormatingData textFormatingData) {
+	/**
+	 * @return {@code false} if the selection changes are ignored now
+	 */
+	private boolean selectionChanged(TextFormatingData textFormatingData) {
 		if(ignoreSelectionChanges) {
-			return;
+			return false;
 		}
+		allFormatControllersDisabled = false;
+		FormatDecision[] decisions = getFormatDecisions(textFormatingData);
 		for(int i=0; i<formatControllers.size(); i++) {
 			IFormatController controller = (IFormatController)formatControllers.get(i);
-			FormatData[] formatDatas = textFormatingData.getFormatDatas(controller.getType());
+			FormatDecision decision = decisions[i];
 			boolean enabled = false;
-			for(int j=0; j<formatDatas.length; j++) {
-				FormatData formatData = formatDatas[j];
-				currentFormatData = formatData;
-				IFormatHandler handler = handlerFactory.createHandler(formatData);
-				if(handler!=null) {
-					if(handler instanceof FormatHandler) {
-						FormatHandler formatHandler = (FormatHandler)handler;
-						formatHandler.setFormatController(controller);
-					}
+			for(int j=0; j<decision.handlers.length; j++) {
+				IFormatHandler handler = decision.handlers[j];
+				currentFormatData = decision.handlerFormatDatas[j];
+				if(handler instanceof FormatHandler) {
+					FormatHandler formatHandler = (FormatHandler)handler;
+					formatHandler.setFormatController(controller);
+				}
+				if(handler.formatIsAllowable()) {
 					if(handler instanceof IFormatItemSelector) {
-						IFormatItemSelector itemHandler = (IFormatItemSelector)handler;
-						if(handler.formatIsAllowable()) {
-							itemHandler.setToolbarItemEnabled(true);
-							enabled = true;
-							break;
-						}
+						((IFormatItemSelector)handler).setToolbarItemEnabled(true);
 					} else {
-						if(handler.formatIsAllowable()) {
-							controller.setToolbarItemEnabled(true);
-							enabled = true;
-							break;
-						}
-					}
-				} else {
-					boolean allowable = formatData.getFormatAttributes().length > 0;
-					if(allowable) {
 						controller.setToolbarItemEnabled(true);
-						enabled = true;
-						break;
 					}
+					enabled = true;
+					break;
 				}
 			}
 			if(!enabled) {
-				controller.setToolbarItemEnabled(false);
+				if(decision.lastFormatData!=null) {
+					currentFormatData = decision.lastFormatData;
+				}
+				controller.setToolbarItemEnabled(decision.enabledByAttributes);
 			}
 		}
+		return true;
+	}
+
+	/**
+	 * Returns the decisions of the format controllers for the template format data,
+	 * the handlers are created once for the data.
+	 */
+	private FormatDecision[] getFormatDecisions(TextFormatingData textFormatingData) {
+		FormatDecision[] decisions = formatDecisions.get(textFormatingData);
+		if(decisions==null) {
+			decisions = new FormatDecision[formatControllers.size()];
+			for(int i=0; i<decisions.length; i++) {
+				decisions[i] = new FormatDecision(textFormatingData.getFormatDatas(formatControllers.get(i).getType()));
+			}
+			formatDecisions.put(textFormatingData, decisions);
+		}
+		return decisions;
+	}
+
+	/**
+	 * @return the source of the start tag of the element or {@code null}
+	 */
+	private String getStartTagValue(Node node) {
+		if(node instanceof ElementImpl) {
+			ElementImpl elementImpl = (ElementImpl)node;
+			int startOffset = elementImpl.getStartOffset();
+			int startEndOffset = elementImpl.getStartEndOffset();
+			StructuredTextViewer viewer = getVpeController().getSourceEditor().getTextViewer();
+			try {
+				return viewer.getDocument().get(startOffset, startEndOffset-startOffset);
+			} catch (BadLocationException e) {
+				VpePlugin.getPluginLog().logError(e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Compares the source of the start tag of the element with the applied one
+	 * in the document, without copying the source.
+	 */
+	private boolean isAppliedStartTag(Node node) {
+		if(appliedTagValue==null || !(node instanceof ElementImpl)) {
+			return false;
+		}
+		ElementImpl elementImpl = (ElementImpl)node;
+		int startOffset = elementImpl.getStartOffset();
+		if(elementImpl.getStartEndOffset()-startOffset != appliedTagValue.length()) {
+			return false;
+		}
+		IDocument document = getVpeController().getSourceEditor().getTextViewer().getDocument();
+		try {
+			for(int i=0; i<appliedTagValue.length(); i++) {
+				if(document.getChar(startOffset+i) != appliedTagValue.charAt(i)) {
+					return false;
+				}
+			}
+		} catch (BadLocationException e) {
+			VpePlugin.getPluginLog().logError(e);
+			return false;
+		}
+		return true;
 	}
 
 	private TextFormatingData getParentFormatingDataForTextNode(SelectedNodeInfo selectedNodeInfo) {
@@ -274,9 +332,17 @@ public class FormatControllerManager {
 	}
 
 	private void disableAllFormatControllers() {
+		appliedFormatingData = null;
+		appliedNode = null;
+		appliedElement = null;
+		appliedTagValue = null;
+		if(allFormatControllersDisabled) {
+			return;
+		}
 		for(int i=0; i<formatControllers.size(); i++) {
 			((IFormatController)formatControllers.get(i)).setToolbarItemEnabled(false);
 		}
+		allFormatControllersDisabled = true;
 	}
 
 	/**
@@ -292,6 +358,9 @@ public class FormatControllerManager {
 	 */
 	public void addFormatController(IFormatController controller) {
 		formatControllers.add(controller);
+		formatDecisions.clear();
+		appliedFormatingData = null;
+		allFormatControllersDisabled = false;
 	}
 
 	/**
@@ -350,4 +419,40 @@ public class FormatControllerManager {
 	public void setIgnoreSelectionChanges(boolean ignoreSelectionChanges) {
 		this.ignoreSelectionChanges = ignoreSelectionChanges;
 	}
+
+	/**
+	 * Decision of a format controller for the format data of a template.
+	 * Keeps the handlers to check in the order of the format data, the format data
+	 * without handler enable the controller by their attributes.
+	 */
+	private class FormatDecision {
+		private final FormatData[] handlerFormatDatas;
+		private final IFormatHandler[] handlers;
+		private final boolean enabledByAttributes;
+		/* the format data checked last if no handler allows the format */
+		private final FormatData lastFormatData;
+
+		FormatDecision(FormatData[] formatDatas) {
+			List<FormatData> datas = new ArrayList<FormatData>();
+			List<IFormatHandler> formatHandlers = new ArrayList<IFormatHandler>();
+			boolean allowable = false;
+			FormatData last = null;
+			for(int j=0; j<formatDatas.length; j++) {
+				FormatData formatData = formatDatas[j];
+				last = formatData;
+				IFormatHandler handler = handlerFactory.createHandler(formatData);
+				if(handler!=null) {
+					datas.add(formatData);
+					formatHandlers.add(handler);
+				} else if(formatData.getFormatAttributes().length > 0) {
+					allowable = true;
+					break;
+				}
+			}
+			handlerFormatDatas = datas.toArray(new FormatData[datas.size()]);
+			handlers = formatHandlers.toArray(new IFormatHandler[formatHandlers.size()]);
+			enabledByAttributes = allowable;
+			lastFormatData = last;
+		}
+	}
 }
\ No newline at end of file
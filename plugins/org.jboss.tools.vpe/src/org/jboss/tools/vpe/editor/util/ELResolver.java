@@ -51,33 +51,15 @@ public class ELResolver {
 		if (resourceString == null) {
 			return ""; //$NON-NLS-1$
 		}
-		String rst = resourceString;
-		final ResourceReference[] references = getResourceReferences();
-		if (references == null || references.length == 0) {
-			return rst;
+		final ElExpressionMatcher matcher = pageContext.getResourceReferencesMatcher();
+		if (matcher == null) {
+			return resourceString;
 		}
-		rst = ElServiceUtil.replace(resourceString, references);
-		return rst;
+		return matcher.replace(resourceString);
 	}
 
 	protected String replaceCustomAttributes(String value) {
-		String result = value;
-		final int nPrefLen = ElServiceUtil.getPrefLen(); // for small-simple optimization
-		for (String el : pageContext.getKeysCustomElementsAttributes()) {
-			if (el.length() + nPrefLen > result.length()) {
-				continue; // no sense for sequence contains checks...
-			}
-			final String dollarEl = ElServiceUtil.envelopeInDollarEl(el);
-			final String sharpEl = ElServiceUtil.envelopeInSharpEl(el);
-
-			if (result.contains(dollarEl)) {
-				result = result.replace(dollarEl, pageContext.getAttributefromCustomElementsMapValue(el));
-			}
-			if (result.contains(sharpEl)) {
-				result = result.replace(sharpEl, pageContext.getAttributefromCustomElementsMapValue(el));
-			}
-		}
-		return result;
+		return pageContext.getCustomElementsAttributesMatcher().replace(value);
 	}
 
 	/**
@@ -132,16 +114,7 @@ public class ELResolver {
 	}
 
 	protected boolean isInCustomElementsAttributes(String textValue) {
-		boolean res = false;
-		if (textValue != null) {
-			for (String key : pageContext.getKeysCustomElementsAttributes()) {
-				if (ElServiceUtil.equalsExppression(textValue, key)) {
-					res = true;
-					break;
-				}
-			}
-		}
-		return res;
+		return pageContext.getCustomElementsAttributesMatcher().matches(textValue);
 	}
 
 	/**
@@ -168,8 +141,8 @@ public class ELResolver {
 		/*
 		 * Case 1
 		 */
-		final ResourceReference[] references = getResourceReferences();
-		if (references == null || references.length == 0) {
+		final ElExpressionMatcher matcher = pageContext.getResourceReferencesMatcher();
+		if (matcher == null || matcher.isEmpty()) {
 			return false;
 		}
 		/*
@@ -178,7 +151,7 @@ public class ELResolver {
 		String textValue = null;
 		if (sourceNode.getNodeType() == Node.TEXT_NODE) {
 			textValue = sourceNode.getNodeValue();
-			if (textValue != null && ElServiceUtil.isInReferenceResourcesList(references, textValue)) {
+			if (matcher.matches(textValue)) {
 				return true;
 			}
 		}
@@ -188,7 +161,7 @@ public class ELResolver {
 		final NamedNodeMap nodeMap = sourceNode.getAttributes();
 		if (nodeMap != null) {
 			for (int i = 0; i < nodeMap.getLength(); i++) {
-				if (ElServiceUtil.isInReferenceResourcesList(references, ((Attr) nodeMap.item(i)).getValue())) {
+				if (matcher.matches(((Attr) nodeMap.item(i)).getValue())) {
 					return true;
 				}
 			}
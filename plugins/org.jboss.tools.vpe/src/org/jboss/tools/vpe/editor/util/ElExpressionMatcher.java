@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.util;
+
+import java.util.Map;
+
+import org.jboss.tools.common.resref.core.ResourceReference;
+
+/**
+ * Finds and substitutes a set of EL expressions ({@code ${expression}}
+ * and {@code #{expression}}) in a string.
+ * <p>
+ * The expressions are compiled in a trie, so a string is processed in a single
+ * left to right pass: at every EL prefix the trie is walked along the
+ * following characters, whatever the number of expressions is. Nothing is
+ * allocated for a string without matches.
+ * <p>
+ * The expressions are given in the order of precedence, when an expression
+ * is defined several times the first definition wins. This is the order of
+ * {@link ElServiceUtil#sortReferencesByScope2(ResourceReference[])}.
+ */
+public class ElExpressionMatcher {
+
+	private static final char PREFIX_START_DOLLAR = ElServiceUtil.DOLLAR_PREFIX.charAt(0);
+	private static final char PREFIX_START_SHARP = ElServiceUtil.SHARP_PREFIX.charAt(0);
+	private static final char PREFIX_END = ElServiceUtil.DOLLAR_PREFIX.charAt(1);
+
+	private final TrieNode root = new TrieNode();
+	private final ResourceReference[] references;
+	private int size = 0;
+
+	/**
+	 * Creates matcher for the locations of the references, which are
+	 * substituted by their properties.
+	 *
+	 * @param sortedReferences references in the order of precedence
+	 */
+	public ElExpressionMatcher(ResourceReference[] sortedReferences) {
+		this.references = sortedReferences;
+		if (sortedReferences != null) {
+			for (ResourceReference reference : sortedReferences) {
+				add(reference.getLocation(), reference.getProperties());
+			}
+		}
+	}
+
+	/**
+	 * Creates matcher for the keys of the map, which are substituted
+	 * by their values.
+	 */
+	public ElExpressionMatcher(Map<String, String> expressions) {
+		this.references = null;
+		for (Map.Entry<String, String> entry : expressions.entrySet()) {
+			add(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Returns the references the matcher is created for or {@code null}
+	 * if it is created for a map.
+	 */
+	public ResourceReference[] getReferences() {
+		return references;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Checks if the string contains any of the expressions.
+	 */
+	public boolean matches(String string) {
+		if (string == null || size == 0) {
+			return false;
+		}
+		int end = string.length() - 1;
+		for (int i = 1; i < end; i++) {
+			if (isPrefixAt(string, i) && match(string, i + 1) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Replaces all the expressions in the string by their values.
+	 *
+	 * @return the string with expressions replaced or the same string
+	 * if there is nothing to replace
+	 */
+	public String replace(String string) {
+		if (string == null || size == 0) {
+			return string;
+		}
+		StringBuilder result = null;
+		int copied = 0;
+		int end = string.length() - 1;
+		for (int i = 1; i < end; i++) {
+			if (!isPrefixAt(string, i)) {
+				continue;
+			}
+			TrieNode matched = match(string, i + 1);
+			if (matched != null) {
+				if (result == null) {
+					result = new StringBuilder(string.length() + matched.value.length());
+				}
+				result.append(string, copied, i - 1).append(matched.value);
+				copied = i + 1 + matched.depth;
+				i = copied - 1;
+			}
+		}
+		if (result == null) {
+			return string;
+		}
+		return result.append(string, copied, string.length()).toString();
+	}
+
+	/**
+	 * Checks if {@code ${} or {@code #{} ends at the index.
+	 */
+	private static boolean isPrefixAt(String string, int index) {
+		if (string.charAt(index) != PREFIX_END) {
+			return false;
+		}
+		char c = string.charAt(index - 1);
+		return c == PREFIX_START_DOLLAR || c == PREFIX_START_SHARP;
+	}
+
+	/**
+	 * Walks the trie along the string from the index and returns the
+	 * node of the expression with the highest precedence found on the way.
+	 */
+	private TrieNode match(String string, int index) {
+		TrieNode node = root;
+		TrieNode matched = null;
+		int length = string.length();
+		for (int i = index; i < length; i++) {
+			node = node.get(string.charAt(i));
+			if (node == null) {
+				break;
+			}
+			if (node.value != null && (matched == null || node.rank < matched.rank)) {
+				matched = node;
+			}
+		}
+		return matched;
+	}
+
+	private void add(String expression, String value) {
+		if (expression == null || value == null) {
+			return;
+		}
+		TrieNode node = root;
+		String key = expression + ElServiceUtil.SUFFIX;
+		for (int i = 0; i < key.length(); i++) {
+			node = node.getOrAdd(key.charAt(i));
+		}
+		if (node.value == null) {
+			node.value = value;
+			node.rank = size++;
+		}
+	}
+
+	private static class TrieNode {
+		/** Sorted characters of the children. */
+		private char[] keys = new char[0];
+		private TrieNode[] children = new TrieNode[0];
+		/** Length of the expression with the suffix ending at this node. */
+		private int depth;
+		/** Replacement of the expression ending at this node. */
+		private String value;
+		private int rank;
+
+		TrieNode get(char c) {
+			int index = indexOf(c);
+			return index < 0 ? null : children[index];
+		}
+
+		TrieNode getOrAdd(char c) {
+			int index = indexOf(c);
+			if (index >= 0) {
+				return children[index];
+			}
+			index = -index - 1;
+			char[] newKeys = new char[keys.length + 1];
+			TrieNode[] newChildren = new TrieNode[children.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, index);
+			System.arraycopy(children, 0, newChildren, 0, index);
+			System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+			System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+			TrieNode child = new TrieNode();
+			child.depth = depth + 1;
+			newKeys[index] = c;
+			newChildren[index] = child;
+			keys = newKeys;
+			children = newChildren;
+			return child;
+		}
+
+		private int indexOf(char c) {
+			int low = 0;
+			int high = keys.length - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (keys[middle] < c) {
+					low = middle + 1;
+				} else if (keys[middle] > c) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+			return -(low + 1);
+		}
+	}
+}
@@ -28,6 +28,9 @@ public class ElServiceUtil {
 
 	public static final String SHARP_PREFIX = "#{"; //$NON-NLS-1$
 
+	/** Matcher of the references replaced last, a page replaces the values with the same references. */
+	private static volatile CachedMatcher lastMatcher;
+
 	/**
 	 * Replace el.
 	 * 
@@ -107,27 +110,30 @@ public class ElServiceUtil {
 	 *            the references
 	 * 
 	 * @return the string
+	 * 
+	 * @see ElExpressionMatcher#replace(String)
 	 */
 	public static String replace(String resourceString, ResourceReference[] sortedReferences) {
-		String result = resourceString;
+		if (sortedReferences == null || sortedReferences.length == 0) {
+			return resourceString;
+		}
 		// Values with higher precedence should be replaced in the first place.
 		// Expect sorted by scope references.
-		final int nPrefLen = getPrefLen(); // for small-simple optimization
-		for (ResourceReference rf : sortedReferences) {
-			final String tmp = rf.getLocation();
-			if (tmp.length() + nPrefLen > resourceString.length()) {
-				continue; // no sense for sequence contains checks...
-			}
-			final String dollarEl = envelopeInDollarEl(tmp);
-			final String sharpEl = envelopeInSharpEl(tmp);
-			if (resourceString.contains(dollarEl)) {
-				result = result.replace(dollarEl, rf.getProperties());
-			}
-			if (resourceString.contains(sharpEl)) {
-				result = result.replace(sharpEl, rf.getProperties());
-			}
+		return getMatcher(sortedReferences).replace(resourceString);
+	}
+
+	/**
+	 * Returns the matcher of the references. The matcher of the last references
+	 * is reused while the locations and the properties of the references are the same,
+	 * the arrays of {@link #getAllResources(IFile)} are new for every call.
+	 */
+	private static ElExpressionMatcher getMatcher(ResourceReference[] sortedReferences) {
+		CachedMatcher cachedMatcher = lastMatcher;
+		if (cachedMatcher == null || !cachedMatcher.isCreatedFor(sortedReferences)) {
+			cachedMatcher = new CachedMatcher(sortedReferences);
+			lastMatcher = cachedMatcher;
 		}
-		return result;
+		return cachedMatcher.matcher;
 	}
 
 	public static int getPrefLen() {
@@ -175,4 +181,40 @@ public class ElServiceUtil {
 	public static String envelopeInSharpEl(String str) {
 		return SHARP_PREFIX + str + SUFFIX;
 	}
+
+	/**
+	 * Matcher with the locations and the properties of the references it is created for.
+	 */
+	private static class CachedMatcher {
+		private final String[] locations;
+		private final String[] properties;
+		private final ElExpressionMatcher matcher;
+
+		CachedMatcher(ResourceReference[] references) {
+			locations = new String[references.length];
+			properties = new String[references.length];
+			for (int i = 0; i < references.length; i++) {
+				locations[i] = references[i].getLocation();
+				properties[i] = references[i].getProperties();
+			}
+			matcher = new ElExpressionMatcher(references);
+		}
+
+		boolean isCreatedFor(ResourceReference[] references) {
+			if (references.length != locations.length) {
+				return false;
+			}
+			for (int i = 0; i < references.length; i++) {
+				if (!equal(locations[i], references[i].getLocation())
+						|| !equal(properties[i], references[i].getProperties())) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean equal(String s1, String s2) {
+			return s1 == null ? s2 == null : s1.equals(s2);
+		}
+	}
 }
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Prefix tree of the character entities like {@code &amp;}.
+ * <p>
+ * Checks if a range of a text is an entity without taking a substring of it,
+ * the check stops at the first character which no entity continues with.
+ */
+public class EntityTrie {
+	private static final char[] NO_KEYS = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private final Node root = new Node();
+
+	/**
+	 * @param entities the entities with their '&amp;' and ';'
+	 */
+	public EntityTrie(Collection<String> entities) {
+		for (String entity : entities) {
+			add(entity);
+		}
+	}
+
+	private void add(String entity) {
+		Node node = root;
+		for (int i = 0; i < entity.length(); i++) {
+			node = node.getOrAddChild(entity.charAt(i));
+		}
+		node.terminal = true;
+	}
+
+	/**
+	 * @return {@code true} if the text is one of the entities
+	 */
+	public boolean contains(String text) {
+		return contains(text, 0, text.length());
+	}
+
+	/**
+	 * @param text the text
+	 * @param start the start index of the range, inclusive
+	 * @param end the end index of the range, exclusive
+	 * @return {@code true} if the range of the text is one of the entities
+	 */
+	public boolean contains(CharSequence text, int start, int end) {
+		Node node = root;
+		for (int i = start; i < end; i++) {
+			node = node.getChild(text.charAt(i));
+			if (node == null) {
+				return false;
+			}
+		}
+		return node.terminal;
+	}
+
+	private static class Node {
+		/* the keys are sorted, the children are at the indexes of their keys */
+		private char[] keys = NO_KEYS;
+		private Node[] children = NO_CHILDREN;
+		private boolean terminal;
+
+		Node getChild(char key) {
+			int index = Arrays.binarySearch(keys, key);
+			return index < 0 ? null : children[index];
+		}
+
+		Node getOrAddChild(char key) {
+			int index = Arrays.binarySearch(keys, key);
+			if (index >= 0) {
+				return children[index];
+			}
+			index = -index - 1;
+			char[] newKeys = new char[keys.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, index);
+			System.arraycopy(children, 0, newChildren, 0, index);
+			System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+			System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+			Node child = new Node();
+			newKeys[index] = key;
+			newChildren[index] = child;
+			keys = newKeys;
+			children = newChildren;
+			return child;
+		}
+	}
+}
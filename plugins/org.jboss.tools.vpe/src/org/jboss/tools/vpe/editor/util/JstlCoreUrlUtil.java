@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007-2013 Red Hat, Inc.
+ * Copyright (c) 2007-2016 Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -21,6 +21,13 @@ import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
 /**
+ * Replaces JSTL core {@code url} tags written in attribute values by their
+ * {@code value}.
+ * <p>
+ * The patterns are compiled once per prefix and cached by
+ * {@link VpePageContext#getJstlCoreUrlPattern(String)}, the values without
+ * {@code <prefix:url} are skipped without running them.
+ *
  * @author Yahor Radtsevich (yradtsevich)
  */
 public class JstlCoreUrlUtil {
@@ -30,14 +37,25 @@ public class JstlCoreUrlUtil {
 	public static boolean isContainigJstlCoreUrlInAttributes(VpePageContext pageContext, Node sourceNode) {
 		NamedNodeMap attributes = sourceNode.getAttributes();
 		if (attributes != null) {
+			String jstlCorePrefix = null;
+			boolean prefixResolved = false;
 			int attributesLength = attributes.getLength();
 			for (int i = 0; i < attributesLength; i++) {
 				Node attribute = attributes.item(i);
 				String value = attribute.getNodeValue();
-				if (value != null && value.contains(JSTL_CORE_URL_PRE_CHECK_STRING)) {// pre-check to not compile regexps every time
-					Pattern jstlCoreUrlPattern = createJstlCoreUrlPattern(pageContext, sourceNode);
-					if (jstlCoreUrlPattern != null && jstlCoreUrlPattern.matcher(value).find()) {
-						return true;
+				if (value != null && value.contains(JSTL_CORE_URL_PRE_CHECK_STRING)) {// pre-check to not resolve the prefix every time
+					if (!prefixResolved) {
+						jstlCorePrefix = getJstlCorePrefix(pageContext, sourceNode);
+						prefixResolved = true;
+					}
+					if (jstlCorePrefix == null) {
+						return false;
+					}
+					if (containsJstlCoreUrl(value, jstlCorePrefix)) {
+						Pattern jstlCoreUrlPattern = pageContext.getJstlCoreUrlPattern(jstlCorePrefix);
+						if (jstlCoreUrlPattern != null && jstlCoreUrlPattern.matcher(value).find()) {
+							return true;
+						}
 					}
 				}
 			}
@@ -48,33 +66,57 @@ public class JstlCoreUrlUtil {
 	public static String processJstlCoreUrlIfNeeded(VpePageContext pageContext, Node contextNode,
 			String value) {
 		if (contextNode != null && value.contains(JSTL_CORE_URL_PRE_CHECK_STRING)) {
-			Pattern jstlCoreUrlPattern = createJstlCoreUrlPattern(pageContext, contextNode);
-			if (jstlCoreUrlPattern != null) {
-				 return jstlCoreUrlPattern.matcher(value).replaceAll("$2"); //$NON-NLS-1$
+			String jstlCorePrefix = getJstlCorePrefix(pageContext, contextNode);
+			if (jstlCorePrefix != null && containsJstlCoreUrl(value, jstlCorePrefix)) {
+				Pattern jstlCoreUrlPattern = pageContext.getJstlCoreUrlPattern(jstlCorePrefix);
+				if (jstlCoreUrlPattern != null) {
+					 return jstlCoreUrlPattern.matcher(value).replaceAll("$2"); //$NON-NLS-1$
+				}
 			}
 		}
 		return value;
 	}
-	
-	private static Pattern createJstlCoreUrlPattern(VpePageContext pageContext, Node contextNode) {
-		if (contextNode == null) {
-			return null;
+
+	/**
+	 * Checks cheaply if the value contains {@code <prefix:url}, the values
+	 * without it do not match {@link #createJstlCoreUrlPattern(String)}.
+	 */
+	public static boolean containsJstlCoreUrl(String value, String jstlCorePrefix) {
+		int prefixLength = jstlCorePrefix.length();
+		for (int i = value.indexOf(JSTL_CORE_URL_PRE_CHECK_STRING, prefixLength + 1); i >= 0;
+				i = value.indexOf(JSTL_CORE_URL_PRE_CHECK_STRING, i + 1)) {
+			if (value.charAt(i - prefixLength - 1) == '<'
+					&& value.regionMatches(i - prefixLength, jstlCorePrefix, 0, prefixLength)) {
+				return true;
+			}
 		}
-		Pattern jstlCoreUrlPattern = null;
+		return false;
+	}
+
+	/**
+	 * Returns the prefix of the JSTL core taglib visible at the node
+	 * or {@code null} if the taglib is not declared.
+	 */
+	private static String getJstlCorePrefix(VpePageContext pageContext, Node contextNode) {
 		List<TaglibData> taglibs = XmlUtil.getTaglibsForNode(contextNode, pageContext);
 		TaglibData jstlCoreTaglib = XmlUtil.getTaglibForURI(JSTL_CORE_TAGLIB, taglibs);
-		if (jstlCoreTaglib != null) {
-			String jstlCorePrefix = jstlCoreTaglib.getPrefix();
-			if (jstlCorePrefix != null) {
-				try {
-					jstlCoreUrlPattern = Pattern.compile(
-							"<" + jstlCorePrefix + ":url\\s[^>]*?value\\s*?=\\s*?([\"'])(.*?)(\\1).*?(/>|</" + jstlCorePrefix +":url\\s*>)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-				} catch (PatternSyntaxException e) {
-					VpePlugin.getPluginLog().logError(e);
-				}
-			}
+		return jstlCoreTaglib != null ? jstlCoreTaglib.getPrefix() : null;
+	}
+
+	/**
+	 * Compiles the pattern of the {@code url} tags with the prefix, the
+	 * second group of a match is the value of the tag.
+	 * 
+	 * @return the pattern or {@code null} if the prefix is not valid in it
+	 */
+	public static Pattern createJstlCoreUrlPattern(String jstlCorePrefix) {
+		try {
+			return Pattern.compile(
+					"<" + jstlCorePrefix + ":url\\s[^>]*?value\\s*?=\\s*?([\"'])(.*?)(\\1).*?(/>|</" + jstlCorePrefix +":url\\s*>)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		} catch (PatternSyntaxException e) {
+			VpePlugin.getPluginLog().logError(e);
+			return null;
 		}
-		return jstlCoreUrlPattern;
 	}
 
 }
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.tools.jst.web.tld.TaglibData;
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Caches the namespace declarations ({@code xmlns} attributes) visible
+ * at every element of a source document.
+ * <p>
+ * The scope of an element is computed once by inheriting the scope of its
+ * parent, so asking for the taglibs of a node neither walks its ancestors
+ * nor allocates. Entries are dropped by {@link #invalidate(Node)} when a
+ * namespace declaration changes or a subtree is removed from the document,
+ * and all at once by {@link #clear()} when the visual DOM is rebuilt.
+ * <p>
+ * The content of a scope is the same as the former ancestor walk produced:
+ * declarations of the nearest element come first and a prefix declared
+ * several times is resolved to the nearest declaration.
+ *
+ * @see XmlUtil#getTaglibsForNode(Node, org.jboss.tools.vpe.editor.context.VpePageContext)
+ */
+public class NamespaceScopeIndex {
+
+	private static final String XMLNS = "xmlns"; //$NON-NLS-1$
+	private static final Scope EMPTY_SCOPE = new Scope(null, null,
+			Collections.<TaglibData>emptyList());
+
+	private final Map<Node, Scope> scopes = new IdentityHashMap<Node, Scope>();
+
+	/**
+	 * Returns unmodifiable list of taglibs declared for the node
+	 * and its ancestors.
+	 */
+	public List<TaglibData> getTaglibs(Node node) {
+		return getScope(node).taglibs;
+	}
+
+	/**
+	 * Returns taglib visible at the node for the prefix
+	 * (compared ignoring case) or {@code null} if there is no such.
+	 */
+	public TaglibData getTaglibForPrefix(Node node, String prefix) {
+		if (prefix == null) {
+			return null;
+		}
+		return getScope(node).get(prefix);
+	}
+
+	/**
+	 * Forgets the scopes of the node and all its descendants.
+	 */
+	public void invalidate(Node node) {
+		if (node == null || scopes.isEmpty()) {
+			return;
+		}
+		scopes.remove(node);
+		NodeList children = node.getChildNodes();
+		if (children != null) {
+			for (int i = 0; i < children.getLength(); i++) {
+				Node child = children.item(i);
+				if (child.getNodeType() == Node.ELEMENT_NODE) {
+					invalidate(child);
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		scopes.clear();
+	}
+
+	/**
+	 * Checks if the attribute name is a namespace declaration,
+	 * i.e. changing it affects the scopes of the element subtree.
+	 */
+	public static boolean isNamespaceDeclaration(String attributeName) {
+		return attributeName != null && attributeName.startsWith(XMLNS);
+	}
+
+	private Scope getScope(Node node) {
+		if (node == null) {
+			return EMPTY_SCOPE;
+		}
+		Node parent = node.getParentNode();
+		short nodeType = node.getNodeType();
+		if (nodeType != Node.ELEMENT_NODE && nodeType != Node.DOCUMENT_NODE) {
+			/*
+			 * Only elements declare namespaces,
+			 * other nodes just see the scope of their parent.
+			 */
+			return getScope(parent);
+		}
+		Scope scope = scopes.get(node);
+		if (scope == null || scope.parent != parent) {
+			scope = createScope(node, parent);
+			scopes.put(node, scope);
+		}
+		return scope;
+	}
+
+	private Scope createScope(Node node, Node parent) {
+		Scope parentScope = getScope(parent);
+		NamedNodeMap attributes = node.getAttributes();
+		List<TaglibData> declared = null;
+		if (attributes != null) {
+			for (int i = 0; i < attributes.getLength(); i++) {
+				Attr attr = (Attr) attributes.item(i);
+				String name = attr.getName();
+				if (!isNamespaceDeclaration(name)) {
+					continue;
+				}
+				name = name.substring(XMLNS.length());
+				if (name.startsWith(":")) { //$NON-NLS-1$
+					name = name.substring(1);
+				}
+				if (declared == null) {
+					declared = new ArrayList<TaglibData>();
+				}
+				addTaglib(declared, attr.getValue(), name);
+			}
+		}
+		if (declared == null) {
+			// nothing is declared here, share the parent's lists
+			return new Scope(parent, parentScope.byPrefix, parentScope.taglibs);
+		}
+		for (TaglibData taglib : parentScope.taglibs) {
+			addTaglib(declared, taglib.getUri(), taglib.getPrefix());
+		}
+		Map<String, TaglibData> byPrefix = new TreeMap<String, TaglibData>(
+				String.CASE_INSENSITIVE_ORDER);
+		for (TaglibData taglib : declared) {
+			if (!byPrefix.containsKey(taglib.getPrefix())) {
+				byPrefix.put(taglib.getPrefix(), taglib);
+			}
+		}
+		return new Scope(parent, byPrefix, Collections.unmodifiableList(declared));
+	}
+
+	private static void addTaglib(List<TaglibData> taglibs, String uri, String prefix) {
+		for (TaglibData taglib : taglibs) {
+			if (prefix.equals(taglib.getPrefix())) {
+				return;
+			}
+		}
+		taglibs.add(new TaglibData(taglibs.size(), uri, prefix, true));
+	}
+
+	private static class Scope {
+		/** Parent of the element at the moment the scope was computed. */
+		private final Node parent;
+		private final Map<String, TaglibData> byPrefix;
+		private final List<TaglibData> taglibs;
+
+		Scope(Node parent, Map<String, TaglibData> byPrefix, List<TaglibData> taglibs) {
+			this.parent = parent;
+			this.byPrefix = byPrefix;
+			this.taglibs = taglibs;
+		}
+
+		TaglibData get(String prefix) {
+			return byPrefix == null ? null : byPrefix.get(prefix);
+		}
+	}
+}
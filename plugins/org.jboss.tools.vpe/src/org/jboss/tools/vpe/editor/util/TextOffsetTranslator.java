@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.util;
+
+import java.util.Arrays;
+
+/**
+ * Translates the offsets in a source text to the offsets in the visual text,
+ * where an entity and a {@code \r\n} line break take one character.
+ * <p>
+ * The entities and the line breaks are found by one pass over the text when
+ * the translator is created, each translation is a binary search then.
+ * The translator may be kept for a text node while its value is the same.
+ *
+ * @see TextUtil#visualPosition(String, int)
+ * @see org.jboss.tools.vpe.editor.context.VpePageContext#getTextOffsetTranslator(org.w3c.dom.Node, String)
+ */
+public class TextOffsetTranslator {
+	private static final int INITIAL_CAPACITY = 8;
+
+	private final String sourceText;
+
+	/* bounds of the '&'...';' sequences in the order TextUtil#visualPosition scans them */
+	private int[] sequenceStarts = new int[INITIAL_CAPACITY];
+	private int[] sequenceStops = new int[INITIAL_CAPACITY];
+	/* visual length reduction made by the entity sequences before the sequence at the index */
+	private int[] reductions = new int[INITIAL_CAPACITY + 1];
+	private int sequenceCount;
+
+	/* indexes of the '\r' characters of the "\r\n" line breaks */
+	private int[] breaks = new int[INITIAL_CAPACITY];
+	private int breakCount;
+
+	/**
+	 * @param sourceText the source text, not {@code null}
+	 */
+	public TextOffsetTranslator(String sourceText) {
+		this.sourceText = sourceText;
+		int length = sourceText.length();
+		int start = sourceText.indexOf('&');
+		for (int i = 0; i < length; i++) {
+			char c = sourceText.charAt(i);
+			if (c == '\r' && i + 1 < length && sourceText.charAt(i + 1) == '\n') {
+				addBreak(i);
+				i++;
+			} else if (c == ';' && start != -1 && i > start) {
+				// the sequence from the first '&' after the previous sequence to the first ';' after it
+				addSequence(start, i, TextUtil.isEntity(sourceText, start, i + 1));
+				start = i + 1 < length ? sourceText.indexOf('&', i + 1) : -1;
+			}
+		}
+	}
+
+	private void addSequence(int start, int stop, boolean entity) {
+		if (sequenceCount == sequenceStarts.length) {
+			sequenceStarts = Arrays.copyOf(sequenceStarts, sequenceCount * 2);
+			sequenceStops = Arrays.copyOf(sequenceStops, sequenceCount * 2);
+			reductions = Arrays.copyOf(reductions, sequenceCount * 2 + 1);
+		}
+		sequenceStarts[sequenceCount] = start;
+		sequenceStops[sequenceCount] = stop;
+		reductions[sequenceCount + 1] = reductions[sequenceCount] + (entity ? stop - start : 0);
+		sequenceCount++;
+	}
+
+	private void addBreak(int index) {
+		if (breakCount == breaks.length) {
+			breaks = Arrays.copyOf(breaks, breakCount * 2);
+		}
+		breaks[breakCount++] = index;
+	}
+
+	/**
+	 * @return the source text of the translator
+	 */
+	public String getSourceText() {
+		return sourceText;
+	}
+
+	/**
+	 * Gives the same result as {@link TextUtil#visualPosition(String, int)}
+	 * for the source text.
+	 *
+	 * @param sourcePosition the offset in the source text
+	 * @return the offset in the visual text
+	 */
+	public int visualPosition(int sourcePosition) {
+		if (sourcePosition < 0) {
+			return 0;
+		}
+		int visualPosition = sourcePosition;
+		// the sequences which start before the position
+		int count = lowerBound(sequenceStarts, sequenceCount, sourcePosition);
+		if (count > 0) {
+			int last = count - 1;
+			if (sequenceStops[last] < sourcePosition) {
+				visualPosition -= reductions[count];
+			} else {
+				// the position is inside the sequence
+				visualPosition -= reductions[last] + sourcePosition - sequenceStarts[last];
+			}
+		}
+		return visualPosition - breaksBefore(sourcePosition);
+	}
+
+	/**
+	 * @return the number of the line breaks which end before the position
+	 */
+	private int breaksBefore(int sourcePosition) {
+		int end = Math.min(sourcePosition, sourceText.length());
+		return lowerBound(breaks, breakCount, end - 1);
+	}
+
+	/**
+	 * @return the number of the first {@code count} values which are less than the key
+	 */
+	private static int lowerBound(int[] values, int count, int key) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007 Exadel, Inc. and Red Hat, Inc.
+ * Copyright (c) 2007-2016 Exadel, Inc. and Red Hat, Inc.
  * Distributed under license by Red Hat, Inc. All rights reserved.
  * This program is made available under the terms of the
  * Eclipse Public License v1.0 which accompanies this distribution,
@@ -65,6 +65,7 @@ public class TextUtil {
 			e.printStackTrace();
 		}
 	}
+	private final static EntityTrie entityTrie = new EntityTrie(textSet.values());
 
 	public static boolean containsKey(char key) {
 
@@ -89,7 +90,7 @@ public class TextUtil {
 		int endIndex = s2.lastIndexOf(CHR_ESC_STOP);
 		if (startIndex >= 0 && endIndex >= 0 && endIndex == s2.length() - 1) {
 			String value = s2.substring(startIndex, endIndex + 1);
-			if (textSet.containsValue(value))
+			if (entityTrie.contains(value))
 				return value;
 		}
 
@@ -110,7 +111,7 @@ public class TextUtil {
 		int endIndex = s2.indexOf(CHR_ESC_STOP);
 		if (startIndex >= 0 && endIndex >= 0 && startIndex == 0) {
 			String value = s2.substring(startIndex, endIndex + 1);
-			if (textSet.containsValue(value))
+			if (entityTrie.contains(value))
 				return value;
 		}
 
@@ -130,8 +131,7 @@ public class TextUtil {
 		if ((sourceText != null) && (sourceText.length() > sourcePosition)
 				&& (sourceText.charAt(sourcePosition) == CHR_ESC_START)) {
 			int end = sourceText.indexOf(CHR_ESC_STOP, sourcePosition);
-			if ((end != -1)
-					&& (isEsc(sourceText.substring(sourcePosition, end + 1))))
+			if ((end != -1) && isEsc(sourceText, sourcePosition, end))
 				return end - sourcePosition + 1;
 		}
 
@@ -151,10 +151,8 @@ public class TextUtil {
 
 		if ((sourceText != null) && (sourceText.length() > sourcePosition)
 				&& (sourceText.charAt(sourcePosition - 1) == CHR_ESC_STOP)) {
-			String cuttedString = sourceText.substring(0, sourcePosition);
-			int start = cuttedString.lastIndexOf(CHR_ESC_START);
-			if ((start != -1)
-					&& (isEsc(sourceText.substring(start, sourcePosition)))) {
+			int start = sourceText.lastIndexOf(CHR_ESC_START, sourcePosition - 1);
+			if ((start != -1) && isEsc(sourceText, start, sourcePosition - 1)) {
 
 				return start - sourcePosition;
 
@@ -173,42 +171,80 @@ public class TextUtil {
 	 */
 	public static boolean isEsc(String text) {
 
-		if (text.charAt(0) == CHR_ESC_START
-				&& text.charAt(text.length() - 1) == CHR_ESC_STOP) {
-			// find index of the escape sequence's end
-
-			int end = text.length() - 1;
-
-			// if next symbol is '#' then escape sequence may be iso code
-			if ((text.length() > 2) && text.charAt(1) == CHR_SHARP) {
-
-				// convert string to number
-
-				int isoCode = MIN_ISO_CODE_RANGE - 1;
-
-				// if number has prefix 'x' means that it is hex number
-				int radix = text.charAt(2) == CHR_HEX_FLAG ? 16 : 10;
-				int offcet = text.charAt(2) == CHR_HEX_FLAG ? 3 : 2;
-
-				try {
-					isoCode = Integer.parseInt(text.substring(offcet, end),
-							radix);
-				} catch (NumberFormatException exception) {
-					//just ignore
-				}
+		return text.charAt(0) == CHR_ESC_START
+				&& text.charAt(text.length() - 1) == CHR_ESC_STOP
+				&& isEsc(text, 0, text.length() - 1);
+	}
 
-				// if escape sequence is iso code
-				if (isoCode >= MIN_ISO_CODE_RANGE
-						&& isoCode <= MAX_ISO_CODE_RANGE) {
-					return true;
-				}
+	/**
+	 * check if the range of text is escape sequence, the same as
+	 * {@link #isEsc(String)} for the substring but without taking it
+	 * 
+	 * @param text
+	 * @param start index of '&amp;'
+	 * @param stop index of ';'
+	 * @return
+	 */
+	private static boolean isEsc(String text, int start, int stop) {
+		// if next symbol is '#' then escape sequence may be iso code
+		if ((stop - start > 1) && text.charAt(start + 1) == CHR_SHARP) {
+			// if number has prefix 'x' means that it is hex number
+			int radix = text.charAt(start + 2) == CHR_HEX_FLAG ? 16 : 10;
+			int offcet = text.charAt(start + 2) == CHR_HEX_FLAG ? 3 : 2;
+			return isIsoCode(text, start + offcet, stop, radix);
+		}
+		return entityTrie.contains(text, start, stop + 1);
+	}
 
-			} else if (textSet.containsValue(text.substring(0, end + 1))) {
-				return true;
+	/**
+	 * check if the range of text is a number accepted by
+	 * {@link Integer#parseInt(String, int)} in ISO codes interval
+	 * 
+	 * @param text
+	 * @param start the start index of the number, inclusive
+	 * @param end the end index of the number, exclusive
+	 * @param radix
+	 * @return
+	 */
+	private static boolean isIsoCode(String text, int start, int end, int radix) {
+		boolean negative = false;
+		int index = start;
+		if (index < end) {
+			char sign = text.charAt(index);
+			if (sign == '-' || sign == '+') {
+				negative = sign == '-';
+				index++;
 			}
 		}
+		if (index == end) {
+			return false;
+		}
+		long isoCode = 0;
+		for (; index < end; index++) {
+			int digit = Character.digit(text.charAt(index), radix);
+			if (digit < 0) {
+				return false;
+			}
+			isoCode = isoCode * radix + digit;
+			if (isoCode > MAX_ISO_CODE_RANGE) {
+				// a negative number is out of the interval too
+				return false;
+			}
+		}
+		// only zero is in the interval among the negative numbers
+		return !negative || isoCode == MIN_ISO_CODE_RANGE;
+	}
 
-		return false;
+	/**
+	 * check if the range of text is one of the character entities
+	 * 
+	 * @param text
+	 * @param start the start index, inclusive
+	 * @param end the end index, exclusive
+	 * @return
+	 */
+	static boolean isEntity(String text, int start, int end) {
+		return entityTrie.contains(text, start, end);
 	}
 
 	/**
@@ -284,10 +320,13 @@ public class TextUtil {
 	// }
 	public static int sourcePosition(String sourceText, String visualText,
 			int visualPosition) {
+		int length = sourceText.length();
 		int sourceIndex = 0;
 		int visualIndex = 0;
-		while (sourceIndex < sourceText.length()
-				&& visualIndex < visualPosition) {
+		// index of the first ';' after the last '&', reused by the next '&'
+		// until it is passed
+		int end = 0;
+		while (sourceIndex < length && visualIndex < visualPosition) {
 			char sourceChar = sourceText.charAt(sourceIndex);
 			if (sourceChar == '\r') {
 				if (visualText.charAt(visualIndex) == '\r') {
@@ -296,13 +335,13 @@ public class TextUtil {
 				sourceIndex++;
 			} else if (sourceChar == CHR_ESC_START) {
 				// find index of the escape sequence's end
-				int end = sourceText.indexOf(CHR_ESC_STOP, sourceIndex + 1);
+				if (end != -1 && end <= sourceIndex) {
+					end = sourceText.indexOf(CHR_ESC_STOP, sourceIndex + 1);
+				}
 
 				// if it is escape sequence
-				if ((end != -1)
-						&& isEsc(sourceText.substring(sourceIndex, end + 1))) {
-
-					sourceIndex += end - sourceIndex;
+				if ((end != -1) && isEsc(sourceText, sourceIndex, end)) {
+					sourceIndex = end;
 				}
 
 				sourceIndex++;
@@ -316,14 +355,27 @@ public class TextUtil {
 	}
 
 	public static int sourceInnerPosition(String visualText, long visualPosition) {
-		visualText = visualText.substring(0, (int) Math.min(visualPosition,
-				visualText.length()));
-		String sourceText = visualText.replaceAll(VISUAL_BREAK, SOURCE_BREAK);
-		return sourceText.length();
+		int end = (int) Math.min(visualPosition, visualText.length());
+		int sourcePosition = end;
+		for (int i = 0; i < end; i++) {
+			if (visualText.charAt(i) == '\n') {
+				// VISUAL_BREAK is replaced with SOURCE_BREAK
+				sourcePosition++;
+			}
+		}
+		return sourcePosition;
 	}
 
+	/**
+	 * Translates the offset in the source text to the offset in the visual
+	 * text. Use {@link TextOffsetTranslator} for several offsets of the same
+	 * text.
+	 * 
+	 * @param sourceText
+	 * @param sourcePosition
+	 * @return
+	 */
 	public static int visualPosition(String sourceText, int sourcePosition) {
-		int calcPosition = sourcePosition;
 		/*
 		 * https://issues.jboss.org/browse/JBIDE-12052
 		 * Fix StringIndexOutOfBoundsException
@@ -331,53 +383,51 @@ public class TextUtil {
 		if ((sourceText == null) || (sourcePosition < 0)){
 			return 0;
 		}
-		int start = sourceText.indexOf(CHR_ESC_START);
-		while (start != -1 && start < sourcePosition
-				&& start + 1 < sourceText.length()) {
-			int stop = sourceText.indexOf(CHR_ESC_STOP, start + 1);
-			if (stop == -1) {
-				break;
-			} else if (stop < sourcePosition) {
-				if (textSet
-						.containsValue(sourceText.substring(start, stop + 1))) {
-					calcPosition -= stop - start;
-				}
-				if (stop + 1 < sourceText.length()) {
-					start = sourceText.indexOf(CHR_ESC_START, stop + 1);
-				} else {
+		return new TextOffsetTranslator(sourceText).visualPosition(sourcePosition);
+	}
+
+	public static int visualInnerPosition(String sourceText, int sourcePosition) {
+		int end = Math.min(sourcePosition, sourceText.length());
+		return end - countSourceBreaks(sourceText, end);
+	}
+
+	/**
+	 * @return the number of SOURCE_BREAK in the text before the end index
+	 */
+	private static int countSourceBreaks(String text, int end) {
+		int count = 0;
+		for (int i = 0; i + 1 < end; i++) {
+			if (text.charAt(i) == '\r' && text.charAt(i + 1) == '\n') {
+				count++;
+				i++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of characters the entities of the text are shorter
+	 *         in the visual text
+	 */
+	private static int countEntityReduction(String text) {
+		int reduction = 0;
+		int start = text.indexOf(CHR_ESC_START);
+		int stop = 0;
+		while (start != -1) {
+			if (stop <= start) {
+				stop = text.indexOf(CHR_ESC_STOP, start + 1);
+				if (stop == -1) {
 					break;
 				}
-			} else {
-				calcPosition -= sourcePosition - start;
-				break;
 			}
-		}
-		/*
-		 * Fix: https://issues.jboss.org/browse/JBIDE-9548
-		 * Without <span> for text nodes -- there is an
-		 * string out of bounds exception. 
-		 */
-		int endPos = sourcePosition;
-		int length = sourceText.length();
-		String s1 = sourceText;
-		/*
-		 * If sourceText is not empty -- correct endPos
-		 */
-		if (length > 0) {
-			if (endPos > length) {
-				endPos = length;
+			if (entityTrie.contains(text, start, stop + 1)) {
+				reduction += stop - start;
+				start = text.indexOf(CHR_ESC_START, stop + 1);
+			} else {
+				start = text.indexOf(CHR_ESC_START, start + 1);
 			}
-			s1 = sourceText.substring(0, endPos);
 		}
-		String s2 = s1.replaceAll(SOURCE_BREAK, VISUAL_BREAK);
-		return calcPosition - (s1.length() - s2.length());
-	}
-
-	public static int visualInnerPosition(String sourceText, int sourcePosition) {
-		sourceText = sourceText.substring(0, Math.min(sourcePosition,
-				sourceText.length()));
-		String visualText = sourceText.replaceAll(SOURCE_BREAK, VISUAL_BREAK);
-		return visualText.length();
+		return reduction;
 	}
 
 	public static int _visualPosition(String sourceText, int sourcePosition) {
@@ -397,7 +447,7 @@ public class TextUtil {
 						&& (semicolonPosition + 1) > sourcePosition) {
 					String value = s1.substring(ampersandPosition,
 							semicolonPosition + 1);
-					if (textSet.containsValue(value))
+					if (entityTrie.contains(value))
 						position = ampersandPosition;
 					else
 						position--;
@@ -414,14 +464,10 @@ public class TextUtil {
 			s1 = s1.substring(0, position);
 		}
 		int start2 = s1.length();
-		int startLength = s1.length();
 
-		String[] strings = (String[]) textSet.values().toArray(new String[] {});
-		for (int i = 0; i < strings.length; i++) {
-			s1 = s1.replaceAll(strings[i], " "); //$NON-NLS-1$
-		}
-		s1 = visualText(s1);
-		return sourcePosition - (startLength - s1.length()) - (start1 - start2);
+		// each entity and SOURCE_BREAK is one character in the visual text
+		int reduction = countEntityReduction(s1) + countSourceBreaks(s1, s1.length());
+		return sourcePosition - reduction - (start1 - start2);
 	}
 
 	public static String visualText(String sourceText) {
@@ -513,10 +513,8 @@ public class VisualDomUtil {
      		for (int i = 0; i < children.getLength() ; i++) {
      			Node child = children.item(i);
      			String sourcePrefix = child.getPrefix();
-     			List<TaglibData> taglibs = XmlUtil.getTaglibsForNode(child,
-     					pageContext);
      			TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(
-     					sourcePrefix, taglibs);
+     					child, pageContext, sourcePrefix);
      			/*
      			 * Here will be nodes with taglibs
      			 * Plain html tags and text - will not.
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.jboss.tools.vpe.VpePlugin;
+
+/**
+ * Workspace wide cache of the processed style sheets inlined
+ * into the visual pages instead of {@code <link rel="stylesheet">}.
+ * <p>
+ * A style sheet is read and stripped of comments and {@code @import} rules
+ * once for its href, then all the VPE editors linking the same file use
+ * the cached text. The {@code url()} values are made absolute on each use
+ * because they depend on the current EL substitutions. An entry is
+ * valid as long as the modification time and the size of the file are
+ * the same, entries of the workspace files are also dropped by the resource
+ * change listener when the file changes. The least recently used entries
+ * are dropped when the cache is full.
+ *
+ * @see org.jboss.tools.vpe.editor.VpeVisualDomBuilder#addLinkNodeToHead(String, String, boolean)
+ */
+public class VpeStyleSheetCache implements IResourceChangeListener {
+
+	/** Upper bound of cached style sheets. */
+	private static final int MAX_ENTRIES = 32;
+	/** Upper bound of the total length of cached style sheets, in characters. */
+	private static final long MAX_TOTAL_LENGTH = 8 * 1024 * 1024;
+
+	private static VpeStyleSheetCache instance;
+
+	private final Map<String, StyleSheet> styleSheets = new LinkedHashMap<String, StyleSheet>(16, 0.75f, true);
+	private long totalLength = 0;
+
+	private VpeStyleSheetCache() {
+	}
+
+	public static synchronized VpeStyleSheetCache getInstance() {
+		if (instance == null) {
+			instance = new VpeStyleSheetCache();
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(instance,
+					IResourceChangeEvent.POST_CHANGE);
+		}
+		return instance;
+	}
+
+	/**
+	 * Removes the resource change listener and forgets the style sheets.
+	 */
+	public static synchronized void dispose() {
+		if (instance != null) {
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(instance);
+			instance.clear();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Returns the processed style sheet linked by the href.
+	 *
+	 * @param href {@code file:} URL of the style sheet
+	 * @throws IOException if the file cannot be read, {@link java.io.FileNotFoundException}
+	 * if it does not exist
+	 */
+	public StyleSheet get(String href) throws IOException {
+		File file = new File(new URL((new Path(href)).toOSString()).getFile());
+		long lastModified = file.lastModified();
+		long length = file.length();
+		synchronized (this) {
+			StyleSheet styleSheet = styleSheets.get(href);
+			if (styleSheet != null && styleSheet.lastModified == lastModified
+					&& styleSheet.length == length) {
+				return styleSheet;
+			}
+		}
+		StyleSheet styleSheet = read(file, href, lastModified, length);
+		synchronized (this) {
+			put(href, styleSheet);
+		}
+		return styleSheet;
+	}
+
+	public synchronized void clear() {
+		styleSheets.clear();
+		totalLength = 0;
+	}
+
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta == null) {
+			return;
+		}
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				public boolean visit(IResourceDelta delta) throws CoreException {
+					IResource resource = delta.getResource();
+					if (resource.getType() == IResource.FILE) {
+						if (delta.getKind() == IResourceDelta.REMOVED
+								|| (delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0) {
+							remove((IFile) resource);
+						}
+						return false;
+					}
+					return true;
+				}
+			});
+		} catch (CoreException e) {
+			VpePlugin.getPluginLog().logError(e);
+		}
+	}
+
+	private synchronized void remove(IFile file) {
+		IPath location = file.getLocation();
+		if (location == null || styleSheets.isEmpty()) {
+			return;
+		}
+		File removed = location.toFile();
+		for (Iterator<StyleSheet> i = styleSheets.values().iterator(); i.hasNext();) {
+			StyleSheet styleSheet = i.next();
+			if (styleSheet.file.equals(removed)) {
+				totalLength -= styleSheet.text.length();
+				i.remove();
+			}
+		}
+	}
+
+	private void put(String href, StyleSheet styleSheet) {
+		StyleSheet old = styleSheets.put(href, styleSheet);
+		if (old != null) {
+			totalLength -= old.text.length();
+		}
+		totalLength += styleSheet.text.length();
+		Iterator<StyleSheet> eldest = styleSheets.values().iterator();
+		while ((styleSheets.size() > MAX_ENTRIES || totalLength > MAX_TOTAL_LENGTH)
+				&& eldest.hasNext()) {
+			StyleSheet removed = eldest.next();
+			if (removed == styleSheet) {
+				break;
+			}
+			totalLength -= removed.text.length();
+			eldest.remove();
+		}
+	}
+
+	private static StyleSheet read(File file, String href, long lastModified, long length)
+			throws IOException {
+		BufferedReader in = null;
+		StringBuilder styleText = new StringBuilder((int) Math.min(length, Integer.MAX_VALUE));
+		try {
+			in = new BufferedReader(new FileReader(file));
+			String str;
+			while ((str = in.readLine()) != null) {
+				styleText.append(str);
+			}
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					VpePlugin.getPluginLog().logError(e);
+				}
+			}
+		}
+		/*
+		 * https://issues.jboss.org/browse/JBIDE-5861
+		 * Remove CSS comments first:
+		 */
+		String text = VpeStyleUtil.removeAllCssComments(styleText.toString());
+		List<String> imports = VpeStyleUtil.findCssImports(text);
+		if (imports.size() > 0) {
+			/*
+			 * Replace @import constructions
+			 */
+			text = VpeStyleUtil.removeAllCssImportConstructions(text);
+		}
+		return new StyleSheet(file, href, lastModified, length, text, imports);
+	}
+
+	/**
+	 * Processed style sheet.
+	 */
+	public static class StyleSheet {
+		private final File file;
+		private final String href;
+		private final long lastModified;
+		private final long length;
+		private final String text;
+		private final List<String> imports;
+
+		StyleSheet(File file, String href, long lastModified, long length, String text, List<String> imports) {
+			this.file = file;
+			this.href = href;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.text = text;
+			this.imports = Collections.unmodifiableList(imports);
+		}
+
+		/**
+		 * Returns the text without comments and {@code @import} rules,
+		 * with the full paths in {@code url()} values. The EL expressions
+		 * of the values are replaced by the current substitutions.
+		 */
+		public String getText() {
+			return VpeStyleUtil.addFullPathIntoURLValue(text, href);
+		}
+
+		/**
+		 * Returns the URIs of the {@code @import} rules as they are written
+		 * in the style sheet, they are resolved against the page by
+		 * {@link VpeStyleUtil#resolveCssImports(List, org.jboss.tools.vpe.editor.context.VpePageContext)}.
+		 */
+		public List<String> getImports() {
+			return imports;
+		}
+	}
+}
@@ -866,14 +866,39 @@ public class VpeStyleUtil {
 	 * @return the map with the import statement as a key and the css file path as a value
 	 */
 	public static List<String> findCssImportConstruction(String cssText, VpePageContext pageContext) {
+		return resolveCssImports(findCssImports(cssText), pageContext);
+	}
+
+	/**
+	 * Finds URIs of CSS @import url(".."); constructions
+	 * 
+	 * @param cssText the css text
+	 * @return the URIs as they are written in the css text
+	 */
+	public static List<String> findCssImports(String cssText) {
 		ArrayList<String> list = new ArrayList<String>();
-		IFile sourceFile = getSourceFileFromPageContext(pageContext);
 		Matcher m = CSS_IMPORT_PATTERN.matcher(cssText);
 		while (m.find()) {
 			/*
 			 * Path should be a well formed URI
 			 */
-			list.add(processUrl(getCorrectURI(m.group(1)), sourceFile, false));
+			list.add(getCorrectURI(m.group(1)));
+		}
+		return list;
+	}
+
+	/**
+	 * Resolves URIs of CSS @import constructions against the opened file
+	 * 
+	 * @param uris URIs found by {@link #findCssImports(String)}
+	 * @param pageContext VPE page context
+	 * @return the css file paths
+	 */
+	public static List<String> resolveCssImports(List<String> uris, VpePageContext pageContext) {
+		ArrayList<String> list = new ArrayList<String>(uris.size());
+		IFile sourceFile = getSourceFileFromPageContext(pageContext);
+		for (String uri : uris) {
+			list.add(processUrl(uri, sourceFile, false));
 		}
 		return list;
 	}
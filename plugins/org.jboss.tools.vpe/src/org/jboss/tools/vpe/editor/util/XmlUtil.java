@@ -27,10 +27,8 @@ import org.jboss.tools.jst.web.tld.TaglibData;
 import org.jboss.tools.vpe.VpePlugin;
 import org.jboss.tools.vpe.editor.context.VpePageContext;
 import org.mozilla.interfaces.nsIDOMNode;
-import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
@@ -72,57 +70,22 @@ public class XmlUtil {
 		}
 	}
 	
-	/**
-	 * Returns List of taglibs which are available for current node.
-	 * should be used only for xml documents
-	 * @param node
-	 * @return
-	 */
-	private static List<TaglibData> getTaglibsForNode(Node node) {
-		
-		List<TaglibData> taglibs = new ArrayList<TaglibData>();
-		
-		if (node == null) {
-			
-			return taglibs;
-		}
-		
-		Node currentNode = node;
-		do {
-			NamedNodeMap attribList = currentNode.getAttributes();
-			if (null != attribList) {
-				for (int i = 0; i < attribList.getLength(); i++) {
-					Node tmp = attribList.item(i);
-					processAttribute(taglibs,(Attr)tmp);
-				}
-			}	
-			currentNode = currentNode.getParentNode();			
-
-		} while(currentNode!=null);
-
-		return taglibs;
-	}
-	
 	/**
 	* Calculates list of taglibs for current node adn document
 	* 	we use document only if we works with jsp pages
 	*  otherwise  we works with node 
 	* @param source
 	* @param document
-	* @return collection of taglibs
+	* @return collection of taglibs, the list must not be modified
 	*/	
 	public static List<TaglibData> getTaglibsForNode(Node source,
 			VpePageContext pageContext) {
 
-		List<TaglibData> taglibData = new ArrayList<TaglibData>();
+		List<TaglibData> taglibData;
 
-		
 		// Added by Sergey Dzmitrovich Fix for JBIDE-2581
-		IPath path = FileUtil.getInputPath(pageContext.getEditPart()
-				.getEditorInput());
-		
-		if (path != null
-				&& path.getFileExtension().equals(Constants.JSP_FILE_EXTENSION)) {
+		if (isJspPage(pageContext)) {
+			taglibData = new ArrayList<TaglibData>();
 			IDocument document = pageContext.getSourceBuilder()
 					.getStructuredTextViewer().getDocument();
 
@@ -137,59 +100,61 @@ public class XmlUtil {
 				}
 			}
 		} else {
-			taglibData = getTaglibsForNode(source);
-
+			taglibData = pageContext.getNamespaceScopeIndex().getTaglibs(source);
 		}
 		// add internal taglibs JBIDE-2065
 		List<TaglibData> includeTaglibs = pageContext.getIncludeTaglibs();
-		for (TaglibData includedTaglib : includeTaglibs) {
-			addTaglib(taglibData, includedTaglib.getUri(), includedTaglib
-					.getPrefix(), true);
+		if (!includeTaglibs.isEmpty()) {
+			taglibData = new ArrayList<TaglibData>(taglibData);
+			for (TaglibData includedTaglib : includeTaglibs) {
+				addTaglib(taglibData, includedTaglib.getUri(), includedTaglib
+						.getPrefix(), true);
+			}
 		}
 		return taglibData;
 	}
 
+	/**
+	 * Returns taglib visible at the source node for the prefix.
+	 * The result is the same as
+	 * {@code getTaglibForPrefix(prefix, getTaglibsForNode(source, pageContext))},
+	 * but for XML pages the namespace declarations are looked up in
+	 * {@link VpePageContext#getNamespaceScopeIndex()} without building the list.
+	 */
+	public static TaglibData getTaglibForPrefix(Node source,
+			VpePageContext pageContext, String prefix) {
+		if (isJspPage(pageContext)) {
+			return getTaglibForPrefix(prefix, getTaglibsForNode(source, pageContext));
+		}
+		TaglibData taglib = pageContext.getNamespaceScopeIndex()
+				.getTaglibForPrefix(source, prefix);
+		if (taglib == null && prefix != null) {
+			taglib = getTaglibForPrefix(prefix, pageContext.getIncludeTaglibs());
+		}
+		return taglib;
+	}
+
+	private static boolean isJspPage(VpePageContext pageContext) {
+		IPath path = FileUtil.getInputPath(pageContext.getEditPart()
+				.getEditorInput());
+		return path != null
+				&& Constants.JSP_FILE_EXTENSION.equals(path.getFileExtension());
+	}
+
 	//helper method
 	public static boolean hasTaglib(Node sourceNode,
 			VpePageContext pageContext, String sourcePrefix) {
-		List<TaglibData> taglibs = XmlUtil.getTaglibsForNode(sourceNode,
-			    pageContext);
-		TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(
-			    sourcePrefix, taglibs);
-		return sourceNodeTaglib != null;
+		return getTaglibForPrefix(sourceNode, pageContext, sourcePrefix) != null;
 	}
 
 	//helper method
 	public static String getTaglibUri(Node sourceNode,
 			VpePageContext pageContext, String sourcePrefix) {
-		List<TaglibData> taglibs = XmlUtil.getTaglibsForNode(sourceNode,
-			    pageContext);
-		TaglibData sourceNodeTaglib = XmlUtil.getTaglibForPrefix(
-			    sourcePrefix, taglibs);
+		TaglibData sourceNodeTaglib = getTaglibForPrefix(
+				sourceNode, pageContext, sourcePrefix);
 		return sourceNodeTaglib == null ? null : sourceNodeTaglib.getUri();
 	}
 
-	/**
-	 * Processes taglib attribute
-	 * @param taglibs
-	 * @param attr
-	 * @param bScopePrefix
-	 */	
-	private static void processAttribute(List<TaglibData> taglibs, Attr attr) {
-
-		String startStr = "xmlns"; //$NON-NLS-1$
-		String name = attr.getName();
-		if (!name.startsWith(startStr)) {
-			return;
-		}
-		name = name.substring(startStr.length());
-		if(name.startsWith(":")){ //$NON-NLS-1$
-			name = name.substring(1);//remove : in start of name
-		}
-		addTaglib(taglibs , attr.getValue(), name, true);
-		return;
-	}
-	
 	/**
 	 * Adds taglib to current taglibs
 	 * @param taglibs
@@ -140,6 +140,8 @@ public final class VpeUIMessages extends NLS {
 	public static String DEFAULT_VPE_TAB;
 	public static String VISUAL_SOURCE_EDITORS_SPLITTING;
 	public static String SYNCHRONIZE_SCROLLING_BETWEEN_SOURCE_VISUAL_PANES;
+	public static String BUILD_VISUAL_DOM_IN_FRAGMENT;
+	public static String RECONCILE_UPDATED_VISUAL_NODES;
 	public static String VISUAL_SOURCE_EDITORS_WEIGHTS;
 	public static String DEFAULT_VPE_TAB_VISUAL_SOURCE;
 	public static String DEFAULT_VPE_TAB_SOURCE;
@@ -155,6 +157,7 @@ public final class VpeUIMessages extends NLS {
 	public static String VISUAL_APPEARANCE_GROUP_TITLE;
 	public static String CONFIRMATION_GROUP_TITLE;
 	public static String TABS_GROUP_TITLE;
+	public static String BUILDING_GROUP_TITLE;
 	public static String IMPORT_USER_TAGS_TEMPLATES_WIZARD_PAGE;
 	public static String EXPORT_USER_TAGS_TEMPLATES_WIZARD_PAGE;
 	public static String EXPORT_USER_TAGS_PAGE_TITLE;
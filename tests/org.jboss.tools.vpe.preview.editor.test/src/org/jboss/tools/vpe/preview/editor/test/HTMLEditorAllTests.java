@@ -18,6 +18,14 @@ import org.jboss.tools.vpe.preview.editor.test.editor.PreviewReloadTest;
 import org.jboss.tools.vpe.preview.editor.test.editor.RefreshOptionsTest;
 import org.jboss.tools.vpe.preview.editor.test.editor.VpvPreferencesTest;
 import org.jboss.tools.vpe.preview.editor.test.editor.VpvToolBarTest;
+import org.jboss.tools.vpe.preview.editor.test.server.VpvControllerConcurrencyTest;
+import org.jboss.tools.vpe.preview.editor.test.server.VpvMimeTypeRegistryTest;
+import org.jboss.tools.vpe.preview.editor.test.server.VpvServerLoadTest;
+import org.jboss.tools.vpe.preview.editor.test.transform.VpvDomBuilderTest;
+import org.jboss.tools.vpe.preview.editor.test.transform.VpvHtmlSerializerTest;
+import org.jboss.tools.vpe.preview.editor.test.transform.VpvTemplateProviderTest;
+import org.jboss.tools.vpe.preview.editor.test.transform.VpvVisualModelTest;
+import org.jboss.tools.vpe.preview.editor.test.transform.VpvVisualModelUpdaterTest;
 import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -35,6 +43,14 @@ RefreshOptionsTest.class,
 PreviewReloadTest.class,
 VpvToolBarTest.class,
 VpvPreferencesTest.class,
+VpvServerLoadTest.class,
+VpvControllerConcurrencyTest.class,
+VpvMimeTypeRegistryTest.class,
+VpvVisualModelUpdaterTest.class,
+VpvVisualModelTest.class,
+VpvHtmlSerializerTest.class,
+VpvTemplateProviderTest.class,
+VpvDomBuilderTest.class,
 //ResourcesTest.class
 })
 public class HTMLEditorAllTests {
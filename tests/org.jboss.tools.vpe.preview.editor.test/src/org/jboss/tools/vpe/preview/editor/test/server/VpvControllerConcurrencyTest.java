@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.editor.test.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.jboss.tools.vpe.preview.core.transform.ResourceAcceptor;
+import org.jboss.tools.vpe.preview.core.transform.VpvController;
+import org.jboss.tools.vpe.preview.core.transform.VpvDomBuilder;
+import org.jboss.tools.vpe.preview.core.transform.VpvHtmlSerializer;
+import org.jboss.tools.vpe.preview.core.transform.VpvTemplateProvider;
+import org.jboss.tools.vpe.preview.core.transform.VpvVisualModel;
+import org.jboss.tools.vpe.preview.core.transform.VpvVisualModelHolder;
+import org.jboss.tools.vpe.preview.core.transform.VpvVisualModelHolderRegistry;
+import org.jboss.tools.vpe.preview.editor.test.util.TestUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Requests pages of several holders and files from many threads at once.
+ */
+public class VpvControllerConcurrencyTest {
+	private static final String PROJECT_NAME = "html5-test"; //$NON-NLS-1$
+	private static final String[] PAGE_NAMES = {"index.html", "replace.html"}; //$NON-NLS-1$ //$NON-NLS-2$
+	private static final String IMAGE_NAME = "img/dualbrand_logo.png"; //$NON-NLS-1$
+	private static final int HOLDERS_COUNT = 4;
+	private static final int THREADS_COUNT = 16;
+	private static final int REQUESTS_PER_THREAD = 50;
+
+	private VpvVisualModelHolderRegistry registry;
+	private VpvController controller;
+	private IFile[] pages;
+	private IFile image;
+
+	@Before
+	public void setUp() throws Exception {
+		registry = new VpvVisualModelHolderRegistry();
+		controller = new VpvController(new VpvDomBuilder(new VpvTemplateProvider()), registry);
+		pages = new IFile[PAGE_NAMES.length];
+		for (int i = 0; i < PAGE_NAMES.length; i++) {
+			pages[i] = (IFile) TestUtil.getComponentPath(PAGE_NAMES[i], PROJECT_NAME);
+			assertNotNull(pages[i]);
+		}
+		image = (IFile) TestUtil.getComponentPath(IMAGE_NAME, PROJECT_NAME);
+		assertNotNull(image);
+	}
+
+	@Test
+	public void testParallelRequests() throws Exception {
+		final RecordingHolder[] holders = new RecordingHolder[HOLDERS_COUNT];
+		final int[] viewIds = new int[HOLDERS_COUNT];
+		for (int i = 0; i < HOLDERS_COUNT; i++) {
+			holders[i] = new RecordingHolder();
+			viewIds[i] = registry.registerHolder(holders[i]);
+		}
+		final File imageFile = image.getLocation().toFile();
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS_COUNT; t++) {
+			final Random random = new Random(t);
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+							RecordingAcceptor acceptor = new RecordingAcceptor();
+							if (random.nextBoolean()) {
+								int holder = random.nextInt(HOLDERS_COUNT);
+								IFile page = pages[random.nextInt(pages.length)];
+								controller.getResource(page.getFullPath().toString(), viewIds[holder], acceptor);
+								assertEquals(1, acceptor.answers);
+								assertTrue(acceptor.text, acceptor.text.startsWith("<!DOCTYPE html>")); //$NON-NLS-1$
+								assertNotNull(holders[holder].visualModel);
+							} else {
+								controller.getResource(image.getFullPath().toString(), null, acceptor);
+								assertEquals(1, acceptor.answers);
+								assertEquals(imageFile, acceptor.file);
+							}
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(errors.toString(), errors.isEmpty());
+	}
+
+	@Test
+	public void testParallelRegistration() throws Exception {
+		final Set<Integer> ids = Collections.synchronizedSet(new HashSet<Integer>());
+		final List<VpvVisualModelHolder> holders = Collections.synchronizedList(new ArrayList<VpvVisualModelHolder>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS_COUNT; t++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+						RecordingHolder holder = new RecordingHolder();
+						ids.add(registry.registerHolder(holder));
+						holders.add(holder);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(THREADS_COUNT * REQUESTS_PER_THREAD, ids.size());
+		for (Integer id : ids) {
+			VpvVisualModelHolder holder = registry.getHolderById(id);
+			assertTrue(holders.contains(holder));
+			registry.unregisterHolder(holder);
+			assertNull(registry.getHolderById(id));
+		}
+		assertNull(registry.getHolderById(null));
+	}
+
+	private static class RecordingHolder implements VpvVisualModelHolder {
+		volatile VpvVisualModel visualModel;
+
+		@Override
+		public void setVisualModel(VpvVisualModel visualModel) {
+			this.visualModel = visualModel;
+		}
+	}
+
+	private static class RecordingAcceptor implements ResourceAcceptor {
+		int answers;
+		String text;
+		File file;
+
+		@Override
+		public void acceptText(String text, String mimeType) {
+			answers++;
+			this.text = text;
+		}
+
+		@Override
+		public void acceptDocument(Document document, String mimeType) {
+			answers++;
+			StringWriter writer = new StringWriter();
+			try {
+				VpvHtmlSerializer.writePage(document, writer);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			this.text = writer.toString();
+		}
+
+		@Override
+		public void acceptFile(File file, String mimeType) {
+			answers++;
+			this.file = file;
+		}
+
+		@Override
+		public void acceptError() {
+			answers++;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.editor.test.server;
+
+import static org.jboss.tools.vpe.preview.core.preferences.VpvPreferencesInitializer.MIME_TYPE_OVERRIDES_PREFERENCES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.jboss.tools.vpe.preview.core.Activator;
+import org.jboss.tools.vpe.preview.core.transform.VpvMimeTypeRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class VpvMimeTypeRegistryTest {
+
+	@After
+	public void removeOverrides() {
+		InstanceScope.INSTANCE.getNode(Activator.PLUGIN_ID).remove(MIME_TYPE_OVERRIDES_PREFERENCES);
+	}
+
+	@Test
+	public void testMimeTypes() {
+		VpvMimeTypeRegistry registry = VpvMimeTypeRegistry.getInstance();
+		assertSame(registry, VpvMimeTypeRegistry.getInstance());
+		assertEquals("text/html", registry.getMimeType(new File("index.html")));
+		assertEquals("text/css", registry.getMimeType(new File("css/style.CSS")));
+		assertEquals("application/javascript", registry.getMimeType(new File("app.min.js")));
+		assertEquals("image/png", registry.getMimeType(new File("img/logo.png")));
+		assertEquals(VpvMimeTypeRegistry.DEFAULT_MIME_TYPE, registry.getMimeType(new File("README")));
+		assertEquals(VpvMimeTypeRegistry.DEFAULT_MIME_TYPE, registry.getMimeType(new File("file.unknown")));
+	}
+
+	@Test
+	public void testOverrides() {
+		VpvMimeTypeRegistry registry = VpvMimeTypeRegistry.getInstance();
+		IEclipsePreferences preferences = InstanceScope.INSTANCE.getNode(Activator.PLUGIN_ID);
+		preferences.put(MIME_TYPE_OVERRIDES_PREFERENCES, "js=text/javascript; .TS = text/typescript;broken");
+		assertEquals("text/javascript", registry.getMimeType(new File("app.js")));
+		assertEquals("text/typescript", registry.getMimeType(new File("app.ts")));
+		assertEquals("text/css", registry.getMimeType(new File("style.css")));
+
+		preferences.remove(MIME_TYPE_OVERRIDES_PREFERENCES);
+		assertEquals("application/javascript", registry.getMimeType(new File("app.js")));
+	}
+}
@@ -0,0 +1,471 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.editor.test.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.jboss.tools.vpe.preview.core.server.HttpConstants;
+import org.jboss.tools.vpe.preview.core.server.VpvChangeNotifier;
+import org.jboss.tools.vpe.preview.core.server.VpvServer;
+import org.jboss.tools.vpe.preview.core.transform.ResourceAcceptor;
+import org.jboss.tools.vpe.preview.core.transform.VpvController;
+import org.jboss.tools.vpe.preview.core.transform.VpvHtmlSerializer;
+import org.jboss.tools.vpe.preview.editor.test.transform.VpvHtmlSerializerTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Replays the resource requests of a page against {@link VpvServer}
+ * the way a browser does: a few persistent connections, the requests of a
+ * connection are pipelined. Prints the p50/p99 latency of the requests
+ * if the {@link VpvHtmlSerializerTest#BENCHMARK_PROPERTY} system property is {@code true}.
+ */
+@SuppressWarnings("nls")
+public class VpvServerLoadTest {
+	private static final int CONNECTIONS_COUNT = 6;
+	private static final int REFRESHES_COUNT = 20;
+	private static final String PAGE = "/project/WebContent/index.html";
+	private static final String GENERATED_PAGE = "/project/WebContent/generated.html";
+	private static final String SMALL_GENERATED_PAGE = "/project/WebContent/small.html";
+	/** Paragraphs of the generated page, the page is larger than the buffered pages (128 KB). */
+	private static final int GENERATED_PARAGRAPHS_COUNT = 2000;
+	private static final int SMALL_GENERATED_PARAGRAPHS_COUNT = 20;
+
+	/** Resource requests recorded for a page with images, scripts and styles. */
+	private static final List<String> RECORDED_REQUESTS = new ArrayList<String>();
+	static {
+		RECORDED_REQUESTS.add(PAGE + "?" + HttpConstants.VIEW_ID + "=1");
+		for (int i = 0; i < 6; i++) {
+			RECORDED_REQUESTS.add("/project/WebContent/css/style" + i + ".css");
+		}
+		for (int i = 0; i < 10; i++) {
+			RECORDED_REQUESTS.add("/project/WebContent/js/script" + i + ".js");
+		}
+		for (int i = 0; i < 44; i++) {
+			RECORDED_REQUESTS.add("/project/WebContent/images/image" + i + ".png");
+		}
+	}
+
+	private File resourceFile;
+	private Document generatedPage;
+	private Document smallGeneratedPage;
+	private VpvServer server;
+
+	@Before
+	public void startServer() throws IOException {
+		resourceFile = File.createTempFile("vpv", ".png");
+		byte[] content = new byte[32 * 1024];
+		Arrays.fill(content, (byte) 'x');
+		OutputStream out = new FileOutputStream(resourceFile);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		generatedPage = createPage(GENERATED_PARAGRAPHS_COUNT);
+		smallGeneratedPage = createPage(SMALL_GENERATED_PARAGRAPHS_COUNT);
+		server = new VpvServer(new VpvController(null, null) {
+			@Override
+			public void getResource(String path, Integer viewId, ResourceAcceptor resourceAcceptor) {
+				if (path.equals(PAGE)) {
+					resourceAcceptor.acceptText("<!DOCTYPE html>\n<html><body>page</body></html>", "text/html");
+				} else if (path.equals(GENERATED_PAGE)) {
+					resourceAcceptor.acceptDocument(generatedPage, "text/html");
+				} else if (path.equals(SMALL_GENERATED_PAGE)) {
+					resourceAcceptor.acceptDocument(smallGeneratedPage, "text/html");
+				} else {
+					resourceAcceptor.acceptFile(resourceFile, "image/png");
+				}
+			}
+		});
+	}
+
+	@After
+	public void stopServer() {
+		server.stop();
+		resourceFile.delete();
+	}
+
+	@Test
+	public void testReplayPage() throws Exception {
+		final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		for (int refresh = 0; refresh < REFRESHES_COUNT; refresh++) {
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int c = 0; c < CONNECTIONS_COUNT; c++) {
+				final List<String> paths = new ArrayList<String>();
+				for (int i = c; i < RECORDED_REQUESTS.size(); i += CONNECTIONS_COUNT) {
+					paths.add(RECORDED_REQUESTS.get(i));
+				}
+				Thread thread = new Thread() {
+					@Override
+					public void run() {
+						try {
+							Socket socket = new Socket(HttpConstants.LOCALHOST, server.getPort());
+							try {
+								for (String path : paths) {
+									long start = System.nanoTime();
+									send(socket, path, Collections.<String, String>emptyMap());
+									Response response = receive(socket.getInputStream());
+									latencies.add(System.nanoTime() - start);
+									assertEquals(200, response.status);
+								}
+							} finally {
+								socket.close();
+							}
+						} catch (Throwable e) {
+							errors.add(e);
+						}
+					}
+				};
+				threads.add(thread);
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals(REFRESHES_COUNT * RECORDED_REQUESTS.size(), latencies.size());
+		if (Boolean.getBoolean(VpvHtmlSerializerTest.BENCHMARK_PROPERTY)) {
+			Collections.sort(latencies);
+			System.out.println("VPV server: " + latencies.size() + " requests, p50 = "
+					+ percentile(latencies, 50) / 1000 + " us, p99 = "
+					+ percentile(latencies, 99) / 1000 + " us");
+		}
+	}
+
+	@Test
+	public void testPipelinedRequests() throws IOException {
+		Socket socket = new Socket(HttpConstants.LOCALHOST, server.getPort());
+		try {
+			StringBuilder requests = new StringBuilder();
+			for (int i = 0; i < 3; i++) {
+				requests.append(request(RECORDED_REQUESTS.get(i), i == 2));
+			}
+			socket.getOutputStream().write(requests.toString().getBytes("UTF-8"));
+			InputStream in = socket.getInputStream();
+			assertEquals("text/html; charset=UTF-8", receive(in).headers.get("Content-Type"));
+			assertEquals(resourceFile.length(), receive(in).body.length);
+			Response last = receive(in);
+			assertEquals("close", last.headers.get("Connection"));
+			assertEquals(-1, in.read());
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void testConditionalRequests() throws IOException {
+		Socket socket = new Socket(HttpConstants.LOCALHOST, server.getPort());
+		try {
+			InputStream in = socket.getInputStream();
+			String page = RECORDED_REQUESTS.get(0);
+			String image = RECORDED_REQUESTS.get(1);
+			send(socket, page, Collections.<String, String>emptyMap());
+			String pageTag = receive(in).headers.get("ETag");
+			send(socket, image, Collections.<String, String>emptyMap());
+			Response imageResponse = receive(in);
+			String imageTag = imageResponse.headers.get("ETag");
+			String lastModified = imageResponse.headers.get("Last-Modified");
+			assertTrue(pageTag, pageTag.startsWith("\""));
+			assertTrue(imageTag, imageTag.startsWith("\""));
+
+			send(socket, page, Collections.singletonMap("If-None-Match", pageTag));
+			assertEquals(304, receive(in).status);
+			send(socket, image, Collections.singletonMap("If-None-Match", "\"other\", " + imageTag));
+			assertEquals(304, receive(in).status);
+			send(socket, image, Collections.singletonMap("If-Modified-Since", lastModified));
+			assertEquals(304, receive(in).status);
+			send(socket, image, Collections.singletonMap("If-None-Match", pageTag));
+			assertEquals(200, receive(in).status);
+
+			resourceFile.setLastModified(resourceFile.lastModified() + 10000);
+			send(socket, image, Collections.singletonMap("If-None-Match", imageTag));
+			assertEquals(200, receive(in).status);
+			send(socket, image, Collections.singletonMap("If-Modified-Since", lastModified));
+			assertEquals(200, receive(in).status);
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void testChunkedPage() throws IOException {
+		byte[] expected = pageToBytes(generatedPage);
+		Socket socket = new Socket(HttpConstants.LOCALHOST, server.getPort());
+		try {
+			InputStream in = socket.getInputStream();
+			send(socket, GENERATED_PAGE, Collections.<String, String>emptyMap());
+			Response response = receive(in);
+			assertEquals(200, response.status);
+			assertEquals("chunked", response.headers.get("Transfer-Encoding"));
+			assertNull(response.headers.get("Content-Length"));
+			assertArrayEquals(expected, response.body);
+
+			// the connection is reused after the last chunk
+			send(socket, RECORDED_REQUESTS.get(1), Collections.<String, String>emptyMap());
+			assertEquals(resourceFile.length(), receive(in).body.length);
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void testSmallGeneratedPage() throws IOException {
+		byte[] expected = pageToBytes(smallGeneratedPage);
+		Socket socket = new Socket(HttpConstants.LOCALHOST, server.getPort());
+		try {
+			InputStream in = socket.getInputStream();
+			send(socket, SMALL_GENERATED_PAGE, Collections.<String, String>emptyMap());
+			Response response = receive(in);
+			assertEquals(200, response.status);
+			assertNull(response.headers.get("Transfer-Encoding"));
+			assertEquals(String.valueOf(expected.length), response.headers.get("Content-Length"));
+			assertArrayEquals(expected, response.body);
+			String pageTag = response.headers.get("ETag");
+			assertTrue(pageTag, pageTag.startsWith("\""));
+
+			send(socket, SMALL_GENERATED_PAGE, Collections.singletonMap("If-None-Match", pageTag));
+			Response notModified = receive(in);
+			assertEquals(304, notModified.status);
+			assertEquals(0, notModified.body.length);
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void testPageForHttp10() throws IOException {
+		byte[] expected = pageToBytes(generatedPage);
+		Socket socket = new Socket(HttpConstants.LOCALHOST, server.getPort());
+		try {
+			socket.getOutputStream().write(("GET " + GENERATED_PAGE + " HTTP/1.0\r\nHost: localhost\r\n\r\n").getBytes("UTF-8"));
+			InputStream in = socket.getInputStream();
+			Response response = receive(in);
+			assertEquals(200, response.status);
+			assertNull(response.headers.get("Transfer-Encoding"));
+			assertEquals(String.valueOf(expected.length), response.headers.get("Content-Length"));
+			assertArrayEquals(expected, response.body);
+			assertEquals(-1, in.read());
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void testEventStream() throws Exception {
+		String styleSheet = "/project/WebContent/css/style0.css";
+		VpvChangeNotifier changeNotifier = server.getChangeNotifier();
+		assertFalse(changeNotifier.notifyStyleSheetChanged(1, styleSheet));
+		Socket socket = new Socket(HttpConstants.LOCALHOST, server.getPort());
+		try {
+			InputStream in = socket.getInputStream();
+			send(socket, HttpConstants.EVENTS_PATH + "?" + HttpConstants.VIEW_ID + "=1",
+					Collections.<String, String>emptyMap());
+			Response response = receive(in);
+			assertEquals(200, response.status);
+			assertEquals("text/event-stream; charset=UTF-8", response.headers.get("Content-Type"));
+
+			assertFalse(changeNotifier.notifyStyleSheetChanged(2, styleSheet));
+			assertTrue(changeNotifier.notifyStyleSheetChanged(1, styleSheet));
+			assertEquals("event: stylesheet", readLine(in));
+			assertEquals("data: " + styleSheet, readLine(in));
+			assertEquals("", readLine(in));
+			assertTrue(changeNotifier.notifyScriptChanged(1, "/project/WebContent/js/script0.js"));
+			assertEquals("event: script", readLine(in));
+		} finally {
+			socket.close();
+		}
+
+		// the server closes the stream of the closed page
+		long timeout = System.currentTimeMillis() + 5000;
+		while (changeNotifier.notifyStyleSheetChanged(1, styleSheet)) {
+			assertTrue(System.currentTimeMillis() < timeout);
+			Thread.sleep(50);
+		}
+	}
+
+	@Test
+	public void testSlowEventStream() throws Exception {
+		StringBuilder path = new StringBuilder("/project/WebContent/css/");
+		while (path.length() < 64 * 1024) {
+			path.append("style");
+		}
+		VpvChangeNotifier changeNotifier = server.getChangeNotifier();
+		Socket socket = new Socket();
+		socket.setReceiveBufferSize(1024);
+		socket.connect(new InetSocketAddress(HttpConstants.LOCALHOST, server.getPort()));
+		try {
+			send(socket, HttpConstants.EVENTS_PATH + "?" + HttpConstants.VIEW_ID + "=1",
+					Collections.<String, String>emptyMap());
+			assertEquals(200, receive(socket.getInputStream()).status);
+
+			// the page does not read the events, the notifier does not wait for it
+			long start = System.currentTimeMillis();
+			int sentCount = 0;
+			while (changeNotifier.notifyStyleSheetChanged(1, path.toString())) {
+				sentCount++;
+				assertTrue(sentCount < 10000);
+			}
+			assertTrue(System.currentTimeMillis() - start < 5000);
+			assertFalse(changeNotifier.notifyStyleSheetChanged(1, path.toString()));
+		} finally {
+			socket.close();
+		}
+	}
+
+	public static Document createPage(int paragraphsCount) {
+		Document document;
+		try {
+			document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException(e);
+		}
+		Element html = document.createElement("html");
+		document.appendChild(html);
+		Element head = document.createElement("head");
+		html.appendChild(head);
+		Element style = document.createElement("style");
+		style.appendChild(document.createTextNode("p > b { color: red; }"));
+		head.appendChild(style);
+		Element body = document.createElement("body");
+		html.appendChild(body);
+		for (int i = 0; i < paragraphsCount; i++) {
+			Element paragraph = document.createElement("p");
+			paragraph.setAttribute("data-vpvid", String.valueOf(i));
+			paragraph.setAttribute("title", "\"Paragraph\" & " + i);
+			paragraph.appendChild(document.createTextNode("Text <" + i + "> & more text\u00A0\u0436"));
+			paragraph.appendChild(document.createElement("br"));
+			Element image = document.createElement("img");
+			image.setAttribute("src", "img/image" + i + ".png");
+			paragraph.appendChild(image);
+			body.appendChild(paragraph);
+		}
+		return document;
+	}
+
+	private static byte[] pageToBytes(Document page) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(bytes, "UTF-8");
+		VpvHtmlSerializer.writePage(page, writer);
+		writer.close();
+		return bytes.toByteArray();
+	}
+
+	private static long percentile(List<Long> sorted, int percent) {
+		int index = (int) Math.ceil(percent / 100.0 * sorted.size()) - 1;
+		return sorted.get(Math.max(index, 0));
+	}
+
+	private static String request(String path, boolean close) {
+		return request(path, close ? Collections.singletonMap("Connection", "close")
+				: Collections.<String, String>emptyMap());
+	}
+
+	private static String request(String path, Map<String, String> headers) {
+		StringBuilder request = new StringBuilder("GET " + path + " HTTP/1.1\r\n");
+		request.append("Host: localhost\r\n");
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+		}
+		return request.append("\r\n").toString();
+	}
+
+	private static void send(Socket socket, String path, Map<String, String> headers) throws IOException {
+		socket.getOutputStream().write(request(path, headers).getBytes("UTF-8"));
+	}
+
+	private static Response receive(InputStream in) throws IOException {
+		Response response = new Response();
+		String statusLine = readLine(in);
+		response.status = Integer.parseInt(statusLine.split(" ")[1]);
+		String line;
+		while (!(line = readLine(in)).isEmpty()) {
+			int colon = line.indexOf(':');
+			response.headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+		}
+		if ("chunked".equals(response.headers.get("Transfer-Encoding"))) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			int length;
+			while ((length = Integer.parseInt(readLine(in), 16)) > 0) {
+				body.write(readBytes(in, length));
+				assertEquals("", readLine(in));
+			}
+			assertEquals("", readLine(in));
+			response.body = body.toByteArray();
+		} else {
+			String contentLength = response.headers.get("Content-Length");
+			response.body = readBytes(in, contentLength != null ? Integer.parseInt(contentLength) : 0);
+		}
+		return response;
+	}
+
+	private static byte[] readBytes(InputStream in, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		int read = 0;
+		while (read < length) {
+			int count = in.read(bytes, read, length - read);
+			if (count < 0) {
+				throw new IOException("Unexpected end of the response");
+			}
+			read += count;
+		}
+		return bytes;
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c < 0) {
+				throw new IOException("Unexpected end of the response");
+			}
+			if (c != '\r') {
+				line.write(c);
+			}
+		}
+		return line.toString("UTF-8");
+	}
+
+	private static class Response {
+		int status;
+		Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		byte[] body;
+	}
+}
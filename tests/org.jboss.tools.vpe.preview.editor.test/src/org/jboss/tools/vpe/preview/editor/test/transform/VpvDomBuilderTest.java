@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.editor.test.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.jboss.tools.vpe.preview.core.template.VpeTemplate;
+import org.jboss.tools.vpe.preview.core.transform.VisualMutation;
+import org.jboss.tools.vpe.preview.core.transform.VpvDomBuilder;
+import org.jboss.tools.vpe.preview.core.transform.VpvHtmlSerializer;
+import org.jboss.tools.vpe.preview.core.transform.VpvTemplateProvider;
+import org.jboss.tools.vpe.preview.core.transform.VpvVisualModel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Checks the mappings and the ids of the visual models built by {@link VpvDomBuilder}
+ * by one and by several threads.
+ * The build times of a document of 50k nodes are compared only if the
+ * {@link VpvHtmlSerializerTest#BENCHMARK_PROPERTY} system property is {@code true}.
+ */
+@SuppressWarnings("nls")
+public class VpvDomBuilderTest {
+	private static final int SECTIONS_COUNT = 200;
+	private static final int LARGE_SECTIONS_COUNT = 2700;
+	private static final int WARMUP_COUNT = 5;
+	private static final int MEASURED_COUNT = 10;
+
+	private Document sourceDocument;
+	private VpvDomBuilder builder;
+	private VpvDomBuilder parallelBuilder;
+
+	@Before
+	public void setUp() throws Exception {
+		sourceDocument = createSourceDocument(SECTIONS_COUNT);
+		VpvTemplateProvider templateProvider = new VpvTemplateProvider(Collections.<String, VpeTemplate>emptyMap());
+		builder = new VpvDomBuilder(templateProvider);
+		parallelBuilder = new VpvDomBuilder(templateProvider, Math.max(2, Runtime.getRuntime().availableProcessors()));
+	}
+
+	@After
+	public void tearDown() {
+		parallelBuilder.dispose();
+	}
+
+	@Test
+	public void testBuildVisualModel() throws Exception {
+		VpvVisualModel visualModel = builder.buildVisualModel(sourceDocument);
+
+		assertEquals(countNodes(sourceDocument.getDocumentElement()), visualModel.getSourceVisualMapping().size());
+		assertMappings(visualModel);
+	}
+
+	@Test
+	public void testRebuildSubtree() throws Exception {
+		VpvVisualModel visualModel = builder.buildVisualModel(sourceDocument);
+		Node sourceSection = sourceDocument.getElementsByTagName("div").item(SECTIONS_COUNT / 2);
+		Element oldVisualSection = (Element) visualModel.getSourceVisualMapping().get(sourceSection);
+		long oldId = Long.parseLong(oldVisualSection.getAttribute(VpvDomBuilder.ATTR_VPV_ID));
+
+		VisualMutation mutation = builder.rebuildSubtree(visualModel, sourceSection);
+
+		assertNotNull(mutation);
+		assertEquals(oldId, mutation.getOldParentId());
+		assertSame(visualModel.getSourceVisualMapping().get(sourceSection), mutation.getNewParentNode());
+		assertNull(oldVisualSection.getParentNode());
+		// the section has the same shape, so it gets the same ids
+		assertSame(mutation.getNewParentNode(), visualModel.getVisualElementById(oldId));
+		assertMappings(visualModel);
+	}
+
+	@Test
+	public void testRebuildSubtreeReusesIds() throws Exception {
+		VpvVisualModel visualModel = builder.buildVisualModel(sourceDocument);
+		Element visualRoot = visualModel.getVisualDocument().getDocumentElement();
+		long rootId = Long.parseLong(visualRoot.getAttribute(VpvDomBuilder.ATTR_VPV_ID));
+		int elementsCount = visualModel.getVisualDocument().getElementsByTagName("*").getLength();
+		Element sourceSection = (Element) sourceDocument.getElementsByTagName("div").item(SECTIONS_COUNT / 2);
+		Node sourceList = sourceSection.getElementsByTagName("ul").item(0);
+
+		for (int i = 0; i < 100; i++) {
+			// the section shrinks and grows back, so the freed ids are taken in different orders
+			if (i % 2 == 0) {
+				sourceSection.removeChild(sourceList);
+			} else {
+				sourceSection.appendChild(sourceList);
+			}
+			assertNotNull(builder.rebuildSubtree(visualModel, sourceSection));
+		}
+
+		// the greatest id is still the one of the root, and no element shares an id
+		assertSame(visualRoot, visualModel.getVisualElementById(rootId));
+		assertNull(visualModel.getVisualElementById(rootId + 1));
+		assertEquals(elementsCount, visualModel.getVisualDocument().getElementsByTagName("*").getLength());
+		Set<String> ids = new HashSet<String>();
+		NodeList visualElements = visualModel.getVisualDocument().getElementsByTagName("*");
+		for (int i = 0; i < visualElements.getLength(); i++) {
+			assertTrue(ids.add(((Element) visualElements.item(i)).getAttribute(VpvDomBuilder.ATTR_VPV_ID)));
+		}
+		assertMappings(visualModel);
+	}
+
+	@Test
+	public void testParallelBuild() throws Exception {
+		VpvVisualModel visualModel = builder.buildVisualModel(sourceDocument);
+		VpvVisualModel parallelModel = parallelBuilder.buildVisualModel(sourceDocument);
+
+		assertEquals(VpvHtmlSerializer.nodeToString(visualModel.getVisualDocument()),
+				VpvHtmlSerializer.nodeToString(parallelModel.getVisualDocument()));
+		assertEquals(visualModel.getSourceVisualMapping().keySet(), parallelModel.getSourceVisualMapping().keySet());
+		assertMappings(parallelModel);
+		for (Node sourceNode : parallelModel.getSourceVisualMapping().keySet()) {
+			assertSame(sourceDocument, sourceNode.getOwnerDocument());
+		}
+	}
+
+	@Test
+	public void testDisposedBuilder() throws Exception {
+		parallelBuilder.dispose();
+		VpvVisualModel parallelModel = parallelBuilder.buildVisualModel(sourceDocument);
+
+		assertEquals(VpvHtmlSerializer.nodeToString(builder.buildVisualModel(sourceDocument).getVisualDocument()),
+				VpvHtmlSerializer.nodeToString(parallelModel.getVisualDocument()));
+		assertMappings(parallelModel);
+	}
+
+	@Test
+	public void testLargeDocument() throws Exception {
+		assumeTrue(Boolean.getBoolean(VpvHtmlSerializerTest.BENCHMARK_PROPERTY));
+		Document largeDocument = createSourceDocument(LARGE_SECTIONS_COUNT);
+		long sequentialTime = 0;
+		long parallelTime = 0;
+		for (int i = 0; i < WARMUP_COUNT + MEASURED_COUNT; i++) {
+			long start = System.nanoTime();
+			builder.buildVisualModel(largeDocument);
+			long middle = System.nanoTime();
+			parallelBuilder.buildVisualModel(largeDocument);
+			long end = System.nanoTime();
+			if (i >= WARMUP_COUNT) {
+				sequentialTime += middle - start;
+				parallelTime += end - middle;
+			}
+		}
+		System.out.println(countNodes(largeDocument) + " nodes, " + Runtime.getRuntime().availableProcessors()
+				+ " processors: one thread " + sequentialTime / MEASURED_COUNT / 1000000
+				+ " ms, parallel " + parallelTime / MEASURED_COUNT / 1000000 + " ms");
+	}
+
+	private static void assertMappings(VpvVisualModel visualModel) {
+		for (Map.Entry<Node, Node> mapping : visualModel.getSourceVisualMapping().entrySet()) {
+			Node visualNode = mapping.getValue();
+			assertSame(visualModel.getVisualDocument(), visualNode.getOwnerDocument());
+			assertSame(mapping.getKey(), visualModel.getSourceNode(visualNode));
+			if (visualNode instanceof Element) {
+				long id = Long.parseLong(((Element) visualNode).getAttribute(VpvDomBuilder.ATTR_VPV_ID));
+				assertSame(visualNode, visualModel.getVisualElementById(id));
+			}
+		}
+	}
+
+	private static Document createSourceDocument(int sectionsCount) throws Exception {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element html = document.createElement("html");
+		document.appendChild(html);
+		html.appendChild(document.createElement("head"));
+		Element body = document.createElement("body");
+		html.appendChild(body);
+		for (int i = 0; i < sectionsCount; i++) {
+			Element section = document.createElement("div");
+			section.setAttribute("class", "section");
+			Element header = document.createElement("h2");
+			header.appendChild(document.createTextNode("Section " + i));
+			section.appendChild(header);
+			Element paragraph = document.createElement("p");
+			paragraph.appendChild(document.createTextNode("Text of "));
+			Element bold = document.createElement("b");
+			bold.appendChild(document.createTextNode("section"));
+			paragraph.appendChild(bold);
+			paragraph.appendChild(document.createTextNode(" " + i));
+			section.appendChild(paragraph);
+			Element list = document.createElement("ul");
+			for (int j = 0; j < 5; j++) {
+				Element item = document.createElement("li");
+				item.setAttribute("id", "item" + i + "-" + j);
+				item.appendChild(document.createTextNode("Item " + j));
+				list.appendChild(item);
+			}
+			section.appendChild(list);
+			body.appendChild(section);
+		}
+		return document;
+	}
+
+	private static int countNodes(Node node) {
+		int count = 1;
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			count += countNodes(child);
+		}
+		return count;
+	}
+}
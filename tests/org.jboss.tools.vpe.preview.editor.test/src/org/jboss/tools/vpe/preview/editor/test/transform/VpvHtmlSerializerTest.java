@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.editor.test.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.jboss.tools.vpe.preview.core.transform.DomUtil;
+import org.jboss.tools.vpe.preview.core.transform.VpvHtmlSerializer;
+import org.jboss.tools.vpe.preview.editor.test.server.VpvServerLoadTest;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Checks the output of {@link VpvHtmlSerializer} and compares it with the
+ * output of the {@link javax.xml.transform.Transformer} used before on a 1MB page.
+ * The speeds are compared only if the {@link #BENCHMARK_PROPERTY} system property is {@code true}.
+ */
+@SuppressWarnings("nls")
+public class VpvHtmlSerializerTest {
+	public static final String BENCHMARK_PROPERTY = "org.jboss.tools.vpe.preview.benchmark";
+	private static final int PAGE_SIZE = 1024 * 1024;
+	private static final int WARMUP_COUNT = 5;
+	private static final int MEASURED_COUNT = 20;
+
+	@Test
+	public void testSerialization() throws Exception {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element html = document.createElement("html");
+		document.appendChild(html);
+		Element head = document.createElement("head");
+		html.appendChild(head);
+		Element script = document.createElement("script");
+		script.appendChild(document.createTextNode("if (a < b && c > d) {}"));
+		head.appendChild(script);
+		Element link = document.createElement("link");
+		link.setAttribute("href", "style.css?a=1&b=\"2\"");
+		head.appendChild(link);
+		Element body = document.createElement("BODY");
+		html.appendChild(body);
+		body.appendChild(document.createComment(" comment "));
+		body.appendChild(document.createTextNode("a < b & c > d\u00A0\"e\""));
+		body.appendChild(document.createElement("br"));
+		body.appendChild(document.createElement("div"));
+
+		assertEquals("<!DOCTYPE html>\n"
+				+ "<html><head><script>if (a < b && c > d) {}</script>"
+				+ "<link href=\"style.css?a=1&amp;b=&quot;2&quot;\"></head>"
+				+ "<BODY><!-- comment -->a &lt; b &amp; c &gt; d&nbsp;\"e\"<br><div></div></BODY></html>",
+				pageToString(document));
+		assertEquals("<div></div>", VpvHtmlSerializer.nodeToString(body.getLastChild()));
+	}
+
+	@Test
+	public void testLargePage() throws Exception {
+		Document page = createPage(PAGE_SIZE);
+		String serializerPage = pageToString(page);
+		assertTrue(serializerPage.length() >= PAGE_SIZE);
+		assertEquals(normalize(DomUtil.nodeToString(page)), normalize(serializerPage));
+	}
+
+	@Test
+	public void testLargePageSpeed() throws Exception {
+		assumeTrue(Boolean.getBoolean(BENCHMARK_PROPERTY));
+		Document page = createPage(PAGE_SIZE);
+		CountingOutputStream out = new CountingOutputStream();
+		long transformerTime = 0;
+		long serializerTime = 0;
+		for (int i = 0; i < WARMUP_COUNT + MEASURED_COUNT; i++) {
+			long start = System.nanoTime();
+			// the way the pages were sent before: a string, the doctype, then the bytes
+			byte[] bytes = ("<!DOCTYPE html>\n" + DomUtil.nodeToString(page)).getBytes("UTF-8");
+			out.write(bytes);
+			long middle = System.nanoTime();
+			Writer writer = new OutputStreamWriter(out, "UTF-8");
+			VpvHtmlSerializer.writePage(page, writer);
+			writer.flush();
+			long end = System.nanoTime();
+			if (i >= WARMUP_COUNT) {
+				transformerTime += middle - start;
+				serializerTime += end - middle;
+			}
+		}
+		assertTrue(out.count > 2L * PAGE_SIZE * (WARMUP_COUNT + MEASURED_COUNT));
+		System.out.println("1MB page: Transformer " + transformerTime / MEASURED_COUNT / 1000000
+				+ " ms, VpvHtmlSerializer " + serializerTime / MEASURED_COUNT / 1000000 + " ms");
+	}
+
+	/**
+	 * Removes the doctype, the content type added by the Transformer to the head
+	 * and the indents between the tags.
+	 */
+	private static String normalize(String page) {
+		return page.replaceFirst("^<!DOCTYPE html>", "")
+				.replaceFirst("<META http-equiv=\"Content-Type\"[^>]*>", "")
+				.replaceAll(">\\s+", ">").replaceAll("\\s+<", "<");
+	}
+
+	/**
+	 * Creates a page at least as large as the size when serialized.
+	 */
+	private static Document createPage(int size) {
+		int paragraphsCount = 1000;
+		Document page = VpvServerLoadTest.createPage(paragraphsCount);
+		int pageSize = pageToString(page).length();
+		if (pageSize < size) {
+			paragraphsCount = (int) ((long) paragraphsCount * size / pageSize) + 1;
+			page = VpvServerLoadTest.createPage(paragraphsCount);
+		}
+		return page;
+	}
+
+	private static String pageToString(Document document) {
+		StringWriter writer = new StringWriter();
+		try {
+			VpvHtmlSerializer.writePage(document, writer);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.editor.test.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.jboss.tools.vpe.preview.core.template.VpeCreationData;
+import org.jboss.tools.vpe.preview.core.template.VpeTemplate;
+import org.jboss.tools.vpe.preview.core.template.VpvDefaultTemplate;
+import org.jboss.tools.vpe.preview.core.template.jsf.JsfInputTextTemplate;
+import org.jboss.tools.vpe.preview.core.template.jsf.JsfOutputTextTemplate;
+import org.jboss.tools.vpe.preview.core.transform.VpvTemplateProvider;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Checks that {@link VpvTemplateProvider} resolves the shared templates from its table.
+ */
+@SuppressWarnings("nls")
+public class VpvTemplateProviderTest {
+	private static final String JSF_HTML_URI = "http://java.sun.com/jsf/html";
+
+	private Document document;
+
+	@Before
+	public void setUp() throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		document = factory.newDocumentBuilder().newDocument();
+	}
+
+	@Test
+	public void testLookup() {
+		VpeTemplate spanTemplate = new JsfOutputTextTemplate();
+		VpeTemplate inputTemplate = new JsfInputTextTemplate();
+		Map<String, VpeTemplate> templates = new HashMap<String, VpeTemplate>();
+		templates.put(VpvTemplateProvider.getTemplateKey(null, "SPAN"), spanTemplate);
+		templates.put(VpvTemplateProvider.getTemplateKey(JSF_HTML_URI, "inputText"), inputTemplate);
+		VpvTemplateProvider provider = new VpvTemplateProvider(templates);
+
+		assertSame(spanTemplate, provider.getTemplate(document, document.createElement("span")));
+		assertSame(spanTemplate, provider.getTemplate(document, document.createElement("Span")));
+		assertSame(inputTemplate, provider.getTemplate(document, document.createElementNS(JSF_HTML_URI, "h:inputText")));
+		assertSame(inputTemplate, provider.getTemplate(document, document.createElementNS(JSF_HTML_URI, "f:inputText")));
+
+		VpeTemplate defaultTemplate = provider.getTemplate(document, document.createElement("inputText"));
+		assertTrue(defaultTemplate instanceof VpvDefaultTemplate);
+		assertSame(defaultTemplate, provider.getTemplate(document, document.createElement("div")));
+		assertSame(defaultTemplate, provider.getTemplate(document, document.createTextNode("span")));
+		assertSame(defaultTemplate, provider.getTemplate(document,
+				document.createElementNS("http://xmlns.jcp.org/jsf/core", "f:inputText")));
+	}
+
+	@Test
+	public void testContributedTemplates() {
+		VpvTemplateProvider provider = new VpvTemplateProvider();
+		Element sourceElement = document.createElementNS(JSF_HTML_URI, "h:inputText");
+		sourceElement.setAttribute("value", "#{bean.name}");
+		sourceElement.setAttribute("styleClass", "name");
+
+		VpeTemplate template = provider.getTemplate(document, sourceElement);
+		assertTrue(template instanceof JsfInputTextTemplate);
+		assertSame(template, provider.getTemplate(document,
+				document.createElementNS(JSF_HTML_URI, "inputText")));
+
+		VpeCreationData creationData = template.create(sourceElement, document);
+		Element visualElement = (Element) creationData.getVisualNode();
+		assertEquals("input", visualElement.getNodeName());
+		assertEquals("#{bean.name}", visualElement.getAttribute("value"));
+		assertEquals("name", visualElement.getAttribute("class"));
+
+		Node paragraph = document.createElement("p");
+		assertTrue(provider.getTemplate(document, paragraph) instanceof VpvDefaultTemplate);
+	}
+}
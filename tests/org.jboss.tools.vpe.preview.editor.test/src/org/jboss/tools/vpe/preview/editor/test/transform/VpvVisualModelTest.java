@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.editor.test.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.wst.sse.core.StructuredModelManager;
+import org.eclipse.wst.xml.core.internal.provisional.document.IDOMModel;
+import org.jboss.tools.vpe.preview.core.transform.TransformUtil;
+import org.jboss.tools.vpe.preview.core.transform.VisualMutation;
+import org.jboss.tools.vpe.preview.core.transform.VpvDomBuilder;
+import org.jboss.tools.vpe.preview.core.transform.VpvTemplateProvider;
+import org.jboss.tools.vpe.preview.core.transform.VpvVisualModel;
+import org.jboss.tools.vpe.preview.editor.test.util.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Checks the indexes of the visual model used to navigate from the preview to the source.
+ */
+@SuppressWarnings({"restriction", "nls"})
+public class VpvVisualModelTest {
+	private static final String PROJECT_NAME = "html5-test";
+	private static final String PAGE_NAME = "index.html";
+
+	private IDOMModel sourceModel;
+	private VpvDomBuilder domBuilder;
+	private VpvVisualModel visualModel;
+
+	@Before
+	public void setUp() throws Exception {
+		IFile file = (IFile) TestUtil.getComponentPath(PAGE_NAME, PROJECT_NAME);
+		sourceModel = (IDOMModel) StructuredModelManager.getModelManager().getModelForRead(file);
+		domBuilder = new VpvDomBuilder(new VpvTemplateProvider());
+		visualModel = domBuilder.buildVisualModel(sourceModel.getDocument());
+	}
+
+	@After
+	public void tearDown() {
+		sourceModel.releaseFromRead();
+	}
+
+	@Test
+	public void testIndexes() {
+		assertIndexed(visualModel.getVisualDocument().getDocumentElement());
+		for (Map.Entry<Node, Node> entry : visualModel.getSourceVisualMapping().entrySet()) {
+			assertSame(entry.getKey(), TransformUtil.getSourseNodeByVisualNode(visualModel, entry.getValue()));
+		}
+		assertNull(TransformUtil.getVisualNodeByVpvId(visualModel, null));
+		assertNull(TransformUtil.getVisualNodeByVpvId(visualModel, -1L));
+		assertNull(TransformUtil.getVisualNodeByVpvId(visualModel, (long) Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void testIdsAreAllocatedByModel() throws Exception {
+		VpvVisualModel otherModel = domBuilder.buildVisualModel(sourceModel.getDocument());
+		assertEquals(visualModel.getVisualDocument().getDocumentElement().getAttribute(VpvDomBuilder.ATTR_VPV_ID),
+				otherModel.getVisualDocument().getDocumentElement().getAttribute(VpvDomBuilder.ATTR_VPV_ID));
+	}
+
+	@Test
+	public void testIndexesAfterRebuild() {
+		Node sourceParagraph = sourceModel.getDocument().getElementsByTagName("p").item(0);
+		Element oldParagraph = (Element) visualModel.getSourceVisualMapping().get(sourceParagraph);
+		Node oldText = oldParagraph.getFirstChild();
+		long oldId = Long.parseLong(oldParagraph.getAttribute(VpvDomBuilder.ATTR_VPV_ID));
+
+		VisualMutation mutation = domBuilder.rebuildSubtree(visualModel, sourceParagraph);
+		assertNotNull(mutation);
+		assertEquals(oldId, mutation.getOldParentId());
+		assertNull(visualModel.getSourceNode(oldParagraph));
+		assertNull(visualModel.getSourceNode(oldText));
+
+		// the paragraph has the same shape, so it gets the ids of the removed one
+		Element newParagraph = (Element) mutation.getNewParentNode();
+		long newId = Long.parseLong(newParagraph.getAttribute(VpvDomBuilder.ATTR_VPV_ID));
+		assertEquals(oldId, newId);
+		assertSame(newParagraph, visualModel.getVisualElementById(newId));
+		assertSame(sourceParagraph, visualModel.getSourceNode(newParagraph));
+		assertIndexed(visualModel.getVisualDocument().getDocumentElement());
+	}
+
+	private void assertIndexed(Element visualElement) {
+		long id = Long.parseLong(visualElement.getAttribute(VpvDomBuilder.ATTR_VPV_ID));
+		assertSame(visualElement, visualModel.getVisualElementById(id));
+		NodeList children = visualElement.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			if (children.item(i) instanceof Element) {
+				Element child = (Element) children.item(i);
+				assertTrue(Long.parseLong(child.getAttribute(VpvDomBuilder.ATTR_VPV_ID)) < id);
+				assertIndexed(child);
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.preview.editor.test.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.wst.sse.core.StructuredModelManager;
+import org.eclipse.wst.xml.core.internal.provisional.document.IDOMModel;
+import org.jboss.tools.vpe.preview.core.transform.DomUtil;
+import org.jboss.tools.vpe.preview.core.transform.VisualMutation;
+import org.jboss.tools.vpe.preview.core.transform.VpvDomBuilder;
+import org.jboss.tools.vpe.preview.core.transform.VpvTemplateProvider;
+import org.jboss.tools.vpe.preview.core.transform.VpvVisualModel;
+import org.jboss.tools.vpe.preview.core.transform.VpvVisualModelUpdater;
+import org.jboss.tools.vpe.preview.editor.test.util.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+/**
+ * Checks that the visual model updated by the changed subtrees is the same
+ * as the model built for the whole changed document.
+ */
+@SuppressWarnings({"restriction", "nls"})
+public class VpvVisualModelUpdaterTest {
+	private static final String PROJECT_NAME = "html5-test";
+	private static final String PAGE_NAME = "index.html";
+
+	private IDOMModel sourceModel;
+	private IDocument document;
+	private VpvDomBuilder domBuilder;
+	private VpvVisualModel visualModel;
+	private VpvVisualModelUpdater updater;
+	private IDocumentListener documentListener;
+
+	@Before
+	public void setUp() throws Exception {
+		IFile file = (IFile) TestUtil.getComponentPath(PAGE_NAME, PROJECT_NAME);
+		sourceModel = (IDOMModel) StructuredModelManager.getModelManager().getModelForEdit(file);
+		document = sourceModel.getStructuredDocument();
+		domBuilder = new VpvDomBuilder(new VpvTemplateProvider());
+		visualModel = domBuilder.buildVisualModel(sourceModel.getDocument());
+		updater = new VpvVisualModelUpdater(domBuilder);
+		documentListener = new IDocumentListener() {
+			@Override
+			public void documentAboutToBeChanged(DocumentEvent event) {
+			}
+
+			@Override
+			public void documentChanged(DocumentEvent event) {
+				updater.documentChanged(event);
+			}
+		};
+		document.addDocumentListener(documentListener);
+	}
+
+	@After
+	public void tearDown() {
+		document.removeDocumentListener(documentListener);
+		sourceModel.releaseFromEdit();
+	}
+
+	@Test
+	public void testTextChange() throws Exception {
+		replace("Some test text", "Changed text");
+		VisualMutation mutation = updater.update(visualModel, document);
+		assertNotNull(mutation);
+		Element paragraph = (Element) mutation.getNewParentNode();
+		assertEquals("p", paragraph.getNodeName().toLowerCase());
+		assertEquals("Changed text", paragraph.getTextContent());
+		assertFalse(updater.hasChanges());
+		assertSameAsFullBuild();
+	}
+
+	@Test
+	public void testAttributeChange() throws Exception {
+		replace("<p>", "<p class=\"changed\">");
+		VisualMutation mutation = updater.update(visualModel, document);
+		assertNotNull(mutation);
+		assertEquals("changed", ((Element) mutation.getNewParentNode()).getAttribute("class"));
+		assertSameAsFullBuild();
+	}
+
+	@Test
+	public void testSeveralChanges() throws Exception {
+		replace("Webroot related image", "First");
+		replace("Page related image", "Second");
+		VisualMutation mutation = updater.update(visualModel, document);
+		assertNotNull(mutation);
+		assertEquals("container", ((Element) mutation.getNewParentNode()).getAttribute("id"));
+		assertSameAsFullBuild();
+	}
+
+	@Test
+	public void testNewElement() throws Exception {
+		replace("<p>Some test text</p>", "<p>Some <b>test</b> text</p><p>New</p>");
+		assertNotNull(updater.update(visualModel, document));
+		assertSameAsFullBuild();
+	}
+
+	@Test
+	public void testHeadChangeRequiresReload() throws Exception {
+		replace("JBoss Tools HTML Editor test", "New title");
+		assertNull(updater.update(visualModel, document));
+	}
+
+	@Test
+	public void testNoChanges() throws Exception {
+		assertFalse(updater.hasChanges());
+		assertNull(updater.update(visualModel, document));
+		replace("Some test text", "Changed text");
+		assertTrue(updater.hasChanges());
+		updater.reset();
+		assertNull(updater.update(visualModel, document));
+	}
+
+	private void replace(String oldText, String newText) throws Exception {
+		int offset = document.get().indexOf(oldText);
+		assertTrue(oldText, offset >= 0);
+		document.replace(offset, oldText.length(), newText);
+	}
+
+	private void assertSameAsFullBuild() throws Exception {
+		VpvVisualModel fullModel = domBuilder.buildVisualModel(sourceModel.getDocument());
+		assertEquals(withoutIds(DomUtil.nodeToString(fullModel.getVisualDocument())),
+				withoutIds(DomUtil.nodeToString(visualModel.getVisualDocument())));
+		assertEquals(fullModel.getSourceVisualMapping().size(), visualModel.getSourceVisualMapping().size());
+	}
+
+	private static String withoutIds(String html) {
+		return html.replaceAll(" " + VpvDomBuilder.ATTR_VPV_ID + "=\"\\d+\"", "");
+	}
+}
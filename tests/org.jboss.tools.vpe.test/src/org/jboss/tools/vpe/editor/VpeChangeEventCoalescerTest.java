@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.wst.sse.core.StructuredModelManager;
+import org.eclipse.wst.sse.core.internal.provisional.INodeNotifier;
+import org.eclipse.wst.xml.core.internal.provisional.contenttype.ContentTypeIdForXML;
+import org.eclipse.wst.xml.core.internal.provisional.document.IDOMModel;
+import org.jboss.tools.vpe.editor.mapping.VpeDomMapping;
+import org.jboss.tools.vpe.editor.mapping.VpeNodeMapping;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+/**
+ * Checks which queued source events {@link VpeChangeEventCoalescer} finds
+ * covered by other events, on a source DOM without a visual editor.
+ */
+@SuppressWarnings({"nls", "restriction"})
+public class VpeChangeEventCoalescerTest extends TestCase {
+
+	private Document document;
+	private Element body;
+	private Element outer;
+	private Element inner;
+	private Text innerText;
+	private Element sibling;
+	private Text siblingText;
+	private Set<Node> unmappedNodes;
+	private VpeChangeEventCoalescer coalescer;
+
+	@Override
+	protected void setUp() {
+		IDOMModel model = (IDOMModel) StructuredModelManager.getModelManager()
+				.createUnManagedStructuredModelFor(ContentTypeIdForXML.ContentTypeID_XML);
+		document = model.getDocument();
+		body = appendElement(document, "body");
+		outer = appendElement(body, "div");
+		inner = appendElement(outer, "p");
+		innerText = appendText(inner, "inner");
+		sibling = appendElement(body, "span");
+		siblingText = appendText(sibling, "sibling");
+
+		unmappedNodes = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+		coalescer = new VpeChangeEventCoalescer(new VpeDomMapping(null) {
+			@Override
+			public VpeNodeMapping getNodeMapping(Node node) {
+				return unmappedNodes.contains(node) ? null : new VpeNodeMapping(node, null);
+			}
+		});
+	}
+
+	public void testNestedStructureChanges() {
+		VpeEventBean textChange = textChange(innerText);
+		VpeEventBean innerChange = structureChange(inner);
+		VpeEventBean outerChange = structureChange(outer);
+		VpeEventBean attributeChange = attributeChange(inner, "class", "a");
+		coalesce(textChange, innerChange, outerChange, attributeChange);
+
+		assertCovered(textChange, innerChange, attributeChange);
+		assertNotCovered(outerChange);
+		assertTrue(coalescer.isCovering(outerChange));
+		assertEquals(1, coalescer.getUpdatesCount());
+	}
+
+	public void testSiblingChanges() {
+		VpeEventBean outerChange = structureChange(outer);
+		VpeEventBean siblingChange = structureChange(sibling);
+		VpeEventBean siblingTextChange = textChange(siblingText);
+		VpeEventBean innerTextChange = textChange(innerText);
+		coalesce(outerChange, siblingTextChange, innerTextChange, siblingChange);
+
+		assertCovered(siblingTextChange, innerTextChange);
+		assertNotCovered(outerChange, siblingChange);
+		assertTrue(coalescer.isCovering(outerChange));
+		assertTrue(coalescer.isCovering(siblingChange));
+		assertEquals(2, coalescer.getUpdatesCount());
+	}
+
+	public void testRepeatedTextChanges() {
+		VpeEventBean first = textChange(innerText);
+		VpeEventBean second = textChange(siblingText);
+		VpeEventBean last = textChange(innerText);
+		coalesce(first, second, last);
+
+		assertCovered(first);
+		assertNotCovered(second, last);
+		assertFalse(coalescer.isCovering(last));
+		assertEquals(2, coalescer.getUpdatesCount());
+	}
+
+	public void testDetachedNodes() {
+		VpeEventBean innerChange = structureChange(inner);
+		VpeEventBean textChange = textChange(innerText);
+		VpeEventBean attributeChange = attributeChange(inner, "class", "a");
+		VpeEventBean removal = new VpeEventBean((INodeNotifier) outer, INodeNotifier.REMOVE, inner, inner, null, 0);
+		outer.removeChild(inner);
+		coalesce(innerChange, textChange, attributeChange, removal);
+
+		assertCovered(innerChange, textChange, attributeChange);
+		assertNotCovered(removal);
+		assertEquals(0, coalescer.getUpdatesCount());
+	}
+
+	public void testAddedDescendant() {
+		VpeEventBean outerChange = structureChange(outer);
+		Element added = appendElement(inner, "b");
+		unmappedNodes.add(added);
+		VpeEventBean addition = new VpeEventBean((INodeNotifier) inner, INodeNotifier.ADD, null, null, added, 1);
+		VpeEventBean innerChange = structureChange(inner);
+		coalesce(outerChange, addition, innerChange);
+
+		// replaying the addition would remove the mapping made by the rebuild of outer
+		assertCovered(addition, innerChange);
+		assertNotCovered(outerChange);
+		assertTrue(coalescer.isCovering(outerChange));
+		assertEquals(1, coalescer.getUpdatesCount());
+	}
+
+	public void testMovedIntoRebuiltSubtree() {
+		VpeEventBean outerChange = structureChange(outer);
+		VpeEventBean removal = new VpeEventBean((INodeNotifier) sibling, INodeNotifier.REMOVE, siblingText, siblingText, null, 0);
+		VpeEventBean siblingChange = structureChange(sibling);
+		inner.appendChild(siblingText);
+		VpeEventBean addition = new VpeEventBean((INodeNotifier) inner, INodeNotifier.ADD, null, null, siblingText, 1);
+		VpeEventBean innerChange = structureChange(inner);
+		coalesce(outerChange, removal, siblingChange, addition, innerChange);
+
+		assertCovered(removal, addition, innerChange);
+		assertNotCovered(outerChange, siblingChange);
+		assertEquals(2, coalescer.getUpdatesCount());
+	}
+
+	public void testAttributeChanges() {
+		VpeEventBean first = attributeChange(inner, "class", "a");
+		VpeEventBean other = attributeChange(inner, "title", "b");
+		VpeEventBean last = attributeChange(inner, "class", "c");
+		coalesce(first, other, last);
+
+		assertCovered(first);
+		assertNotCovered(other, last);
+		assertEquals(2, coalescer.getUpdatesCount());
+	}
+
+	public void testRemovedAttribute() {
+		VpeEventBean change = attributeChange(inner, "class", "a");
+		Attr attr = inner.getAttributeNode("class");
+		VpeEventBean removal = new VpeEventBean((INodeNotifier) inner, INodeNotifier.CHANGE, attr, "a", null, 0);
+		VpeEventBean addition = attributeChange(inner, "class", "b");
+		coalesce(change, removal, addition);
+
+		// the values around a removal are kept
+		assertNotCovered(change, removal, addition);
+		assertEquals(3, coalescer.getUpdatesCount());
+	}
+
+	public void testUnmappedAncestor() {
+		unmappedNodes.add(outer);
+		VpeEventBean outerChange = structureChange(outer);
+		VpeEventBean innerChange = structureChange(inner);
+		VpeEventBean textChange = textChange(innerText);
+		coalesce(outerChange, innerChange, textChange);
+
+		// the unmapped node has nothing to rebuild, its descendants are rebuilt instead
+		assertCovered(outerChange, textChange);
+		assertNotCovered(innerChange);
+		assertTrue(coalescer.isCovering(innerChange));
+		assertEquals(1, coalescer.getUpdatesCount());
+	}
+
+	public void testWithoutMapping() {
+		coalescer = new VpeChangeEventCoalescer(null);
+		VpeEventBean outerChange = structureChange(outer);
+		VpeEventBean innerChange = structureChange(inner);
+		coalesce(outerChange, innerChange);
+
+		assertCovered(innerChange);
+		assertNotCovered(outerChange);
+		assertEquals(1, coalescer.getUpdatesCount());
+	}
+
+	public void testClear() {
+		VpeEventBean first = textChange(innerText);
+		VpeEventBean last = textChange(innerText);
+		coalesce(first, last);
+		coalescer.clear();
+
+		assertNotCovered(first, last);
+		assertEquals(0, coalescer.getUpdatesCount());
+	}
+
+	private void coalesce(VpeEventBean... events) {
+		coalescer.coalesce(new ArrayList<VpeEventBean>(Arrays.asList(events)));
+	}
+
+	private void assertCovered(VpeEventBean... events) {
+		for (VpeEventBean event : events) {
+			assertTrue(describe(event), coalescer.isCovered(event));
+		}
+	}
+
+	private void assertNotCovered(VpeEventBean... events) {
+		for (VpeEventBean event : events) {
+			assertFalse(describe(event), coalescer.isCovered(event));
+		}
+	}
+
+	private static String describe(VpeEventBean event) {
+		return event.getEventType() + " of " + ((Node) event.getNotifier()).getNodeName();
+	}
+
+	private static VpeEventBean structureChange(Node node) {
+		return new VpeEventBean((INodeNotifier) node, INodeNotifier.STRUCTURE_CHANGED, null, null, null, 0);
+	}
+
+	private static VpeEventBean textChange(Text text) {
+		return new VpeEventBean((INodeNotifier) text, INodeNotifier.CHANGE, null, text.getData(), text.getData(), 0);
+	}
+
+	private static VpeEventBean attributeChange(Element element, String name, String value) {
+		String oldValue = element.getAttribute(name);
+		element.setAttribute(name, value);
+		return new VpeEventBean((INodeNotifier) element, INodeNotifier.CHANGE,
+				element.getAttributeNode(name), oldValue, value, 0);
+	}
+
+	private Element appendElement(Node parent, String name) {
+		Element element = document.createElement(name);
+		parent.appendChild(element);
+		return element;
+	}
+
+	private Text appendText(Node parent, String data) {
+		Text text = document.createTextNode(data);
+		parent.appendChild(text);
+		return text;
+	}
+}
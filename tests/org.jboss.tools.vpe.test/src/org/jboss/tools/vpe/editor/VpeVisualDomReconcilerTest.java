@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.jboss.tools.vpe.editor.mapping.NodeData;
+import org.jboss.tools.vpe.editor.mapping.VpeDomMapping;
+import org.jboss.tools.vpe.editor.mapping.VpeElementData;
+import org.jboss.tools.vpe.editor.mapping.VpeElementMapping;
+import org.jboss.tools.vpe.editor.mapping.VpeNodeMapping;
+import org.mozilla.interfaces.nsIDOMElement;
+import org.mozilla.interfaces.nsIDOMNamedNodeMap;
+import org.mozilla.interfaces.nsIDOMNode;
+import org.mozilla.interfaces.nsIDOMNodeList;
+import org.mozilla.interfaces.nsISupports;
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Checks {@link VpeVisualDomReconciler} on a visual DOM simulated by a JAXP
+ * document behind the XPCOM interfaces. The simulated DOM counts the calls
+ * which would cross to XULRunner.
+ */
+@SuppressWarnings("nls")
+public class VpeVisualDomReconcilerTest extends TestCase {
+	private static final Set<String> WRITE_METHODS = new HashSet<String>(Arrays.asList(
+			"setAttribute", "removeAttribute", "setNodeValue",
+			"insertBefore", "appendChild", "removeChild"));
+	private static final int ITEMS_COUNT = 20;
+
+	private Document sourceDocument;
+	private Document visualDocument;
+	private Element visualContainer;
+	private VpeDomMapping oldMapping;
+	private VpeDomMapping newMapping;
+	private Map<Node, nsIDOMNode> visualNodes;
+	private int callsCount;
+	private int writesCount;
+
+	@Override
+	protected void setUp() throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		sourceDocument = factory.newDocumentBuilder().newDocument();
+		visualDocument = factory.newDocumentBuilder().newDocument();
+		visualContainer = visualDocument.createElement("body");
+		visualDocument.appendChild(visualContainer);
+		oldMapping = new VpeDomMapping(null);
+		newMapping = new VpeDomMapping(null);
+		visualNodes = new IdentityHashMap<Node, nsIDOMNode>();
+	}
+
+	public void testAttributes() {
+		Element source = sourceDocument.createElement("div");
+		Element oldDiv = oldElement(source, "div", "class", "a", "title", "t", "id", "x");
+		Element newDiv = newElement(source, "div", "class", "b", "id", "x", "lang", "en");
+
+		assertTrue(reconcile(source, oldDiv, newDiv));
+		assertEquals("b", oldDiv.getAttribute("class"));
+		assertEquals("x", oldDiv.getAttribute("id"));
+		assertEquals("en", oldDiv.getAttribute("lang"));
+		assertFalse(oldDiv.hasAttribute("title"));
+		assertEquals(3, writesCount);
+		assertSame(wrap(oldDiv), newMapping.getVisualNode(source));
+		assertSame(oldDiv, visualContainer.getFirstChild());
+	}
+
+	public void testText() {
+		Element source = sourceDocument.createElement("p");
+		Node sourceText = source.appendChild(sourceDocument.createTextNode("new"));
+		Element oldP = oldElement(source, "p");
+		Node oldText = oldP.appendChild(visualDocument.createTextNode("old"));
+		oldMapping.mapNodes(new VpeNodeMapping(sourceText, wrap(oldText)));
+		Element newP = newElement(source, "p");
+		Node newText = newP.appendChild(visualDocument.createTextNode("new"));
+		newMapping.mapNodes(new VpeNodeMapping(sourceText, wrap(newText)));
+
+		assertTrue(reconcile(source, oldP, newP));
+		assertSame(oldText, oldP.getFirstChild());
+		assertEquals("new", oldText.getNodeValue());
+		assertEquals(1, writesCount);
+		assertSame(wrap(oldText), newMapping.getVisualNode(sourceText));
+	}
+
+	public void testChildList() {
+		Element source = sourceDocument.createElement("ul");
+		Element[] sourceItems = new Element[4];
+		for (int i = 0; i < sourceItems.length; i++) {
+			sourceItems[i] = sourceDocument.createElement("li");
+		}
+		// the second item is removed, the fourth one is added
+		source.appendChild(sourceItems[2]);
+		source.appendChild(sourceItems[0]);
+		source.appendChild(sourceItems[3]);
+		Element oldList = oldElement(source, "ul");
+		Element[] oldItems = new Element[3];
+		for (int i = 0; i < oldItems.length; i++) {
+			oldItems[i] = oldElement(sourceItems[i], "li", "id", "old" + i);
+			oldList.appendChild(oldItems[i]);
+		}
+		Element newList = newElement(source, "ul");
+		Element[] newItems = new Element[4];
+		for (int i : new int[] {2, 0, 3}) {
+			newItems[i] = newElement(sourceItems[i], "li", "id", "new" + i);
+			newList.appendChild(newItems[i]);
+		}
+
+		assertTrue(reconcile(source, oldList, newList));
+		assertChildren(oldList, oldItems[2], oldItems[0], newItems[3]);
+		assertNull(oldItems[1].getParentNode());
+		assertEquals("new0", oldItems[0].getAttribute("id"));
+		assertEquals("new2", oldItems[2].getAttribute("id"));
+		assertSame(wrap(oldItems[0]), newMapping.getVisualNode(sourceItems[0]));
+		assertSame(wrap(oldItems[2]), newMapping.getVisualNode(sourceItems[2]));
+		assertSame(wrap(newItems[3]), newMapping.getVisualNode(sourceItems[3]));
+	}
+
+	public void testTemplateNodes() {
+		Element source = sourceDocument.createElement("h:outputLabel");
+		Element oldLabel = oldElement(source, "label");
+		Element oldSpan = appendElement(oldLabel, "span", "class", "a");
+		oldSpan.appendChild(visualDocument.createTextNode("old"));
+		Element newLabel = newElement(source, "label");
+		Element newSpan = appendElement(newLabel, "span", "class", "a");
+		newSpan.appendChild(visualDocument.createTextNode("new"));
+		appendElement(newLabel, "br");
+
+		// the nodes without mappings are paired by their positions
+		assertTrue(reconcile(source, oldLabel, newLabel));
+		assertSame(oldSpan, oldLabel.getFirstChild());
+		assertEquals("new", oldSpan.getTextContent());
+		assertEquals(2, oldLabel.getChildNodes().getLength());
+		assertEquals("br", oldLabel.getLastChild().getNodeName());
+	}
+
+	public void testElementData() {
+		Element source = sourceDocument.createElement("h:inputText");
+		source.setAttribute("value", "new");
+		Element oldDiv = oldElement(source, "div");
+		Element oldInput = appendElement(oldDiv, "input", "value", "old");
+		Element newDiv = visualDocument.createElement("div");
+		Element newInput = appendElement(newDiv, "input", "value", "new");
+		VpeElementData elementData = new VpeElementData();
+		NodeData nodeData = new NodeData(source.getAttributeNode("value"), wrap(newInput));
+		elementData.addNodeData(nodeData);
+		VpeElementMapping mapping = new VpeElementMapping(source, wrap(newDiv),
+				null, null, null, elementData);
+		newMapping.mapNodes(mapping);
+
+		assertTrue(reconcile(source, oldDiv, newDiv));
+		assertEquals("new", oldInput.getAttribute("value"));
+		assertSame(wrap(oldDiv), mapping.getVisualNode());
+		assertSame(wrap(oldInput), nodeData.getVisualNode());
+		assertSame(mapping, newMapping.getNodeMapping(wrap(oldDiv)));
+		assertNull(newMapping.getNodeMapping(wrap(newDiv)));
+	}
+
+	public void testNotReused() {
+		Element source = sourceDocument.createElement("div");
+		Element oldDiv = oldElement(source, "div", "class", "a");
+		Element newSpan = newElement(source, "span", "class", "b");
+		assertFalse(reconcile(source, oldDiv, newSpan));
+		assertEquals(0, writesCount);
+		assertEquals("a", oldDiv.getAttribute("class"));
+
+		// the template data may refer to the new visual nodes
+		Element newDiv = visualDocument.createElement("div");
+		newMapping.mapNodes(new VpeElementMapping(source, wrap(newDiv),
+				null, null, Collections.singletonMap("key", wrap(newDiv)), null));
+		assertFalse(reconcile(source, oldDiv, newDiv));
+		assertEquals(0, writesCount);
+	}
+
+	/**
+	 * Compares the XPCOM calls of the reconciliation with the calls
+	 * of the replacement done by {@link VpeVisualDomBuilder} otherwise,
+	 * when one attribute of a list is changed. The reconciliation writes
+	 * less to the visual document, but reads both subtrees.
+	 */
+	public void testCallsCount() {
+		Element source = sourceDocument.createElement("ul");
+		Element oldList = oldElement(source, "ul", "class", "a");
+		Element newList = newElement(source, "ul", "class", "b");
+		for (int i = 0; i < ITEMS_COUNT; i++) {
+			Element sourceItem = (Element) source.appendChild(sourceDocument.createElement("li"));
+			Element oldItem = (Element) oldList.appendChild(oldElement(sourceItem, "li", "id", "i" + i));
+			oldItem.appendChild(visualDocument.createTextNode("item " + i));
+			Element newItem = (Element) newList.appendChild(newElement(sourceItem, "li", "id", "i" + i));
+			newItem.appendChild(visualDocument.createTextNode("item " + i));
+		}
+		Map<nsIDOMNode, Node> oldSourceNodes = VpeVisualDomReconciler.getVisualNodes(oldMapping, source);
+		resetCounts();
+		assertTrue(new VpeVisualDomReconciler(newMapping, oldSourceNodes)
+				.reconcile(wrap(oldList), wrap(newList)));
+		int reconcileCalls = callsCount;
+		int reconcileWrites = writesCount;
+		assertEquals(1, reconcileWrites);
+
+		// the replacement of VpeVisualDomBuilder.replaceNode
+		Element otherList = visualDocument.createElement("ul");
+		resetCounts();
+		nsIDOMNode visualOldNode = wrap(oldList);
+		nsIDOMNode visualParent = visualOldNode.getParentNode();
+		visualParent.insertBefore(wrap(otherList), visualOldNode.getNextSibling());
+		visualParent.removeChild(visualOldNode);
+		assertEquals(2, writesCount);
+		assertTrue(reconcileWrites < writesCount);
+		assertTrue(reconcileCalls > callsCount * ITEMS_COUNT);
+	}
+
+	private boolean reconcile(Node source, Element visualOldNode, Element visualNewNode) {
+		Map<nsIDOMNode, Node> oldSourceNodes = VpeVisualDomReconciler.getVisualNodes(oldMapping, source);
+		resetCounts();
+		return new VpeVisualDomReconciler(newMapping, oldSourceNodes)
+				.reconcile(wrap(visualOldNode), wrap(visualNewNode));
+	}
+
+	private void resetCounts() {
+		callsCount = 0;
+		writesCount = 0;
+	}
+
+	/**
+	 * Creates an old visual element in the container and maps it to the source node.
+	 */
+	private Element oldElement(Node source, String name, String... attributes) {
+		Element element = appendElement(visualContainer, name, attributes);
+		oldMapping.mapNodes(new VpeNodeMapping(source, wrap(element)));
+		return element;
+	}
+
+	/**
+	 * Creates a new visual element out of the document and maps it to the source node.
+	 */
+	private Element newElement(Node source, String name, String... attributes) {
+		Element element = createElement(name, attributes);
+		newMapping.mapNodes(new VpeNodeMapping(source, wrap(element)));
+		return element;
+	}
+
+	private Element appendElement(Node parent, String name, String... attributes) {
+		return (Element) parent.appendChild(createElement(name, attributes));
+	}
+
+	private Element createElement(String name, String... attributes) {
+		Element element = visualDocument.createElement(name);
+		for (int i = 0; i < attributes.length; i += 2) {
+			element.setAttribute(attributes[i], attributes[i + 1]);
+		}
+		return element;
+	}
+
+	private static void assertChildren(Node parent, Node... children) {
+		NodeList childNodes = parent.getChildNodes();
+		assertEquals(children.length, childNodes.getLength());
+		for (int i = 0; i < children.length; i++) {
+			assertSame(children[i], childNodes.item(i));
+		}
+	}
+
+	/**
+	 * Returns the only XPCOM node of the JAXP node.
+	 */
+	private nsIDOMNode wrap(Node node) {
+		if (node == null) {
+			return null;
+		}
+		nsIDOMNode visualNode = visualNodes.get(node);
+		if (visualNode == null) {
+			Class<?> type = node.getNodeType() == Node.ELEMENT_NODE
+					? nsIDOMElement.class : nsIDOMNode.class;
+			visualNode = (nsIDOMNode) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] {type}, new XpcomHandler(node));
+			visualNodes.put(node, visualNode);
+		}
+		return visualNode;
+	}
+
+	/**
+	 * Calls the method of the same name of the JAXP object.
+	 */
+	private class XpcomHandler implements InvocationHandler {
+		private final Object target;
+
+		XpcomHandler(Object target) {
+			this.target = target;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (method.getDeclaringClass() == Object.class) {
+				if ("equals".equals(name)) {
+					return proxy == args[0];
+				} else if ("hashCode".equals(name)) {
+					return System.identityHashCode(proxy);
+				}
+				return "XPCOM " + target;
+			}
+			callsCount++;
+			if (WRITE_METHODS.contains(name)) {
+				writesCount++;
+			}
+			if ("queryInterface".equals(name)) {
+				return proxy;
+			}
+			Object[] targetArgs = args == null ? new Object[0] : args.clone();
+			for (int i = 0; i < targetArgs.length; i++) {
+				if (targetArgs[i] instanceof nsISupports) {
+					targetArgs[i] = ((XpcomHandler) Proxy.getInvocationHandler(targetArgs[i])).target;
+				} else if (targetArgs[i] instanceof Long) {
+					targetArgs[i] = ((Long) targetArgs[i]).intValue();
+				}
+			}
+			try {
+				return toXpcom(findMethod(name, targetArgs.length).invoke(target, targetArgs),
+						method.getReturnType());
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		private Method findMethod(String name, int parametersCount) {
+			for (Class<?> type : new Class<?>[] {Element.class, CharacterData.class, Node.class,
+					NodeList.class, NamedNodeMap.class}) {
+				if (type.isInstance(target)) {
+					for (Method method : type.getMethods()) {
+						if (method.getName().equals(name)
+								&& method.getParameterTypes().length == parametersCount) {
+							return method;
+						}
+					}
+				}
+			}
+			throw new UnsupportedOperationException(name);
+		}
+
+		private Object toXpcom(Object result, Class<?> type) {
+			if (result == null) {
+				return null;
+			} else if (type == nsIDOMNodeList.class || type == nsIDOMNamedNodeMap.class) {
+				// the JAXP node may be its own child list
+				return Proxy.newProxyInstance(getClass().getClassLoader(),
+						new Class<?>[] {type}, new XpcomHandler(result));
+			} else if (nsIDOMNode.class.isAssignableFrom(type)) {
+				return wrap((Node) result);
+			} else if (type == long.class) {
+				return ((Number) result).longValue();
+			} else if (type == int.class) {
+				return ((Number) result).intValue();
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.mapping;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+public class VpeSourceNodeRegistryTest extends TestCase {
+
+	private Document document;
+
+	@Override
+	protected void setUp() throws Exception {
+		document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+	}
+
+	@SuppressWarnings("nls")
+	public void testRegistrationOrderAndUniqueness() {
+		VpeSourceNodeRegistry registry = new VpeSourceNodeRegistry();
+		Element a = document.createElement("a");
+		Element b = document.createElement("b");
+		Element c = document.createElement("c");
+		assertTrue(registry.add(a));
+		assertTrue(registry.add(b));
+		assertTrue(registry.add(c));
+		assertFalse(registry.add(b));
+		assertEquals(3, registry.size());
+
+		assertTrue(registry.remove(b));
+		assertFalse(registry.remove(b));
+		assertFalse(registry.contains(b));
+		assertTrue(registry.add(b));
+
+		Iterator<Node> iterator = registry.iterator();
+		assertSame(a, iterator.next());
+		assertSame(c, iterator.next());
+		assertSame(b, iterator.next());
+		assertFalse(iterator.hasNext());
+	}
+
+	@SuppressWarnings("nls")
+	public void testIteratorRemove() {
+		VpeSourceNodeRegistry registry = new VpeSourceNodeRegistry();
+		Element a = document.createElement("a");
+		Element b = document.createElement("b");
+		registry.add(a);
+		registry.add(b);
+		for (Iterator<Node> iterator = registry.iterator(); iterator.hasNext();) {
+			if (iterator.next() == a) {
+				iterator.remove();
+			}
+		}
+		assertEquals(1, registry.size());
+		assertFalse(registry.contains(a));
+		assertTrue(registry.contains(b));
+		registry.clear();
+		assertTrue(registry.isEmpty());
+		assertFalse(registry.iterator().hasNext());
+	}
+
+	/**
+	 * Registers and removes a large synthetic page the same way
+	 * {@code VpeDomBuilder.registerNodes} and
+	 * {@code VpeVisualDomBuilder.removeNode} do. With the former
+	 * {@code ArrayList} storage this was quadratic and took minutes.
+	 */
+	@SuppressWarnings("nls")
+	public void testLargePage() {
+		final int count = 50000;
+		List<Node> nodes = new ArrayList<Node>(count);
+		for (int i = 0; i < count; i++) {
+			nodes.add(document.createElement("div"));
+		}
+		VpeSourceNodeRegistry registry = new VpeSourceNodeRegistry();
+		for (Node node : nodes) {
+			registry.add(node);
+			registry.add(node);
+		}
+		assertEquals(count, registry.size());
+		for (int i = 0; i < count; i += 2) {
+			assertTrue(registry.remove(nodes.get(i)));
+		}
+		assertEquals(count / 2, registry.size());
+		int i = 1;
+		for (Node node : registry) {
+			assertSame(nodes.get(i), node);
+			i += 2;
+		}
+	}
+}
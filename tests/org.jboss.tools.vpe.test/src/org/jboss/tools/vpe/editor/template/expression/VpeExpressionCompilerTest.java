@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.template.expression;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IExtension;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Platform;
+import org.jboss.tools.common.xml.XMLUtilities;
+import org.jboss.tools.vpe.editor.util.XmlUtil;
+import org.osgi.framework.Bundle;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+/**
+ * Differential test of {@link VpeExpressionCompiler}: every expression of
+ * the registered templates is built with and without compilation and both
+ * are evaluated over the elements of a test page. The results (or the
+ * failures) must be the same.
+ */
+public class VpeExpressionCompilerTest extends TestCase {
+
+	private static final String TEMPLATES_EXTENSION_POINT = "org.jboss.tools.vpe.templates"; //$NON-NLS-1$
+	private static final String ATTR_TEST = "test"; //$NON-NLS-1$
+
+	@SuppressWarnings("nls")
+	private static final String PAGE =
+			"<html xmlns:h=\"http://java.sun.com/jsf/html\">"
+			+ "<body class=\"page\" style=\"color:red\" dir=\"rtl\">"
+			+ "<h:form id=\"form\" styleClass=\"form\" rendered=\"true\">"
+			+ "<h:inputText id=\"name\" value=\"#{user.name}\" size=\"20\" disabled=\"false\"/>"
+			+ "<h:outputText value=\"text\" escape=\"true\" title=\"\"/>"
+			+ "<h:panelGrid columns=\"2\" border=\"1\" width=\"100%\" frame=\"box\" rules=\"all\">"
+			+ "<h:column>cell</h:column>"
+			+ "</h:panelGrid>"
+			+ "</h:form>"
+			+ "<img src=\"img.png\" alt=\"image\" width=\"10\" height=\"10\"/>"
+			+ "<a href=\"page.html\" target=\"_blank\">link</a>"
+			+ "<table><tr><td colspan=\"2\">td</td></tr></table>"
+			+ "</body>"
+			+ "</html>";
+
+	@SuppressWarnings("nls")
+	public void testConstantFolding() throws Exception {
+		assertConstant("'a' + 'b'", "ab");
+		assertConstant("'a' = 'a'", "true");
+		assertConstant("not('a' = 'b') and ('x' = 'x' | 'y' = 'z')", "true");
+		assertConstant("iif('a' = 'b', 'yes', 'no')", "no");
+		assertTrue(new VpeExpressionBuilder().buildPlainExpression("iif('a' = 'b', 'yes', @no)", true)
+				.getExpression() instanceof VpeAttributeOperand);
+		// type errors are not folded but reported on evaluation as before
+		VpeExpression wrong = new VpeExpressionBuilder().buildPlainExpression("not('a')", true).getExpression();
+		assertFalse(wrong instanceof VpeConstantOperand);
+		try {
+			wrong.exec(null, null);
+			fail();
+		} catch (VpeExpressionException e) {
+			// expected
+		}
+		VpeExpression completed = VpeExpressionBuilder.buildCompletedExpression("a{'b'}c{'d' = 'd'}", true)
+				.getExpression();
+		assertTrue(completed instanceof VpeConstantOperand);
+		assertEquals("abctrue", completed.exec(null, null).stringValue());
+	}
+
+	private static void assertConstant(String text, String value) throws Exception {
+		VpeExpression expression = new VpeExpressionBuilder().buildPlainExpression(text, true)
+				.getExpression();
+		assertTrue(text, expression instanceof VpeConstantOperand);
+		assertEquals(text, value, expression.exec(null, null).stringValue());
+	}
+
+	public void testTemplateExpressions() throws Exception {
+		List<Element> nodes = new ArrayList<Element>();
+		collectElements(XmlUtil.getDocument(new InputSource(new StringReader(PAGE))).getDocumentElement(), nodes);
+		int checked = 0;
+		for (Element templates : getTemplateFiles()) {
+			List<Attr> attributes = new ArrayList<Attr>();
+			collectExpressionAttributes(templates, attributes);
+			for (Attr attribute : attributes) {
+				boolean plain = ATTR_TEST.equals(attribute.getName());
+				VpeExpression interpreted = build(attribute.getValue(), plain, false);
+				if (interpreted == null) {
+					continue;
+				}
+				VpeExpression compiled = build(attribute.getValue(), plain, true);
+				for (Element node : nodes) {
+					assertEquals(attribute.getValue(), evaluate(interpreted, node), evaluate(compiled, node));
+				}
+				checked++;
+			}
+		}
+		assertTrue(checked > 0);
+	}
+
+	private static VpeExpression build(String text, boolean plain, boolean compile) {
+		VpeExpressionBuilder builder = new VpeExpressionBuilder(compile);
+		try {
+			return plain ? builder.buildPlainExpression(text, true).getExpression()
+					: builder.buildCompleted(text, true).getExpression();
+		} catch (VpeExpressionBuilderException e) {
+			// syntax is checked by TemplateSchemeValidateTest
+			return null;
+		}
+	}
+
+	/**
+	 * Returns printable result of the evaluation: the value with its type
+	 * or the class of the exception. The page context is not available
+	 * here, so functions depending on it fail in both modes.
+	 */
+	private static String evaluate(VpeExpression expression, Element node) {
+		try {
+			VpeValue value = expression.exec(null, node);
+			return value.type() + ":" + value.stringValue(); //$NON-NLS-1$
+		} catch (Exception e) {
+			return e.getClass().getName();
+		}
+	}
+
+	private static void collectElements(Element element, List<Element> elements) {
+		elements.add(element);
+		NodeList children = element.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			if (children.item(i) instanceof Element) {
+				collectElements((Element) children.item(i), elements);
+			}
+		}
+	}
+
+	private static void collectExpressionAttributes(Element element, List<Attr> attributes) {
+		NamedNodeMap attrs = element.getAttributes();
+		for (int i = 0; i < attrs.getLength(); i++) {
+			Attr attr = (Attr) attrs.item(i);
+			if (ATTR_TEST.equals(attr.getName()) || attr.getValue().indexOf('{') >= 0) {
+				attributes.add(attr);
+			}
+		}
+		NodeList children = element.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			if (children.item(i) instanceof Element) {
+				collectExpressionAttributes((Element) children.item(i), attributes);
+			}
+		}
+	}
+
+	private static List<Element> getTemplateFiles() throws IOException {
+		List<Element> roots = new ArrayList<Element>();
+		IExtension[] extensions = Platform.getExtensionRegistry()
+				.getExtensionPoint(TEMPLATES_EXTENSION_POINT).getExtensions();
+		for (IExtension extension : extensions) {
+			for (IConfigurationElement element : extension.getConfigurationElements()) {
+				String path = element.getAttribute("path"); //$NON-NLS-1$
+				if (path == null) {
+					continue;
+				}
+				Bundle bundle = Platform.getBundle(element.getNamespaceIdentifier());
+				URL url = bundle.getEntry("/"); //$NON-NLS-1$
+				File file = new Path(FileLocator.toFileURL(url).getFile()).append(path).toFile();
+				if (file.isFile()) {
+					Element root = XMLUtilities.getElement(file, null);
+					if (root != null) {
+						roots.add(root);
+					}
+				}
+			}
+		}
+		return roots;
+	}
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("nls")
+public class ElExpressionMatcherTest extends TestCase {
+
+	public void testReplace() {
+		Map<String, String> expressions = new LinkedHashMap<String, String>();
+		expressions.put("bean.name", "Name");
+		expressions.put("bean", "Bean");
+		expressions.put("msg['title']", "Title");
+		ElExpressionMatcher matcher = new ElExpressionMatcher(expressions);
+
+		assertEquals("Name and Bean", matcher.replace("#{bean.name} and ${bean}"));
+		assertEquals("<Title>", matcher.replace("<#{msg['title']}>"));
+		assertEquals("#{bean.other} {bean} $bean", matcher.replace("#{bean.other} {bean} $bean"));
+		assertEquals("NameName", matcher.replace("${bean.name}#{bean.name}"));
+		assertEquals("$Bean", matcher.replace("$${bean}"));
+	}
+
+	public void testNothingToReplace() {
+		Map<String, String> expressions = new LinkedHashMap<String, String>();
+		expressions.put("bean", "Bean");
+		ElExpressionMatcher matcher = new ElExpressionMatcher(expressions);
+
+		String value = "#{other}";
+		assertSame(value, matcher.replace(value));
+		assertFalse(matcher.matches(value));
+		assertNull(matcher.replace(null));
+		assertFalse(matcher.matches(null));
+		assertTrue(new ElExpressionMatcher(new LinkedHashMap<String, String>()).isEmpty());
+	}
+
+	public void testMatches() {
+		Map<String, String> expressions = new LinkedHashMap<String, String>();
+		expressions.put("bean.name", "Name");
+		ElExpressionMatcher matcher = new ElExpressionMatcher(expressions);
+
+		assertTrue(matcher.matches("value: #{bean.name}"));
+		assertTrue(matcher.matches("${bean.name}"));
+		assertFalse(matcher.matches("#{bean.name"));
+		assertFalse(matcher.matches("#{bean}"));
+		assertFalse(matcher.matches("bean.name}"));
+	}
+
+	public void testPrecedence() {
+		Map<String, String> expressions = new LinkedHashMap<String, String>();
+		expressions.put("a}#{b", "first");
+		expressions.put("a", "second");
+		ElExpressionMatcher matcher = new ElExpressionMatcher(expressions);
+
+		assertEquals("first", matcher.replace("#{a}#{b}"));
+	}
+
+	/**
+	 * Compares the results with the substitution of one expression
+	 * at a time for 10, 100 and 1000 expressions.
+	 */
+	public void testSameAsSequentialReplace() {
+		Random random = new Random(1);
+		for (int count = 10; count <= 1000; count *= 10) {
+			Map<String, String> expressions = new LinkedHashMap<String, String>();
+			for (int i = 0; i < count; i++) {
+				expressions.put(randomName(random), "value" + i);
+			}
+			ElExpressionMatcher matcher = new ElExpressionMatcher(expressions);
+			String[] names = expressions.keySet().toArray(new String[expressions.size()]);
+			for (int i = 0; i < 200; i++) {
+				StringBuilder value = new StringBuilder();
+				for (int j = random.nextInt(5); j >= 0; j--) {
+					value.append(randomName(random).substring(1));
+					value.append(random.nextBoolean() ? "${" : "#{");
+					value.append(random.nextInt(4) == 0 ? randomName(random)
+							: names[random.nextInt(names.length)]);
+					value.append("} ");
+				}
+				String string = value.toString();
+				String expected = sequentialReplace(string, expressions);
+				assertEquals(string, expected, matcher.replace(string));
+				assertEquals(string, !expected.equals(string), matcher.matches(string));
+			}
+		}
+	}
+
+	private static String randomName(Random random) {
+		StringBuilder name = new StringBuilder();
+		for (int i = random.nextInt(8); i >= 0; i--) {
+			name.append((char) ('a' + random.nextInt(3)));
+			if (random.nextInt(4) == 0) {
+				name.append('.');
+			}
+		}
+		return name.toString();
+	}
+
+	private static String sequentialReplace(String string, Map<String, String> expressions) {
+		String result = string;
+		for (Map.Entry<String, String> entry : expressions.entrySet()) {
+			result = result.replace(ElServiceUtil.envelopeInDollarEl(entry.getKey()), entry.getValue());
+			result = result.replace(ElServiceUtil.envelopeInSharpEl(entry.getKey()), entry.getValue());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.util;
+
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("nls")
+public class JstlCoreUrlUtilTest extends TestCase {
+
+	private static final String[] VALUES = {
+		"<c:url value=\"/pages/a.jsp\"/>",
+		"start <c:url value='/b.css'></c:url> end",
+		"<c:url  value = \"/c.js\" />",
+		"<c:url/>",
+		"c:url value=\"/d\"/>",
+		"<core:url value=\"/e\"/>",
+		"<C:url value=\"/f\"/>",
+		":url",
+		"<:url value=\"/g\"/>",
+		"text <c:urls value=\"/h\"/>",
+		"",
+	};
+
+	public void testReplace() {
+		Pattern pattern = JstlCoreUrlUtil.createJstlCoreUrlPattern("c");
+		assertEquals("/pages/a.jsp", pattern.matcher(VALUES[0]).replaceAll("$2"));
+		assertEquals("start /b.css end", pattern.matcher(VALUES[1]).replaceAll("$2"));
+		assertEquals("/c.js", pattern.matcher(VALUES[2]).replaceAll("$2"));
+	}
+
+	/**
+	 * The values skipped by the pre-check must not match the pattern.
+	 */
+	public void testPreCheck() {
+		for (String prefix : new String[] {"c", "core", "C"}) {
+			Pattern pattern = JstlCoreUrlUtil.createJstlCoreUrlPattern(prefix);
+			for (String value : VALUES) {
+				if (pattern.matcher(value).find()) {
+					assertTrue(prefix + ": " + value, JstlCoreUrlUtil.containsJstlCoreUrl(value, prefix));
+				}
+			}
+		}
+		assertTrue(JstlCoreUrlUtil.containsJstlCoreUrl(VALUES[0], "c"));
+		assertTrue(JstlCoreUrlUtil.containsJstlCoreUrl(VALUES[5], "core"));
+		assertFalse(JstlCoreUrlUtil.containsJstlCoreUrl(VALUES[4], "c"));
+		assertFalse(JstlCoreUrlUtil.containsJstlCoreUrl(VALUES[5], "c"));
+		assertFalse(JstlCoreUrlUtil.containsJstlCoreUrl(VALUES[6], "c"));
+		assertFalse(JstlCoreUrlUtil.containsJstlCoreUrl(VALUES[7], "c"));
+		assertFalse(JstlCoreUrlUtil.containsJstlCoreUrl(VALUES[10], "c"));
+	}
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.util;
+
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jboss.tools.jst.web.tld.TaglibData;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+public class NamespaceScopeIndexTest extends TestCase {
+
+	@SuppressWarnings("nls")
+	private static final String PAGE =
+			"<html xmlns=\"http://www.w3.org/1999/xhtml\""
+			+ " xmlns:h=\"http://java.sun.com/jsf/html\""
+			+ " xmlns:ui=\"http://java.sun.com/jsf/facelets\">"
+			+ "<body>"
+			+ "<div xmlns:h=\"http://example.org/other\" xmlns:rich=\"http://richfaces.org/rich\">"
+			+ "<h:form><rich:panel>text</rich:panel></h:form>"
+			+ "</div>"
+			+ "<h:outputText/>"
+			+ "</body>"
+			+ "</html>";
+
+	private Document document;
+	private NamespaceScopeIndex index;
+
+	@Override
+	protected void setUp() throws Exception {
+		document = XmlUtil.getDocument(new InputSource(new StringReader(PAGE)));
+		index = new NamespaceScopeIndex();
+	}
+
+	@SuppressWarnings("nls")
+	public void testNearestDeclarationWins() {
+		Element form = (Element) document.getElementsByTagName("h:form").item(0);
+		List<TaglibData> taglibs = index.getTaglibs(form);
+		assertEquals(4, taglibs.size());
+		assertEquals("h", taglibs.get(0).getPrefix());
+		assertEquals("http://example.org/other", taglibs.get(0).getUri());
+		assertEquals("rich", taglibs.get(1).getPrefix());
+		assertEquals("", taglibs.get(2).getPrefix());
+		assertEquals("ui", taglibs.get(3).getPrefix());
+		for (int i = 0; i < taglibs.size(); i++) {
+			assertEquals(i, taglibs.get(i).getId());
+		}
+
+		assertEquals("http://example.org/other",
+				index.getTaglibForPrefix(form, "H").getUri());
+		Element outputText = (Element) document.getElementsByTagName("h:outputText").item(0);
+		assertEquals("http://java.sun.com/jsf/html",
+				index.getTaglibForPrefix(outputText, "h").getUri());
+		assertNull(index.getTaglibForPrefix(outputText, "rich"));
+		assertNull(index.getTaglibForPrefix(outputText, null));
+	}
+
+	@SuppressWarnings("nls")
+	public void testTextNodeSeesParentScope() {
+		Element panel = (Element) document.getElementsByTagName("rich:panel").item(0);
+		assertSame(index.getTaglibs(panel), index.getTaglibs(panel.getFirstChild()));
+		assertTrue(index.getTaglibs(document).isEmpty());
+		assertTrue(index.getTaglibs(null).isEmpty());
+	}
+
+	@SuppressWarnings("nls")
+	public void testInvalidation() {
+		Element div = (Element) document.getElementsByTagName("div").item(0);
+		Element panel = (Element) document.getElementsByTagName("rich:panel").item(0);
+		assertNotNull(index.getTaglibForPrefix(panel, "rich"));
+
+		div.removeAttribute("xmlns:rich");
+		// the scope is cached until the declaration change is reported
+		assertNotNull(index.getTaglibForPrefix(panel, "rich"));
+		index.invalidate(div);
+		assertNull(index.getTaglibForPrefix(panel, "rich"));
+
+		// moved node recomputes its scope from the new parent
+		Element body = (Element) document.getElementsByTagName("body").item(0);
+		Element form = (Element) document.getElementsByTagName("h:form").item(0);
+		assertEquals("http://example.org/other", index.getTaglibForPrefix(form, "h").getUri());
+		body.appendChild(form);
+		assertEquals("http://java.sun.com/jsf/html", index.getTaglibForPrefix(form, "h").getUri());
+	}
+}
@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.editor.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the offset translations of {@link TextUtil} and
+ * {@link TextOffsetTranslator} with the former substring based
+ * implementation on random texts.
+ */
+@SuppressWarnings("nls")
+public class TextUtilTest extends TestCase {
+	private static final long SEED = 20160101L;
+	private static final int TEXTS_COUNT = 3000;
+	private static final int MAX_TOKENS_COUNT = 30;
+	private static final int LEGACY_REPLACE_RATIO = 20;
+	private static final String[] TOKENS = {
+		"&", ";", "#", "x", "a", "amp", "lt", "0", "7", "f", "F", "-", "+", " ",
+		"\r", "\n", "\r\n", "&#", "&#x", "&#;", "&#x;", "&#-0;", "&#+65;", "&#2147483648;",
+		"&#0000000065;", "&#x7fffffff;", "&amp", "&nbsp;", "&#65;", "&#xA0;", "&unknown;",
+	};
+
+	private Set<String> entities;
+	private List<String> entityList;
+	private Random random;
+
+	@Override
+	protected void setUp() {
+		entities = new HashSet<String>();
+		for (char c = 0; c < Character.MAX_VALUE; c++) {
+			String value = TextUtil.getValue(c);
+			if (value != null) {
+				entities.add(value);
+			}
+		}
+		entityList = new ArrayList<String>(entities);
+		random = new Random(SEED);
+	}
+
+	public void testEntityTrie() {
+		assertFalse(entities.isEmpty());
+		EntityTrie trie = new EntityTrie(entities);
+		for (String entity : entities) {
+			assertTrue(entity, trie.contains(entity));
+			assertTrue(entity, trie.contains("a" + entity + "b", 1, entity.length() + 1));
+			assertFalse(entity, trie.contains(entity.substring(0, entity.length() - 1)));
+			assertFalse(entity, trie.contains(entity + ";"));
+		}
+		assertFalse(trie.contains(""));
+		assertFalse(trie.contains("&unknown;"));
+	}
+
+	public void testIsEsc() {
+		for (int i = 0; i < TEXTS_COUNT; i++) {
+			String text = "&" + randomText() + ";";
+			// the escape sequences are checked from '&' to the first ';'
+			text = text.substring(0, text.indexOf(';', 1) + 1);
+			assertEquals(escape(text), legacyIsEsc(text), TextUtil.isEsc(text));
+		}
+	}
+
+	public void testCheckEsc() {
+		for (int i = 0; i < TEXTS_COUNT; i++) {
+			String text = randomText();
+			for (int position = 1; position < text.length(); position++) {
+				String message = escape(text) + " at " + position;
+				assertEquals(message, legacyCheckEscToRight(text, position),
+						TextUtil.checkEscToRight(text, position));
+				assertEquals(message, legacyCheckEscToLeft(text, position),
+						TextUtil.checkEscToLeft(text, position));
+			}
+		}
+	}
+
+	public void testVisualPosition() {
+		for (int i = 0; i < TEXTS_COUNT; i++) {
+			String text = randomText();
+			TextOffsetTranslator translator = new TextOffsetTranslator(text);
+			for (int position = -1; position <= text.length() + 1; position++) {
+				String message = escape(text) + " at " + position;
+				int expected = legacyVisualPosition(text, position);
+				assertEquals(message, expected, TextUtil.visualPosition(text, position));
+				assertEquals(message, expected, translator.visualPosition(position));
+				if (position >= 0) {
+					assertEquals(message, legacyVisualInnerPosition(text, position),
+							TextUtil.visualInnerPosition(text, position));
+				}
+				// the former _visualPosition replaces each entity by a regex, check less texts
+				if (i % LEGACY_REPLACE_RATIO == 0 && position >= 0 && position <= text.length()) {
+					assertEquals(message, legacy_visualPosition(text, position),
+							TextUtil._visualPosition(text, position));
+				}
+			}
+		}
+	}
+
+	public void testSourcePosition() {
+		for (int i = 0; i < TEXTS_COUNT; i++) {
+			String text = randomText();
+			String visualText = random.nextBoolean() ? TextUtil.visualText(text) : randomText();
+			for (int position = 0; position <= visualText.length(); position++) {
+				String message = escape(text) + " / " + escape(visualText) + " at " + position;
+				assertEquals(message, legacySourcePosition(text, visualText, position),
+						TextUtil.sourcePosition(text, visualText, position));
+				assertEquals(message, legacySourceInnerPosition(visualText, position),
+						TextUtil.sourceInnerPosition(visualText, position));
+			}
+		}
+	}
+
+	public void testKnownPositions() {
+		assertEquals(0, TextUtil.visualPosition(null, 5));
+		assertEquals(0, TextUtil.visualPosition("a&amp;b", -1));
+		assertEquals(2, TextUtil.visualPosition("a&amp;b", 6));
+		assertEquals(1, TextUtil.visualPosition("a&amp;b", 3));
+		assertEquals(6, TextUtil.sourcePosition("a&amp;b", "a&b", 2));
+	}
+
+	private String randomText() {
+		StringBuilder text = new StringBuilder();
+		int tokensCount = random.nextInt(MAX_TOKENS_COUNT);
+		for (int i = 0; i < tokensCount; i++) {
+			if (random.nextInt(4) == 0) {
+				text.append(entityList.get(random.nextInt(entityList.size())));
+			} else {
+				text.append(TOKENS[random.nextInt(TOKENS.length)]);
+			}
+		}
+		return text.toString();
+	}
+
+	private static String escape(String text) {
+		return "\"" + text.replace("\r", "\\r").replace("\n", "\\n") + "\"";
+	}
+
+	/*
+	 * The former implementation, kept to compare with.
+	 */
+
+	private boolean legacyIsEsc(String text) {
+		if (text.charAt(0) == '&' && text.charAt(text.length() - 1) == ';') {
+			int end = text.length() - 1;
+			if ((text.length() > 2) && text.charAt(1) == '#') {
+				int isoCode = -1;
+				int radix = text.charAt(2) == 'x' ? 16 : 10;
+				int offcet = text.charAt(2) == 'x' ? 3 : 2;
+				try {
+					isoCode = Integer.parseInt(text.substring(offcet, end), radix);
+				} catch (NumberFormatException exception) {
+					// just ignore
+				}
+				if (isoCode >= 0) {
+					return true;
+				}
+			} else if (entities.contains(text.substring(0, end + 1))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int legacyCheckEscToRight(String sourceText, int sourcePosition) {
+		if ((sourceText.length() > sourcePosition) && (sourceText.charAt(sourcePosition) == '&')) {
+			int end = sourceText.indexOf(';', sourcePosition);
+			if ((end != -1) && (legacyIsEsc(sourceText.substring(sourcePosition, end + 1))))
+				return end - sourcePosition + 1;
+		}
+		return 0;
+	}
+
+	private int legacyCheckEscToLeft(String sourceText, int sourcePosition) {
+		if ((sourceText.length() > sourcePosition) && (sourceText.charAt(sourcePosition - 1) == ';')) {
+			String cuttedString = sourceText.substring(0, sourcePosition);
+			int start = cuttedString.lastIndexOf('&');
+			if ((start != -1) && (legacyIsEsc(sourceText.substring(start, sourcePosition)))) {
+				return start - sourcePosition;
+			}
+		}
+		return 0;
+	}
+
+	private int legacySourcePosition(String sourceText, String visualText, int visualPosition) {
+		int sourceIndex = 0;
+		int visualIndex = 0;
+		while (sourceIndex < sourceText.length() && visualIndex < visualPosition) {
+			char sourceChar = sourceText.charAt(sourceIndex);
+			if (sourceChar == '\r') {
+				if (visualText.charAt(visualIndex) == '\r') {
+					visualIndex++;
+				}
+				sourceIndex++;
+			} else if (sourceChar == '&') {
+				int end = sourceText.indexOf(';', sourceIndex + 1);
+				if ((end != -1) && legacyIsEsc(sourceText.substring(sourceIndex, end + 1))) {
+					sourceIndex += end - sourceIndex;
+				}
+				sourceIndex++;
+				visualIndex++;
+			} else {
+				sourceIndex++;
+				visualIndex++;
+			}
+		}
+		return sourceIndex;
+	}
+
+	private static int legacySourceInnerPosition(String visualText, long visualPosition) {
+		visualText = visualText.substring(0, (int) Math.min(visualPosition, visualText.length()));
+		return visualText.replaceAll("\n", "\r\n").length();
+	}
+
+	private int legacyVisualPosition(String sourceText, int sourcePosition) {
+		int calcPosition = sourcePosition;
+		if ((sourceText == null) || (sourcePosition < 0)) {
+			return 0;
+		}
+		int start = sourceText.indexOf('&');
+		while (start != -1 && start < sourcePosition && start + 1 < sourceText.length()) {
+			int stop = sourceText.indexOf(';', start + 1);
+			if (stop == -1) {
+				break;
+			} else if (stop < sourcePosition) {
+				if (entities.contains(sourceText.substring(start, stop + 1))) {
+					calcPosition -= stop - start;
+				}
+				if (stop + 1 < sourceText.length()) {
+					start = sourceText.indexOf('&', stop + 1);
+				} else {
+					break;
+				}
+			} else {
+				calcPosition -= sourcePosition - start;
+				break;
+			}
+		}
+		int endPos = sourcePosition;
+		int length = sourceText.length();
+		String s1 = sourceText;
+		if (length > 0) {
+			if (endPos > length) {
+				endPos = length;
+			}
+			s1 = sourceText.substring(0, endPos);
+		}
+		String s2 = s1.replaceAll("\r\n", "\n");
+		return calcPosition - (s1.length() - s2.length());
+	}
+
+	private static int legacyVisualInnerPosition(String sourceText, int sourcePosition) {
+		sourceText = sourceText.substring(0, Math.min(sourcePosition, sourceText.length()));
+		return sourceText.replaceAll("\r\n", "\n").length();
+	}
+
+	private int legacy_visualPosition(String sourceText, int sourcePosition) {
+		int delta = 7;
+		if (sourcePosition + delta > sourceText.length())
+			delta = sourceText.length() - sourcePosition;
+		int position = Math.min(sourcePosition + delta, sourceText.length());
+
+		String s1 = sourceText.substring(0, position);
+		int start1 = s1.length() - delta;
+		if (position < sourceText.length()) {
+			while (position > sourcePosition) {
+				int ampersandPosition = s1.lastIndexOf("&");
+				int semicolonPosition = s1.lastIndexOf(";");
+				if (ampersandPosition > 0 && semicolonPosition > 0
+						&& ampersandPosition < semicolonPosition
+						&& (semicolonPosition + 1) > sourcePosition) {
+					String value = s1.substring(ampersandPosition, semicolonPosition + 1);
+					if (entities.contains(value))
+						position = ampersandPosition;
+					else
+						position--;
+				} else if (ampersandPosition > 0 && semicolonPosition > 0
+						&& semicolonPosition > sourcePosition) {
+					position = semicolonPosition + 1;
+				} else {
+					position--;
+				}
+				s1 = s1.substring(0, position);
+			}
+		} else {
+			position -= delta;
+			s1 = s1.substring(0, position);
+		}
+		int start2 = s1.length();
+		int startLength = s1.length();
+
+		for (String entity : entities) {
+			s1 = s1.replaceAll(entity, " ");
+		}
+		s1 = s1.replaceAll("\r\n", "\n");
+		return sourcePosition - (startLength - s1.length()) - (start1 - start2);
+	}
+}
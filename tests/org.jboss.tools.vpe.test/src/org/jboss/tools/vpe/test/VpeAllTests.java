@@ -15,7 +15,15 @@ import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
 import org.jboss.tools.vpe.base.test.VpeTestSetup;
+import org.jboss.tools.vpe.editor.VpeChangeEventCoalescerTest;
+import org.jboss.tools.vpe.editor.VpeVisualDomReconcilerTest;
+import org.jboss.tools.vpe.editor.mapping.VpeSourceNodeRegistryTest;
 import org.jboss.tools.vpe.editor.template.VpeTemplateManagerTest;
+import org.jboss.tools.vpe.editor.template.expression.VpeExpressionCompilerTest;
+import org.jboss.tools.vpe.editor.util.ElExpressionMatcherTest;
+import org.jboss.tools.vpe.editor.util.JstlCoreUrlUtilTest;
+import org.jboss.tools.vpe.editor.util.NamespaceScopeIndexTest;
+import org.jboss.tools.vpe.editor.util.TextUtilTest;
 import org.jboss.tools.vpe.editor.util.VpeStyleUtilTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -33,7 +41,15 @@ import org.junit.runners.Suite;
 		TemplateLoadingTest.class,
 		TemplateSchemeValidateTest.class,
 		TemplatesExpressionParsingTest.class,
-		VpeTemplateManagerTest.class
+		VpeTemplateManagerTest.class,
+		VpeSourceNodeRegistryTest.class,
+		NamespaceScopeIndexTest.class,
+		VpeExpressionCompilerTest.class,
+		ElExpressionMatcherTest.class,
+		JstlCoreUrlUtilTest.class,
+		TextUtilTest.class,
+		VpeChangeEventCoalescerTest.class,
+		VpeVisualDomReconcilerTest.class
 })
 public class VpeAllTests extends TestCase{
 }
@@ -18,8 +18,12 @@ import javax.annotation.security.RunAs;
 import org.jboss.tools.vpe.base.test.VpeTestSetup;
 import org.jboss.tools.vpe.ui.test.dialog.VpeEditAnyDialogTest;
 import org.jboss.tools.vpe.ui.test.dialog.VpeResourcesDialogTest;
+import org.jboss.tools.vpe.ui.test.editor.ChangeEventsBatchTest;
 import org.jboss.tools.vpe.ui.test.editor.CustomSashFormTest;
+import org.jboss.tools.vpe.ui.test.editor.FormatControllerManagerTest;
+import org.jboss.tools.vpe.ui.test.editor.HoverTooltipTest;
 import org.jboss.tools.vpe.ui.test.editor.MultipleSelectionTest;
+import org.jboss.tools.vpe.ui.test.editor.StyleSheetCacheTest;
 import org.jboss.tools.vpe.ui.test.editor.ToggleClassCastTest_Jbide9790;
 import org.jboss.tools.vpe.ui.test.handlers.VpeCommandsTests;
 import org.jboss.tools.vpe.ui.test.preferences.VpeEditorPreferencesPageTest;
@@ -38,7 +42,11 @@ import org.junit.runners.Suite;
 	CustomSashFormTest.class,
 	VpeEditAnyDialogTest.class,
 	MultipleSelectionTest.class,
-	ToggleClassCastTest_Jbide9790.class
+	ToggleClassCastTest_Jbide9790.class,
+	HoverTooltipTest.class,
+	StyleSheetCacheTest.class,
+	FormatControllerManagerTest.class,
+	ChangeEventsBatchTest.class
 })
 public class VpeUiTests {
 	public static final String IMPORT_PROJECT_NAME = "TestProject"; //$NON-NLS-1$
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.ui.test.editor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.ui.part.FileEditorInput;
+import org.jboss.tools.jst.web.ui.internal.editor.jspeditor.JSPMultiPageEditor;
+import org.jboss.tools.vpe.base.test.TestUtil;
+import org.jboss.tools.vpe.base.test.VpeTest;
+import org.jboss.tools.vpe.editor.VpeController;
+import org.jboss.tools.vpe.ui.test.VpeUiTests;
+import org.junit.Test;
+import org.mozilla.interfaces.nsIDOMNode;
+import org.mozilla.interfaces.nsIDOMNodeList;
+
+/**
+ * Checks that the visual page shows the final source after a batch of changes
+ * whose events are partly skipped by {@link org.jboss.tools.vpe.editor.VpeChangeEventCoalescer}.
+ */
+@SuppressWarnings("nls")
+public class ChangeEventsBatchTest extends VpeTest {
+	private static final String TEST_PAGE = "changeEvents/batch.html";
+
+	public ChangeEventsBatchTest() {
+	}
+
+	@Test
+	public void testCoveredEvents() throws Throwable {
+		assumeTrue("Not supported environment", !VpeTest.skipTests);
+		IFile file = (IFile) TestUtil.getComponentPath(TEST_PAGE, VpeUiTests.IMPORT_PROJECT_NAME);
+		assertNotNull("Specified file does not exist: file name = " + TEST_PAGE
+				+ "; project name = " + VpeUiTests.IMPORT_PROJECT_NAME, file);
+		JSPMultiPageEditor part = openEditor(new FileEditorInput(file));
+		VpeController controller = TestUtil.getVpeController(part);
+		IDocument document = part.getSourceEditor().getTextViewer().getDocument();
+		TestUtil.waitForIdle();
+
+		// the repeated changes of the same text and attribute, the first ones are skipped
+		replace(document, "first text", "second text");
+		replace(document, "second text", "third text");
+		replace(document, "title=\"first\"", "title=\"second\"");
+		replace(document, "title=\"second\"", "title=\"third\"");
+		TestUtil.waitForIdle();
+		assertEquals("third text", getVisualText(findElementById(controller, "inner")));
+		assertEquals("third", findElementById(controller, "sibling").getAttribute("title"));
+
+		// the changes inside a subtree rebuilt by the structure change of its root
+		replace(document, "third text", "fourth text");
+		replace(document, "<p id=\"inner\"", "<b id=\"added\">added</b><p id=\"inner\"");
+		replace(document, "fourth text", "fifth text");
+		TestUtil.waitForIdle();
+		assertNotNull(findElementById(controller, "added"));
+		assertEquals("addedfifth text", getVisualText(findElementById(controller, "outer")));
+		assertEquals("fifth text", getVisualText(findElementById(controller, "inner")));
+
+		// a node added inside a subtree rebuilt before, the node is still updated later
+		replace(document, "</p></div>", "</p><i>rebuilt</i></div>");
+		replace(document, "fifth text", "fifth text<em id=\"nested\">nested</em>");
+		TestUtil.waitForIdle();
+		assertEquals("nested", getVisualText(findElementById(controller, "nested")));
+		replace(document, ">nested<", ">changed<");
+		TestUtil.waitForIdle();
+		assertEquals("changed", getVisualText(findElementById(controller, "nested")));
+	}
+
+	private static void replace(IDocument document, String oldText, String newText)
+			throws BadLocationException {
+		int offset = document.get().indexOf(oldText);
+		assertTrue(oldText, offset >= 0);
+		document.replace(offset, oldText.length(), newText);
+	}
+
+	private static String getVisualText(nsIDOMNode node) {
+		assertNotNull(node);
+		if (node.getNodeType() == nsIDOMNode.TEXT_NODE) {
+			return node.getNodeValue();
+		}
+		StringBuilder text = new StringBuilder();
+		nsIDOMNodeList children = node.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			text.append(getVisualText(children.item(i)));
+		}
+		return text.toString();
+	}
+}
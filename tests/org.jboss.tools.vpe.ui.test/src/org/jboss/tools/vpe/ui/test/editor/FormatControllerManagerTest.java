@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.ui.test.editor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.ui.part.FileEditorInput;
+import org.jboss.tools.jst.web.ui.internal.editor.jspeditor.JSPMultiPageEditor;
+import org.jboss.tools.vpe.base.test.TestUtil;
+import org.jboss.tools.vpe.base.test.VpeTest;
+import org.jboss.tools.vpe.editor.template.textformating.TextFormatingData;
+import org.jboss.tools.vpe.editor.toolbar.format.FormatControllerManager;
+import org.jboss.tools.vpe.editor.toolbar.format.IFormatController;
+import org.jboss.tools.vpe.ui.test.VpeUiTests;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+/**
+ * Checks when {@link FormatControllerManager} skips the updates
+ * of the format toolbar items after a selection change.
+ */
+@SuppressWarnings("nls")
+public class FormatControllerManagerTest extends VpeTest {
+	private static final String TEST_PAGE = "formatToolbar/format.html";
+
+	public FormatControllerManagerTest() {
+	}
+
+	@Test
+	public void testSelectionChanges() throws Throwable {
+		assumeTrue("Not supported environment", !VpeTest.skipTests);
+		IFile file = (IFile) TestUtil.getComponentPath(TEST_PAGE, VpeUiTests.IMPORT_PROJECT_NAME);
+		assertNotNull("Specified file does not exist: file name = " + TEST_PAGE
+				+ "; project name = " + VpeUiTests.IMPORT_PROJECT_NAME, file);
+		JSPMultiPageEditor part = openEditor(new FileEditorInput(file));
+		ITextViewer viewer = part.getSourceEditor().getTextViewer();
+		IDocument document = viewer.getDocument();
+
+		final TextFormatingData formatingData = new TextFormatingData(DocumentBuilderFactory.newInstance()
+				.newDocumentBuilder().newDocument().createElement("vpe:textFormating"));
+		FormatControllerManager manager = new FormatControllerManager() {
+			@Override
+			public TextFormatingData getFormatTemplateForTag(Node node) {
+				return node != null && "p".equalsIgnoreCase(node.getNodeName()) ? formatingData : null;
+			}
+		};
+		manager.setVpeController(TestUtil.getVpeController(part));
+		CountingFormatController controller = new CountingFormatController();
+		manager.addFormatController(controller);
+
+		int tagOffset = document.get().indexOf("<p") + 1;
+		int textOffset = document.get().indexOf("Some text") + 2;
+
+		// the caret in the start tag selects the element
+		select(viewer, manager, tagOffset);
+		assertEquals(1, controller.updatesCount);
+		select(viewer, manager, tagOffset + 1);
+		assertEquals("the same element is selected", 1, controller.updatesCount);
+
+		// the text of the element is another selected node
+		select(viewer, manager, textOffset);
+		assertEquals(2, controller.updatesCount);
+		select(viewer, manager, textOffset + 1);
+		assertEquals("the same text is selected", 2, controller.updatesCount);
+
+		select(viewer, manager, tagOffset);
+		assertEquals(3, controller.updatesCount);
+
+		// the start tag is changed
+		int colorOffset = document.get().indexOf("red");
+		document.replace(colorOffset, "red".length(), "blue");
+		select(viewer, manager, tagOffset);
+		assertEquals(4, controller.updatesCount);
+		select(viewer, manager, tagOffset);
+		assertEquals("the start tag is the same", 4, controller.updatesCount);
+	}
+
+	private static void select(ITextViewer viewer, FormatControllerManager manager, int offset) {
+		viewer.setSelectedRange(offset, 0);
+		manager.selectionChanged();
+	}
+
+	/**
+	 * Counts the updates of its toolbar item.
+	 */
+	private static class CountingFormatController implements IFormatController {
+		int updatesCount;
+
+		@Override
+		public void handleEvent(Event event) {
+		}
+
+		@Override
+		public String getType() {
+			return "BoldFormat";
+		}
+
+		@Override
+		public void run() {
+		}
+
+		@Override
+		public void setToolbarItemEnabled(boolean enabled) {
+			updatesCount++;
+		}
+
+		@Override
+		public void setToolbarItemSelection() {
+		}
+	}
+}
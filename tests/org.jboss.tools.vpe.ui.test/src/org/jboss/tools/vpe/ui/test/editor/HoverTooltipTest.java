@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.ui.test.editor;
+
+import static org.jboss.tools.vpe.xulrunner.util.XPCOM.queryInterface;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.ui.part.FileEditorInput;
+import org.jboss.tools.jst.web.ui.internal.editor.jspeditor.JSPMultiPageEditor;
+import org.jboss.tools.vpe.base.test.TestUtil;
+import org.jboss.tools.vpe.base.test.VpeTest;
+import org.jboss.tools.vpe.editor.VpeController;
+import org.jboss.tools.vpe.editor.VpeEditorPart;
+import org.jboss.tools.vpe.editor.util.HTML;
+import org.jboss.tools.vpe.ui.test.VpeUiTests;
+import org.junit.Test;
+import org.mozilla.interfaces.nsIDOMElement;
+import org.mozilla.interfaces.nsIDOMNode;
+import org.mozilla.interfaces.nsIDOMNodeList;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Checks that the tooltips of the source elements are computed on hover
+ * and are not written to the visual DOM as title attributes.
+ */
+public class HoverTooltipTest extends VpeTest {
+	private static final String TEST_PAGE = "tooltip/tooltips.html"; //$NON-NLS-1$
+	private static final String USER_TITLE = "User title"; //$NON-NLS-1$
+
+	public HoverTooltipTest() {
+	}
+
+	@Test
+	public void testNoGeneratedTitles() throws Throwable {
+		assumeTrue("Not supported environment", !VpeTest.skipTests); //$NON-NLS-1$
+		IFile file = (IFile) TestUtil.getComponentPath(TEST_PAGE,
+				VpeUiTests.IMPORT_PROJECT_NAME);
+		assertNotNull("Specified file does not exist: file name = " + TEST_PAGE //$NON-NLS-1$
+				+ "; project name = " + VpeUiTests.IMPORT_PROJECT_NAME, file); //$NON-NLS-1$
+		JSPMultiPageEditor part = openEditor(new FileEditorInput(file));
+		VpeController controller = TestUtil.getVpeController(part);
+
+		nsIDOMElement contentArea = ((VpeEditorPart) part.getVisualEditor())
+				.getVisualEditor().getContentArea();
+		List<String> titles = new ArrayList<String>();
+		collectTitles(contentArea, titles);
+		assertEquals("Only the title written by the user is expected", //$NON-NLS-1$
+				Collections.singletonList(USER_TITLE), titles);
+
+		Document sourceDocument = controller.getSourceBuilder().getSourceDocument();
+		Element bold = (Element) sourceDocument.getElementsByTagName(HTML.TAG_B).item(0);
+		String tooltip = controller.getVisualBuilder().getTooltip(bold);
+		assertNotNull(tooltip);
+		assertTrue(tooltip.startsWith(HTML.TAG_B));
+		Element html = (Element) sourceDocument.getElementsByTagName(HTML.TAG_HTML).item(0);
+		assertNull(controller.getVisualBuilder().getTooltip(html));
+	}
+
+	private static void collectTitles(nsIDOMNode node, List<String> titles) {
+		if (node.getNodeType() == nsIDOMNode.ELEMENT_NODE) {
+			nsIDOMElement element = queryInterface(node, nsIDOMElement.class);
+			if (element.hasAttribute(HTML.ATTR_TITLE)) {
+				titles.add(element.getAttribute(HTML.ATTR_TITLE));
+			}
+		}
+		nsIDOMNodeList children = node.getChildNodes();
+		long length = children.getLength();
+		for (long i = 0; i < length; i++) {
+			collectTitles(children.item(i), titles);
+		}
+	}
+}
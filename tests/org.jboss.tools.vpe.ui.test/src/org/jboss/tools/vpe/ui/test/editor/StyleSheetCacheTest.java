@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.ui.test.editor;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.core.resources.IFile;
+import org.jboss.tools.common.el.core.ELReferenceList;
+import org.jboss.tools.common.resref.core.ResourceReference;
+import org.jboss.tools.vpe.base.test.TestUtil;
+import org.jboss.tools.vpe.base.test.VpeTest;
+import org.jboss.tools.vpe.editor.util.VpeStyleSheetCache;
+import org.jboss.tools.vpe.ui.test.VpeUiTests;
+import org.junit.Test;
+
+/**
+ * Checks that the cached style sheets follow the changes
+ * of the EL substitutions in their {@code url()} values.
+ */
+public class StyleSheetCacheTest extends VpeTest {
+	private static final String TEST_STYLE_SHEET = "styleSheetCache/style.css"; //$NON-NLS-1$
+	private static final String EL_NAME = "images"; //$NON-NLS-1$
+
+	public StyleSheetCacheTest() {
+	}
+
+	@Test
+	public void testElReferenceChange() throws Throwable {
+		IFile file = (IFile) TestUtil.getComponentPath(TEST_STYLE_SHEET,
+				VpeUiTests.IMPORT_PROJECT_NAME);
+		assertNotNull("Specified file does not exist: file name = " + TEST_STYLE_SHEET //$NON-NLS-1$
+				+ "; project name = " + VpeUiTests.IMPORT_PROJECT_NAME, file); //$NON-NLS-1$
+		String href = file.getLocation().toFile().toURI().toURL().toString();
+		ResourceReference[] references = ELReferenceList.getInstance().getAllResources(file);
+		try {
+			setElValue(file, "firstImages"); //$NON-NLS-1$
+			String text = VpeStyleSheetCache.getInstance().get(href).getText();
+			assertTrue(text, text.contains("firstImages/bg.png")); //$NON-NLS-1$
+
+			// the style sheet file itself is not changed
+			setElValue(file, "secondImages"); //$NON-NLS-1$
+			text = VpeStyleSheetCache.getInstance().get(href).getText();
+			assertTrue(text, text.contains("secondImages/bg.png")); //$NON-NLS-1$
+			assertFalse(text, text.contains("firstImages")); //$NON-NLS-1$
+		} finally {
+			ELReferenceList.getInstance().setAllResources(file, references);
+		}
+	}
+
+	private static void setElValue(IFile file, String value) {
+		ResourceReference reference = new ResourceReference(EL_NAME, ResourceReference.FILE_SCOPE);
+		reference.setProperties(value);
+		ELReferenceList.getInstance().setAllResources(file, new ResourceReference[] {reference});
+	}
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Red Hat, Inc.
+ * Distributed under license by Red Hat, Inc. All rights reserved.
+ * This program is made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributor:
+ *     Red Hat, Inc. - initial API and implementation
+ ******************************************************************************/
+package org.jboss.tools.vpe.xulrunner.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.swt.widgets.Display;
+import org.jboss.tools.vpe.xulrunner.editor.SelectionRedrawScheduler;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that {@link SelectionRedrawScheduler} coalesces the redraw requests.
+ */
+public class SelectionRedrawSchedulerTest {
+	private static final int REQUESTS_COUNT = 100;
+	private static final long TIMEOUT = 5000;
+
+	private Display display;
+	private int redrawCount;
+	private SelectionRedrawScheduler scheduler;
+
+	@Before
+	public void setUp() {
+		display = Display.getDefault();
+		redrawCount = 0;
+		scheduler = new SelectionRedrawScheduler(display, new Runnable() {
+			public void run() {
+				redrawCount++;
+			}
+		});
+	}
+
+	@Test
+	public void testCoalescedRequests() {
+		for (int i = 0; i < REQUESTS_COUNT; i++) {
+			scheduler.requestRedraw();
+		}
+		assertTrue(scheduler.isPending());
+		waitForRedraw();
+		assertEquals(1, redrawCount);
+		assertEquals(REQUESTS_COUNT, scheduler.getRequestedCount());
+		assertEquals(1, scheduler.getPerformedCount());
+
+		// the next frame
+		scheduler.requestRedraw();
+		scheduler.requestRedraw();
+		waitForRedraw();
+		assertEquals(2, redrawCount);
+		assertEquals(REQUESTS_COUNT + 2, scheduler.getRequestedCount());
+		assertEquals(2, scheduler.getPerformedCount());
+	}
+
+	@Test
+	public void testDispose() {
+		scheduler.requestRedraw();
+		scheduler.dispose();
+		scheduler.requestRedraw();
+		waitForRedraw();
+		assertEquals(0, redrawCount);
+		assertEquals(2, scheduler.getRequestedCount());
+		assertEquals(0, scheduler.getPerformedCount());
+	}
+
+	private void waitForRedraw() {
+		long endTime = System.currentTimeMillis() + TIMEOUT;
+		while (scheduler.isPending() && System.currentTimeMillis() < endTime) {
+			if (!display.readAndDispatch()) {
+				display.sleep();
+			}
+		}
+		assertFalse(scheduler.isPending());
+	}
+}
@@ -18,7 +18,8 @@ import org.junit.runners.Suite;
 	XulRunnerBrowserTest.class,
 	DOMCreatingTest.class,
 	XPCOMTest.class,
-	NullpluginTest_JBIDE8792.class
+	NullpluginTest_JBIDE8792.class,
+	SelectionRedrawSchedulerTest.class
 })
 public class XulRunnerAllTests {
 }